@@ -0,0 +1,54 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ImageUtils;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.JpegEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Кодирование JPEG на разном содержимом и качестве:
+ * кадр целиком (ImageUtils.imageToBytes, с копией в новый массив и без нее)
+ * и одна полоса плиток, как ее кодирует ParallelTileEncoder.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class EncodeBenchmark {
+
+    @Param({"TEXT", "GRADIENT", "PHOTO"})
+    public SyntheticScreens.Content content;
+
+    @Param({"0.3", "0.5", "0.7", "0.9"})
+    public float quality;
+
+    private BufferedImage frame;
+    private BufferedImage band;
+
+    @Setup
+    public void setup() {
+        frame = SyntheticScreens.create(content, 1920, 1080, 42);
+        band = frame.getSubimage(0, 512, frame.getWidth(), Protocol.TILE_SIZE);
+    }
+
+    @Benchmark
+    public byte[] imageToBytes() {
+        return ImageUtils.imageToBytes(frame, quality);
+    }
+
+    @Benchmark
+    public int encodeFrameReused() throws IOException {
+        return JpegEncoder.forCurrentThread().encode(frame, quality);
+    }
+
+    @Benchmark
+    public int encodeBand() throws IOException {
+        return JpegEncoder.forCurrentThread().encode(band, quality);
+    }
+}
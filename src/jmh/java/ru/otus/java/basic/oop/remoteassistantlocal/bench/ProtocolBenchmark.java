@@ -0,0 +1,121 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolDecoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Команды помощника: запись пачки команд (объекты Command и примитивы)
+ * и разбор той же пачки, как ее разбирает агент перед выполнением через Robot.
+ * Пачка похожа на живой ввод: в основном движения мыши, клики и клавиши.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ProtocolBenchmark {
+    private static final int BATCH = 64;
+
+    private final ProtocolEncoder encoder = new ProtocolEncoder(4096);
+    private final Command[] commands = new Command[BATCH];
+    private final ProtocolDecoder decoder = new ProtocolDecoder(4096);
+    private ByteBuffer batch;
+    private Blackhole blackhole;
+
+    private final MessageHandler sink = new MessageHandler() {
+        @Override
+        public void onMouse(Command.Type type, int x, int y, int arg1, int arg2) {
+            blackhole.consume(x + y + arg1 + arg2);
+        }
+
+        @Override
+        public void onKey(Command.Type type, int keyCode) {
+            blackhole.consume(keyCode);
+        }
+
+        @Override
+        public void onValue(Command.Type type, int value) {
+            blackhole.consume(value);
+        }
+    };
+
+    @Setup
+    public void setup() throws ProtocolException {
+        for (int i = 0; i < BATCH; i++) {
+            switch (i % 8) {
+                case 5:
+                    commands[i] = new Command(Command.Type.MOUSE_CLICK,
+                            new Object[]{i * 10, i * 5, InputEvent.BUTTON1_DOWN_MASK, 1});
+                    break;
+                case 6:
+                    commands[i] = Command.keyPress(KeyEvent.VK_A + i % 26);
+                    break;
+                case 7:
+                    commands[i] = new Command(Command.Type.KEY_RELEASE, KeyEvent.VK_A + i % 26);
+                    break;
+                default:
+                    commands[i] = Command.mouseMove(i * 10, i * 5);
+            }
+        }
+
+        for (Command command : commands) {
+            encoder.command(command);
+        }
+        ByteBuffer encoded = encoder.buffer().flip();
+        batch = ByteBuffer.allocate(encoded.remaining());
+        batch.put(encoded).flip();
+        encoder.clear();
+
+        // Приветствие разбирается один раз, дальше декодер ждет только команды
+        decoder.decode(new ProtocolEncoder(8).handshake().buffer().flip(), sink);
+    }
+
+    @Benchmark
+    public int encodeCommands() {
+        for (Command command : commands) {
+            encoder.command(command);
+        }
+        int size = encoder.buffer().position();
+        encoder.clear();
+        return size;
+    }
+
+    @Benchmark
+    public int encodePrimitives() {
+        for (int i = 0; i < BATCH; i++) {
+            switch (i % 8) {
+                case 5:
+                    encoder.mouse(Command.Type.MOUSE_CLICK, i * 10, i * 5, InputEvent.BUTTON1_DOWN_MASK, 1);
+                    break;
+                case 6:
+                    encoder.key(Command.Type.KEY_PRESS, KeyEvent.VK_A + i % 26);
+                    break;
+                case 7:
+                    encoder.key(Command.Type.KEY_RELEASE, KeyEvent.VK_A + i % 26);
+                    break;
+                default:
+                    encoder.mouseMove(i * 10, i * 5);
+            }
+        }
+        int size = encoder.buffer().position();
+        encoder.clear();
+        return size;
+    }
+
+    @Benchmark
+    public void decodeCommands(Blackhole blackhole) throws ProtocolException {
+        this.blackhole = blackhole;
+        decoder.decode(batch.duplicate(), sink);
+    }
+}
@@ -0,0 +1,54 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.bench;
+
+import org.openjdk.jmh.annotations.*;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ImageUtils;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Масштабирование: ImageUtils.scaleImage (новое изображение на каждый вызов)
+ * и приведение снимка экрана к 1920x1080 в заранее созданный кадр,
+ * как это делает стадия Screen-Scale агента.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ScaleBenchmark {
+    private static final int FIXED_WIDTH = 1920;
+    private static final int FIXED_HEIGHT = 1080;
+
+    @Param({"TEXT", "GRADIENT", "PHOTO"})
+    public SyntheticScreens.Content content;
+
+    // Разрешение экрана агента
+    @Param({"1366x768", "1920x1080", "2560x1440"})
+    public String screen;
+
+    private BufferedImage capture;
+    private BufferedImage fixed;
+
+    @Setup
+    public void setup() {
+        String[] size = screen.split("x");
+        capture = SyntheticScreens.create(content, Integer.parseInt(size[0]), Integer.parseInt(size[1]), 42);
+        fixed = new BufferedImage(FIXED_WIDTH, FIXED_HEIGHT, BufferedImage.TYPE_INT_RGB);
+    }
+
+    @Benchmark
+    public BufferedImage scaleImageHalf() {
+        return ImageUtils.scaleImage(capture, capture.getWidth() / 2);
+    }
+
+    @Benchmark
+    public BufferedImage rescaleToFixed() {
+        Graphics2D g2d = fixed.createGraphics();
+        g2d.drawImage(capture, 0, 0, FIXED_WIDTH, FIXED_HEIGHT, null);
+        g2d.dispose();
+        return fixed;
+    }
+}
@@ -0,0 +1,138 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.bench;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+/**
+ * Детерминированные изображения, похожие на рабочий стол, для бенчмарков.
+ * Содержимое сильно влияет на JPEG: текст дает много резких границ,
+ * градиенты и заливки почти ничего не стоят, фотография - шум во всех частотах.
+ */
+public final class SyntheticScreens {
+
+    /**
+     * Вид содержимого экрана
+     */
+    public enum Content {
+        /** Окна с текстом на белом фоне (редактор, браузер, консоль) */
+        TEXT,
+        /** Градиентный фон с однотонными панелями (рабочий стол, интерфейс) */
+        GRADIENT,
+        /** Фотография или видео на весь экран */
+        PHOTO
+    }
+
+    private static final String[] WORDS = {
+            "public", "class", "return", "void", "static", "final", "int", "new",
+            "кадр", "плитка", "агент", "помощник", "сессия", "качество", "0x52414C21", "{", "}", ";"
+    };
+
+    private SyntheticScreens() {
+    }
+
+    /**
+     * Изображение заданного вида в формате, который возвращает Robot (TYPE_INT_RGB)
+     */
+    public static BufferedImage create(Content content, int width, int height, long seed) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        switch (content) {
+            case TEXT:
+                drawText(image, random);
+                break;
+            case GRADIENT:
+                drawGradient(image, random);
+                break;
+            case PHOTO:
+                drawPhoto(image, random);
+                break;
+        }
+        return image;
+    }
+
+    private static void drawText(BufferedImage image, Random random) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(new Color(0xF3F3F3));
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            // Несколько окон с заголовком и строками текста
+            g.setFont(new Font(Font.MONOSPACED, Font.PLAIN, 14));
+            int lineHeight = g.getFontMetrics().getHeight();
+            for (int window = 0; window < 3; window++) {
+                int x = window * image.getWidth() / 3 + 8;
+                int w = image.getWidth() / 3 - 16;
+                g.setColor(Color.WHITE);
+                g.fillRect(x, 8, w, image.getHeight() - 16);
+                g.setColor(new Color(0x2B579A));
+                g.fillRect(x, 8, w, 28);
+                g.setColor(Color.BLACK);
+                for (int y = 36 + lineHeight; y < image.getHeight() - 16; y += lineHeight) {
+                    StringBuilder line = new StringBuilder();
+                    int indent = random.nextInt(4) * 4;
+                    for (int i = 0; i < indent; i++) line.append(' ');
+                    int words = 2 + random.nextInt(8);
+                    for (int i = 0; i < words; i++) {
+                        line.append(WORDS[random.nextInt(WORDS.length)]).append(' ');
+                    }
+                    g.setColor(random.nextInt(5) == 0 ? new Color(0x0000C0) : Color.BLACK);
+                    g.drawString(line.toString(), x + 6, y);
+                }
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static void drawGradient(BufferedImage image, Random random) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, new Color(0x1E3C72),
+                    image.getWidth(), image.getHeight(), new Color(0x7AA1D2)));
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+
+            // Панель задач и несколько однотонных окон с кнопками
+            g.setColor(new Color(0x202020));
+            g.fillRect(0, image.getHeight() - 40, image.getWidth(), 40);
+            for (int i = 0; i < 6; i++) {
+                int w = 200 + random.nextInt(400);
+                int h = 150 + random.nextInt(300);
+                int x = random.nextInt(Math.max(1, image.getWidth() - w));
+                int y = random.nextInt(Math.max(1, image.getHeight() - h - 40));
+                g.setColor(new Color(0xE0E0E0 + random.nextInt(0x1F)));
+                g.fillRoundRect(x, y, w, h, 12, 12);
+                g.setColor(new Color(0x3C7FB1));
+                g.fillRoundRect(x + 10, y + h - 40, 90, 28, 6, 6);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static void drawPhoto(BufferedImage image, Random random) {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        int width = image.getWidth();
+        int height = image.getHeight();
+
+        // Плавные формы (сумма синусоид) плюс зерно - как у фотографии
+        double fx = 0.002 + random.nextDouble() * 0.004;
+        double fy = 0.003 + random.nextDouble() * 0.004;
+        for (int y = 0; y < height; y++) {
+            for (int x = 0; x < width; x++) {
+                double v = Math.sin(x * fx + Math.cos(y * fy) * 3) + Math.sin((x + y) * 0.011);
+                int grain = random.nextInt(24) - 12;
+                int r = clamp((int) (120 + 60 * v) + grain);
+                int gr = clamp((int) (110 + 50 * Math.cos(y * fy * 2 + v)) + grain);
+                int b = clamp((int) (90 + 70 * Math.sin(x * fx * 3 - v)) + grain);
+                pixels[y * width + x] = (r << 16) | (gr << 8) | b;
+            }
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -1,6 +1,8 @@
 package ru.otus.java.basic.oop.remoteassistantlocal;
 
 import ru.otus.java.basic.oop.remoteassistantlocal.agent.AgentApp;
+import ru.otus.java.basic.oop.remoteassistantlocal.loadtest.LoadTestApp;
+import ru.otus.java.basic.oop.remoteassistantlocal.server.ServerApp;
 import ru.otus.java.basic.oop.remoteassistantlocal.viewer.ViewerApp;
 import javafx.application.Application;
 
@@ -18,6 +20,7 @@ public class Main {
         System.out.println("1. viewer   - запуск интерфейса помощника (JavaFX)");
         System.out.println("2. agent    - запуск агента на компьютере пользователя");
         System.out.println("3. server   - запуск сервера-посредника (для интернета)");
+        System.out.println("4. load     - нагрузочный тест агента (имитация помощников)");
         System.out.println();
         System.out.println("Примеры использования:");
         System.out.println("  java -jar RemoteAssistant.jar viewer");
@@ -45,6 +48,11 @@ public class Main {
                     launchServer();
                     break;
 
+                case "load":
+                case "l":
+                    launchLoadTest();
+                    break;
+
                 case "help":
                 case "h":
                 case "-help":
@@ -94,12 +102,19 @@ public class Main {
     }
 
     /**
-     * Запуск сервера (опционально)
+     * Запуск нагрузочного теста (настройки - системные свойства load.*)
+     */
+    private static void launchLoadTest() {
+        System.out.println("Запуск нагрузочного теста...");
+        LoadTestApp.main(new String[0]);
+    }
+
+    /**
+     * Запуск сервера-посредника (настройки - системные свойства relay.*)
      */
     private static void launchServer() {
         System.out.println("Запуск сервера-посредника...");
-        // ServerApp.main(new String[0]);
-        System.out.println("Режим сервера пока не реализован");
+        ServerApp.main(new String[0]);
     }
 
     /**
@@ -116,6 +131,8 @@ public class Main {
         System.out.println("  viewer    - интерфейс помощника (по умолчанию)");
         System.out.println("  agent     - агент на компьютере пользователя");
         System.out.println("  server    - сервер-посредник для работы через интернет");
+        System.out.println("  load      - нагрузочный тест: -Dload.viewers=N -Dload.durationSec=S");
+        System.out.println("              (-Dload.agent=synthetic - агент в том же процессе без дисплея)");
         System.out.println("  help      - показать эту справку");
         System.out.println();
         System.out.println("Пример для локальной сети:");
@@ -125,6 +142,14 @@ public class Main {
         System.out.println("     java -jar RemoteAssistant.jar viewer");
         System.out.println("     Введите IP адрес агента и нажмите 'Подключиться'");
         System.out.println();
+        System.out.println("Через интернет (агент за NAT):");
+        System.out.println("  1. На сервере с публичным адресом:");
+        System.out.println("     java -jar RemoteAssistant.jar server");
+        System.out.println("  2. На компьютере пользователя:");
+        System.out.println("     java -Dagent.relay=адрес_сервера -jar RemoteAssistant.jar agent");
+        System.out.println("     Агент напечатает номер сессии");
+        System.out.println("  3. Помощник вводит вместо IP: номер_сессии@адрес_сервера");
+        System.out.println();
         System.out.println("Автор: Курсовой проект по Java");
         System.out.println("Версия: 1.0");
     }
@@ -0,0 +1,287 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Подстройка потока кадров одного помощника под его канал.
+ *
+ * Раз в полсекунды смотрит, за сколько кадры уходили в сокет (BandwidthEstimator)
+ * и сколько ждет текущий. Дольше целевой задержки - канал перегружен, и поток облегчается
+ * на один шаг: сначала качество JPEG, потом частота кадров (сразу до той, что помещается
+ * в оценку канала), потом масштаб плиток JPEG. Если задержка больше цели в SEVERE раз,
+ * шагов за интервал делается два: текст и интерфейс идут без потерь, и одно качество
+ * JPEG их не облегчит. Если несколько интервалов подряд кадры уходят
+ * быстрее половины цели и не пропускаются, поток восстанавливается в обратном порядке.
+ * Если вскоре после шага вверх канал снова перегружен, следующего шага приходится ждать
+ * вдвое дольше: часть очереди (буферы ядра и сети) агенту не видна, и без этого поток
+ * качался бы между двумя уровнями.
+ * Качество и частота помощника (SET_QUALITY, SET_FPS) - потолок, выше него подстройка не поднимает.
+ *
+ * Без SET_ADAPTIVE (или с agent.adaptive=false) значения берутся ровно из потолка.
+ * Методы вызываются потоком кодирования и потоком селектора (команды помощника).
+ */
+class AdaptiveRate {
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    // Сколько спокойных интервалов подряд нужно для шага вверх: сначала и самое большее
+    private static final int RECOVER_INTERVALS = 4;
+    private static final int MAX_RECOVER_INTERVALS = 64;
+    // Если по оценке канала шаг вверх не помещается, он все равно пробуется после стольких
+    // лишних интервалов: канал мог стать шире
+    private static final int PROBE_INTERVALS = 20;
+    private static final int QUALITY_STEP_UP = 5;
+    // Во сколько раз, с запасом, вырастает кадр от шага качества вверх
+    private static final double QUALITY_GROWTH = 1.15;
+    private static final int SCALE_STEP = 25;
+    // Во сколько раз задержка должна превысить цель, чтобы облегчать поток на два шага сразу
+    private static final int SEVERE = 4;
+    // Доля оценки канала, которую можно занять кадрами
+    private static final double HEADROOM = 0.8;
+    // Вес нового интервала в среднем размере кадра
+    private static final double WEIGHT = 0.3;
+    // Буфер отправки сокета: до первой оценки канала и пределы
+    private static final int INITIAL_SEND_BUFFER = 32 * 1024;
+    private static final int MIN_SEND_BUFFER = 16 * 1024;
+    private static final int MAX_SEND_BUFFER = 4 * 1024 * 1024;
+
+    private final boolean allowed;
+    private final long targetNanos;
+    private final int minQuality;
+    private final int minFps;
+    private final AgentMetrics metrics;
+    private final BandwidthEstimator.Interval interval = new BandwidthEstimator.Interval();
+
+    // Пределы от помощника; minScale == Protocol.ADAPTIVE_OFF - подстройка выключена
+    private int maxQuality;
+    private int maxFps;
+    private int minScale = Protocol.ADAPTIVE_OFF;
+
+    private volatile int quality;
+    private volatile int fps;
+    private volatile int scale = 100;
+
+    // Состояние регулятора (поток кодирования)
+    private long lastUpdate = System.nanoTime();
+    private int skipped;
+    private int calm;
+    private int recoverAfter = RECOVER_INTERVALS;
+    // Интервалов с последнего шага вверх
+    private int sinceUp = MAX_RECOVER_INTERVALS;
+    private double frameBytes;
+    private volatile int sendBuffer;
+
+    AdaptiveRate(AgentConfig config, int quality, int fps, AgentMetrics metrics) {
+        this.metrics = metrics;
+        this.allowed = config.isAdaptive();
+        this.targetNanos = TimeUnit.MILLISECONDS.toNanos(config.getLatencyTargetMs());
+        this.minQuality = config.getMinQuality();
+        this.minFps = config.getMinFps();
+        this.maxQuality = quality;
+        this.maxFps = fps;
+        this.quality = quality;
+        this.fps = fps;
+    }
+
+    /**
+     * Потолок качества (SET_QUALITY). Выше текущего - качество поднимется по шагам, если канал позволит.
+     */
+    synchronized void setMaxQuality(int maxQuality) {
+        this.maxQuality = maxQuality;
+        quality = isEnabled() ? Math.min(quality, maxQuality) : maxQuality;
+    }
+
+    /**
+     * Потолок частоты кадров (SET_FPS)
+     */
+    synchronized void setMaxFps(int maxFps) {
+        this.maxFps = maxFps;
+        fps = isEnabled() ? Math.min(fps, maxFps) : maxFps;
+    }
+
+    /**
+     * Наименьший масштаб плиток JPEG в процентах (SET_ADAPTIVE); Protocol.ADAPTIVE_OFF выключает подстройку
+     *
+     * @return принятое значение: ADAPTIVE_OFF, если подстройка запрещена настройками агента
+     */
+    synchronized int setMinScale(int minScale) {
+        this.minScale = allowed && minScale != Protocol.ADAPTIVE_OFF
+                ? Math.max(10, Math.min(100, minScale)) : Protocol.ADAPTIVE_OFF;
+        if (!isEnabled()) {
+            quality = maxQuality;
+            fps = maxFps;
+            scale = 100;
+        } else {
+            scale = Math.max(scale, this.minScale);
+            if (sendBuffer == 0) {
+                sendBuffer = INITIAL_SEND_BUFFER;
+            }
+        }
+        calm = 0;
+        return this.minScale;
+    }
+
+    synchronized boolean isEnabled() {
+        return minScale != Protocol.ADAPTIVE_OFF;
+    }
+
+    /**
+     * Кадр для помощника пропущен: он еще принимал предыдущий
+     */
+    synchronized void onSkipped() {
+        skipped++;
+    }
+
+    /**
+     * Шаг регулятора, если с прошлого прошел интервал (поток кодирования)
+     *
+     * @param backlogNanos сколько ждет отправки текущий кадр сессии
+     * @return изменились ли качество, частота или масштаб
+     */
+    synchronized boolean update(long now, BandwidthEstimator estimator, long backlogNanos) {
+        long elapsed = now - lastUpdate;
+        if (elapsed < INTERVAL_NANOS) return false;
+        lastUpdate = now;
+        estimator.roll(interval);
+        int skippedFrames = skipped;
+        skipped = 0;
+        if (!isEnabled()) return false;
+
+        if (interval.frames > 0) {
+            double average = (double) interval.bytes / interval.frames;
+            frameBytes = frameBytes == 0 ? average : frameBytes + WEIGHT * (average - frameBytes);
+        }
+        if (interval.bandwidth > 0) {
+            // В ядре остается очередь не больше чем на половину целевой задержки. Замер скорости
+            // бывает завышен рывком (помощник разом вычитал буфер), а с большим буфером новых
+            // замеров уже не будет, поэтому он ограничен удвоенной фактической скоростью интервала
+            double delivered = interval.bytes * 1e9 / elapsed;
+            double size = Math.min(interval.bandwidth, 2 * delivered) * targetNanos / 2e9;
+            sendBuffer = (int) Math.max(MIN_SEND_BUFFER, Math.min(MAX_SEND_BUFFER, size));
+        }
+
+        sinceUp = Math.min(sinceUp + 1, MAX_RECOVER_INTERVALS);
+        long delay = Math.max(interval.averageSendNanos, backlogNanos);
+        if (delay > targetNanos) {
+            calm = 0;
+            if (sinceUp <= recoverAfter) {
+                // Прошлый шаг вверх оказался лишним
+                recoverAfter = Math.min(MAX_RECOVER_INTERVALS, recoverAfter * 2);
+            }
+            int steps = delay > SEVERE * targetNanos ? 2 : 1;
+            boolean changed = false;
+            for (int i = 0; i < steps && stepDown(interval.bandwidth); i++) {
+                metrics.adaptiveDowns.incrementAndGet();
+                changed = true;
+            }
+            return changed;
+        }
+
+        // Статичный экран ничего не говорит о канале
+        if (interval.frames == 0) return false;
+        if (interval.maxSendNanos > targetNanos / 2 || skippedFrames > 0) {
+            calm = 0;
+            return false;
+        }
+        if (++calm < recoverAfter) return false;
+        if (stepUp(interval.bandwidth, calm >= recoverAfter + PROBE_INTERVALS)) {
+            calm = 0;
+            sinceUp = 0;
+            metrics.adaptiveUps.incrementAndGet();
+            return true;
+        }
+        if (isFull()) {
+            // Поток полный и канал с ним справляется
+            recoverAfter = RECOVER_INTERVALS;
+        }
+        return false;
+    }
+
+    /**
+     * Облегчение потока на один шаг
+     */
+    private boolean stepDown(double bandwidth) {
+        if (quality > minQuality) {
+            quality = Math.max(minQuality, quality - Math.max(5, quality / 4));
+            return true;
+        }
+        if (fps > minFps) {
+            int fit = fps * 2 / 3;
+            if (bandwidth > 0 && frameBytes > 0) {
+                // Частота, которая помещается в канал с нынешним размером кадра
+                fit = Math.min(fit, (int) (HEADROOM * bandwidth / frameBytes));
+            }
+            fps = Math.max(minFps, Math.min(fps - 1, fit));
+            return true;
+        }
+        if (scale > minScale) {
+            scale = Math.max(minScale, scale - SCALE_STEP);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Восстановление потока на один шаг: масштаб, частота, качество
+     *
+     * @param probe шагнуть, даже если по оценке канала он не поместится
+     */
+    private boolean stepUp(double bandwidth, boolean probe) {
+        if (scale < 100) {
+            int next = Math.min(100, scale + SCALE_STEP);
+            double growth = (double) next * next / (scale * scale);
+            if (!probe && !fits(bandwidth, fps, growth)) return false;
+            scale = next;
+            return true;
+        }
+        if (fps < maxFps) {
+            int next = Math.min(maxFps, fps + Math.max(1, fps / 4));
+            if (!probe && !fits(bandwidth, next, 1)) return false;
+            fps = next;
+            return true;
+        }
+        if (quality < maxQuality) {
+            if (!probe && !fits(bandwidth, fps, QUALITY_GROWTH)) return false;
+            quality = Math.min(maxQuality, quality + QUALITY_STEP_UP);
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Помещается ли в оценку канала поток с частотой fps и кадром, выросшим в growth раз.
+     * Часть очереди агенту не видна, поэтому шаг вверх без этой проверки только пробный.
+     */
+    private boolean fits(double bandwidth, int fps, double growth) {
+        return bandwidth <= 0 || frameBytes * growth * fps <= HEADROOM * bandwidth;
+    }
+
+    /**
+     * Размер буфера отправки сокета под оценку канала; 0 - не ограничивать (подстройка не включалась)
+     */
+    int getSendBuffer() {
+        return sendBuffer;
+    }
+
+    int getQuality() {
+        return quality;
+    }
+
+    int getFps() {
+        return fps;
+    }
+
+    /**
+     * Масштаб плиток JPEG в процентах
+     */
+    int getScale() {
+        return scale;
+    }
+
+    /**
+     * Поток полный: качество и масштаб на потолке
+     */
+    boolean isFull() {
+        return quality >= maxQuality && scale >= 100;
+    }
+}
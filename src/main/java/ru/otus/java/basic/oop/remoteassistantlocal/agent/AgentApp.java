@@ -3,7 +3,9 @@ package ru.otus.java.basic.oop.remoteassistantlocal.agent;
 import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
 
 import java.awt.*;
+import java.io.BufferedReader;
 import java.io.IOException;
+import java.io.InputStreamReader;
 
 // AgentApp.java - Запуск агента
 public class AgentApp {
@@ -11,8 +13,11 @@ public class AgentApp {
         try {
             System.out.println("=== Удаленный помощник - Агент ===");
             System.out.println("Для выхода нажмите Ctrl+C");
+            System.out.println("Без дисплея: -Djava.awt.headless=true -Dagent.source=synthetic (или replay:каталог)");
+            System.out.println("Отчет по метрикам: введите stats (также доступны через JMX)");
 
-            DesktopAgent agent = new DesktopAgent();
+            DesktopAgent agent = new DesktopAgent(AgentConfig.fromSystemProperties());
+            startConsole(agent);
             agent.start(Protocol.PORT);
 
         } catch (AWTException e) {
@@ -21,9 +26,29 @@ public class AgentApp {
         } catch (IOException e) {
             System.err.println("Ошибка запуска сервера:");
             e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ошибка настройки агента: " + e.getMessage());
         }
     }
 
-
-
+    /**
+     * Команды с консоли агента: stats - отчет по метрикам
+     */
+    private static void startConsole(DesktopAgent agent) {
+        Thread console = new Thread(() -> {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().equalsIgnoreCase("stats")) {
+                        System.out.print(agent.dumpMetrics());
+                    }
+                }
+            } catch (IOException e) {
+                // консоль недоступна
+            }
+        }, "Agent-Console");
+        console.setDaemon(true);
+        console.start();
+    }
 }
@@ -0,0 +1,303 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Настройки агента.
+ * Значения по умолчанию можно переопределить системными свойствами, например:
+ *   java -Dagent.encoderThreads=2 -Dagent.encodeDrop=BLOCK ... AgentApp
+ */
+public class AgentConfig {
+    /**
+     * Выбор сжатия плиток: AUTO - без потерь для текста и интерфейса, JPEG для изображений;
+     * JPEG - все плитки JPEG, как в первой версии протокола
+     */
+    public enum TileCodec {
+        AUTO, JPEG
+    }
+
+    private int encoderThreads = Math.max(1, Runtime.getRuntime().availableProcessors() / 2);
+    private int fps = 10;
+    private int quality = 70;
+    private int ringSize = 2;
+    private String source = "robot";
+    private TileCodec tileCodec = TileCodec.AUTO;
+    private boolean deltaTransport = true;
+    private int deltaLevel = 1;
+    private boolean copyRect = true;
+    private int cursorHz = 60;
+    private boolean adaptive = true;
+    private int latencyTargetMs = 150;
+    private int minQuality = 25;
+    private int minFps = 2;
+    private String relay;
+    private long relayId = ThreadLocalRandom.current().nextLong(100_000_000L, 1_000_000_000L);
+    private FrameRing.DropPolicy scaleDropPolicy = FrameRing.DropPolicy.DROP_OLDEST;
+    private FrameRing.DropPolicy encodeDropPolicy = FrameRing.DropPolicy.DROP_OLDEST;
+
+    /**
+     * Настройки из системных свойств (agent.*)
+     */
+    public static AgentConfig fromSystemProperties() {
+        AgentConfig config = new AgentConfig();
+        config.setEncoderThreads(Integer.getInteger("agent.encoderThreads", config.encoderThreads));
+        config.setFps(Integer.getInteger("agent.fps", config.fps));
+        config.setQuality(Integer.getInteger("agent.quality", config.quality));
+        config.setRingSize(Integer.getInteger("agent.ringSize", config.ringSize));
+        config.setSource(System.getProperty("agent.source", config.source));
+        config.setTileCodec(TileCodec.valueOf(System.getProperty("agent.tileCodec", config.tileCodec.name())));
+        config.setDeltaTransport(Boolean.parseBoolean(
+                System.getProperty("agent.deltaTransport", String.valueOf(config.deltaTransport))));
+        config.setDeltaLevel(Integer.getInteger("agent.deltaLevel", config.deltaLevel));
+        config.setCopyRect(Boolean.parseBoolean(System.getProperty("agent.copyRect", String.valueOf(config.copyRect))));
+        config.setCursorHz(Integer.getInteger("agent.cursorHz", config.cursorHz));
+        config.setAdaptive(Boolean.parseBoolean(System.getProperty("agent.adaptive", String.valueOf(config.adaptive))));
+        config.setLatencyTargetMs(Integer.getInteger("agent.latencyTargetMs", config.latencyTargetMs));
+        config.setMinQuality(Integer.getInteger("agent.minQuality", config.minQuality));
+        config.setMinFps(Integer.getInteger("agent.minFps", config.minFps));
+        config.setRelay(System.getProperty("agent.relay", config.relay));
+        config.setRelayId(Long.getLong("agent.relayId", config.relayId));
+        config.setScaleDropPolicy(FrameRing.DropPolicy.valueOf(
+                System.getProperty("agent.scaleDrop", config.scaleDropPolicy.name())));
+        config.setEncodeDropPolicy(FrameRing.DropPolicy.valueOf(
+                System.getProperty("agent.encodeDrop", config.encodeDropPolicy.name())));
+        return config;
+    }
+
+    /**
+     * Сколько потоков кодируют плитки параллельно.
+     * По умолчанию половина ядер, чтобы агент не мешал работе пользователя.
+     */
+    public int getEncoderThreads() {
+        return encoderThreads;
+    }
+
+    public void setEncoderThreads(int encoderThreads) {
+        if (encoderThreads < 1) {
+            throw new IllegalArgumentException("Число потоков кодирования должно быть больше 0: " + encoderThreads);
+        }
+        this.encoderThreads = encoderThreads;
+    }
+
+    /**
+     * Начальная частота кадров; помощник может изменить ее командой SET_FPS
+     */
+    public int getFps() {
+        return fps;
+    }
+
+    public void setFps(int fps) {
+        if (fps < FrameScheduler.MIN_FPS || fps > FrameScheduler.MAX_FPS) {
+            throw new IllegalArgumentException("Частота кадров должна быть от " + FrameScheduler.MIN_FPS
+                    + " до " + FrameScheduler.MAX_FPS + ": " + fps);
+        }
+        this.fps = fps;
+    }
+
+    /**
+     * Начальное качество JPEG в процентах; помощник может изменить его командой SET_QUALITY
+     */
+    public int getQuality() {
+        return quality;
+    }
+
+    public void setQuality(int quality) {
+        if (quality < 1 || quality > 100) {
+            throw new IllegalArgumentException("Качество должно быть от 1 до 100: " + quality);
+        }
+        this.quality = quality;
+    }
+
+    /**
+     * Число слотов в кольцах между стадиями конвейера (захват, масштабирование, кодирование)
+     */
+    public int getRingSize() {
+        return ringSize;
+    }
+
+    public void setRingSize(int ringSize) {
+        if (ringSize < 2) {
+            throw new IllegalArgumentException("Размер кольца должен быть не меньше 2: " + ringSize);
+        }
+        this.ringSize = ringSize;
+    }
+
+    /**
+     * Источник снимков экрана (agent.source), см. FrameSource.open():
+     * robot, synthetic[:ШxВ] или replay:путь
+     */
+    public String getSource() {
+        return source;
+    }
+
+    public void setSource(String source) {
+        if (source == null || source.trim().isEmpty()) {
+            throw new IllegalArgumentException("Источник кадров не задан");
+        }
+        this.source = source.trim();
+    }
+
+    /**
+     * Сжатие плиток (agent.tileCodec)
+     */
+    public TileCodec getTileCodec() {
+        return tileCodec;
+    }
+
+    public void setTileCodec(TileCodec tileCodec) {
+        this.tileCodec = tileCodec;
+    }
+
+    /**
+     * Разрешен ли помощникам режим без потерь TRANSPORT_DELTA (agent.deltaTransport).
+     * Он требует отдельного кодирования и копии экрана (около 8 МБ) на каждую такую сессию.
+     */
+    public boolean isDeltaTransport() {
+        return deltaTransport;
+    }
+
+    public void setDeltaTransport(boolean deltaTransport) {
+        this.deltaTransport = deltaTransport;
+    }
+
+    /**
+     * Уровень Deflate режима без потерь (agent.deltaLevel): 1 - быстрее всего,
+     * 6 - на 30-45% меньше данных ценой в 2-3 раза большего времени кодирования
+     */
+    public int getDeltaLevel() {
+        return deltaLevel;
+    }
+
+    public void setDeltaLevel(int deltaLevel) {
+        if (deltaLevel < 1 || deltaLevel > 9) {
+            throw new IllegalArgumentException("Уровень сжатия должен быть от 1 до 9: " + deltaLevel);
+        }
+        this.deltaLevel = deltaLevel;
+    }
+
+    /**
+     * Искать ли прокрутку и перемещение окон, чтобы передавать их копированием области (agent.copyRect)
+     */
+    public boolean isCopyRect() {
+        return copyRect;
+    }
+
+    public void setCopyRect(boolean copyRect) {
+        this.copyRect = copyRect;
+    }
+
+    /**
+     * Сколько раз в секунду проверять указатель мыши для помощников (agent.cursorHz); 0 - не передавать
+     */
+    public int getCursorHz() {
+        return cursorHz;
+    }
+
+    public void setCursorHz(int cursorHz) {
+        if (cursorHz < 0 || cursorHz > 1000) {
+            throw new IllegalArgumentException("Частота опроса указателя должна быть от 0 до 1000: " + cursorHz);
+        }
+        this.cursorHz = cursorHz;
+    }
+
+    /**
+     * Разрешена ли подстройка качества, частоты кадров и масштаба под канал помощника (agent.adaptive).
+     * Включает ее сам помощник командой SET_ADAPTIVE.
+     */
+    public boolean isAdaptive() {
+        return adaptive;
+    }
+
+    public void setAdaptive(boolean adaptive) {
+        this.adaptive = adaptive;
+    }
+
+    /**
+     * За сколько миллисекунд кадр должен уходить в сокет помощника (agent.latencyTargetMs);
+     * дольше - канал перегружен, и поток кадров облегчается
+     */
+    public int getLatencyTargetMs() {
+        return latencyTargetMs;
+    }
+
+    public void setLatencyTargetMs(int latencyTargetMs) {
+        if (latencyTargetMs < 10 || latencyTargetMs > 10_000) {
+            throw new IllegalArgumentException("Целевая задержка должна быть от 10 до 10000 мс: " + latencyTargetMs);
+        }
+        this.latencyTargetMs = latencyTargetMs;
+    }
+
+    /**
+     * Ниже какого качества JPEG подстройка не опускается (agent.minQuality)
+     */
+    public int getMinQuality() {
+        return minQuality;
+    }
+
+    public void setMinQuality(int minQuality) {
+        if (minQuality < 1 || minQuality > 100) {
+            throw new IllegalArgumentException("Качество должно быть от 1 до 100: " + minQuality);
+        }
+        this.minQuality = minQuality;
+    }
+
+    /**
+     * Ниже какой частоты кадров подстройка не опускается (agent.minFps)
+     */
+    public int getMinFps() {
+        return minFps;
+    }
+
+    public void setMinFps(int minFps) {
+        if (minFps < FrameScheduler.MIN_FPS || minFps > FrameScheduler.MAX_FPS) {
+            throw new IllegalArgumentException("Частота кадров должна быть от " + FrameScheduler.MIN_FPS
+                    + " до " + FrameScheduler.MAX_FPS + ": " + minFps);
+        }
+        this.minFps = minFps;
+    }
+
+    /**
+     * Сервер-посредник "хост[:порт]" (agent.relay), через который к агенту подключаются
+     * помощники из интернета, или null - только прямые подключения
+     */
+    public String getRelay() {
+        return relay;
+    }
+
+    public void setRelay(String relay) {
+        this.relay = relay == null || relay.trim().isEmpty() ? null : relay.trim();
+    }
+
+    /**
+     * Номер сессии на посреднике (agent.relayId); по умолчанию случайный девятизначный
+     */
+    public long getRelayId() {
+        return relayId;
+    }
+
+    public void setRelayId(long relayId) {
+        this.relayId = relayId;
+    }
+
+    /**
+     * Что делать с захваченным кадром, если масштабирование не успевает (agent.scaleDrop)
+     */
+    public FrameRing.DropPolicy getScaleDropPolicy() {
+        return scaleDropPolicy;
+    }
+
+    public void setScaleDropPolicy(FrameRing.DropPolicy scaleDropPolicy) {
+        this.scaleDropPolicy = scaleDropPolicy;
+    }
+
+    /**
+     * Что делать с масштабированным кадром, если кодирование не успевает (agent.encodeDrop)
+     */
+    public FrameRing.DropPolicy getEncodeDropPolicy() {
+        return encodeDropPolicy;
+    }
+
+    public void setEncodeDropPolicy(FrameRing.DropPolicy encodeDropPolicy) {
+        this.encodeDropPolicy = encodeDropPolicy;
+    }
+}
@@ -0,0 +1,137 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+
+/**
+ * JMX доступ к метрикам и настройкам работающего агента.
+ * Регистрирует AgentControl и по одной гистограмме на метрику:
+ *   ru.otus.java.basic.oop.remoteassistantlocal:type=Agent
+ *   ru.otus.java.basic.oop.remoteassistantlocal:type=Histogram,name=...
+ * Качество и частоту кадров можно менять из jconsole/VisualVM без переподключения помощников.
+ */
+public class AgentControl implements AgentControlMBean {
+    private static final String DOMAIN = "ru.otus.java.basic.oop.remoteassistantlocal";
+
+    private final ScreenBroadcaster broadcaster;
+    private final AgentMetrics metrics;
+
+    public AgentControl(ScreenBroadcaster broadcaster, AgentMetrics metrics) {
+        this.broadcaster = broadcaster;
+        this.metrics = metrics;
+    }
+
+    /**
+     * Регистрация в платформенном MBeanServer
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            register(server, new ObjectName(DOMAIN + ":type=Agent"), this);
+            for (Histogram histogram : metrics.histograms()) {
+                register(server, new ObjectName(DOMAIN + ":type=Histogram,name=" + ObjectName.quote(histogram.getName())),
+                        histogram);
+            }
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать JMX метрики: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public int getViewers() {
+        return broadcaster.getSubscriberCount();
+    }
+
+    @Override
+    public int getQuality() {
+        return broadcaster.getQuality();
+    }
+
+    @Override
+    public void setQuality(int quality) {
+        System.out.println("JMX: качество установлено: " + broadcaster.setQuality(quality) + "%");
+    }
+
+    @Override
+    public int getTargetFps() {
+        return broadcaster.getTargetFps();
+    }
+
+    @Override
+    public void setTargetFps(int fps) {
+        System.out.println("JMX: частота кадров установлена: " + broadcaster.setFps(fps));
+    }
+
+    @Override
+    public double getAchievedFps() {
+        return broadcaster.getAchievedFps();
+    }
+
+    @Override
+    public long getFramesCaptured() {
+        return metrics.framesCaptured.get();
+    }
+
+    @Override
+    public long getFramesEncoded() {
+        return metrics.framesEncoded.get();
+    }
+
+    @Override
+    public long getFramesSent() {
+        return metrics.framesSent.get();
+    }
+
+    @Override
+    public long getBytesSent() {
+        return metrics.bytesSent.get();
+    }
+
+    @Override
+    public long getSkippedFrames() {
+        return broadcaster.getSkippedFrames();
+    }
+
+    @Override
+    public long getPipelineDroppedFrames() {
+        return broadcaster.getPipelineDroppedFrames();
+    }
+
+    @Override
+    public long getSessionDroppedFrames() {
+        return metrics.sessionDroppedFrames.get();
+    }
+
+    @Override
+    public String dump() {
+        StringBuilder report = new StringBuilder();
+        report.append(String.format("Помощников: %d, качество %d%%, FPS цель %d, фактически %.1f%n",
+                getViewers(), getQuality(), getTargetFps(), getAchievedFps()));
+        report.append(String.format("Кадров: захвачено %d, закодировано %d, отправлено %d (%.1f МБ)%n",
+                getFramesCaptured(), getFramesEncoded(), getFramesSent(), getBytesSent() / (1024.0 * 1024)));
+        report.append(String.format("Пропущено: планировщиком %d, конвейером %d, сессиями %d%n",
+                getSkippedFrames(), getPipelineDroppedFrames(), getSessionDroppedFrames()));
+        report.append(String.format("Плитки: без потерь %d (%.1f МБ), JPEG %d (%.1f МБ); дельта-кадры %d (%.1f МБ)%n",
+                metrics.losslessTiles.get(), metrics.losslessBytes.get() / (1024.0 * 1024),
+                metrics.jpegTiles.get(), metrics.jpegBytes.get() / (1024.0 * 1024),
+                metrics.deltaFrames.get(), metrics.deltaBytes.get() / (1024.0 * 1024)));
+        report.append(String.format("Кадров с копированием области (прокрутка, перемещение окон): %d%n", metrics.copyRects.get()));
+        report.append(String.format("Указатель: положений %d, форм %d%n",
+                metrics.cursorUpdates.get(), metrics.cursorShapes.get()));
+        report.append(String.format("Подстройка под канал: облегчений %d, восстановлений %d%n",
+                metrics.adaptiveDowns.get(), metrics.adaptiveUps.get()));
+        for (Histogram histogram : metrics.histograms()) {
+            report.append(histogram).append(System.lineSeparator());
+        }
+        return report.toString();
+    }
+
+    private static void register(MBeanServer server, ObjectName name, Object bean) throws JMException {
+        if (server.isRegistered(name)) {
+            server.unregisterMBean(name);
+        }
+        server.registerMBean(bean, name);
+    }
+}
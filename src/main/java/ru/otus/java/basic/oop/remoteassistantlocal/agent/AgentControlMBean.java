@@ -0,0 +1,43 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+/**
+ * Управление агентом и его счетчики в JMX
+ */
+public interface AgentControlMBean {
+    int getViewers();
+
+    int getQuality();
+
+    /**
+     * Качество JPEG для всех текущих и новых помощников
+     */
+    void setQuality(int quality);
+
+    int getTargetFps();
+
+    /**
+     * Частота кадров для всех текущих и новых помощников
+     */
+    void setTargetFps(int fps);
+
+    double getAchievedFps();
+
+    long getFramesCaptured();
+
+    long getFramesEncoded();
+
+    long getFramesSent();
+
+    long getBytesSent();
+
+    long getSkippedFrames();
+
+    long getPipelineDroppedFrames();
+
+    long getSessionDroppedFrames();
+
+    /**
+     * Текстовый отчет по всем метрикам
+     */
+    String dump();
+}
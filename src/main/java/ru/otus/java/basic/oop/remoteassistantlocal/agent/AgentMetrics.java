@@ -0,0 +1,48 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Метрики конвейера агента: задержки стадий, размер кадров и счетчики.
+ * Записываются из потоков стадий и селектора без блокировок; читаются
+ * через JMX (AgentControl) или текстовым отчетом dump().
+ */
+public class AgentMetrics {
+    // Время стадий одного кадра
+    public final Histogram capture = Histogram.latency("захват");
+    public final Histogram scale = Histogram.latency("масштаб");
+    public final Histogram encode = Histogram.latency("кодир.");
+    // От передачи кадра сессии до записи последнего байта в сокет
+    public final Histogram send = Histogram.latency("отправка");
+    // От чтения команды из сокета до ее выполнения
+    public final Histogram command = Histogram.latency("команда");
+    public final Histogram frameSize = new Histogram("кадр", "КБ", 1024);
+
+    public final AtomicLong framesCaptured = new AtomicLong();
+    public final AtomicLong framesEncoded = new AtomicLong();
+    public final AtomicLong framesSent = new AtomicLong();
+    public final AtomicLong bytesSent = new AtomicLong();
+    // Кадры, которые сессии не приняли, потому что еще отправляли предыдущие
+    public final AtomicLong sessionDroppedFrames = new AtomicLong();
+    // Закодированные плитки по способу сжатия
+    public final AtomicLong losslessTiles = new AtomicLong();
+    public final AtomicLong losslessBytes = new AtomicLong();
+    public final AtomicLong jpegTiles = new AtomicLong();
+    public final AtomicLong jpegBytes = new AtomicLong();
+    // Кадры режима без потерь (TRANSPORT_DELTA)
+    public final AtomicLong deltaFrames = new AtomicLong();
+    public final AtomicLong deltaBytes = new AtomicLong();
+    // Кадры с копированием области (прокрутка, перемещение окна)
+    public final AtomicLong copyRects = new AtomicLong();
+    // Сообщения канала указателя (CursorTracker)
+    public final AtomicLong cursorUpdates = new AtomicLong();
+    public final AtomicLong cursorShapes = new AtomicLong();
+    // Шаги подстройки под канал помощников (AdaptiveRate)
+    public final AtomicLong adaptiveDowns = new AtomicLong();
+    public final AtomicLong adaptiveUps = new AtomicLong();
+
+    public List<Histogram> histograms() {
+        return List.of(capture, scale, encode, send, command, frameSize);
+    }
+}
@@ -0,0 +1,90 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+/**
+ * Оценка канала до одного помощника по тому, как кадры уходят в его сокет.
+ *
+ * Пока кадр помещается в буфер сокета сразу, скорость канала не видна - видно только,
+ * что он справляется. Если кадр пришлось дописывать по OP_WRITE, буфер сокета был полон
+ * от первой записи до последней, и все, что в него ушло за это время, ушло и в сеть.
+ * Отношение этих байт ко времени - замер пропускной способности. Замер берется за весь интервал,
+ * а не по кадру: короткое ожидание, пока буферы ядра и помощника разом освобождаются,
+ * дает скорость много выше канала, и по кадру такие замеры преобладали бы. Замеры сглаживаются.
+ *
+ * Кроме того копятся итоги интервала (число кадров, время отправки), их забирает roll().
+ * Пишет ViewerSession под своей блокировкой, читает поток кодирования.
+ */
+class BandwidthEstimator {
+    // Вес нового замера в скользящем среднем
+    private static final double WEIGHT = 0.3;
+    // Меньше стольких наносекунд ожидания за интервал замер не берется
+    private static final long MIN_WAIT_NANOS = 20_000_000;
+
+    private double bandwidth;
+
+    // Текущий интервал
+    private int frames;
+    private long bytes;
+    private long sendNanos;
+    private long maxSendNanos;
+    private long waitedBytes;
+    private long waitNanos;
+
+    /**
+     * Итоги интервала между вызовами roll()
+     */
+    static class Interval {
+        int frames;
+        long bytes;
+        long averageSendNanos;
+        long maxSendNanos;
+        // Байт в секунду; 0 - канал ни разу не был узким местом
+        double bandwidth;
+    }
+
+    /**
+     * Кадр ушел в сокет целиком
+     *
+     * @param size        размер кадра
+     * @param sendNanos   от передачи кадра сессии до записи последнего байта
+     * @param waitedBytes сколько байт кадра записано после того, как сокет оказался полон (0 - ушел сразу)
+     * @param waitNanos   время от первой неполной записи до последней
+     */
+    synchronized void onFrameSent(int size, long sendNanos, int waitedBytes, long waitNanos) {
+        frames++;
+        bytes += size;
+        this.sendNanos += sendNanos;
+        maxSendNanos = Math.max(maxSendNanos, sendNanos);
+        if (waitedBytes > 0) {
+            this.waitedBytes += waitedBytes;
+            this.waitNanos += waitNanos;
+        }
+    }
+
+    /**
+     * Перенос итогов текущего интервала в into и начало следующего
+     */
+    synchronized void roll(Interval into) {
+        if (waitNanos >= MIN_WAIT_NANOS) {
+            double sample = waitedBytes * 1e9 / waitNanos;
+            bandwidth = bandwidth == 0 ? sample : bandwidth + WEIGHT * (sample - bandwidth);
+        }
+        into.frames = frames;
+        into.bytes = bytes;
+        into.averageSendNanos = frames == 0 ? 0 : sendNanos / frames;
+        into.maxSendNanos = maxSendNanos;
+        into.bandwidth = bandwidth;
+        frames = 0;
+        bytes = 0;
+        sendNanos = 0;
+        maxSendNanos = 0;
+        waitedBytes = 0;
+        waitNanos = 0;
+    }
+
+    /**
+     * Оценка пропускной способности, байт в секунду; 0 - еще не измерена
+     */
+    synchronized double getBandwidth() {
+        return bandwidth;
+    }
+}
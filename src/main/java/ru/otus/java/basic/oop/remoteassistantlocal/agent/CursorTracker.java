@@ -0,0 +1,138 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.awt.*;
+import java.io.IOException;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Канал указателя мыши: положение и форма указателя уходят помощникам отдельными
+ * маленькими сообщениями, не дожидаясь кадра. Движение указателя не меняет снимков,
+ * поэтому не требует ни захвата, ни кодирования.
+ *
+ * Собственный поток опрашивает источник кадров с заданной частотой. Каждой сессии
+ * форма отправляется один раз на номер, дальше только положение с номером формы.
+ * Пока предыдущее сообщение сессии ждет в ее буфере (например, за большим кадром),
+ * новые положения не копятся: когда буфер освободится, уйдет последнее.
+ */
+class CursorTracker implements AutoCloseable {
+    private final FrameSource source;
+    private final int width;
+    private final int height;
+    private final long periodMillis;
+    private final AgentMetrics metrics;
+    private final List<Viewer> viewers = new CopyOnWriteArrayList<>();
+    private final Thread thread;
+
+    // Состояние потока указателя
+    private final Point location = new Point();
+    private final ProtocolEncoder encoder = new ProtocolEncoder(1024);
+
+    /**
+     * Что уже известно помощнику (меняется только потоком указателя)
+     */
+    private static class Viewer {
+        final ViewerSession session;
+        final Set<Integer> shapes = new HashSet<>();
+        int x = -1;
+        int y = -1;
+        int shapeId = -1;
+
+        Viewer(ViewerSession session) {
+            this.session = session;
+        }
+    }
+
+    /**
+     * @param width  ширина кадра, в координатах которого помощник получает положение
+     * @param height высота кадра
+     * @param hz     сколько раз в секунду опрашивать указатель
+     */
+    CursorTracker(FrameSource source, int width, int height, int hz, AgentMetrics metrics) {
+        this.source = source;
+        this.width = width;
+        this.height = height;
+        this.periodMillis = Math.max(1, 1000 / hz);
+        this.metrics = metrics;
+        this.thread = new Thread(this::run, "Cursor-Tracker");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    /**
+     * Новый помощник получит форму и положение указателя со следующим опросом
+     */
+    void add(ViewerSession session) {
+        viewers.add(new Viewer(session));
+    }
+
+    void remove(ViewerSession session) {
+        viewers.removeIf(viewer -> viewer.session == session);
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+    }
+
+    private void run() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                Thread.sleep(periodMillis);
+                if (!viewers.isEmpty()) {
+                    poll();
+                }
+            }
+        } catch (InterruptedException e) {
+            // агент остановлен
+        } catch (RuntimeException e) {
+            System.out.println("Ошибка опроса указателя, канал указателя остановлен: " + e.getMessage());
+        }
+    }
+
+    private void poll() {
+        int x = 0;
+        int y = 0;
+        CursorShape shape = null;
+        if (source.locatePointer(location)) {
+            // Положение в координатах кадра, который видит помощник
+            Dimension size = source.getSize();
+            x = (int) ((long) location.x * width / size.width);
+            y = (int) ((long) location.y * height / size.height);
+            shape = source.getPointerShape();
+        }
+        int shapeId = shape != null ? shape.getId() : Protocol.CURSOR_HIDDEN;
+
+        for (Viewer viewer : viewers) {
+            if (viewer.x == x && viewer.y == y && viewer.shapeId == shapeId) continue;
+            ViewerSession session = viewer.session;
+            if (!session.isOpen() || session.hasQueuedMessages()) continue;
+
+            try {
+                if (shape != null && viewer.shapes.add(shapeId)) {
+                    shape.write(encoder);
+                    metrics.cursorShapes.incrementAndGet();
+                }
+                encoder.cursor(x, y, shapeId);
+                session.send(encoder);
+                metrics.cursorUpdates.incrementAndGet();
+                viewer.x = x;
+                viewer.y = y;
+                viewer.shapeId = shapeId;
+            } catch (IOException e) {
+                System.out.println("Сессия " + session + ": ошибка отправки указателя: " + e.getMessage());
+                encoder.clear();
+                session.close();
+            }
+        }
+    }
+}
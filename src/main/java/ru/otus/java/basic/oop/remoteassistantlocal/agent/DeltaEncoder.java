@@ -0,0 +1,153 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CopyRect;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.List;
+import java.util.zip.Deflater;
+
+/**
+ * Межкадровое сжатие без потерь для одной сессии (Protocol.TRANSPORT_DELTA).
+ * Агент хранит копию того, что сейчас видит помощник, и передает изменившиеся области
+ * как XOR с ней: неизменные пиксели дают нули, которые Deflate сжимает почти в ничто.
+ * Поток Deflate не сбрасывается между кадрами, поэтому его словарь переходит от кадра к кадру.
+ *
+ * Поток требует, чтобы помощник получил каждый закодированный кадр. Если кадр не ушел,
+ * вызывается reset(), и следующим будет ключевой кадр на весь экран.
+ *
+ * Используется только потоком кодирования трансляции.
+ */
+class DeltaEncoder {
+    private final int width;
+    private final int height;
+    // Состояние экрана помощника, RGB
+    private final int[] reference;
+    private final Deflater deflater;
+    private byte[] rows = new byte[64 * 1024];
+    private boolean keyPending = true;
+
+    /**
+     * @param level уровень сжатия Deflate (1 - быстрее, 9 - меньше)
+     */
+    DeltaEncoder(int width, int height, int level) {
+        this.width = width;
+        this.height = height;
+        this.reference = new int[width * height];
+        this.deflater = new Deflater(level, true);
+    }
+
+    /**
+     * Следующий кадр будет ключевым (новый поток, весь экран)
+     */
+    void reset() {
+        keyPending = true;
+    }
+
+    /**
+     * Кодирование областей кадра (TYPE_INT_RGB размером width x height) в сообщение SCREENSHOT_RESPONSE
+     *
+     * @param copy копирование, после которого у помощника остаются изменившимися только regions, или null
+     * @return байт сжатых данных плиток
+     */
+    int encode(ProtocolEncoder encoder, BufferedImage image, List<Rectangle> regions, CopyRect copy,
+               long captureTime) {
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+
+        int message = encoder.beginMessage(Command.Type.SCREENSHOT_RESPONSE);
+        ByteBuffer buffer = encoder.reserve(Protocol.FRAME_HEADER_SIZE);
+        buffer.putLong(captureTime);
+
+        int total;
+        if (keyPending) {
+            keyPending = false;
+            deflater.reset();
+            buffer.putInt(1);
+            total = encodeTile(encoder, pixels, 0, 0, width, height, Protocol.CODEC_DEFLATE_KEY);
+        } else {
+            buffer.putInt(regions.size() + (copy != null ? 1 : 0));
+            total = 0;
+            if (copy != null) {
+                // Копия экрана помощника сдвигается так же, как его изображение
+                copy.writeTile(encoder);
+                CopyRect.apply(reference, width, 1, copy.sourceX, copy.sourceY, copy.target);
+            }
+            for (Rectangle r : regions) {
+                total += encodeTile(encoder, pixels, r.x, r.y, r.width, r.height, Protocol.CODEC_XOR_DEFLATE);
+            }
+        }
+        encoder.endMessage(message);
+        return total;
+    }
+
+    private int encodeTile(ProtocolEncoder encoder, int[] pixels, int x, int y, int w, int h, byte codec) {
+        ByteBuffer buffer = encoder.reserve(Protocol.TILE_HEADER_SIZE);
+        buffer.putShort((short) x);
+        buffer.putShort((short) y);
+        buffer.putShort((short) w);
+        buffer.putShort((short) h);
+        buffer.put(codec);
+        int sizePosition = buffer.position();
+        buffer.putInt(0);
+        int start = buffer.position();
+
+        // Строки сжимаются порциями, чтобы рабочий буфер не рос до размера области
+        boolean xor = codec == Protocol.CODEC_XOR_DEFLATE;
+        int rowsPerChunk = Math.max(1, rows.length / (w * 3));
+        if (rowsPerChunk == 1 && rows.length < w * 3) {
+            rows = new byte[w * 3];
+        }
+        for (int row = y; row < y + h; row += rowsPerChunk) {
+            int count = Math.min(rowsPerChunk, y + h - row);
+            int length = fillRows(pixels, x, row, w, count, xor);
+            deflater.setInput(rows, 0, length);
+            while (!deflater.needsInput()) {
+                deflate(encoder, Deflater.NO_FLUSH);
+            }
+        }
+        // Плитка заканчивается на границе байта: помощник распакует ее целиком
+        while (deflate(encoder, Deflater.SYNC_FLUSH)) {
+            // выход не поместился в буфер - продолжаем
+        }
+
+        buffer = encoder.reserve(0);
+        int size = buffer.position() - start;
+        buffer.putInt(sizePosition, size);
+        return size;
+    }
+
+    /**
+     * Пиксели строк в BGR (как изображение помощника); XOR с копией помощника, копия обновляется
+     */
+    private int fillRows(int[] pixels, int x, int y, int w, int count, boolean xor) {
+        int n = 0;
+        for (int row = y; row < y + count; row++) {
+            int offset = row * width + x;
+            for (int i = offset; i < offset + w; i++) {
+                int rgb = pixels[i];
+                int value = xor ? rgb ^ reference[i] : rgb;
+                reference[i] = rgb;
+                rows[n++] = (byte) value;
+                rows[n++] = (byte) (value >> 8);
+                rows[n++] = (byte) (value >> 16);
+            }
+        }
+        return n;
+    }
+
+    /**
+     * Сжатие в буфер сообщения
+     *
+     * @return true, если выход заполнил все свободное место и может быть продолжен
+     */
+    private boolean deflate(ProtocolEncoder encoder, int flush) {
+        ByteBuffer buffer = encoder.reserve(16 * 1024);
+        int space = buffer.remaining();
+        return deflater.deflate(buffer, flush) == space;
+    }
+}
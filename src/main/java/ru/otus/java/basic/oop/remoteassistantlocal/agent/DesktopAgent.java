@@ -1,137 +1,305 @@
 package ru.otus.java.basic.oop.remoteassistantlocal.agent;
 // DesktopAgent.java
-import ru.otus.java.basic.oop.remoteassistantlocal.common.ImageUtils;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
 import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.RelayAddress;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.WallClock;
 
 import java.awt.*;
-import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.InetAddress;
-import java.net.ServerSocket;
-import java.net.Socket;
 
 public class DesktopAgent {
-    private ServerSocket serverSocket;
-    private Socket clientSocket;
-    private Robot robot;
-    private boolean running = false;
-    private int quality = 70; // качество JPEG в процентах
-
-    public DesktopAgent() throws AWTException {
-        this.robot = new Robot();
+    // ФИКСИРОВАННЫЙ размер 1920x1080
+    private static final int FIXED_WIDTH = 1920;
+    private static final int FIXED_HEIGHT = 1080;
+
+    private SessionServer server;
+    // Подключения к помощникам через посредника; null, если посредник не задан
+    private RelayDialer relayDialer;
+    // Ввод помощника; null, если дисплея нет (synthetic/replay на сервере сборки)
+    private final Robot robot;
+    private final FrameSource source;
+    private final AgentConfig config;
+    private final ParallelTileEncoder tileEncoder;
+    private final ScreenBroadcaster broadcaster;
+    // Указатель мыши отдельно от кадров; null, если выключен (agent.cursorHz=0)
+    private final CursorTracker cursor;
+    private final AgentMetrics metrics = new AgentMetrics();
+    private final AgentControl control;
+
+    public DesktopAgent() throws AWTException, IOException {
+        this(new AgentConfig());
+    }
+
+    /**
+     * Агент с источником кадров из config.getSource(). Без дисплея команды ввода
+     * помощника принимаются, но не выполняются.
+     */
+    public DesktopAgent(AgentConfig config) throws AWTException, IOException {
+        this(config, FrameSource.open(config.getSource()),
+                GraphicsEnvironment.isHeadless() ? null : new Robot());
+    }
+
+    /**
+     * @param robot исполнитель ввода помощника или null, чтобы ввод только учитывался в метриках
+     */
+    public DesktopAgent(AgentConfig config, FrameSource source, Robot robot) {
+        this.robot = robot;
+        this.source = source;
+        this.config = config;
+        this.tileEncoder = new ParallelTileEncoder(config.getEncoderThreads(), Protocol.TILE_SIZE,
+                config.getTileCodec() == AgentConfig.TileCodec.AUTO);
+        this.broadcaster = new ScreenBroadcaster(source, FIXED_WIDTH, FIXED_HEIGHT,
+                tileEncoder, config, metrics);
+        this.cursor = config.getCursorHz() > 0
+                ? new CursorTracker(source, FIXED_WIDTH, FIXED_HEIGHT, config.getCursorHz(), metrics) : null;
+        this.control = new AgentControl(broadcaster, metrics);
     }
 
     public void start(int port) throws IOException {
-        serverSocket = new ServerSocket(port);
+        server = new SessionServer(port, new SessionServer.Listener() {
+            @Override
+            public MessageHandler onOpen(ViewerSession session) throws IOException {
+                session.send(new ProtocolEncoder(Protocol.HANDSHAKE_SIZE).handshake());
+                // Новый помощник получит весь экран со следующим кадром, а указатель - со следующим опросом
+                CommandHandler commands = new CommandHandler(broadcaster.subscribe(session));
+                if (cursor != null) cursor.add(session);
+                return commands;
+            }
+
+            @Override
+            public void onClose(ViewerSession session) {
+                CommandHandler commands = (CommandHandler) session.getHandler();
+                if (commands != null) {
+                    broadcaster.unsubscribe(commands.subscriber);
+                }
+                if (cursor != null) cursor.remove(session);
+            }
+        }, metrics);
+
+        // Метрики и настройки доступны через JMX (jconsole, VisualVM)
+        control.register();
+
+        if (config.getRelay() != null) {
+            RelayAddress relay = RelayAddress.of(config.getRelayId(), config.getRelay());
+            relayDialer = new RelayDialer(relay, server);
+            System.out.println("Посредник: " + relay.getHost() + ":" + relay.getPort()
+                    + ", номер сессии для помощника: " + relay.getSessionId() + " (помощник вводит " + relay + ")");
+        }
+
         System.out.println("Агент запущен на порту " + port);
         System.out.println("IP адрес: " + getLocalIP());
-        System.out.println("Ожидание подключения помощника...");
+        System.out.println("Потоков кодирования: " + tileEncoder.getParallelism());
+        System.out.println("Работа в фиксированном разрешении: " + FIXED_WIDTH + "x" + FIXED_HEIGHT);
+        System.out.println("Источник кадров: " + config.getSource()
+                + (robot == null ? " (нет дисплея, ввод помощника не выполняется)" : ""));
+        System.out.println("Указатель: " + (cursor != null
+                ? "отдельным каналом, опрос " + config.getCursorHz() + " раз/с" : "не передается"));
+        System.out.println("Ожидание подключения помощников...");
+
+        // Захват и кодирование общие для всех помощников
+        broadcaster.start();
+        if (cursor != null) cursor.start();
+        if (relayDialer != null) relayDialer.start();
 
-        running = true;
+        // Основной цикл: подключения и команды всех помощников
+        server.run();
+    }
 
-        // Основной цикл ожидания подключений
-        while (running) {
-            clientSocket = serverSocket.accept();
-            System.out.println("Подключился помощник: " +
-                    clientSocket.getInetAddress().getHostAddress());
+    /**
+     * Текстовый отчет по метрикам конвейера и команд
+     */
+    public String dumpMetrics() {
+        return control.dump();
+    }
 
-            handleClient(clientSocket);
+    /**
+     * Выполнение команд помощника.
+     * Несколько движений мыши, пришедших одним чтением из сокета, сводятся
+     * к одному robot.mouseMove в последнюю позицию; остальные команды
+     * выполняются по порядку после отложенного движения.
+     */
+    private class CommandHandler implements MessageHandler {
+        private final ScreenBroadcaster.Subscriber subscriber;
+        private final ViewerSession session;
+        private final ProtocolEncoder replies = new ProtocolEncoder(64);
+        private boolean movePending;
+        private int pendingX;
+        private int pendingY;
 
-            clientSocket.close();
-            System.out.println("Соединение закрыто, ожидание нового подключения...");
+        CommandHandler(ScreenBroadcaster.Subscriber subscriber) {
+            this.subscriber = subscriber;
+            this.session = subscriber.getSession();
+        }
+
+        /**
+         * Выполнение отложенного движения (после разбора очередной порции данных)
+         */
+        @Override
+        public void onBatchComplete() {
+            flushPendingMove();
+        }
+
+        private void flushPendingMove() {
+            if (movePending) {
+                movePending = false;
+                if (robot != null) robot.mouseMove(pendingX, pendingY);
+                executed();
+            }
+        }
+
+        /**
+         * Команда выполнена: задержка от чтения из сокета
+         */
+        private void executed() {
+            metrics.command.recordSince(session.getReadStartNanos());
         }
-    }
 
-    private void handleClient(Socket socket) {
-        try (
-            DataInputStream in = new DataInputStream(socket.getInputStream());
-            DataOutputStream out = new DataOutputStream(socket.getOutputStream())
-        ) {
-            // ФИКСИРОВАННЫЙ размер 1920x1080
-            final int FIXED_WIDTH = 1920;
-            final int FIXED_HEIGHT = 1080;
-
-            System.out.println("Работа в фиксированном разрешении: " + FIXED_WIDTH + "x" + FIXED_HEIGHT);
-
-            Thread screenshotThread = new Thread(() -> {
-                try {
-                    while (!socket.isClosed()) {
-                        // Создаем скриншот
-                        Rectangle screenRect = new Rectangle(Toolkit.getDefaultToolkit().getScreenSize());
-                        BufferedImage screenshot = robot.createScreenCapture(screenRect);
-
-                        BufferedImage scaled = new BufferedImage(FIXED_WIDTH, FIXED_HEIGHT, BufferedImage.TYPE_INT_RGB);
-                        Graphics2D g2d = scaled.createGraphics();
-                        g2d.drawImage(screenshot, 0, 0, FIXED_WIDTH, FIXED_HEIGHT, null);
-                        g2d.dispose();
-
-                        // Конвертируем в байты
-                        byte[] imageData = ImageUtils.imageToBytes(scaled, quality / 100f);
-
-                        // Отправляем размер и данные
-                        out.writeInt(imageData.length);
-                        out.write(imageData);
-                        out.flush();
-
-                        Thread.sleep(100); // 10 FPS
-                    }
-                } catch (Exception e) {
-                    System.out.println("Ошибка отправки скриншота: " + e.getMessage());
+        @Override
+        public void onMouse(Command.Type type, int x, int y, int arg1, int arg2) {
+            if (type == Command.Type.MOUSE_MOVE || type == Command.Type.MOUSE_DRAG) {
+                movePending = true;
+                pendingX = x;
+                pendingY = y;
+                return;
+            }
+
+            flushPendingMove();
+            if (robot == null) {
+                executed();
+                return;
+            }
+            try {
+                switch (type) {
+
+                    case MOUSE_PRESS:
+                        robot.mouseMove(x, y);
+                        robot.mousePress(arg1);
+                        break;
+
+                    case MOUSE_RELEASE:
+                        robot.mouseMove(x, y);
+                        robot.mouseRelease(arg1);
+                        break;
+
+                    case MOUSE_CLICK:
+                        robot.mouseMove(x, y);
+                        for (int i = 0; i < Math.max(1, arg2); i++) {
+                            robot.mousePress(arg1);
+                            robot.mouseRelease(arg1);
+                        }
+                        break;
+
+                    case MOUSE_WHEEL:
+                        robot.mouseMove(x, y);
+                        robot.mouseWheel(arg1);
+                        break;
                 }
-            });
-            screenshotThread.start();
+                executed();
+            } catch (IllegalArgumentException e) {
+                System.out.println("Ошибка обработки команды: " + type + " " + e.getMessage());
+            }
+        }
 
-            // Поток обработки команд
-            while (!socket.isClosed()) {
-                String command = in.readUTF();
-                processCommand(command);
+        @Override
+        public void onKey(Command.Type type, int keyCode) {
+            flushPendingMove();
+            if (robot == null) {
+                executed();
+                return;
             }
+            try {
+                switch (type) {
+                    case KEY_PRESS:
+                        robot.keyPress(keyCode);
+                        break;
 
-            screenshotThread.interrupt();
+                    case KEY_RELEASE:
+                        robot.keyRelease(keyCode);
+                        break;
 
-        } catch (IOException e) {
-            System.out.println("Клиент отключился: " + e.getMessage());
+                    case KEY_TYPED:
+                        robot.keyPress(keyCode);
+                        robot.keyRelease(keyCode);
+                        break;
+                }
+                executed();
+            } catch (IllegalArgumentException e) {
+                System.out.println("Ошибка обработки команды: " + type + " " + e.getMessage());
+            }
         }
-    }
 
-    private void processCommand(String command) {
-        try {
-            String[] parts = command.split(":");
-            String cmd = parts[0];
-            String[] params = parts.length > 1 ? parts[1].split(",") : new String[0];
-
-            switch (cmd) {
-                case Protocol.CMD_MOUSE_MOVE:
-                    int x = Integer.parseInt(params[0]);
-                    int y = Integer.parseInt(params[1]);
-                    robot.mouseMove(x, y);
+        @Override
+        public void onValue(Command.Type type, int value) {
+            switch (type) {
+                case SET_QUALITY:
+                    // Помощник получит весь экран в новом качестве
+                    int quality = subscriber.setQuality(value);
+                    System.out.println("Сессия " + session + ": качество установлено: " + quality + "%");
                     break;
 
-                case Protocol.CMD_MOUSE_CLICK:
-                    int btn = Integer.parseInt(params[0]);
-                    robot.mousePress(btn);
-                    robot.mouseRelease(btn);
+                case SET_ADAPTIVE:
+                    // Помощник узнает, включена ли подстройка, и с каких значений она начинает
+                    int minScale = subscriber.setAdaptive(value);
+                    System.out.println("Сессия " + session + ": подстройка под канал " + (minScale != Protocol.ADAPTIVE_OFF
+                            ? "включена, масштаб не меньше " + minScale + "%" : "выключена"));
+                    replies.value(Command.Type.SET_ADAPTIVE, minScale);
+                    reply(subscriber.writeState(replies));
                     break;
 
-                case Protocol.CMD_KEY_PRESS:
-                    int keyCode = Integer.parseInt(params[0]);
-                    robot.keyPress(keyCode);
-                    robot.keyRelease(keyCode);
+                case SET_FPS:
+                    int fps = subscriber.setFps(value);
+                    System.out.println("Сессия " + session + ": частота кадров установлена: " + fps);
                     break;
 
-                case "SET_QUALITY":
-                    quality = Integer.parseInt(params[0]);
-                    System.out.println("Качество установлено: " + quality + "%");
+                case SET_TRANSPORT:
+                    // Помощник узнает, согласился ли агент на запрошенный режим
+                    int transport = subscriber.setTransport(value);
+                    System.out.println("Сессия " + session + ": режим передачи: "
+                            + (transport == Protocol.TRANSPORT_DELTA ? "без потерь (дельта)" : "плитки"));
+                    reply(replies.value(Command.Type.SET_TRANSPORT, transport));
+                    break;
+            }
+            executed();
+        }
+
+        /**
+         * Ответ на измерение задержки. Время приема - начало чтения из сокета,
+         * чтобы помощник не считал сетевой задержкой разбор и выполнение команд
+         */
+        @Override
+        public void onPing(int seq, long originTime) {
+            long receiveTime = WallClock.fromNanos(session.getReadStartNanos());
+            reply(replies.pong(seq, originTime, receiveTime, WallClock.micros()));
+        }
+
+        private void reply(ProtocolEncoder message) {
+            try {
+                session.send(message);
+            } catch (IOException e) {
+                System.out.println("Сессия " + session + ": ошибка отправки ответа: " + e.getMessage());
+                session.close();
+            }
+        }
+
+        @Override
+        public void onSignal(Command.Type type) {
+            flushPendingMove();
+            switch (type) {
+                case SCREENSHOT_REQUEST:
+                    subscriber.requestRefresh();
+                    executed();
                     break;
 
-                case Protocol.CMD_DISCONNECT:
-                    System.out.println("Получена команда отключения");
-                    running = false;
+                case DISCONNECT:
+                    // Отключается только этот помощник, агент продолжает работу
+                    System.out.println("Сессия " + session + ": получена команда отключения");
+                    session.close();
                     break;
             }
-        } catch (Exception e) {
-            System.out.println("Ошибка обработки команды: " + command);
-            e.printStackTrace();
         }
     }
 
@@ -144,12 +312,11 @@ public class DesktopAgent {
     }
 
     public void stop() {
-        running = false;
-        try {
-            if (serverSocket != null) serverSocket.close();
-            if (clientSocket != null) clientSocket.close();
-        } catch (IOException e) {
-            e.printStackTrace();
-        }
+        if (relayDialer != null) relayDialer.close();
+        if (server != null) server.close();
+        if (cursor != null) cursor.close();
+        broadcaster.close();
+        tileEncoder.close();
+        source.close();
     }
 }
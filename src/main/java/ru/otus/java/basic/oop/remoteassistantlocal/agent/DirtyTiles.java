@@ -0,0 +1,114 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.awt.*;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * Множество изменившихся плиток кадра.
+ * Нужно, чтобы накапливать изменения, которые помощник еще не получил,
+ * и сравнивать, каким помощникам нужен один и тот же набор областей.
+ */
+public class DirtyTiles {
+    private final int width;
+    private final int height;
+    private final int tileSize;
+    private final int columns;
+    private final int rows;
+    private final BitSet tiles;
+
+    public DirtyTiles(int width, int height, int tileSize) {
+        this.width = width;
+        this.height = height;
+        this.tileSize = tileSize;
+        this.columns = (width + tileSize - 1) / tileSize;
+        this.rows = (height + tileSize - 1) / tileSize;
+        this.tiles = new BitSet(columns * rows);
+    }
+
+    /**
+     * Отметка всех плиток, которые задевает область
+     */
+    public void add(Rectangle region) {
+        int firstColumn = Math.max(0, region.x / tileSize);
+        int lastColumn = Math.min(columns - 1, (region.x + region.width - 1) / tileSize);
+        int firstRow = Math.max(0, region.y / tileSize);
+        int lastRow = Math.min(rows - 1, (region.y + region.height - 1) / tileSize);
+
+        for (int row = firstRow; row <= lastRow; row++) {
+            tiles.set(row * columns + firstColumn, row * columns + lastColumn + 1);
+        }
+    }
+
+    public void addAll(List<Rectangle> regions) {
+        for (Rectangle region : regions) {
+            add(region);
+        }
+    }
+
+    public void add(DirtyTiles other) {
+        tiles.or(other.tiles);
+    }
+
+    public void addAll() {
+        tiles.set(0, columns * rows);
+    }
+
+    public void set(DirtyTiles other) {
+        tiles.clear();
+        tiles.or(other.tiles);
+    }
+
+    public void clear() {
+        tiles.clear();
+    }
+
+    public boolean isEmpty() {
+        return tiles.isEmpty();
+    }
+
+    /**
+     * Области для кодирования: соседние плитки строки объединяются,
+     * а при большой доле изменений возвращается весь кадр
+     */
+    public List<Rectangle> toRegions() {
+        List<Rectangle> regions = new ArrayList<>();
+        if (tiles.cardinality() > columns * rows * TileChangeDetector.FULL_FRAME_RATIO) {
+            regions.add(new Rectangle(0, 0, width, height));
+            return regions;
+        }
+
+        for (int row = 0; row < rows; row++) {
+            int y = row * tileSize;
+            int h = Math.min(tileSize, height - y);
+            int column = tiles.nextSetBit(row * columns) - row * columns;
+
+            while (column >= 0 && column < columns) {
+                int end = tiles.nextClearBit(row * columns + column) - row * columns;
+                end = Math.min(end, columns);
+
+                int x = column * tileSize;
+                regions.add(new Rectangle(x, y, Math.min(end * tileSize, width) - x, h));
+
+                int next = tiles.nextSetBit(row * columns + end);
+                column = next < 0 ? -1 : next - row * columns;
+            }
+        }
+        return regions;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) return true;
+        if (!(o instanceof DirtyTiles)) return false;
+        DirtyTiles other = (DirtyTiles) o;
+        return width == other.width && height == other.height
+                && tileSize == other.tileSize && tiles.equals(other.tiles);
+    }
+
+    @Override
+    public int hashCode() {
+        return tiles.hashCode();
+    }
+}
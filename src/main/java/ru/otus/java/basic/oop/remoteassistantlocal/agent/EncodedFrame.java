@@ -0,0 +1,65 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.nio.ByteBuffer;
+import java.util.Queue;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Готовое сообщение с кадром (SCREENSHOT_RESPONSE), общее для нескольких сессий.
+ * Кадр кодируется один раз, а каждая сессия отправляет его из своего представления
+ * буфера (duplicate), не копируя данные. Буфер считает ссылки: когда последняя
+ * сессия дописала кадр (или закрылась), кадр возвращается в пул и переиспользуется.
+ */
+public class EncodedFrame {
+    private final ProtocolEncoder encoder = new ProtocolEncoder(512 * 1024);
+    private final AtomicInteger references = new AtomicInteger();
+    private final Queue<EncodedFrame> pool;
+
+    EncodedFrame(Queue<EncodedFrame> pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Кодировщик для сборки сообщения; после сборки кадр только читается
+     */
+    ProtocolEncoder encoder() {
+        return encoder;
+    }
+
+    /**
+     * Начало использования: единственная ссылка у того, кто собирает кадр
+     */
+    EncodedFrame open() {
+        encoder.clear();
+        references.set(1);
+        return this;
+    }
+
+    /**
+     * Независимое представление сообщения для отправки (от начала до конца)
+     */
+    public ByteBuffer view() {
+        return encoder.buffer().duplicate().flip();
+    }
+
+    public int size() {
+        return encoder.buffer().position();
+    }
+
+    public void retain() {
+        if (references.getAndIncrement() <= 0) {
+            throw new IllegalStateException("Кадр уже возвращен в пул");
+        }
+    }
+
+    public void release() {
+        int left = references.decrementAndGet();
+        if (left == 0) {
+            pool.offer(this);
+        } else if (left < 0) {
+            throw new IllegalStateException("Лишний release кадра");
+        }
+    }
+}
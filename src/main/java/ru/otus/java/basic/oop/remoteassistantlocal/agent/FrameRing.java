@@ -0,0 +1,159 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+
+/**
+ * Ограниченное кольцо заранее созданных слотов между двумя стадиями конвейера
+ * (один производитель, один потребитель). Слоты переиспользуются по кругу:
+ * производитель берет свободный слот (claim), заполняет и публикует (publish),
+ * потребитель забирает самый старый опубликованный (take) и возвращает (release).
+ *
+ * Что делать, если свободных слотов нет, определяет DropPolicy.
+ */
+public class FrameRing<T> {
+
+    /**
+     * Поведение производителя при заполненном кольце
+     */
+    public enum DropPolicy {
+        /** Ждать, пока потребитель освободит слот (кадры не теряются, но захват тормозится) */
+        BLOCK,
+        /** Выбросить новый кадр */
+        DROP_NEWEST,
+        /** Переписать самый старый еще не взятый кадр: потребитель всегда получает свежий */
+        DROP_OLDEST
+    }
+
+    private final Object[] slots;
+    private final DropPolicy policy;
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Condition slotFreed = lock.newCondition();
+    private final Condition slotPublished = lock.newCondition();
+    private final AtomicLong dropped = new AtomicLong();
+
+    // Свободные слоты и очередь опубликованных - два кольца индексов над одним массивом
+    private final int[] free;
+    private int freeHead;
+    private int freeCount;
+    private final int[] ready;
+    private int readyHead;
+    private int readyCount;
+
+    public FrameRing(int capacity, DropPolicy policy, Supplier<T> factory) {
+        if (capacity < 2) {
+            throw new IllegalArgumentException("В кольце должно быть хотя бы 2 слота: " + capacity);
+        }
+        this.slots = new Object[capacity];
+        this.policy = policy;
+        this.free = new int[capacity];
+        this.ready = new int[capacity];
+        for (int i = 0; i < capacity; i++) {
+            slots[i] = factory.get();
+            free[i] = i;
+        }
+        freeCount = capacity;
+    }
+
+    /**
+     * Слот для заполнения (производитель)
+     *
+     * @return индекс слота или -1, если кадр нужно выбросить (DROP_NEWEST)
+     */
+    public int claim() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (freeCount == 0) {
+                switch (policy) {
+                    case DROP_NEWEST:
+                        dropped.incrementAndGet();
+                        return -1;
+
+                    case DROP_OLDEST:
+                        if (readyCount > 0) {
+                            dropped.incrementAndGet();
+                            int oldest = ready[readyHead];
+                            readyHead = (readyHead + 1) % ready.length;
+                            readyCount--;
+                            return oldest;
+                        }
+                        slotFreed.await();
+                        break;
+
+                    default:
+                        slotFreed.await();
+                }
+            }
+            int slot = free[freeHead];
+            freeHead = (freeHead + 1) % free.length;
+            freeCount--;
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Передача заполненного слота следующей стадии (производитель)
+     */
+    public void publish(int slot) {
+        lock.lock();
+        try {
+            ready[(readyHead + readyCount) % ready.length] = slot;
+            readyCount++;
+            slotPublished.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Самый старый опубликованный слот, с ожиданием (потребитель)
+     */
+    public int take() throws InterruptedException {
+        lock.lockInterruptibly();
+        try {
+            while (readyCount == 0) {
+                slotPublished.await();
+            }
+            int slot = ready[readyHead];
+            readyHead = (readyHead + 1) % ready.length;
+            readyCount--;
+            return slot;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    /**
+     * Возврат обработанного слота (потребитель)
+     */
+    public void release(int slot) {
+        lock.lock();
+        try {
+            free[(freeHead + freeCount) % free.length] = slot;
+            freeCount++;
+            slotFreed.signal();
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    public T get(int slot) {
+        return (T) slots[slot];
+    }
+
+    public DropPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Сколько кадров выброшено из-за заполненного кольца
+     */
+    public long getDroppedFrames() {
+        return dropped.get();
+    }
+}
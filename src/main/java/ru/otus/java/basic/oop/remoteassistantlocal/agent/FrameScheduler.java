@@ -0,0 +1,117 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Планировщик кадров с заданной частотой.
+ * Кадры привязаны к абсолютным моментам времени, поэтому время захвата и
+ * кодирования вычитается из паузы автоматически. Если цикл отстал больше чем
+ * на кадр, пропущенные моменты не наверстываются пачкой - расписание
+ * сдвигается на текущее время, и задержка не накапливается.
+ *
+ * Фактическая частота считается по кадрам, которые конвейер довел до конца (onFrameProduced()),
+ * а не по моментам расписания: момент, в который ничего не захвачено (все помощники
+ * не успевают принимать) или кадр выброшен конвейером, частоту не увеличивает.
+ *
+ * awaitNextFrame() вызывается из одного потока захвата, onFrameProduced() - из одного
+ * потока кодирования, setTargetFps() и геттеры - из любого потока.
+ */
+public class FrameScheduler {
+    public static final int MIN_FPS = 1;
+    public static final int MAX_FPS = 60;
+
+    private static final long REPORT_INTERVAL_NANOS = TimeUnit.SECONDS.toNanos(1);
+
+    private volatile int targetFps;
+    private volatile boolean rescheduled;
+    private long nextFrameNanos;
+
+    private long windowStart;
+    private int framesInWindow;
+    private volatile long lastFrameNanos;
+    private volatile double achievedFps;
+    private volatile long skippedFrames;
+
+    public FrameScheduler(int targetFps) {
+        setTargetFps(targetFps);
+    }
+
+    /**
+     * Изменение частоты кадров, действует со следующего кадра
+     *
+     * @return фактически установленное значение (в пределах MIN_FPS..MAX_FPS)
+     */
+    public int setTargetFps(int fps) {
+        targetFps = Math.max(MIN_FPS, Math.min(MAX_FPS, fps));
+        rescheduled = true;
+        return targetFps;
+    }
+
+    public int getTargetFps() {
+        return targetFps;
+    }
+
+    /**
+     * Ожидание момента следующего кадра
+     */
+    public void awaitNextFrame() throws InterruptedException {
+        long period = TimeUnit.SECONDS.toNanos(1) / targetFps;
+        long now = System.nanoTime();
+
+        if (rescheduled || nextFrameNanos == 0) {
+            rescheduled = false;
+            nextFrameNanos = now;
+        }
+
+        long delay = nextFrameNanos - now;
+        if (delay > 0) {
+            TimeUnit.NANOSECONDS.sleep(delay);
+        } else if (-delay >= period) {
+            // Отстали: пропускаем упущенные кадры вместо того, чтобы догонять
+            skippedFrames += -delay / period;
+            nextFrameNanos = now;
+        }
+        nextFrameNanos += period;
+    }
+
+    /**
+     * Кадр прошел конвейер до конца (поток кодирования)
+     */
+    public void onFrameProduced() {
+        countFrame(System.nanoTime());
+    }
+
+    /**
+     * Фактическая частота кадров за последнюю секунду; 0, если кадров не было дольше двух секунд
+     */
+    public double getAchievedFps() {
+        // Без кадров окно не закрывается, и прошлое значение иначе висело бы бесконечно
+        if (System.nanoTime() - lastFrameNanos > 2 * REPORT_INTERVAL_NANOS) return 0;
+        return achievedFps;
+    }
+
+    /**
+     * Сколько кадров пропущено из-за того, что захват и кодирование не успевали
+     */
+    public long getSkippedFrames() {
+        return skippedFrames;
+    }
+
+    private void countFrame(long now) {
+        if (windowStart == 0 || now - lastFrameNanos > 2 * REPORT_INTERVAL_NANOS) {
+            // Начало или перерыв в кадрах: перерыв не растягивает новое окно
+            windowStart = now;
+            framesInWindow = 0;
+        }
+        lastFrameNanos = now;
+        framesInWindow++;
+
+        long elapsed = now - windowStart;
+        if (elapsed >= REPORT_INTERVAL_NANOS) {
+            // Первый кадр окна отсчитывает начало, поэтому интервалов на один меньше
+            achievedFps = (framesInWindow - 1) * (double) TimeUnit.SECONDS.toNanos(1) / elapsed;
+            windowStart = now;
+            framesInWindow = 1;
+        }
+    }
+}
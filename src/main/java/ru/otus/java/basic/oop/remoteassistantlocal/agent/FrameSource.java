@@ -0,0 +1,83 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Источник снимков экрана для трансляции.
+ * Снимки могут быть любого размера - ScreenBroadcaster масштабирует их сам.
+ * Возвращенное изображение после capture() не должно меняться источником:
+ * стадия масштабирования читает его уже параллельно со следующим захватом.
+ *
+ * Выбор источника агента - системное свойство agent.source (см. open()).
+ */
+public interface FrameSource extends AutoCloseable {
+
+    /**
+     * Очередной снимок экрана (поток захвата)
+     */
+    BufferedImage capture();
+
+    /**
+     * Размер снимков
+     */
+    Dimension getSize();
+
+    /**
+     * Положение указателя мыши в координатах снимка. Вызывается потоком указателя
+     * независимо от capture().
+     *
+     * @return false, если источник не знает указателя или указатель вне снимка
+     */
+    default boolean locatePointer(Point location) {
+        return false;
+    }
+
+    /**
+     * Текущая форма указателя (если locatePointer вернул true)
+     */
+    default CursorShape getPointerShape() {
+        return CursorShape.ARROW;
+    }
+
+    @Override
+    default void close() {
+    }
+
+    /**
+     * Источник по описанию:
+     *   robot                 - настоящий экран (по умолчанию)
+     *   synthetic[:ШxВ]       - детерминированный сценарий работы за компьютером, без дисплея
+     *   replay:путь           - повтор снимков из каталога или файла изображения
+     */
+    static FrameSource open(String spec) throws AWTException, IOException {
+        String[] parts = spec.split(":", 2);
+        switch (parts[0].trim().toLowerCase()) {
+            case "robot":
+                return new RobotFrameSource();
+
+            case "synthetic":
+                if (parts.length == 1) {
+                    return new SyntheticFrameSource(1920, 1080);
+                }
+                String[] size = parts[1].toLowerCase().split("x");
+                if (size.length != 2) {
+                    throw new IllegalArgumentException("Размер синтетического экрана задается как ШxВ: " + parts[1]);
+                }
+                return new SyntheticFrameSource(Integer.parseInt(size[0].trim()), Integer.parseInt(size[1].trim()));
+
+            case "replay":
+                if (parts.length == 1 || parts[1].isEmpty()) {
+                    throw new IllegalArgumentException("Для replay нужен путь: replay:/путь/к/кадрам");
+                }
+                return new ReplayFrameSource(new File(parts[1]));
+
+            default:
+                throw new IllegalArgumentException("Неизвестный источник кадров: " + spec);
+        }
+    }
+}
@@ -0,0 +1,139 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Потокобезопасная гистограмма без блокировок для задержек и размеров.
+ * Значения раскладываются по логарифмическим корзинам (4 корзины на каждую
+ * степень двойки, точность около 19%), поэтому запись - это несколько
+ * атомарных инкрементов без выделения памяти, а процентили считаются по корзинам.
+ */
+public class Histogram implements HistogramMBean {
+    private static final int SUB_BUCKET_BITS = 2;
+    private static final int SUB_BUCKETS = 1 << SUB_BUCKET_BITS;
+    private static final int BUCKETS = 64 * SUB_BUCKETS;
+
+    private final String name;
+    private final String unit;
+    private final double scale;
+    private final AtomicLongArray buckets = new AtomicLongArray(BUCKETS);
+    private final AtomicLong count = new AtomicLong();
+    private final AtomicLong sum = new AtomicLong();
+    private final AtomicLong max = new AtomicLong();
+
+    /**
+     * @param scale во сколько раз записываемые значения меньше единицы отчета
+     *              (например, 1_000_000 для наносекунд и отчета в мс)
+     */
+    public Histogram(String name, String unit, double scale) {
+        this.name = name;
+        this.unit = unit;
+        this.scale = scale;
+    }
+
+    /**
+     * Гистограмма времени: запись в наносекундах, отчет в миллисекундах
+     */
+    public static Histogram latency(String name) {
+        return new Histogram(name, "мс", 1_000_000);
+    }
+
+    public void record(long value) {
+        if (value < 0) value = 0;
+        buckets.incrementAndGet(bucketOf(value));
+        count.incrementAndGet();
+        sum.addAndGet(value);
+        max.accumulateAndGet(value, Math::max);
+    }
+
+    /**
+     * Запись времени, прошедшего с startNanos
+     */
+    public void recordSince(long startNanos) {
+        record(System.nanoTime() - startNanos);
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    @Override
+    public String getUnit() {
+        return unit;
+    }
+
+    @Override
+    public long getCount() {
+        return count.get();
+    }
+
+    @Override
+    public double getMean() {
+        long n = count.get();
+        return n == 0 ? 0 : sum.get() / (double) n / scale;
+    }
+
+    @Override
+    public double getP50() {
+        return percentile(0.50);
+    }
+
+    @Override
+    public double getP90() {
+        return percentile(0.90);
+    }
+
+    @Override
+    public double getP99() {
+        return percentile(0.99);
+    }
+
+    @Override
+    public double getMax() {
+        return max.get() / scale;
+    }
+
+    /**
+     * Верхняя граница корзины, в которую попадает доля p значений
+     */
+    public double percentile(double p) {
+        long n = count.get();
+        if (n == 0) return 0;
+
+        long rank = (long) Math.ceil(p * n);
+        long seen = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            seen += buckets.get(i);
+            if (seen >= rank) {
+                return Math.min(upperBound(i), max.get()) / scale;
+            }
+        }
+        return max.get() / scale;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("%-10s n=%-8d среднее=%.2f p50=%.2f p90=%.2f p99=%.2f макс=%.2f %s",
+                name, getCount(), getMean(), getP50(), getP90(), getP99(), getMax(), unit);
+    }
+
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int msb = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (msb - SUB_BUCKET_BITS)) & (SUB_BUCKETS - 1);
+        return msb * SUB_BUCKETS + sub;
+    }
+
+    private static long upperBound(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int msb = bucket / SUB_BUCKETS;
+        int sub = bucket % SUB_BUCKETS;
+        long width = 1L << (msb - SUB_BUCKET_BITS);
+        return ((SUB_BUCKETS + sub) * width) + width - 1;
+    }
+}
@@ -0,0 +1,20 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+/**
+ * Гистограмма метрики агента в JMX (значения в единицах getUnit())
+ */
+public interface HistogramMBean {
+    String getUnit();
+
+    long getCount();
+
+    double getMean();
+
+    double getP50();
+
+    double getP90();
+
+    double getP99();
+
+    double getMax();
+}
@@ -0,0 +1,248 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.JpegEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.PaletteCodec;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.awt.image.SinglePixelPackedSampleModel;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinWorkerThread;
+import java.util.concurrent.RecursiveAction;
+
+/**
+ * Параллельное кодирование областей кадра на ограниченном fork/join пуле.
+ * Высокие области (например, весь экран) режутся на горизонтальные полосы,
+ * чтобы их можно было кодировать на нескольких ядрах.
+ *
+ * Способ сжатия выбирается по содержимому: полоса делится на квадраты bandHeight x bandHeight,
+ * и квадраты, где не больше PaletteCodec.MAX_COLORS цветов (текст, интерфейс), сжимаются
+ * без потерь палитрой, а остальные (фото, видео) - JPEG. Соседние квадраты одного вида
+ * кодируются одной плиткой, чтобы не платить за заголовки JPEG на каждый квадрат.
+ * На медленном канале плитки JPEG можно кодировать уменьшенными (scale), палитровые
+ * остаются в полном размере: текст при уменьшении нечитаем, а сжимается и так хорошо.
+ *
+ * Результаты складываются в переиспользуемые слоты, поэтому метод encode
+ * вызывается из одного потока захвата, а результат действителен до следующего вызова.
+ */
+public class ParallelTileEncoder implements AutoCloseable {
+    private final ForkJoinPool pool;
+    private final int bandHeight;
+    private final boolean contentAware;
+    private final List<Rectangle> regions = new ArrayList<>();
+    private final List<Band> bands = new ArrayList<>();
+    private final List<EncodedTile> result = new ArrayList<>();
+
+    public ParallelTileEncoder(int parallelism, int bandHeight) {
+        this(parallelism, bandHeight, true);
+    }
+
+    /**
+     * @param contentAware выбирать сжатие по содержимому; false - все плитки JPEG
+     */
+    public ParallelTileEncoder(int parallelism, int bandHeight, boolean contentAware) {
+        this.bandHeight = bandHeight;
+        this.contentAware = contentAware;
+        this.pool = new ForkJoinPool(parallelism, pool -> {
+            ForkJoinWorkerThread thread = ForkJoinPool.defaultForkJoinWorkerThreadFactory.newThread(pool);
+            thread.setName("TileEncoder-" + thread.getPoolIndex());
+            return thread;
+        }, null, false);
+    }
+
+    /**
+     * Закодированная область кадра
+     */
+    public static class EncodedTile {
+        public final Rectangle region = new Rectangle();
+        private byte codec;
+        private byte[] data = new byte[64 * 1024];
+        private int size;
+
+        /**
+         * Способ сжатия (Protocol.CODEC_*)
+         */
+        public byte getCodec() {
+            return codec;
+        }
+
+        public byte[] getData() {
+            return data;
+        }
+
+        public int getSize() {
+            return size;
+        }
+
+        void set(int x, int y, int width, int height, byte codec, byte[] encoded, int length) {
+            region.setBounds(x, y, width, height);
+            this.codec = codec;
+            if (data.length < length) {
+                data = Arrays.copyOf(data, Math.max(length, data.length * 2));
+            }
+            System.arraycopy(encoded, 0, data, 0, length);
+            size = length;
+        }
+    }
+
+    /**
+     * Плитки одной полосы (их число зависит от содержимого)
+     */
+    private static class Band {
+        final List<EncodedTile> tiles = new ArrayList<>();
+        int count;
+
+        EncodedTile next() {
+            if (count == tiles.size()) {
+                tiles.add(new EncodedTile());
+            }
+            return tiles.get(count++);
+        }
+    }
+
+    /**
+     * Кодирование областей кадра; плитки идут в порядке областей, внутри области - сверху вниз и слева направо
+     */
+    public List<EncodedTile> encode(BufferedImage frame, List<Rectangle> changes, float quality) {
+        return encode(frame, changes, quality, 1);
+    }
+
+    /**
+     * Кодирование с уменьшением плиток JPEG до scale от их размера
+     */
+    public List<EncodedTile> encode(BufferedImage frame, List<Rectangle> changes, float quality, double scale) {
+        regions.clear();
+        for (Rectangle r : changes) {
+            splitIntoBands(r);
+        }
+        while (bands.size() < regions.size()) {
+            bands.add(new Band());
+        }
+
+        pool.invoke(new EncodeTask(frame, quality, scale, 0, regions.size()));
+
+        result.clear();
+        for (int i = 0; i < regions.size(); i++) {
+            Band band = bands.get(i);
+            result.addAll(band.tiles.subList(0, band.count));
+        }
+        return result;
+    }
+
+    public int getParallelism() {
+        return pool.getParallelism();
+    }
+
+    @Override
+    public void close() {
+        pool.shutdownNow();
+    }
+
+    private void splitIntoBands(Rectangle r) {
+        for (int y = r.y; y < r.y + r.height; y += bandHeight) {
+            regions.add(new Rectangle(r.x, y, r.width, Math.min(bandHeight, r.y + r.height - y)));
+        }
+    }
+
+    private class EncodeTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final BufferedImage frame;
+        private final float quality;
+        private final double scale;
+        private final int from;
+        private final int to;
+
+        EncodeTask(BufferedImage frame, float quality, double scale, int from, int to) {
+            this.frame = frame;
+            this.quality = quality;
+            this.scale = scale;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= 1) {
+                if (to > from) {
+                    encodeRegion(from);
+                }
+                return;
+            }
+            int middle = (from + to) >>> 1;
+            invokeAll(new EncodeTask(frame, quality, scale, from, middle),
+                    new EncodeTask(frame, quality, scale, middle, to));
+        }
+
+        private void encodeRegion(int index) {
+            Rectangle r = regions.get(index);
+            Band band = bands.get(index);
+            band.count = 0;
+
+            WritableRaster raster = frame.getRaster();
+            if (!contentAware || frame.getType() != BufferedImage.TYPE_INT_RGB
+                    || raster.getSampleModelTranslateX() != 0 || raster.getSampleModelTranslateY() != 0) {
+                encodeJpeg(band, r.x, r.x + r.width, r);
+                return;
+            }
+            int[] pixels = ((DataBufferInt) raster.getDataBuffer()).getData();
+            int scanline = ((SinglePixelPackedSampleModel) raster.getSampleModel()).getScanlineStride();
+
+            // Соседние квадраты одного вида кодируются одной плиткой
+            PaletteCodec palette = PaletteCodec.forCurrentThread();
+            int runStart = r.x;
+            boolean runLossless = false;
+            for (int x = r.x; x < r.x + r.width; x += bandHeight) {
+                int w = Math.min(bandHeight, r.x + r.width - x);
+                boolean lossless = palette.countColors(pixels, scanline, x, r.y, w, r.height,
+                        PaletteCodec.MAX_COLORS) <= PaletteCodec.MAX_COLORS;
+                if (x > r.x && lossless != runLossless) {
+                    encodeRun(band, pixels, scanline, runStart, x, r, runLossless);
+                    runStart = x;
+                }
+                runLossless = lossless;
+            }
+            encodeRun(band, pixels, scanline, runStart, r.x + r.width, r, runLossless);
+        }
+
+        private void encodeRun(Band band, int[] pixels, int scanline, int from, int to, Rectangle r,
+                               boolean lossless) {
+            if (!lossless) {
+                encodeJpeg(band, from, to, r);
+                return;
+            }
+
+            PaletteCodec palette = PaletteCodec.forCurrentThread();
+            int size = palette.encode(pixels, scanline, from, r.y, to - from, r.height);
+            if (size >= 0) {
+                band.next().set(from, r.y, to - from, r.height, Protocol.CODEC_PALETTE, palette.getBuffer(), size);
+                return;
+            }
+
+            // Вместе квадраты дали больше цветов, чем помещается в палитру - по одному
+            for (int x = from; x < to; x += bandHeight) {
+                int w = Math.min(bandHeight, to - x);
+                size = palette.encode(pixels, scanline, x, r.y, w, r.height);
+                band.next().set(x, r.y, w, r.height, Protocol.CODEC_PALETTE, palette.getBuffer(), size);
+            }
+        }
+
+        private void encodeJpeg(Band band, int from, int to, Rectangle r) {
+            try {
+                JpegEncoder encoder = JpegEncoder.forCurrentThread();
+                int size = encoder.encode(frame.getSubimage(from, r.y, to - from, r.height), quality, scale);
+                band.next().set(from, r.y, to - from, r.height, Protocol.CODEC_JPEG, encoder.getBuffer(), size);
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+}
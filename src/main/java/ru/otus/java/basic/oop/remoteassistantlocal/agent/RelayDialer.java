@@ -0,0 +1,104 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.RelayAddress;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+
+/**
+ * Подключения агента к серверу-посреднику, когда агент за NAT и помощники не могут
+ * подключиться к нему сами. У посредника всегда держится одно запасное подключение
+ * с номером сессии агента. Когда к нему приходит помощник, посредник присылает байт
+ * RELAY_PAIRED, подключение передается SessionServer как обычная сессия, и сразу
+ * открывается следующее запасное - так через посредника могут работать несколько помощников.
+ *
+ * Запасное подключение ждет в блокирующем чтении собственного потока, поэтому до прихода
+ * помощника агент ничего не захватывает и не кодирует для него.
+ */
+class RelayDialer implements AutoCloseable {
+    private static final long RETRY_DELAY_MS = 5000;
+
+    private final RelayAddress relay;
+    private final SessionServer server;
+    private final Thread thread;
+    private volatile SocketChannel spare;
+
+    RelayDialer(RelayAddress relay, SessionServer server) {
+        this.relay = relay;
+        this.server = server;
+        this.thread = new Thread(this::run, "Relay-Dialer");
+        this.thread.setDaemon(true);
+    }
+
+    void start() {
+        thread.start();
+    }
+
+    @Override
+    public void close() {
+        thread.interrupt();
+        SocketChannel channel = spare;
+        if (channel != null) {
+            try {
+                channel.close();
+            } catch (IOException e) {
+                // уже закрыто
+            }
+        }
+    }
+
+    private void run() {
+        boolean available = true;
+        while (!Thread.currentThread().isInterrupted()) {
+            try {
+                server.adopt(awaitViewer());
+                available = true;
+            } catch (IOException e) {
+                if (Thread.currentThread().isInterrupted()) break;
+                // Посредник недоступен: сообщаем один раз, а не на каждую попытку
+                if (available) {
+                    System.out.println("Посредник " + relay + " недоступен: " + e.getMessage()
+                            + ", повтор каждые " + RETRY_DELAY_MS / 1000 + " с");
+                    available = false;
+                }
+                try {
+                    Thread.sleep(RETRY_DELAY_MS);
+                } catch (InterruptedException interrupted) {
+                    break;
+                }
+            }
+        }
+    }
+
+    /**
+     * Запасное подключение: приветствие посредника и ожидание помощника
+     *
+     * @return подключение, соединенное с помощником
+     */
+    private SocketChannel awaitViewer() throws IOException {
+        SocketChannel channel = SocketChannel.open(relay.toSocketAddress());
+        spare = channel;
+        try {
+            new ProtocolEncoder(Protocol.RELAY_HELLO_SIZE)
+                    .relayHello(Protocol.RELAY_ROLE_AGENT, relay.getSessionId())
+                    .writeTo(channel);
+
+            ByteBuffer paired = ByteBuffer.allocate(1);
+            if (channel.read(paired) < 0) {
+                throw new IOException("посредник закрыл подключение");
+            }
+            if (paired.get(0) != Protocol.RELAY_PAIRED) {
+                throw new IOException("неожиданный ответ посредника: " + paired.get(0));
+            }
+            spare = null;
+            return channel;
+        } catch (IOException e) {
+            spare = null;
+            channel.close();
+            throw e;
+        }
+    }
+}
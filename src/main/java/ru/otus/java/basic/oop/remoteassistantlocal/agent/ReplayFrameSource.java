@@ -0,0 +1,99 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Повтор заранее записанных снимков экрана по кругу: один файл на вызов capture().
+ * Источник - каталог с изображениями (PNG, JPEG, BMP; порядок по имени файла)
+ * или один файл изображения. Снимки декодируются один раз при открытии,
+ * чтобы чтение с диска не искажало измерения, и отдаются без копирования:
+ * после загрузки они только читаются.
+ *
+ * Записать снимки для повтора можно методом record() с любого источника,
+ * например с настоящего экрана на машине с дисплеем.
+ */
+public class ReplayFrameSource implements FrameSource {
+    private static final String[] EXTENSIONS = {".png", ".jpg", ".jpeg", ".bmp"};
+
+    private final List<BufferedImage> frames = new ArrayList<>();
+    private final Dimension size;
+    private int next;
+
+    public ReplayFrameSource(File source) throws IOException {
+        File[] files = source.isDirectory() ? source.listFiles(ReplayFrameSource::isImage) : new File[]{source};
+        if (files == null || files.length == 0) {
+            throw new IOException("Нет снимков для повтора: " + source);
+        }
+        Arrays.sort(files);
+
+        for (File file : files) {
+            BufferedImage image = ImageIO.read(file);
+            if (image == null) {
+                throw new IOException("Неподдерживаемый формат снимка: " + file);
+            }
+            frames.add(toRgb(image));
+        }
+        BufferedImage first = frames.get(0);
+        this.size = new Dimension(first.getWidth(), first.getHeight());
+        System.out.println("Повтор " + frames.size() + " снимков " + size.width + "x" + size.height + " из " + source);
+    }
+
+    @Override
+    public synchronized BufferedImage capture() {
+        BufferedImage frame = frames.get(next);
+        next = (next + 1) % frames.size();
+        return frame;
+    }
+
+    @Override
+    public Dimension getSize() {
+        return new Dimension(size);
+    }
+
+    public int getFrameCount() {
+        return frames.size();
+    }
+
+    /**
+     * Запись count снимков источника в каталог (frame-000000.png, ...) для последующего повтора
+     */
+    public static void record(FrameSource source, File directory, int count) throws IOException {
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw new IOException("Не удалось создать каталог " + directory);
+        }
+        for (int i = 0; i < count; i++) {
+            File file = new File(directory, String.format("frame-%06d.png", i));
+            ImageIO.write(source.capture(), "png", file);
+        }
+    }
+
+    private static boolean isImage(File file) {
+        String name = file.getName().toLowerCase(Locale.ROOT);
+        for (String extension : EXTENSIONS) {
+            if (name.endsWith(extension)) return true;
+        }
+        return false;
+    }
+
+    /**
+     * Приведение к формату снимков Robot, чтобы масштабирование шло по тому же пути
+     */
+    private static BufferedImage toRgb(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_INT_RGB) {
+            return image;
+        }
+        BufferedImage rgb = new BufferedImage(image.getWidth(), image.getHeight(), BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = rgb.createGraphics();
+        g.drawImage(image, 0, 0, null);
+        g.dispose();
+        return rgb;
+    }
+}
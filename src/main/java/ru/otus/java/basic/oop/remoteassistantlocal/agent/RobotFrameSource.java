@@ -0,0 +1,44 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+
+/**
+ * Снимки настоящего экрана через java.awt.Robot.
+ * Размер экрана запрашивается на каждый снимок, так что смена разрешения
+ * подхватывается сразу.
+ *
+ * Указатель в снимки Robot не попадает, его положение берется из MouseInfo. Форму чужого
+ * указателя Java узнать не может, поэтому помощнику всегда показывается стрелка.
+ */
+public class RobotFrameSource implements FrameSource {
+    private final Robot robot;
+
+    public RobotFrameSource() throws AWTException {
+        this(new Robot());
+    }
+
+    public RobotFrameSource(Robot robot) {
+        this.robot = robot;
+    }
+
+    @Override
+    public BufferedImage capture() {
+        return robot.createScreenCapture(new Rectangle(getSize()));
+    }
+
+    @Override
+    public boolean locatePointer(Point location) {
+        PointerInfo pointer = MouseInfo.getPointerInfo();
+        if (pointer == null) return false;
+
+        location.setLocation(pointer.getLocation());
+        Dimension size = getSize();
+        return location.x >= 0 && location.y >= 0 && location.x < size.width && location.y < size.height;
+    }
+
+    @Override
+    public Dimension getSize() {
+        return Toolkit.getDefaultToolkit().getScreenSize();
+    }
+}
@@ -0,0 +1,676 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CopyRect;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Общая трансляция экрана всем подключенным помощникам.
+ * Экран захватывается, масштабируется и сравнивается с прошлым кадром один раз
+ * на кадр, независимо от числа помощников.
+ *
+ * Работа разделена на стадии конвейера, каждая в своем потоке:
+ * захват -> масштабирование -> поиск изменений и кодирование -> отправка.
+ * Стадии связаны кольцами FrameRing из заранее созданных слотов, поэтому кадр N+1
+ * захватывается, пока кадр N кодируется, а кадр N-1 отправляется. Отправка -
+ * неблокирующие буферы сессий (ViewerSession), которые дописывает поток селектора.
+ * Изменения ищутся на стадии кодирования, так что выброшенный по DropPolicy кадр
+ * ничего не теряет: следующий сравнивается с последним закодированным. Подписчики группируются по качеству
+ * и по набору нужных им областей; каждая группа кодируется один раз, и один
+ * и тот же EncodedFrame (со счетчиком ссылок) отправляется всем ее сессиям.
+ *
+ * Обычно все помощники получают одни и те же изменения, и на кадр приходится одно
+ * кодирование на каждое различное качество. Отдельно кодируются только помощники,
+ * которым нужен весь экран (новое подключение, смена качества) или которые
+ * пропустили кадры: пропущенные области копятся и уходят со следующим кадром.
+ *
+ * Если в кадре найдена прокрутка или перемещение окна, помощники, у которых нет
+ * пропущенных областей, получают копирование области и только открывшуюся полосу.
+ * Остальные получают все изменившиеся плитки, так как копировать им нечего.
+ *
+ * Помощник может выбрать режим без потерь (Protocol.TRANSPORT_DELTA): тогда у его сессии свой
+ * DeltaEncoder, и кадры для нее кодируются отдельно от групп.
+ *
+ * Если помощник включил подстройку под канал (SET_ADAPTIVE), его качество, частота кадров
+ * и масштаб плиток JPEG выбираются AdaptiveRate по тому, как кадры уходят в его сокет,
+ * а заданные помощником значения служат потолком. Помощник с меньшей частотой, чем у захвата,
+ * получает не каждый кадр: изменения между его кадрами копятся, как у занятого помощника.
+ */
+public class ScreenBroadcaster implements AutoCloseable {
+    private static final long FPS_REPORT_INTERVAL_MS = 10_000;
+    // Кадр помощнику с пониженной частотой можно отправить чуть раньше срока: захват неровный
+    private static final double PACING_SLACK = 0.9;
+
+    private final int width;
+    private final int height;
+    private final FrameSource screen;
+    private final ParallelTileEncoder tileEncoder;
+    private final AgentMetrics metrics;
+    private final FrameScheduler frameScheduler;
+    private final AgentConfig config;
+    private final boolean deltaTransport;
+    private final int deltaLevel;
+    private final TileChangeDetector changeDetector;
+    private final List<Subscriber> subscribers = new CopyOnWriteArrayList<>();
+    private final Queue<EncodedFrame> framePool = new ConcurrentLinkedQueue<>();
+    private final FrameRing<CapturedFrame> captured;
+    private final FrameRing<ScaledFrame> scaled;
+    private final List<Thread> stages = new ArrayList<>();
+
+    // Настройки для новых помощников (меняются через JMX вместе с текущими)
+    private volatile int defaultQuality;
+    private volatile int defaultFps;
+
+    // Рабочие структуры стадии кодирования
+    private final DirtyTiles frameChanges;
+    // Прокрутка в текущем кадре (или null) и то, что остается отправить после нее
+    private CopyRect frameCopy;
+    private final DirtyTiles residualChanges;
+    private final List<Group> groups = new ArrayList<>();
+    private final ProtocolEncoder stateMessages = new ProtocolEncoder(64);
+    private long encodes;
+    private long frames;
+
+    /**
+     * Слот кольца захвата: снимок экрана в том виде, в каком его вернул источник
+     */
+    private static class CapturedFrame {
+        BufferedImage image;
+        long captureTime;
+    }
+
+    /**
+     * Слот кольца масштабирования: заранее созданный кадр итогового размера
+     */
+    private static class ScaledFrame {
+        final BufferedImage image;
+        long captureTime;
+
+        ScaledFrame(int width, int height) {
+            this.image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        }
+    }
+
+    /**
+     * Помощник, получающий трансляцию
+     */
+    public class Subscriber {
+        private final ViewerSession session;
+        private final AtomicBoolean refresh = new AtomicBoolean(true);
+        private final DirtyTiles missed = new DirtyTiles(width, height, Protocol.TILE_SIZE);
+        private final DirtyTiles pending = new DirtyTiles(width, height, Protocol.TILE_SIZE);
+        private final AdaptiveRate rate;
+        private volatile int quality;
+        private volatile int fps;
+        // Межкадровое сжатие; null - обычные плитки
+        private volatile DeltaEncoder delta;
+        // Поток кодирования: когда помощник последний раз получил кадр, был ли поток полным
+        private long lastFrameNanos;
+        private boolean full = true;
+
+        Subscriber(ViewerSession session, int quality, int fps) {
+            this.session = session;
+            this.quality = quality;
+            this.fps = fps;
+            this.rate = new AdaptiveRate(config, quality, fps, metrics);
+        }
+
+        /**
+         * Качество JPEG в процентах (при подстройке под канал - наибольшее);
+         * помощник получит весь экран в новом качестве
+         */
+        public int setQuality(int quality) {
+            this.quality = clampQuality(quality);
+            rate.setMaxQuality(this.quality);
+            refresh.set(true);
+            return this.quality;
+        }
+
+        public int getQuality() {
+            return quality;
+        }
+
+        /**
+         * Желаемая частота кадров. Захват общий и идет с наибольшей из запрошенных частот.
+         */
+        public int setFps(int fps) {
+            this.fps = clampFps(fps);
+            rate.setMaxFps(this.fps);
+            updateTargetFps();
+            return this.fps;
+        }
+
+        /**
+         * Подстройка под канал (SET_ADAPTIVE): наименьший масштаб плиток JPEG в процентах
+         * или Protocol.ADAPTIVE_OFF
+         *
+         * @return принятое значение
+         */
+        public int setAdaptive(int minScale) {
+            int accepted = rate.setMinScale(minScale);
+            updateTargetFps();
+            return accepted;
+        }
+
+        /**
+         * Сообщение STREAM_STATE с текущими качеством, частотой кадров и масштабом
+         */
+        public ProtocolEncoder writeState(ProtocolEncoder encoder) {
+            return encoder.streamState(rate.getQuality(), rate.getFps(), rate.getScale());
+        }
+
+        /**
+         * Режим передачи кадров (Protocol.TRANSPORT_*). Режим без потерь начинается с ключевого кадра,
+         * а при возврате к плиткам экран помощника остается верным, и обновление не нужно.
+         *
+         * @return установленный режим
+         */
+        public int setTransport(int transport) {
+            if (transport == Protocol.TRANSPORT_DELTA && deltaTransport) {
+                if (delta == null) {
+                    delta = new DeltaEncoder(width, height, deltaLevel);
+                }
+                return Protocol.TRANSPORT_DELTA;
+            }
+            delta = null;
+            return Protocol.TRANSPORT_TILES;
+        }
+
+        public int getTransport() {
+            return delta != null ? Protocol.TRANSPORT_DELTA : Protocol.TRANSPORT_TILES;
+        }
+
+        /**
+         * Следующий кадр для этого помощника будет содержать весь экран
+         */
+        public void requestRefresh() {
+            refresh.set(true);
+        }
+
+        public ViewerSession getSession() {
+            return session;
+        }
+    }
+
+    /**
+     * Подписчики, которым нужен одинаковый кадр
+     */
+    private static class Group {
+        int quality;
+        int scale;
+        DirtyTiles tiles;
+        // Кадр начинается с копирования frameCopy, tiles - то, что остается после него
+        boolean copy;
+        // Группа из одного помощника в режиме без потерь
+        DeltaEncoder delta;
+        final List<Subscriber> members = new ArrayList<>();
+    }
+
+    /**
+     * @param screen источник снимков экрана (любого размера, кадр масштабируется до width x height)
+     */
+    public ScreenBroadcaster(FrameSource screen, int width, int height,
+                             ParallelTileEncoder tileEncoder, AgentConfig config, AgentMetrics metrics) {
+        this.screen = screen;
+        this.width = width;
+        this.height = height;
+        this.tileEncoder = tileEncoder;
+        this.metrics = metrics;
+        this.frameScheduler = new FrameScheduler(config.getFps());
+        this.config = config;
+        this.defaultQuality = config.getQuality();
+        this.defaultFps = config.getFps();
+        this.deltaTransport = config.isDeltaTransport();
+        this.deltaLevel = config.getDeltaLevel();
+        this.changeDetector = new TileChangeDetector(Protocol.TILE_SIZE, config.isCopyRect());
+        this.frameChanges = new DirtyTiles(width, height, Protocol.TILE_SIZE);
+        this.residualChanges = new DirtyTiles(width, height, Protocol.TILE_SIZE);
+        this.captured = new FrameRing<>(config.getRingSize(), config.getScaleDropPolicy(), CapturedFrame::new);
+        this.scaled = new FrameRing<>(config.getRingSize(), config.getEncodeDropPolicy(),
+                () -> new ScaledFrame(width, height));
+
+        stages.add(new Thread(this::captureStage, "Screen-Capture"));
+        stages.add(new Thread(this::scaleStage, "Screen-Scale"));
+        stages.add(new Thread(this::encodeStage, "Screen-Encode"));
+    }
+
+    public void start() {
+        for (Thread stage : stages) {
+            stage.start();
+        }
+    }
+
+    /**
+     * Новый помощник с текущими качеством и частотой кадров; первым он получит весь экран
+     */
+    public Subscriber subscribe(ViewerSession session) {
+        Subscriber subscriber = new Subscriber(session, defaultQuality, defaultFps);
+        subscribers.add(subscriber);
+        updateTargetFps();
+        return subscriber;
+    }
+
+    public void unsubscribe(Subscriber subscriber) {
+        subscribers.remove(subscriber);
+        updateTargetFps();
+    }
+
+    public int getSubscriberCount() {
+        return subscribers.size();
+    }
+
+    /**
+     * Качество для всех текущих и новых помощников
+     */
+    public int setQuality(int quality) {
+        defaultQuality = clampQuality(quality);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.setQuality(defaultQuality);
+        }
+        return defaultQuality;
+    }
+
+    public int getQuality() {
+        return defaultQuality;
+    }
+
+    /**
+     * Частота кадров для всех текущих и новых помощников
+     */
+    public int setFps(int fps) {
+        defaultFps = clampFps(fps);
+        for (Subscriber subscriber : subscribers) {
+            subscriber.fps = defaultFps;
+            subscriber.rate.setMaxFps(defaultFps);
+        }
+        updateTargetFps();
+        return defaultFps;
+    }
+
+    public int getTargetFps() {
+        return frameScheduler.getTargetFps();
+    }
+
+    public double getAchievedFps() {
+        return frameScheduler.getAchievedFps();
+    }
+
+    /**
+     * Кадры, пропущенные планировщиком, потому что конвейер не успевал
+     */
+    public long getSkippedFrames() {
+        return frameScheduler.getSkippedFrames();
+    }
+
+    /**
+     * Кадры, выброшенные кольцами между стадиями по DropPolicy
+     */
+    public long getPipelineDroppedFrames() {
+        return captured.getDroppedFrames() + scaled.getDroppedFrames();
+    }
+
+    @Override
+    public void close() {
+        for (Thread stage : stages) {
+            stage.interrupt();
+        }
+    }
+
+    private static int clampQuality(int quality) {
+        return Math.max(1, Math.min(100, quality));
+    }
+
+    private static int clampFps(int fps) {
+        return Math.max(FrameScheduler.MIN_FPS, Math.min(FrameScheduler.MAX_FPS, fps));
+    }
+
+    /**
+     * Захват идет с наибольшей частотой, которую сейчас получает кто-то из помощников
+     */
+    private void updateTargetFps() {
+        int fps = FrameScheduler.MIN_FPS;
+        for (Subscriber subscriber : subscribers) {
+            fps = Math.max(fps, subscriber.rate.getFps());
+        }
+        if (fps != frameScheduler.getTargetFps() && !subscribers.isEmpty()) {
+            System.out.println("Частота захвата: " + frameScheduler.setTargetFps(fps));
+        }
+    }
+
+    /**
+     * Стадия захвата: задает темп конвейера
+     */
+    private void captureStage() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                // Ждем момента следующего кадра с учетом времени на захват
+                frameScheduler.awaitNextFrame();
+
+                if (subscribers.isEmpty() || allBacklogged()) continue;
+
+                int slot = captured.claim();
+                if (slot < 0) continue;
+
+                CapturedFrame frame = captured.get(slot);
+                frame.captureTime = System.currentTimeMillis();
+                long start = System.nanoTime();
+                try {
+                    frame.image = screen.capture();
+                } catch (RuntimeException e) {
+                    System.out.println("Ошибка захвата экрана: " + e.getMessage());
+                    captured.release(slot);
+                    continue;
+                }
+                metrics.capture.recordSince(start);
+                metrics.framesCaptured.incrementAndGet();
+                captured.publish(slot);
+            }
+        } catch (InterruptedException e) {
+            // трансляция остановлена
+        }
+    }
+
+    /**
+     * Стадия масштабирования в заранее созданные кадры
+     */
+    private void scaleStage() {
+        try {
+            while (!Thread.currentThread().isInterrupted()) {
+                int source = captured.take();
+                CapturedFrame frame = captured.get(source);
+
+                int target = scaled.claim();
+                if (target >= 0) {
+                    ScaledFrame result = scaled.get(target);
+                    result.captureTime = frame.captureTime;
+                    long start = System.nanoTime();
+                    Graphics2D g2d = result.image.createGraphics();
+                    g2d.drawImage(frame.image, 0, 0, width, height, null);
+                    g2d.dispose();
+                    metrics.scale.recordSince(start);
+                    scaled.publish(target);
+                }
+
+                frame.image = null;
+                captured.release(source);
+            }
+        } catch (InterruptedException e) {
+            // трансляция остановлена
+        }
+    }
+
+    /**
+     * Стадия поиска изменений, кодирования и раздачи кадров сессиям
+     */
+    private void encodeStage() {
+        try {
+            long lastReport = System.currentTimeMillis();
+
+            while (!Thread.currentThread().isInterrupted()) {
+                int slot = scaled.take();
+                ScaledFrame frame = scaled.get(slot);
+                try {
+                    broadcast(frame.image, frame.captureTime);
+                    frameScheduler.onFrameProduced();
+                } catch (RuntimeException e) {
+                    System.out.println("Ошибка трансляции кадра: " + e.getMessage());
+                } finally {
+                    scaled.release(slot);
+                }
+
+                long now = System.currentTimeMillis();
+                if (now - lastReport >= FPS_REPORT_INTERVAL_MS) {
+                    lastReport = now;
+                    System.out.printf("FPS: цель %d, фактически %.1f, пропущено кадров %d, выброшено конвейером %d, "
+                                    + "помощников %d, кодирований на кадр %.2f%n",
+                            frameScheduler.getTargetFps(), frameScheduler.getAchievedFps(),
+                            frameScheduler.getSkippedFrames(),
+                            captured.getDroppedFrames() + scaled.getDroppedFrames(),
+                            subscribers.size(), frames == 0 ? 0.0 : (double) encodes / frames);
+                    encodes = 0;
+                    frames = 0;
+                }
+            }
+        } catch (InterruptedException e) {
+            // трансляция остановлена
+        }
+    }
+
+    /**
+     * Если ни один помощник не может принять кадр, захватывать нечего
+     */
+    private boolean allBacklogged() {
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.session.isBacklogged()) return false;
+        }
+        return true;
+    }
+
+    private void broadcast(BufferedImage image, long captureTime) {
+        frameChanges.clear();
+        frameChanges.addAll(changeDetector.detectChanges(image));
+        frameCopy = changeDetector.getCopy();
+        residualChanges.clear();
+        if (frameCopy != null) {
+            residualChanges.addAll(changeDetector.getResidualChanges());
+        }
+        frames++;
+
+        groupSubscribers();
+        for (Group group : groups) {
+            if (group.members.isEmpty()) continue;
+            sendGroup(group, image, captureTime);
+        }
+    }
+
+    /**
+     * Распределение подписчиков по группам (качество, набор областей).
+     * Помощники, которые сейчас не могут принять кадр, копят пропущенные области.
+     */
+    private void groupSubscribers() {
+        for (Group group : groups) {
+            group.members.clear();
+        }
+        long now = System.nanoTime();
+
+        for (Subscriber subscriber : subscribers) {
+            if (!subscriber.session.isOpen()) {
+                // Сессия закрылась раньше, чем успела отписаться
+                unsubscribe(subscriber);
+                continue;
+            }
+            AdaptiveRate rate = subscriber.rate;
+            if (rate.update(now, subscriber.session.getBandwidth(), subscriber.session.getFrameBacklogNanos())) {
+                rateChanged(subscriber);
+            }
+            if (rate.getSendBuffer() > 0) {
+                subscriber.session.fitSendBuffer(rate.getSendBuffer());
+            }
+            if (subscriber.session.isBacklogged()) {
+                subscriber.missed.add(frameChanges);
+                if (!frameChanges.isEmpty()) {
+                    metrics.sessionDroppedFrames.incrementAndGet();
+                    rate.onSkipped();
+                }
+                continue;
+            }
+            int fps = rate.getFps();
+            if (fps < frameScheduler.getTargetFps()
+                    && now - subscriber.lastFrameNanos < PACING_SLACK * 1e9 / fps) {
+                // Срок следующего кадра этого помощника еще не пришел
+                subscriber.missed.add(frameChanges);
+                continue;
+            }
+
+            DirtyTiles pending = subscriber.pending;
+            DeltaEncoder delta = subscriber.delta;
+            boolean copy = false;
+            if (subscriber.refresh.getAndSet(false)) {
+                if (delta != null) delta.reset();
+                pending.addAll();
+            } else if (frameCopy != null && subscriber.missed.isEmpty()) {
+                // Экран помощника совпадает с прошлым кадром - прокрутку можно повторить у него
+                pending.set(residualChanges);
+                copy = true;
+            } else {
+                pending.set(frameChanges);
+                pending.add(subscriber.missed);
+            }
+            subscriber.missed.clear();
+            if (pending.isEmpty() && !copy) continue;
+
+            subscriber.lastFrameNanos = now;
+            Group group = findGroup(rate.getQuality(), rate.getScale(), pending, copy, delta);
+            group.members.add(subscriber);
+        }
+    }
+
+    /**
+     * Подстройка изменила поток помощника: сообщаем ему новые значения. Когда поток снова
+     * полный, помощник получает весь экран, чтобы не осталось областей в пониженном качестве.
+     */
+    private void rateChanged(Subscriber subscriber) {
+        boolean full = subscriber.rate.isFull();
+        if (full && !subscriber.full) {
+            subscriber.refresh.set(true);
+        }
+        subscriber.full = full;
+        updateTargetFps();
+        try {
+            subscriber.session.send(subscriber.writeState(stateMessages));
+        } catch (IOException e) {
+            System.out.println("Ошибка отправки сессии " + subscriber.session + ": " + e.getMessage());
+            subscriber.session.close();
+        }
+    }
+
+    private Group findGroup(int quality, int scale, DirtyTiles tiles, boolean copy, DeltaEncoder delta) {
+        Group free = null;
+        for (Group group : groups) {
+            if (group.members.isEmpty()) {
+                if (free == null) free = group;
+            } else if (delta == null && group.delta == null
+                    && group.quality == quality && group.scale == scale
+                    && group.copy == copy && group.tiles.equals(tiles)) {
+                return group;
+            }
+        }
+        if (free == null) {
+            free = new Group();
+            groups.add(free);
+        }
+        free.quality = quality;
+        free.scale = scale;
+        free.tiles = tiles;
+        free.copy = copy;
+        free.delta = delta;
+        return free;
+    }
+
+    private void sendGroup(Group group, BufferedImage image, long captureTime) {
+        EncodedFrame frame = acquireFrame();
+        try {
+            long start = System.nanoTime();
+            CopyRect copy = group.copy ? frameCopy : null;
+            List<Rectangle> regions = group.tiles.toRegions();
+            if (group.delta != null) {
+                int bytes = group.delta.encode(frame.encoder(), image, regions, copy, captureTime);
+                metrics.deltaFrames.incrementAndGet();
+                metrics.deltaBytes.addAndGet(bytes);
+            } else {
+                encodeTiles(frame.encoder(), image, regions, copy, captureTime, group.quality, group.scale);
+            }
+            if (copy != null) {
+                metrics.copyRects.incrementAndGet();
+            }
+            metrics.encode.recordSince(start);
+            metrics.frameSize.record(frame.size());
+            metrics.framesEncoded.incrementAndGet();
+            encodes++;
+
+            for (Subscriber subscriber : group.members) {
+                try {
+                    if (!subscriber.session.offerFrame(frame)) {
+                        // Помощник занят - области уйдут со следующим кадром
+                        subscriber.missed.add(group.tiles);
+                        if (group.copy) {
+                            // Прокрутка до помощника не дошла - нужны все изменившиеся плитки
+                            subscriber.missed.add(frameChanges);
+                        }
+                        metrics.sessionDroppedFrames.incrementAndGet();
+                        if (group.delta != null) {
+                            // Поток Deflate и копия экрана ушли вперед помощника: начинаем заново
+                            subscriber.refresh.set(true);
+                        }
+                    }
+                } catch (IOException e) {
+                    System.out.println("Ошибка отправки кадра сессии " + subscriber.session + ": " + e.getMessage());
+                    subscriber.session.close();
+                }
+            }
+        } finally {
+            frame.release();
+        }
+    }
+
+    private EncodedFrame acquireFrame() {
+        EncodedFrame frame = framePool.poll();
+        if (frame == null) {
+            frame = new EncodedFrame(framePool);
+        }
+        return frame.open();
+    }
+
+    /**
+     * Кодирование (параллельно) областей кадра в сообщение SCREENSHOT_RESPONSE.
+     * Способ сжатия каждой плитки выбирает ParallelTileEncoder по ее содержимому
+     *
+     * @param copy  копирование, которое идет первой плиткой, или null
+     * @param scale масштаб плиток JPEG в процентах
+     */
+    private void encodeTiles(ProtocolEncoder encoder, BufferedImage image, List<Rectangle> regions,
+                             CopyRect copy, long captureTime, int quality, int scale) {
+        List<ParallelTileEncoder.EncodedTile> tiles = tileEncoder.encode(image, regions, quality / 100f, scale / 100.0);
+
+        int message = encoder.beginMessage(Command.Type.SCREENSHOT_RESPONSE);
+        ByteBuffer buffer = encoder.reserve(Protocol.FRAME_HEADER_SIZE);
+        buffer.putLong(captureTime);
+        buffer.putInt(tiles.size() + (copy != null ? 1 : 0));
+        if (copy != null) {
+            copy.writeTile(encoder);
+        }
+
+        for (ParallelTileEncoder.EncodedTile tile : tiles) {
+            Rectangle r = tile.region;
+            buffer = encoder.reserve(Protocol.TILE_HEADER_SIZE + tile.getSize());
+            buffer.putShort((short) r.x);
+            buffer.putShort((short) r.y);
+            buffer.putShort((short) r.width);
+            buffer.putShort((short) r.height);
+            buffer.put(tile.getCodec());
+            buffer.putInt(tile.getSize());
+            buffer.put(tile.getData(), 0, tile.getSize());
+
+            if (tile.getCodec() == Protocol.CODEC_PALETTE) {
+                metrics.losslessTiles.incrementAndGet();
+                metrics.losslessBytes.addAndGet(tile.getSize());
+            } else {
+                metrics.jpegTiles.incrementAndGet();
+                metrics.jpegBytes.addAndGet(tile.getSize());
+            }
+        }
+        encoder.endMessage(message);
+    }
+}
@@ -0,0 +1,396 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CopyRect;
+
+import java.awt.*;
+import java.util.Arrays;
+
+/**
+ * Поиск прокрутки и перемещения окна между двумя кадрами: части изменившейся
+ * области, которая совпадает с прошлым кадром, сдвинутым по вертикали или по горизонтали.
+ *
+ * Строки (для горизонтального сдвига - столбцы) изменившейся области хешируются
+ * в обоих кадрах. Каждая строка нового кадра, чей хеш в прошлом кадре встречается
+ * ровно один раз, голосует за свой сдвиг; повторяющиеся строки (пустой фон) не голосуют.
+ * Для победившего сдвига берется самая длинная полоса подряд идущих строк,
+ * совпадающих попиксельно, - она и становится копированием.
+ *
+ * Окно, перетаскиваемое по диагонали, так не находится: строки сдвинуты еще и вбок.
+ * Тогда несколько "зондов" - отрезков изменившихся строк с непустым содержимым -
+ * ищутся в прошлом кадре скользящим хешем. Сдвиг, на котором сошлись зонды,
+ * проверяется попиксельно, и совпавший прямоугольник наращивается во все стороны.
+ *
+ * Экземпляр не потокобезопасен: используется потоком кодирования.
+ */
+public class ScrollDetector {
+    // Меньше этого сдвигаемая полоса не окупает копирование
+    static final int MIN_LINES = 16;
+    // Длина отрезка строки, по которому ищется перемещение окна
+    static final int PROBE_LENGTH = 32;
+    static final int MAX_PROBES = 4;
+    private static final int PROBE_BASE = 0x01000193;
+
+    private final Rectangle bounds = new Rectangle();
+    private int[] previousHashes = new int[0];
+    private int[] currentHashes = new int[0];
+    private int[] votes = new int[0];
+
+    // Хеш строки прошлого кадра -> номер строки (-1, если хеш повторяется)
+    private int[] tableKeys = new int[0];
+    private int[] tableLines = new int[0];
+    private boolean[] tableUsed = new boolean[0];
+
+    // Зонды поиска перемещения: координаты, хеш, найденный сдвиг
+    private final int[] probeX = new int[MAX_PROBES];
+    private final int[] probeY = new int[MAX_PROBES];
+    private final int[] probeHash = new int[MAX_PROBES];
+    private final int[] probeDx = new int[MAX_PROBES];
+    private final int[] probeDy = new int[MAX_PROBES];
+    private final int[] probeMatches = new int[MAX_PROBES];
+
+    /**
+     * Поиск сдвига внутри области changed (обычно - охватывающий прямоугольник изменившихся плиток)
+     *
+     * @param previous прошлый кадр, RGB
+     * @param current  новый кадр, RGB того же размера
+     * @param width    длина строки кадров
+     * @param result   найденное копирование
+     * @return найден ли сдвиг
+     */
+    public boolean detect(int[] previous, int[] current, int width, Rectangle changed, CopyRect result) {
+        if (!trim(previous, current, width, changed)) return false;
+        return detectVertical(previous, current, width, result)
+                || detectHorizontal(previous, current, width, result)
+                || detectMove(previous, current, width, result);
+    }
+
+    /**
+     * Сужение области до реально изменившихся столбцов и строк
+     */
+    private boolean trim(int[] previous, int[] current, int width, Rectangle changed) {
+        int minX = Integer.MAX_VALUE;
+        int maxX = -1;
+        int minY = -1;
+        int maxY = -1;
+        for (int y = changed.y; y < changed.y + changed.height; y++) {
+            int from = y * width + changed.x;
+            int to = from + changed.width;
+            int first = Arrays.mismatch(current, from, to, previous, from, to);
+            if (first < 0) continue;
+
+            int last = changed.width - 1;
+            while (current[from + last] == previous[from + last]) {
+                last--;
+            }
+            minX = Math.min(minX, changed.x + first);
+            maxX = Math.max(maxX, changed.x + last);
+            if (minY < 0) minY = y;
+            maxY = y;
+        }
+        if (maxX < 0) return false;
+
+        bounds.setBounds(minX, minY, maxX - minX + 1, maxY - minY + 1);
+        return bounds.width >= MIN_LINES && bounds.height >= MIN_LINES;
+    }
+
+    private boolean detectVertical(int[] previous, int[] current, int width, CopyRect result) {
+        int lines = bounds.height;
+        ensureCapacity(lines);
+        for (int i = 0; i < lines; i++) {
+            int from = (bounds.y + i) * width + bounds.x;
+            previousHashes[i] = hash(previous, from, bounds.width);
+            currentHashes[i] = hash(current, from, bounds.width);
+        }
+
+        int shift = bestShift(lines);
+        if (shift == 0) return false;
+
+        // Самая длинная полоса строк, совпадающих со сдвинутыми строками прошлого кадра
+        int bestStart = 0;
+        int bestLength = 0;
+        int start = 0;
+        int length = 0;
+        for (int i = 0; i < lines; i++) {
+            int source = i - shift;
+            boolean same = source >= 0 && source < lines && currentHashes[i] == previousHashes[source]
+                    && Arrays.equals(current, (bounds.y + i) * width + bounds.x,
+                    (bounds.y + i) * width + bounds.x + bounds.width,
+                    previous, (bounds.y + source) * width + bounds.x,
+                    (bounds.y + source) * width + bounds.x + bounds.width);
+            if (same) {
+                if (length == 0) start = i;
+                length++;
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestStart = start;
+                }
+            } else {
+                length = 0;
+            }
+        }
+        if (bestLength < MIN_LINES) return false;
+
+        result.set(bounds.x, bounds.y + bestStart - shift, bounds.x, bounds.y + bestStart, bounds.width, bestLength);
+        return true;
+    }
+
+    private boolean detectHorizontal(int[] previous, int[] current, int width, CopyRect result) {
+        int lines = bounds.width;
+        ensureCapacity(lines);
+        Arrays.fill(previousHashes, 0, lines, 1);
+        Arrays.fill(currentHashes, 0, lines, 1);
+        // Хеши столбцов накапливаются построчно, чтобы читать память подряд
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            int from = y * width + bounds.x;
+            for (int i = 0; i < lines; i++) {
+                previousHashes[i] = 31 * previousHashes[i] + previous[from + i];
+                currentHashes[i] = 31 * currentHashes[i] + current[from + i];
+            }
+        }
+
+        int shift = bestShift(lines);
+        if (shift == 0) return false;
+
+        int bestStart = 0;
+        int bestLength = 0;
+        int start = 0;
+        int length = 0;
+        for (int i = 0; i < lines; i++) {
+            int source = i - shift;
+            boolean same = source >= 0 && source < lines && currentHashes[i] == previousHashes[source]
+                    && columnEquals(previous, current, width, bounds.x + source, bounds.x + i);
+            if (same) {
+                if (length == 0) start = i;
+                length++;
+                if (length > bestLength) {
+                    bestLength = length;
+                    bestStart = start;
+                }
+            } else {
+                length = 0;
+            }
+        }
+        if (bestLength < MIN_LINES) return false;
+
+        result.set(bounds.x + bestStart - shift, bounds.y, bounds.x + bestStart, bounds.y, bestLength, bounds.height);
+        return true;
+    }
+
+    /**
+     * Перемещение по обеим осям (перетаскивание окна)
+     */
+    private boolean detectMove(int[] previous, int[] current, int width, CopyRect result) {
+        int probes = chooseProbes(previous, current, width);
+        if (probes < 2) return false;
+        findProbes(previous, current, width, probes);
+
+        // Сдвиг, на котором сошлись хотя бы два однозначно найденных зонда
+        int dx = 0;
+        int dy = 0;
+        int votes = 0;
+        for (int i = 0; i < probes; i++) {
+            if (probeMatches[i] != 1) continue;
+            int count = 0;
+            for (int j = 0; j < probes; j++) {
+                if (probeMatches[j] == 1 && probeDx[j] == probeDx[i] && probeDy[j] == probeDy[i]) count++;
+            }
+            if (count > votes) {
+                votes = count;
+                dx = probeDx[i];
+                dy = probeDy[i];
+            }
+        }
+        if (votes < 2) return false;
+
+        // Наращивание прямоугольника от первого согласного зонда
+        int first = 0;
+        while (probeMatches[first] != 1 || probeDx[first] != dx || probeDy[first] != dy) {
+            first++;
+        }
+        int x0 = probeX[first];
+        int x1 = x0 + PROBE_LENGTH;
+        int y0 = probeY[first];
+        int y1 = y0 + 1;
+        int left = Math.max(bounds.x, dx);
+        int right = Math.min(bounds.x + bounds.width, width + dx);
+        int top = Math.max(bounds.y, dy);
+        int bottom = Math.min(bounds.y + bounds.height, previous.length / width + dy);
+        while (y0 > top && rowMatches(previous, current, width, y0 - 1, x0, x1, dx, dy)) y0--;
+        while (y1 < bottom && rowMatches(previous, current, width, y1, x0, x1, dx, dy)) y1++;
+        while (x0 > left && columnMatches(previous, current, width, x0 - 1, y0, y1, dx, dy)) x0--;
+        while (x1 < right && columnMatches(previous, current, width, x1, y0, y1, dx, dy)) x1++;
+        if (x1 - x0 < MIN_LINES || y1 - y0 < MIN_LINES) return false;
+
+        result.set(x0 - dx, y0 - dy, x0, y0, x1 - x0, y1 - y0);
+        return true;
+    }
+
+    /**
+     * Отрезки изменившихся строк с непустым содержимым (не меньше 4 смен цвета)
+     *
+     * @return число зондов
+     */
+    private int chooseProbes(int[] previous, int[] current, int width) {
+        int probes = 0;
+        int step = Math.max(1, bounds.height / (MAX_PROBES * 4));
+        for (int y = bounds.y; y < bounds.y + bounds.height && probes < MAX_PROBES; y += step) {
+            for (int x = bounds.x; x + PROBE_LENGTH <= bounds.x + bounds.width; x += PROBE_LENGTH) {
+                int from = y * width + x;
+                if (Arrays.equals(current, from, from + PROBE_LENGTH, previous, from, from + PROBE_LENGTH)) continue;
+                int changes = 0;
+                for (int i = from + 1; i < from + PROBE_LENGTH; i++) {
+                    if (current[i] != current[i - 1]) changes++;
+                }
+                if (changes < 4) continue;
+
+                probeX[probes] = x;
+                probeY[probes] = y;
+                probeHash[probes] = probeHash(current, from);
+                probes++;
+                break;
+            }
+        }
+        return probes;
+    }
+
+    /**
+     * Поиск зондов в прошлом кадре (в пределах изменившейся области) скользящим хешем
+     */
+    private void findProbes(int[] previous, int[] current, int width, int probes) {
+        Arrays.fill(probeMatches, 0, probes, 0);
+        int end = bounds.x + bounds.width;
+        if (end - bounds.x < PROBE_LENGTH) return;
+        int power = 1;
+        for (int i = 1; i < PROBE_LENGTH; i++) {
+            power *= PROBE_BASE;
+        }
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            int row = y * width;
+            int hash = probeHash(previous, row + bounds.x);
+            for (int x = bounds.x; ; x++) {
+                for (int p = 0; p < probes; p++) {
+                    if (hash != probeHash[p]) continue;
+                    int dx = probeX[p] - x;
+                    int dy = probeY[p] - y;
+                    if (dx == 0 && dy == 0) continue;
+                    int from = probeY[p] * width + probeX[p];
+                    if (!Arrays.equals(previous, row + x, row + x + PROBE_LENGTH,
+                            current, from, from + PROBE_LENGTH)) continue;
+                    // Зонд, найденный в нескольких местах, неоднозначен и не голосует
+                    probeMatches[p]++;
+                    probeDx[p] = dx;
+                    probeDy[p] = dy;
+                }
+                if (x + PROBE_LENGTH >= end) break;
+                hash = (hash - previous[row + x] * power) * PROBE_BASE + previous[row + x + PROBE_LENGTH];
+            }
+        }
+    }
+
+    private static int probeHash(int[] pixels, int from) {
+        int hash = 0;
+        for (int i = from; i < from + PROBE_LENGTH; i++) {
+            hash = hash * PROBE_BASE + pixels[i];
+        }
+        return hash;
+    }
+
+    private static boolean rowMatches(int[] previous, int[] current, int width, int y, int x0, int x1,
+                                      int dx, int dy) {
+        int from = y * width + x0;
+        int source = (y - dy) * width + x0 - dx;
+        return Arrays.equals(current, from, from + (x1 - x0), previous, source, source + (x1 - x0));
+    }
+
+    private static boolean columnMatches(int[] previous, int[] current, int width, int x, int y0, int y1,
+                                         int dx, int dy) {
+        for (int y = y0; y < y1; y++) {
+            if (current[y * width + x] != previous[(y - dy) * width + x - dx]) return false;
+        }
+        return true;
+    }
+
+    private boolean columnEquals(int[] previous, int[] current, int width, int previousX, int currentX) {
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            if (current[y * width + currentX] != previous[y * width + previousX]) return false;
+        }
+        return true;
+    }
+
+    /**
+     * Сдвиг, за который проголосовало больше всего изменившихся строк, или 0
+     */
+    private int bestShift(int lines) {
+        buildTable(lines);
+        Arrays.fill(votes, 0, 2 * lines, 0);
+        for (int i = 0; i < lines; i++) {
+            if (currentHashes[i] == previousHashes[i]) continue;
+            int source = lookup(currentHashes[i]);
+            if (source >= 0 && source != i) {
+                votes[i - source + lines]++;
+            }
+        }
+
+        int best = 0;
+        for (int shift = 1 - lines; shift < lines; shift++) {
+            if (votes[shift + lines] > votes[best + lines]) {
+                best = shift;
+            }
+        }
+        // Случайные совпадения отдельных строк за сдвиг не считаются
+        return votes[best + lines] >= Math.max(MIN_LINES / 2, lines / 16) ? best : 0;
+    }
+
+    private void buildTable(int lines) {
+        Arrays.fill(tableUsed, false);
+        int mask = tableKeys.length - 1;
+        for (int i = 0; i < lines; i++) {
+            int key = previousHashes[i];
+            int slot = mix(key) & mask;
+            while (tableUsed[slot] && tableKeys[slot] != key) {
+                slot = (slot + 1) & mask;
+            }
+            if (tableUsed[slot]) {
+                tableLines[slot] = -1;
+            } else {
+                tableUsed[slot] = true;
+                tableKeys[slot] = key;
+                tableLines[slot] = i;
+            }
+        }
+    }
+
+    private int lookup(int key) {
+        int mask = tableKeys.length - 1;
+        int slot = mix(key) & mask;
+        while (tableUsed[slot]) {
+            if (tableKeys[slot] == key) return tableLines[slot];
+            slot = (slot + 1) & mask;
+        }
+        return -1;
+    }
+
+    private static int mix(int key) {
+        return (key * 0x9E3779B1) ^ (key >>> 16);
+    }
+
+    private static int hash(int[] pixels, int from, int length) {
+        int hash = 1;
+        for (int i = from; i < from + length; i++) {
+            hash = 31 * hash + pixels[i];
+        }
+        return hash;
+    }
+
+    private void ensureCapacity(int lines) {
+        if (previousHashes.length < lines) {
+            previousHashes = new int[lines];
+            currentHashes = new int[lines];
+            votes = new int[2 * lines];
+            int table = Integer.highestOneBit(lines * 2 - 1) << 1;
+            tableKeys = new int[table];
+            tableLines = new int[table];
+            tableUsed = new boolean[table];
+        }
+    }
+}
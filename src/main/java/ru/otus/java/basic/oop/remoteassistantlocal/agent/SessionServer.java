@@ -0,0 +1,178 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+
+/**
+ * Неблокирующий сервер агента на одном Selector.
+ * Один поток принимает подключения, читает команды всех помощников
+ * и дописывает их буферы отправки, поэтому одновременно может работать
+ * несколько сессий (например, второй специалист наблюдает за работой первого).
+ * Кроме принятых подключений, сервер обслуживает и исходящие - к помощникам через
+ * сервер-посредник (см. adopt()).
+ */
+public class SessionServer implements AutoCloseable {
+
+    /**
+     * События жизненного цикла сессий
+     */
+    public interface Listener {
+        /**
+         * Подключился новый помощник (поток селектора)
+         *
+         * @return обработчик команд этого помощника
+         */
+        MessageHandler onOpen(ViewerSession session) throws IOException;
+
+        /**
+         * Сессия закрыта: помощник отключился, прислал DISCONNECT или произошла ошибка
+         */
+        void onClose(ViewerSession session);
+    }
+
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final Listener listener;
+    private final AgentMetrics metrics;
+    private final Set<ViewerSession> sessions = ConcurrentHashMap.newKeySet();
+    // Подключения через посредника, переданные из другого потока
+    private final Queue<SocketChannel> adopted = new ConcurrentLinkedQueue<>();
+    private volatile boolean running;
+
+    public SessionServer(int port, Listener listener, AgentMetrics metrics) throws IOException {
+        this.listener = listener;
+        this.metrics = metrics;
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        serverChannel.bind(new InetSocketAddress(port));
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Цикл обработки событий до вызова close()
+     */
+    public void run() throws IOException {
+        running = true;
+        try {
+            while (running) {
+                selector.select();
+                openAdopted();
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                    } else {
+                        handle(key, (ViewerSession) key.attachment());
+                    }
+                }
+            }
+        } finally {
+            for (ViewerSession session : new ArrayList<>(sessions)) {
+                session.close();
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    /**
+     * Текущие сессии
+     */
+    public List<ViewerSession> getSessions() {
+        return new ArrayList<>(sessions);
+    }
+
+    /**
+     * Сессия на уже установленном подключении (помощник пришел через посредника).
+     * Можно вызывать из любого потока: сессия откроется потоком селектора.
+     */
+    public void adopt(SocketChannel channel) {
+        adopted.add(channel);
+        selector.wakeup();
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        SocketChannel channel = serverChannel.accept();
+        if (channel == null) return;
+        open(channel, "");
+    }
+
+    private void openAdopted() {
+        SocketChannel channel;
+        while ((channel = adopted.poll()) != null) {
+            try {
+                open(channel, " через посредника");
+            } catch (IOException e) {
+                System.out.println("Ошибка открытия сессии через посредника: " + e.getMessage());
+                try {
+                    channel.close();
+                } catch (IOException ignored) {
+                    // уже закрыто
+                }
+            }
+        }
+    }
+
+    private void open(SocketChannel channel, String via) throws IOException {
+        channel.configureBlocking(false);
+        channel.socket().setTcpNoDelay(true);
+
+        ViewerSession session = new ViewerSession(channel, this::onSessionClosed, metrics);
+        session.attach(channel.register(selector, SelectionKey.OP_READ, session));
+        sessions.add(session);
+        System.out.println("Подключился помощник " + session + via + ", всего сессий: " + sessions.size());
+
+        try {
+            session.setHandler(listener.onOpen(session));
+        } catch (IOException e) {
+            System.out.println("Ошибка открытия сессии " + session + ": " + e.getMessage());
+            session.close();
+        }
+    }
+
+    private void handle(SelectionKey key, ViewerSession session) {
+        try {
+            if (key.isReadable() && !session.read()) {
+                session.close();
+                return;
+            }
+            if (key.isValid() && key.isWritable()) {
+                session.flush();
+            }
+        } catch (IOException e) {
+            System.out.println("Ошибка сессии " + session + ": " + e.getMessage());
+            session.close();
+        }
+    }
+
+    private void onSessionClosed(ViewerSession session) {
+        sessions.remove(session);
+        listener.onClose(session);
+        System.out.println("Сессия " + session + " закрыта, осталось сессий: " + sessions.size());
+    }
+}
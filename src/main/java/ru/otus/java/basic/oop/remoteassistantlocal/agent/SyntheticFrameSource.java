@@ -0,0 +1,402 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Random;
+
+/**
+ * Детерминированный синтетический экран для машин без дисплея (нагрузочные тесты, бенчмарки).
+ *
+ * Сценарий - последовательность фаз по framesPerPhase кадров, в каждой работает одно действие:
+ * набор текста в редакторе, прокрутка консоли, перетаскивание окна, видео в части экрана
+ * или простой (мигает только курсор). Состояние меняется на каждый вызов capture(),
+ * а не по времени, поэтому при одинаковых seed и размере N-й кадр всегда один и тот же,
+ * как бы быстро его ни забирали.
+ *
+ * Раскладка окон пропорциональна размеру экрана, так что сценарий работает в любом разрешении.
+ * Указатель тоже следует сценарию: стоит в редакторе при наборе, тянет окно за заголовок,
+ * а в простое бродит по экрану (меняется только указатель, кадры не нужны).
+ */
+public class SyntheticFrameSource implements FrameSource {
+
+    /**
+     * Действие пользователя в фазе сценария
+     */
+    public enum Activity {
+        /** Набор текста: меняется несколько символов за кадр */
+        TYPING,
+        /** Прокрутка консоли на строку за кадр: меняется все окно */
+        SCROLLING,
+        /** Перетаскивание окна по экрану */
+        DRAGGING,
+        /** Видео: область меняется целиком на каждом кадре */
+        VIDEO,
+        /** Ничего не происходит, кроме мигания курсора */
+        IDLE
+    }
+
+    public static final int DEFAULT_FRAMES_PER_PHASE = 100;
+    private static final int CARET_BLINK_FRAMES = 15;
+
+    private static final String TYPED_TEXT =
+            "Агент захватывает экран, делит кадр на плитки и отправляет помощнику только изменения.\n"
+            + "public int encode(BufferedImage image, float quality) throws IOException {\n"
+            + "    return JpegEncoder.forCurrentThread().encode(image, quality);\n"
+            + "}\n"
+            + "Remote assistance session: typing, scrolling, dragging windows and watching video.\n";
+
+    private static final String[] LOG_WORDS = {
+            "INFO", "DEBUG", "WARN", "session", "frame", "tile", "encode", "sent", "bytes",
+            "latency", "ms", "ok", "viewer", "agent", "connected", "quality=70", "fps=10"
+    };
+
+    private final int width;
+    private final int height;
+    private final int framesPerPhase;
+    private final Activity[] script;
+    private final Random random;
+
+    private final int[] background;
+    private final Font font;
+    private final int lineHeight;
+    private final int titleHeight;
+
+    private final Rectangle editor;
+    private final BufferedImage editorContent;
+    private int typedChars;
+    private int caretX;
+    private int caretY;
+
+    private final Rectangle terminal;
+    private final BufferedImage terminalContent;
+
+    private final Rectangle dialog;
+    private final BufferedImage dialogImage;
+    private int dragStep;
+
+    private final Rectangle video;
+    private final BufferedImage videoImage;
+    private int videoStep;
+
+    private long frame;
+    // Указатель для потока указателя агента, пересчитывается на каждый capture()
+    private volatile Pointer pointer;
+
+    private static final class Pointer {
+        final int x;
+        final int y;
+        final CursorShape shape;
+
+        Pointer(int x, int y, CursorShape shape) {
+            this.x = x;
+            this.y = y;
+            this.shape = shape;
+        }
+    }
+
+    public SyntheticFrameSource(int width, int height) {
+        this(width, height, 42, DEFAULT_FRAMES_PER_PHASE, Activity.values());
+    }
+
+    /**
+     * @param script фазы сценария по порядку; после последней сценарий начинается сначала
+     */
+    public SyntheticFrameSource(int width, int height, long seed, int framesPerPhase, Activity... script) {
+        if (width < 320 || height < 240) {
+            throw new IllegalArgumentException("Синтетический экран не меньше 320x240: " + width + "x" + height);
+        }
+        if (framesPerPhase < 1 || script.length == 0) {
+            throw new IllegalArgumentException("Сценарий должен содержать хотя бы одну фазу");
+        }
+        this.width = width;
+        this.height = height;
+        this.framesPerPhase = framesPerPhase;
+        this.script = script.clone();
+        this.random = new Random(seed);
+
+        double unit = height / 1080.0;
+        this.font = new Font(Font.MONOSPACED, Font.PLAIN, Math.max(8, (int) Math.round(14 * unit)));
+        this.titleHeight = Math.max(12, (int) Math.round(28 * unit));
+        int taskbar = Math.max(16, (int) Math.round(40 * unit));
+
+        this.background = drawBackground(taskbar);
+
+        this.editor = new Rectangle((int) (width * 0.03), (int) (height * 0.05),
+                (int) (width * 0.45), (int) (height * 0.6));
+        this.editorContent = new BufferedImage(editor.width, editor.height - titleHeight, BufferedImage.TYPE_INT_RGB);
+        fill(editorContent, Color.WHITE);
+        Graphics2D metrics = editorContent.createGraphics();
+        try {
+            this.lineHeight = metrics.getFontMetrics(font).getHeight();
+        } finally {
+            metrics.dispose();
+        }
+        caretX = lineHeight / 2;
+        caretY = lineHeight;
+
+        this.terminal = new Rectangle((int) (width * 0.52), (int) (height * 0.05),
+                (int) (width * 0.45), (int) (height * 0.6));
+        this.terminalContent = new BufferedImage(terminal.width, terminal.height - titleHeight,
+                BufferedImage.TYPE_INT_RGB);
+        fill(terminalContent, Color.BLACK);
+        for (int y = 0; y < terminalContent.getHeight(); y += lineHeight) {
+            scrollTerminal();
+        }
+
+        this.dialog = new Rectangle(0, 0, (int) (width * 0.25), (int) (height * 0.2));
+        this.dialogImage = drawDialog();
+        moveDialog();
+
+        int videoTop = editor.y + editor.height + titleHeight;
+        this.video = new Rectangle((int) (width * 0.03), videoTop,
+                (int) (width * 0.3), Math.max(16, height - taskbar - videoTop - (int) (height * 0.02)));
+        this.videoImage = new BufferedImage(video.width, video.height, BufferedImage.TYPE_INT_RGB);
+        renderVideo();
+        movePointer(getActivity());
+    }
+
+    @Override
+    public BufferedImage capture() {
+        Activity activity = getActivity();
+        switch (activity) {
+            case TYPING:
+                type(1 + random.nextInt(3));
+                break;
+            case SCROLLING:
+                scrollTerminal();
+                break;
+            case DRAGGING:
+                dragStep++;
+                moveDialog();
+                break;
+            case VIDEO:
+                videoStep++;
+                renderVideo();
+                break;
+            default:
+                break;
+        }
+        movePointer(activity);
+
+        BufferedImage image = compose();
+        frame++;
+        return image;
+    }
+
+    @Override
+    public boolean locatePointer(Point location) {
+        Pointer current = pointer;
+        location.setLocation(current.x, current.y);
+        return true;
+    }
+
+    @Override
+    public CursorShape getPointerShape() {
+        return pointer.shape;
+    }
+
+    @Override
+    public Dimension getSize() {
+        return new Dimension(width, height);
+    }
+
+    /**
+     * Действие следующего кадра
+     */
+    public Activity getActivity() {
+        return script[(int) ((frame / framesPerPhase) % script.length)];
+    }
+
+    /**
+     * Сколько кадров уже выдано
+     */
+    public long getFrameCount() {
+        return frame;
+    }
+
+    private BufferedImage compose() {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        System.arraycopy(background, 0, pixels, 0, background.length);
+
+        Graphics2D g = image.createGraphics();
+        try {
+            drawWindow(g, editor, "Редактор", editorContent);
+            if ((frame / CARET_BLINK_FRAMES) % 2 == 0) {
+                g.setColor(Color.BLACK);
+                g.fillRect(editor.x + caretX, editor.y + titleHeight + caretY - lineHeight + 3,
+                        Math.max(1, lineHeight / 10), lineHeight - 2);
+            }
+            drawWindow(g, terminal, "Консоль", terminalContent);
+            g.drawImage(videoImage, video.x, video.y, null);
+            g.drawImage(dialogImage, dialog.x, dialog.y, null);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private void drawWindow(Graphics2D g, Rectangle window, String title, BufferedImage content) {
+        g.setColor(new Color(0x2B579A));
+        g.fillRect(window.x, window.y, window.width, titleHeight);
+        g.setColor(Color.WHITE);
+        g.setFont(font);
+        g.drawString(title, window.x + titleHeight / 2, window.y + titleHeight * 2 / 3);
+        g.drawImage(content, window.x, window.y + titleHeight, null);
+    }
+
+    private void type(int count) {
+        Graphics2D g = editorContent.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setFont(font);
+            g.setColor(Color.BLACK);
+            FontMetrics metrics = g.getFontMetrics();
+            for (int i = 0; i < count; i++) {
+                char c = TYPED_TEXT.charAt(typedChars++ % TYPED_TEXT.length());
+                if (c == '\n' || caretX + metrics.charWidth(c) > editorContent.getWidth() - lineHeight / 2) {
+                    caretX = lineHeight / 2;
+                    caretY += lineHeight;
+                    if (caretY > editorContent.getHeight()) {
+                        // Страница заполнена - начинаем новую
+                        g.setColor(Color.WHITE);
+                        g.fillRect(0, 0, editorContent.getWidth(), editorContent.getHeight());
+                        g.setColor(Color.BLACK);
+                        caretY = lineHeight;
+                    }
+                    if (c == '\n') continue;
+                }
+                g.drawString(String.valueOf(c), caretX, caretY);
+                caretX += metrics.charWidth(c);
+            }
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private void scrollTerminal() {
+        int w = terminalContent.getWidth();
+        int h = terminalContent.getHeight();
+        Graphics2D g = terminalContent.createGraphics();
+        try {
+            g.copyArea(0, lineHeight, w, h - lineHeight, 0, -lineHeight);
+            g.setColor(Color.BLACK);
+            g.fillRect(0, h - lineHeight, w, lineHeight);
+
+            StringBuilder line = new StringBuilder();
+            line.append(String.format("%06d ", frame));
+            int words = 3 + random.nextInt(8);
+            for (int i = 0; i < words; i++) {
+                line.append(LOG_WORDS[random.nextInt(LOG_WORDS.length)]).append(' ');
+            }
+            g.setFont(font);
+            g.setColor(random.nextInt(6) == 0 ? new Color(0xE0C040) : new Color(0x40D040));
+            g.drawString(line.toString(), lineHeight / 2, h - lineHeight / 4);
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private void movePointer(Activity activity) {
+        switch (activity) {
+            case TYPING:
+                pointer = new Pointer(editor.x + editor.width * 2 / 3, editor.y + editor.height / 2, CursorShape.TEXT);
+                break;
+            case SCROLLING:
+                pointer = new Pointer(terminal.x + terminal.width - lineHeight, terminal.y + terminal.height / 2,
+                        CursorShape.ARROW);
+                break;
+            case DRAGGING:
+                // Окно тянут за заголовок
+                pointer = new Pointer(dialog.x + dialog.width / 3, dialog.y + titleHeight / 2, CursorShape.ARROW);
+                break;
+            case VIDEO:
+                pointer = new Pointer(video.x + video.width / 2, video.y + video.height / 2, CursorShape.ARROW);
+                break;
+            default:
+                pointer = new Pointer((int) (width * (0.5 + 0.3 * Math.sin(frame * 0.11))),
+                        (int) (height * (0.5 + 0.3 * Math.sin(frame * 0.13))), CursorShape.ARROW);
+                break;
+        }
+    }
+
+    private void moveDialog() {
+        dialog.x = (int) ((width - dialog.width) * (0.5 + 0.4 * Math.sin(dragStep * 0.05)));
+        dialog.y = (int) ((height - dialog.height) * (0.5 + 0.4 * Math.sin(dragStep * 0.07)));
+    }
+
+    private void renderVideo() {
+        int[] pixels = ((DataBufferInt) videoImage.getRaster().getDataBuffer()).getData();
+        int w = videoImage.getWidth();
+        int h = videoImage.getHeight();
+        double t = videoStep * 0.15;
+        for (int y = 0; y < h; y++) {
+            double wave = Math.sin(y * 0.02 + t);
+            for (int x = 0; x < w; x++) {
+                double v = Math.sin(x * 0.015 + t * 1.3 + wave * 2);
+                int grain = random.nextInt(16) - 8;
+                int r = clamp((int) (110 + 70 * v) + grain);
+                int g = clamp((int) (100 + 60 * wave) + grain);
+                int b = clamp((int) (130 + 60 * Math.cos(x * 0.01 - t)) + grain);
+                pixels[y * w + x] = (r << 16) | (g << 8) | b;
+            }
+        }
+    }
+
+    private int[] drawBackground(int taskbar) {
+        BufferedImage image = new BufferedImage(width, height, BufferedImage.TYPE_INT_RGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setPaint(new GradientPaint(0, 0, new Color(0x1E3C72), width, height, new Color(0x7AA1D2)));
+            g.fillRect(0, 0, width, height);
+            g.setColor(new Color(0x202020));
+            g.fillRect(0, height - taskbar, width, taskbar);
+        } finally {
+            g.dispose();
+        }
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+
+    private BufferedImage drawDialog() {
+        BufferedImage image = new BufferedImage(dialog.width, dialog.height, BufferedImage.TYPE_INT_RGB);
+        fill(image, new Color(0xECECEC));
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            g.setColor(new Color(0x3C3C3C));
+            g.fillRect(0, 0, dialog.width, titleHeight);
+            g.setFont(font);
+            g.setColor(Color.WHITE);
+            g.drawString("Копирование файлов", titleHeight / 2, titleHeight * 2 / 3);
+            g.setColor(Color.BLACK);
+            g.drawString("Осталось: 42 файла, 1,3 ГБ", titleHeight / 2, titleHeight + lineHeight * 2);
+            g.setColor(new Color(0x3C7FB1));
+            g.fillRect(titleHeight / 2, titleHeight + lineHeight * 3, dialog.width * 2 / 3, lineHeight);
+            g.setColor(new Color(0xCCCCCC));
+            g.fillRect(dialog.width - titleHeight * 4, dialog.height - titleHeight * 3 / 2,
+                    titleHeight * 3, titleHeight);
+            g.setColor(Color.BLACK);
+            g.drawString("Отмена", dialog.width - titleHeight * 4 + titleHeight / 2, dialog.height - titleHeight * 2 / 3);
+        } finally {
+            g.dispose();
+        }
+        return image;
+    }
+
+    private static void fill(BufferedImage image, Color color) {
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(color);
+            g.fillRect(0, 0, image.getWidth(), image.getHeight());
+        } finally {
+            g.dispose();
+        }
+    }
+
+    private static int clamp(int value) {
+        return Math.max(0, Math.min(255, value));
+    }
+}
@@ -0,0 +1,232 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CopyRect;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Поиск изменившихся участков экрана.
+ * Кадр делится на сетку плиток, каждая плитка сравнивается с предыдущим кадром.
+ * Соседние изменившиеся плитки одной строки сетки объединяются в один прямоугольник,
+ * чтобы не плодить мелкие JPEG с собственными заголовками.
+ *
+ * Если включен поиск сдвигов (ScrollDetector), для изменившейся части ищется прокрутка
+ * или перемещение окна. Найденное копирование доступно через getCopy(), а плитки,
+ * которые остаются изменившимися после него (открывшаяся полоса), - через getResidualChanges().
+ */
+public class TileChangeDetector {
+    // Если изменилась большая часть экрана, дешевле отправить кадр целиком
+    static final double FULL_FRAME_RATIO = 0.6;
+
+    private final int tileSize;
+    private final ScrollDetector scrollDetector;
+    private final CopyRect copy = new CopyRect();
+    private boolean copyFound;
+    private final List<Rectangle> residual = new ArrayList<>();
+    private int[] previous;
+    private int width;
+    private int height;
+    private volatile boolean forceFullFrame = true;
+
+    // Изменившиеся плитки текущего кадра: x, y, ширина, высота подряд
+    private int[] changedTiles = new int[0];
+
+    public TileChangeDetector(int tileSize) {
+        this(tileSize, false);
+    }
+
+    /**
+     * @param detectScroll искать ли прокрутку и перемещение окон
+     */
+    public TileChangeDetector(int tileSize, boolean detectScroll) {
+        this.tileSize = tileSize;
+        this.scrollDetector = detectScroll ? new ScrollDetector() : null;
+    }
+
+    /**
+     * Сравнение кадра с предыдущим.
+     * Кадр должен быть типа TYPE_INT_RGB.
+     *
+     * @return список изменившихся областей (пустой, если экран не изменился)
+     */
+    public List<Rectangle> detectChanges(BufferedImage frame) {
+        int[] current = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        int w = frame.getWidth();
+        int h = frame.getHeight();
+        copyFound = false;
+        residual.clear();
+
+        if (forceFullFrame || previous == null || w != width || h != height) {
+            forceFullFrame = false;
+            width = w;
+            height = h;
+            previous = current.clone();
+            return fullFrame();
+        }
+
+        int totalTiles = ((width + tileSize - 1) / tileSize) * ((height + tileSize - 1) / tileSize);
+        if (changedTiles.length < totalTiles * 4) {
+            changedTiles = new int[totalTiles * 4];
+        }
+
+        // Сначала только поиск: прошлый кадр еще нужен для поиска сдвига
+        int changed = 0;
+        int minX = width;
+        int minY = height;
+        int maxX = 0;
+        int maxY = 0;
+        for (int ty = 0; ty < height; ty += tileSize) {
+            int th = Math.min(tileSize, height - ty);
+            for (int tx = 0; tx < width; tx += tileSize) {
+                int tw = Math.min(tileSize, width - tx);
+                if (tileChanged(current, tx, ty, tw, th)) {
+                    int i = changed++ * 4;
+                    changedTiles[i] = tx;
+                    changedTiles[i + 1] = ty;
+                    changedTiles[i + 2] = tw;
+                    changedTiles[i + 3] = th;
+                    minX = Math.min(minX, tx);
+                    minY = Math.min(minY, ty);
+                    maxX = Math.max(maxX, tx + tw);
+                    maxY = Math.max(maxY, ty + th);
+                }
+            }
+        }
+
+        if (scrollDetector != null && changed > 0) {
+            Rectangle bounds = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+            copyFound = scrollDetector.detect(previous, current, width, bounds, copy);
+            if (copyFound) {
+                collectRuns(current, changed, true, residual);
+                if (residual.size() > 0 && countTiles(residual) > totalTiles * FULL_FRAME_RATIO) {
+                    residual.clear();
+                    residual.addAll(fullFrame());
+                }
+            }
+        }
+
+        List<Rectangle> changes = new ArrayList<>();
+        collectRuns(current, changed, false, changes);
+        for (int i = 0; i < changed; i++) {
+            copyTile(current, changedTiles[i * 4], changedTiles[i * 4 + 1], changedTiles[i * 4 + 2], changedTiles[i * 4 + 3]);
+        }
+
+        if (changed > totalTiles * FULL_FRAME_RATIO) {
+            return fullFrame();
+        }
+        return changes;
+    }
+
+    /**
+     * Копирование (прокрутка, перемещение окна), найденное в последнем кадре, или null
+     */
+    public CopyRect getCopy() {
+        return copyFound ? copy : null;
+    }
+
+    /**
+     * Области, изменившиеся в последнем кадре после применения getCopy();
+     * имеет смысл, только если копирование найдено
+     */
+    public List<Rectangle> getResidualChanges() {
+        return residual;
+    }
+
+    /**
+     * Следующий кадр будет отправлен целиком (новое качество, новый клиент и т.п.)
+     */
+    public void reset() {
+        forceFullFrame = true;
+    }
+
+    public int getTileSize() {
+        return tileSize;
+    }
+
+    private List<Rectangle> fullFrame() {
+        List<Rectangle> changes = new ArrayList<>(1);
+        changes.add(new Rectangle(0, 0, width, height));
+        return changes;
+    }
+
+    /**
+     * Объединение соседних изменившихся плиток строки сетки в прямоугольники
+     *
+     * @param afterCopy пропускать плитки, которые полностью восстанавливает копирование
+     */
+    private void collectRuns(int[] current, int changed, boolean afterCopy, List<Rectangle> result) {
+        Rectangle run = null;
+        for (int i = 0; i < changed; i++) {
+            int tx = changedTiles[i * 4];
+            int ty = changedTiles[i * 4 + 1];
+            int tw = changedTiles[i * 4 + 2];
+            int th = changedTiles[i * 4 + 3];
+            if (afterCopy && !tileChangedAfterCopy(current, tx, ty, tw, th)) continue;
+
+            if (run != null && run.y == ty && run.x + run.width == tx) {
+                run.width += tw;
+            } else {
+                run = new Rectangle(tx, ty, tw, th);
+                result.add(run);
+            }
+        }
+    }
+
+    private int countTiles(List<Rectangle> regions) {
+        int tiles = 0;
+        for (Rectangle r : regions) {
+            tiles += (r.width + tileSize - 1) / tileSize;
+        }
+        return tiles;
+    }
+
+    private boolean tileChanged(int[] current, int x, int y, int w, int h) {
+        for (int row = y; row < y + h; row++) {
+            int from = row * width + x;
+            if (!Arrays.equals(current, from, from + w, previous, from, from + w)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Отличается ли плитка от прошлого кадра, к которому применено копирование
+     */
+    private boolean tileChangedAfterCopy(int[] current, int x, int y, int w, int h) {
+        Rectangle target = copy.target;
+        int left = Math.max(x, target.x);
+        int right = Math.min(x + w, target.x + target.width);
+        for (int row = y; row < y + h; row++) {
+            int from = row * width + x;
+            int to = from + w;
+            if (left >= right || row < target.y || row >= target.y + target.height) {
+                if (!Arrays.equals(current, from, to, previous, from, to)) return true;
+                continue;
+            }
+
+            // Часть строки внутри цели копирования сравнивается с источником
+            int start = row * width + left;
+            int end = row * width + right;
+            int source = (row - copy.getDy()) * width + left - copy.getDx();
+            if (!Arrays.equals(current, from, start, previous, from, start)
+                    || !Arrays.equals(current, start, end, previous, source, source + (end - start))
+                    || !Arrays.equals(current, end, to, previous, end, to)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private void copyTile(int[] current, int x, int y, int w, int h) {
+        for (int row = y; row < y + h; row++) {
+            int from = row * width + x;
+            System.arraycopy(current, from, previous, from, w);
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolDecoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.io.IOException;
+import java.net.StandardSocketOptions;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.SocketChannel;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Consumer;
+
+/**
+ * Сессия одного помощника на неблокирующем SocketChannel.
+ * У каждой сессии свой буфер отправки: данные сначала пишутся в сокет сразу,
+ * а то, что не поместилось, остается в буфере и дописывается потоком селектора
+ * по готовности сокета (OP_WRITE). Поэтому медленный помощник никого не блокирует.
+ *
+ * Кадры не накапливаются и не копируются: сессия держит ссылку не больше чем
+ * на один общий EncodedFrame. Пока он не ушел целиком, новый кадр не принимается,
+ * и медленный помощник просто получает меньше кадров.
+ *
+ * По тому, как кадры уходят в сокет, сессия оценивает канал (BandwidthEstimator).
+ * Для этого буфер отправки сокета можно ограничить (fitSendBuffer): иначе ОС наращивает
+ * его до мегабайт, очередь на медленном канале копится в ядре, и агент ее не видит.
+ */
+public class ViewerSession {
+    private static final int INITIAL_OUTBOX_CAPACITY = 64 * 1024;
+    private static final AtomicInteger NEXT_ID = new AtomicInteger(1);
+
+    private final int id = NEXT_ID.getAndIncrement();
+    private final SocketChannel channel;
+    private final String remoteAddress;
+    private final Consumer<ViewerSession> closeListener;
+    private final AgentMetrics metrics;
+    private final ProtocolDecoder decoder = new ProtocolDecoder(4096);
+    private final AtomicBoolean open = new AtomicBoolean(true);
+    private final BandwidthEstimator bandwidth = new BandwidthEstimator();
+
+    private SelectionKey key;
+    private volatile MessageHandler handler;
+
+    // Неотправленные служебные сообщения (режим записи: от 0 до position)
+    private ByteBuffer outbox = ByteBuffer.allocate(INITIAL_OUTBOX_CAPACITY);
+    // Кадр в процессе отправки и его представление
+    private EncodedFrame frame;
+    private ByteBuffer frameView;
+    private long frameOfferedNanos;
+    // Сколько байт кадра ушло сразу и когда сокет оказался полон; -1 - кадр ушел без ожидания
+    private int frameFirstWrite = -1;
+    private long frameStallNanos;
+    // Установленный размер буфера отправки сокета; 0 - выбирает ОС
+    private int sendBufferSize;
+    private long droppedFrames;
+    private volatile long readStartNanos;
+
+    /**
+     * @param closeListener вызывается один раз при закрытии сессии
+     */
+    public ViewerSession(SocketChannel channel, Consumer<ViewerSession> closeListener,
+                         AgentMetrics metrics) throws IOException {
+        this.channel = channel;
+        this.remoteAddress = String.valueOf(channel.getRemoteAddress());
+        this.closeListener = closeListener;
+        this.metrics = metrics;
+    }
+
+    void attach(SelectionKey key) {
+        this.key = key;
+    }
+
+    void setHandler(MessageHandler handler) {
+        this.handler = handler;
+    }
+
+    /**
+     * Обработчик команд, назначенный при открытии сессии
+     */
+    public MessageHandler getHandler() {
+        return handler;
+    }
+
+    /**
+     * Чтение и выполнение команд помощника (поток селектора)
+     *
+     * @return false, если помощник закрыл соединение
+     */
+    boolean read() throws IOException {
+        readStartNanos = System.nanoTime();
+        return decoder.read(channel, handler) >= 0;
+    }
+
+    /**
+     * Момент последнего чтения из сокета: от него считается задержка выполнения команд
+     */
+    public long getReadStartNanos() {
+        return readStartNanos;
+    }
+
+    /**
+     * Дописывание буфера отправки по готовности сокета (поток селектора)
+     */
+    synchronized void flush() throws IOException {
+        // Начатый кадр дописывается первым, чтобы сообщения не перемешались
+        if (frameView != null && frameView.position() > 0 && !writeFrame()) return;
+
+        if (outbox.position() > 0) {
+            outbox.flip();
+            try {
+                channel.write(outbox);
+            } finally {
+                outbox.compact();
+            }
+            if (outbox.position() > 0) return;
+        }
+
+        if (frameView != null && !writeFrame()) return;
+
+        if (key.isValid()) {
+            key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        }
+    }
+
+    /**
+     * Отправка сообщений, накопленных в encoder, которые нельзя пропускать.
+     * Буфер encoder очищается.
+     */
+    public synchronized void send(ProtocolEncoder encoder) throws IOException {
+        ByteBuffer message = encoder.buffer().flip();
+        try {
+            enqueue(message);
+        } finally {
+            encoder.clear();
+        }
+    }
+
+    /**
+     * Отправка общего кадра, если помощник успел принять предыдущие данные.
+     * Сессия берет на кадр собственную ссылку и освобождает ее после отправки.
+     *
+     * @return false, если кадр пропущен
+     */
+    public synchronized boolean offerFrame(EncodedFrame encoded) throws IOException {
+        if (!open.get()) {
+            throw new IOException("Сессия " + this + " закрыта");
+        }
+        if (isBacklogged()) {
+            droppedFrames++;
+            return false;
+        }
+
+        encoded.retain();
+        frame = encoded;
+        frameView = encoded.view();
+        frameOfferedNanos = System.nanoTime();
+        frameFirstWrite = -1;
+        if (!writeFrame()) {
+            frameFirstWrite = frameView.position();
+            frameStallNanos = System.nanoTime();
+            key.interestOpsOr(SelectionKey.OP_WRITE);
+            key.selector().wakeup();
+        }
+        return true;
+    }
+
+    /**
+     * Есть ли еще не отправленные помощнику данные
+     */
+    public synchronized boolean isBacklogged() {
+        return outbox.position() > 0 || frame != null;
+    }
+
+    /**
+     * Сколько наносекунд ждет отправки текущий кадр; 0 - кадра в отправке нет
+     */
+    public synchronized long getFrameBacklogNanos() {
+        return frame != null ? System.nanoTime() - frameOfferedNanos : 0;
+    }
+
+    /**
+     * Ограничение буфера отправки сокета примерно до size байт. Мелкие изменения
+     * (меньше четверти) не применяются, чтобы не дергать сокет на каждом шаге оценки.
+     */
+    void fitSendBuffer(int size) {
+        int current = sendBufferSize;
+        if (current != 0 && Math.abs(size - current) < current / 4) return;
+        try {
+            channel.setOption(StandardSocketOptions.SO_SNDBUF, size);
+            sendBufferSize = size;
+        } catch (IOException | UnsupportedOperationException e) {
+            // сокет закрыт или ОС не дает менять буфер - остается как есть
+        }
+    }
+
+    /**
+     * Оценка канала до помощника
+     */
+    BandwidthEstimator getBandwidth() {
+        return bandwidth;
+    }
+
+    /**
+     * Ждут ли отправки служебные сообщения (кадр в процессе отправки не считается)
+     */
+    public synchronized boolean hasQueuedMessages() {
+        return outbox.position() > 0;
+    }
+
+    public boolean isOpen() {
+        return open.get();
+    }
+
+    /**
+     * Закрытие сессии. Можно вызывать из любого потока и несколько раз.
+     */
+    public void close() {
+        if (!open.compareAndSet(true, false)) return;
+
+        if (key != null) {
+            key.cancel();
+        }
+        try {
+            channel.close();
+        } catch (IOException e) {
+            e.printStackTrace();
+        }
+        synchronized (this) {
+            releaseFrame();
+        }
+        closeListener.accept(this);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getRemoteAddress() {
+        return remoteAddress;
+    }
+
+    /**
+     * Кадры, пропущенные из-за того, что помощник не успевал их принимать
+     */
+    public synchronized long getDroppedFrames() {
+        return droppedFrames;
+    }
+
+    @Override
+    public String toString() {
+        return "#" + id + " " + remoteAddress;
+    }
+
+    /**
+     * @return true, если кадр ушел целиком
+     */
+    private boolean writeFrame() throws IOException {
+        channel.write(frameView);
+        if (frameView.hasRemaining()) return false;
+
+        long now = System.nanoTime();
+        int size = frameView.limit();
+        if (frameFirstWrite >= 0) {
+            bandwidth.onFrameSent(size, now - frameOfferedNanos, size - frameFirstWrite, now - frameStallNanos);
+        } else {
+            bandwidth.onFrameSent(size, now - frameOfferedNanos, 0, 0);
+        }
+        metrics.send.recordSince(frameOfferedNanos);
+        metrics.framesSent.incrementAndGet();
+        metrics.bytesSent.addAndGet(frameView.limit());
+        releaseFrame();
+        return true;
+    }
+
+    private void releaseFrame() {
+        if (frame != null) {
+            frame.release();
+            frame = null;
+            frameView = null;
+        }
+    }
+
+    private void enqueue(ByteBuffer message) throws IOException {
+        if (!open.get()) {
+            throw new IOException("Сессия " + this + " закрыта");
+        }
+
+        // Пока ничего не ждет отправки, пишем прямо в сокет, не дожидаясь селектора
+        if (!isBacklogged()) {
+            channel.write(message);
+            if (!message.hasRemaining()) return;
+        }
+
+        if (outbox.remaining() < message.remaining()) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(outbox.capacity() * 2, outbox.position() + message.remaining()));
+            outbox.flip();
+            grown.put(outbox);
+            outbox = grown;
+        }
+        outbox.put(message);
+
+        key.interestOpsOr(SelectionKey.OP_WRITE);
+        key.selector().wakeup();
+    }
+}
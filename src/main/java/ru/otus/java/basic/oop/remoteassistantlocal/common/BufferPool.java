@@ -0,0 +1,60 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Небольшой пул переиспользуемых буферов.
+ * Число буферов фиксировано: если все заняты, acquire() ждет возврата,
+ * что заодно ограничивает, насколько прием может опередить обработку.
+ * Буфер, которому не хватает емкости, заменяется большим и дальше живет в пуле.
+ */
+public class BufferPool {
+    private final BlockingQueue<ByteBuffer> free;
+    private final boolean direct;
+    private final AtomicLong allocations = new AtomicLong();
+
+    public BufferPool(int count, int initialCapacity, boolean direct) {
+        this.free = new ArrayBlockingQueue<>(count);
+        this.direct = direct;
+        for (int i = 0; i < count; i++) {
+            free.add(allocate(initialCapacity));
+        }
+    }
+
+    /**
+     * Получение буфера емкостью не меньше minCapacity.
+     * Буфер очищен, limit установлен в minCapacity.
+     */
+    public ByteBuffer acquire(int minCapacity) throws InterruptedException {
+        ByteBuffer buffer = free.take();
+        if (buffer.capacity() < minCapacity) {
+            buffer = allocate(Math.max(minCapacity, buffer.capacity() * 2));
+        }
+        buffer.clear();
+        buffer.limit(minCapacity);
+        return buffer;
+    }
+
+    /**
+     * Возврат буфера в пул после обработки
+     */
+    public void release(ByteBuffer buffer) {
+        free.offer(buffer);
+    }
+
+    /**
+     * Сколько буферов создано за все время (включая начальные).
+     * В установившемся режиме значение не растет.
+     */
+    public long getAllocations() {
+        return allocations.get();
+    }
+
+    private ByteBuffer allocate(int capacity) {
+        allocations.incrementAndGet();
+        return direct ? ByteBuffer.allocateDirect(capacity) : ByteBuffer.allocate(capacity);
+    }
+}
@@ -0,0 +1,99 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import javax.imageio.stream.ImageOutputStreamImpl;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * ImageOutputStream поверх растущего массива байт.
+ * Массив не пересоздается между кадрами: после reset() запись начинается заново
+ * в тот же буфер, поэтому в установившемся режиме кодирование не создает мусора.
+ */
+public class ByteArrayImageOutputStream extends ImageOutputStreamImpl {
+    private byte[] buf;
+    private int count;
+
+    public ByteArrayImageOutputStream(int initialCapacity) {
+        this.buf = new byte[initialCapacity];
+    }
+
+    /**
+     * Подготовка к записи нового изображения в тот же буфер
+     */
+    public void reset() {
+        count = 0;
+        streamPos = 0;
+        flushedPos = 0;
+        bitOffset = 0;
+    }
+
+    /**
+     * Внутренний массив; действительны первые size() байт
+     */
+    public byte[] getBuffer() {
+        return buf;
+    }
+
+    public int size() {
+        return count;
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        out.write(buf, 0, count);
+    }
+
+    public void writeTo(ByteBuffer dst) {
+        dst.put(buf, 0, count);
+    }
+
+    @Override
+    public void write(int b) throws IOException {
+        flushBits();
+        ensureCapacity((int) streamPos + 1);
+        buf[(int) streamPos++] = (byte) b;
+        count = Math.max(count, (int) streamPos);
+    }
+
+    @Override
+    public void write(byte[] b, int off, int len) throws IOException {
+        flushBits();
+        ensureCapacity((int) streamPos + len);
+        System.arraycopy(b, off, buf, (int) streamPos, len);
+        streamPos += len;
+        count = Math.max(count, (int) streamPos);
+    }
+
+    @Override
+    public int read() throws IOException {
+        bitOffset = 0;
+        if (streamPos >= count) {
+            return -1;
+        }
+        return buf[(int) streamPos++] & 0xFF;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) throws IOException {
+        bitOffset = 0;
+        if (streamPos >= count) {
+            return -1;
+        }
+        int n = Math.min(len, count - (int) streamPos);
+        System.arraycopy(buf, (int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return count;
+    }
+
+    private void ensureCapacity(int capacity) {
+        if (capacity > buf.length) {
+            buf = Arrays.copyOf(buf, Math.max(capacity, buf.length * 2));
+        }
+    }
+}
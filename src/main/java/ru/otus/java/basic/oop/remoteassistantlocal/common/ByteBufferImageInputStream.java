@@ -0,0 +1,51 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import javax.imageio.stream.ImageInputStreamImpl;
+import java.nio.ByteBuffer;
+
+/**
+ * ImageInputStream поверх участка ByteBuffer (в том числе direct) без копирования данных.
+ * В отличие от ImageIO.createImageInputStream не заводит кеш в памяти или во временном файле.
+ * Позиция исходного буфера не меняется. Экземпляр переиспользуется через reset().
+ */
+public class ByteBufferImageInputStream extends ImageInputStreamImpl {
+    private ByteBuffer source;
+    private int offset;
+    private int length;
+
+    /**
+     * Чтение length байт буфера начиная с абсолютной позиции offset
+     */
+    public ByteBufferImageInputStream reset(ByteBuffer source, int offset, int length) {
+        this.source = source;
+        this.offset = offset;
+        this.length = length;
+        streamPos = 0;
+        flushedPos = 0;
+        bitOffset = 0;
+        return this;
+    }
+
+    @Override
+    public int read() {
+        bitOffset = 0;
+        return streamPos < length ? source.get(offset + (int) streamPos++) & 0xFF : -1;
+    }
+
+    @Override
+    public int read(byte[] b, int off, int len) {
+        bitOffset = 0;
+        if (len == 0) return 0;
+        if (streamPos >= length) return -1;
+
+        int n = (int) Math.min(len, length - streamPos);
+        source.get(offset + (int) streamPos, b, off, n);
+        streamPos += n;
+        return n;
+    }
+
+    @Override
+    public long length() {
+        return length;
+    }
+}
@@ -9,41 +9,91 @@ import java.io.Serializable;
 public class Command implements Serializable {
     private static final long serialVersionUID = 1L;
 
+    /**
+     * Тип команды. Код типа и размер данных определяют формат в двоичном протоколе,
+     * поэтому коды существующих типов менять нельзя.
+     * VARIABLE - данные произвольной длины (кадр или строка UTF-8).
+     */
     public enum Type {
         // Команды мыши
-        MOUSE_MOVE,
-        MOUSE_PRESS,
-        MOUSE_RELEASE,
-        MOUSE_CLICK,
-        MOUSE_DRAG,
-        MOUSE_WHEEL,
+        MOUSE_MOVE(1, 8),          // x, y
+        MOUSE_PRESS(2, 12),        // x, y, кнопка
+        MOUSE_RELEASE(3, 12),      // x, y, кнопка
+        MOUSE_CLICK(4, 16),        // x, y, кнопка, число кликов
+        MOUSE_DRAG(5, 16),         // x, y, предыдущие x, y
+        MOUSE_WHEEL(6, 12),        // x, y, щелчки колеса (как в AWT)
 
         // Команды клавиатуры
-        KEY_PRESS,
-        KEY_RELEASE,
-        KEY_TYPED,
+        KEY_PRESS(10, 4),          // код клавиши
+        KEY_RELEASE(11, 4),
+        KEY_TYPED(12, 4),
 
         // Команды системы
-        SCREENSHOT_REQUEST,
-        SCREENSHOT_RESPONSE,
-        SYSTEM_INFO,
-        FILE_TRANSFER,
-        DISCONNECT,
+        SCREENSHOT_REQUEST(20, 0),
+        SCREENSHOT_RESPONSE(21, VARIABLE),  // кадр, см. Protocol
+        SYSTEM_INFO(22, VARIABLE),
+        FILE_TRANSFER(23, VARIABLE),
+        DISCONNECT(24, 0),
+        PING(25, 12),              // номер, время отправки помощника (мкс)
+        PONG(26, 28),              // номер, время помощника из PING, время приема и ответа агента (мкс)
+        CURSOR_POSITION(27, 12),   // x, y указателя агента, номер формы (0 - указатель скрыт)
+        CURSOR_SHAPE(28, VARIABLE), // форма указателя, см. CursorShape
 
         // Команды управления
-        SET_QUALITY,
-        SET_FPS,
-        START_STREAM,
-        STOP_STREAM,
+        SET_QUALITY(30, 4),        // качество, %
+        SET_FPS(31, 4),            // кадров в секунду
+        START_STREAM(32, 0),
+        STOP_STREAM(33, 0),
+        SET_TRANSPORT(34, 4),      // режим передачи кадров (Protocol.TRANSPORT_*), агент отвечает выбранным
+        SET_ADAPTIVE(35, 4),       // наименьший масштаб, %; 0 - без подстройки под канал. Агент отвечает принятым
+        STREAM_STATE(36, 12),      // качество, частота кадров и масштаб (%), выбранные агентом под канал
 
         // Команды чата
-        CHAT_MESSAGE,
+        CHAT_MESSAGE(40, VARIABLE),
 
         // Команды авторизации
-        AUTH_REQUEST,
-        AUTH_RESPONSE
+        AUTH_REQUEST(50, VARIABLE),
+        AUTH_RESPONSE(51, VARIABLE);
+
+        private static final Type[] BY_CODE = new Type[128];
+
+        static {
+            for (Type type : values()) {
+                BY_CODE[type.code] = type;
+            }
+        }
+
+        private final byte code;
+        private final int payloadSize;
+
+        Type(int code, int payloadSize) {
+            this.code = (byte) code;
+            this.payloadSize = payloadSize;
+        }
+
+        public byte getCode() {
+            return code;
+        }
+
+        /**
+         * Размер данных в байтах или VARIABLE
+         */
+        public int getPayloadSize() {
+            return payloadSize;
+        }
+
+        /**
+         * Тип по коду из протокола
+         *
+         * @return тип или null для неизвестного кода
+         */
+        public static Type fromCode(byte code) {
+            return code >= 0 ? BY_CODE[code] : null;
+        }
     }
 
+    public static final int VARIABLE = -1;
+
     private Type type;
     private Object data;
     private long timestamp;
@@ -0,0 +1,66 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.awt.*;
+import java.nio.ByteBuffer;
+
+/**
+ * Копирование области экрана на новое место (Protocol.CODEC_COPY): прокрутка или
+ * перемещение окна передаются как "скопировать область отсюда туда", а не как новые пиксели.
+ */
+public class CopyRect {
+    // Данные плитки CODEC_COPY: short x, short y источника
+    public static final int DATA_SIZE = 4;
+
+    // Куда копировать (размер области совпадает с источником)
+    public final Rectangle target = new Rectangle();
+    public int sourceX;
+    public int sourceY;
+
+    public void set(int sourceX, int sourceY, int targetX, int targetY, int width, int height) {
+        this.sourceX = sourceX;
+        this.sourceY = sourceY;
+        target.setBounds(targetX, targetY, width, height);
+    }
+
+    public int getDx() {
+        return target.x - sourceX;
+    }
+
+    public int getDy() {
+        return target.y - sourceY;
+    }
+
+    /**
+     * Плитка CODEC_COPY в сообщении кадра: область плитки - цель, данные - координаты источника
+     */
+    public void writeTile(ProtocolEncoder encoder) {
+        ByteBuffer buffer = encoder.reserve(Protocol.TILE_HEADER_SIZE + DATA_SIZE);
+        buffer.putShort((short) target.x);
+        buffer.putShort((short) target.y);
+        buffer.putShort((short) target.width);
+        buffer.putShort((short) target.height);
+        buffer.put(Protocol.CODEC_COPY);
+        buffer.putInt(DATA_SIZE);
+        buffer.putShort((short) sourceX);
+        buffer.putShort((short) sourceY);
+    }
+
+    /**
+     * Копирование внутри изображения; источник и цель могут перекрываться
+     *
+     * @param pixels    массив пикселей (int[] или byte[])
+     * @param scanline  длина строки изображения в элементах массива
+     * @param pixelSize элементов массива на пиксель (1 для int RGB, 3 для BGR)
+     */
+    public static void apply(Object pixels, int scanline, int pixelSize,
+                             int sourceX, int sourceY, Rectangle target) {
+        int length = target.width * pixelSize;
+        // При сдвиге вниз строки копируются снизу вверх, чтобы не затереть еще не скопированные
+        boolean bottomUp = target.y > sourceY;
+        for (int i = 0; i < target.height; i++) {
+            int row = bottomUp ? target.height - 1 - i : i;
+            System.arraycopy(pixels, (sourceY + row) * scanline + sourceX * pixelSize,
+                    pixels, (target.y + row) * scanline + target.x * pixelSize, length);
+        }
+    }
+}
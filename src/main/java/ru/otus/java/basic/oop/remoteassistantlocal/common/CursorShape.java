@@ -0,0 +1,160 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+
+/**
+ * Форма указателя мыши: картинка ARGB и точка нажатия (hotspot).
+ * Передается сообщением CURSOR_SHAPE один раз на номер, дальше агент шлет только
+ * положение с номером формы (см. Protocol). Экземпляры неизменяемы.
+ */
+public final class CursorShape {
+    // Больше указателей не бывает; защита от мусора в потоке
+    public static final int MAX_SIZE = 128;
+
+    public static final CursorShape ARROW = arrow(1);
+    public static final CursorShape TEXT = text(2);
+
+    private final int id;
+    private final int width;
+    private final int height;
+    private final int hotX;
+    private final int hotY;
+    private final int[] argb;
+
+    /**
+     * @param id   номер формы, не Protocol.CURSOR_HIDDEN
+     * @param argb пиксели по строкам, width * height значений (массив не копируется)
+     */
+    public CursorShape(int id, int width, int height, int hotX, int hotY, int[] argb) {
+        if (id == Protocol.CURSOR_HIDDEN) {
+            throw new IllegalArgumentException("Номер формы указателя занят скрытым указателем: " + id);
+        }
+        if (width < 1 || height < 1 || width > MAX_SIZE || height > MAX_SIZE || argb.length != width * height) {
+            throw new IllegalArgumentException("Неверный размер указателя: " + width + "x" + height);
+        }
+        this.id = id;
+        this.width = width;
+        this.height = height;
+        this.hotX = Math.max(0, Math.min(width - 1, hotX));
+        this.hotY = Math.max(0, Math.min(height - 1, hotY));
+        this.argb = argb;
+    }
+
+    /**
+     * Форма из изображения (например, своего указателя источника кадров)
+     */
+    public static CursorShape of(int id, BufferedImage image, int hotX, int hotY) {
+        int w = image.getWidth();
+        int h = image.getHeight();
+        return new CursorShape(id, w, h, hotX, hotY, image.getRGB(0, 0, w, h, null, 0, w));
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public int getHotX() {
+        return hotX;
+    }
+
+    public int getHotY() {
+        return hotY;
+    }
+
+    /**
+     * Пиксели ARGB по строкам; массив нельзя менять
+     */
+    public int[] getArgb() {
+        return argb;
+    }
+
+    /**
+     * Сообщение CURSOR_SHAPE
+     */
+    public void write(ProtocolEncoder encoder) {
+        int message = encoder.beginMessage(Command.Type.CURSOR_SHAPE);
+        ByteBuffer buffer = encoder.reserve(Protocol.CURSOR_SHAPE_HEADER_SIZE + argb.length * 4);
+        buffer.putInt(id);
+        buffer.putShort((short) width);
+        buffer.putShort((short) height);
+        buffer.putShort((short) hotX);
+        buffer.putShort((short) hotY);
+        buffer.asIntBuffer().put(argb);
+        buffer.position(buffer.position() + argb.length * 4);
+        encoder.endMessage(message);
+    }
+
+    /**
+     * Разбор данных сообщения CURSOR_SHAPE
+     */
+    public static CursorShape read(ByteBuffer src, int payloadSize) throws ProtocolException {
+        if (payloadSize < Protocol.CURSOR_SHAPE_HEADER_SIZE) {
+            throw new ProtocolException("Неверный размер формы указателя: " + payloadSize);
+        }
+        int id = src.getInt();
+        int width = src.getShort();
+        int height = src.getShort();
+        int hotX = src.getShort();
+        int hotY = src.getShort();
+        if (id == Protocol.CURSOR_HIDDEN || width < 1 || height < 1 || width > MAX_SIZE || height > MAX_SIZE
+                || payloadSize != Protocol.CURSOR_SHAPE_HEADER_SIZE + width * height * 4) {
+            throw new ProtocolException("Неверная форма указателя " + id + ": " + width + "x" + height);
+        }
+        int[] argb = new int[width * height];
+        src.asIntBuffer().get(argb);
+        src.position(src.position() + argb.length * 4);
+        return new CursorShape(id, width, height, hotX, hotY, argb);
+    }
+
+    /**
+     * Обычная стрелка с белой заливкой и черной обводкой
+     */
+    private static CursorShape arrow(int id) {
+        int[] xs = {0, 0, 4, 7, 9, 6, 11};
+        int[] ys = {0, 16, 12, 18, 17, 11, 11};
+        BufferedImage image = new BufferedImage(12, 19, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            g.setColor(Color.WHITE);
+            g.fillPolygon(xs, ys, xs.length);
+            g.setColor(Color.BLACK);
+            g.drawPolygon(xs, ys, xs.length);
+        } finally {
+            g.dispose();
+        }
+        return of(id, image, 0, 0);
+    }
+
+    /**
+     * Текстовый курсор (I) над полями ввода
+     */
+    private static CursorShape text(int id) {
+        BufferedImage image = new BufferedImage(9, 18, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = image.createGraphics();
+        try {
+            // Белая подложка, чтобы курсор был виден на темном фоне
+            g.setColor(Color.WHITE);
+            g.fillRect(3, 0, 3, 18);
+            g.fillRect(0, 0, 9, 3);
+            g.fillRect(0, 15, 9, 3);
+            g.setColor(Color.BLACK);
+            g.drawLine(4, 1, 4, 16);
+            g.drawLine(1, 1, 7, 1);
+            g.drawLine(1, 16, 7, 16);
+        } finally {
+            g.dispose();
+        }
+        return of(id, image, 4, 9);
+    }
+}
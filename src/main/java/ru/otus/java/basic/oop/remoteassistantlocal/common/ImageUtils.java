@@ -1,35 +1,33 @@
 package ru.otus.java.basic.oop.remoteassistantlocal.common;
 
-import javax.imageio.IIOImage;
-import javax.imageio.ImageIO;
-import javax.imageio.ImageWriteParam;
-import javax.imageio.ImageWriter;
 import java.awt.*;
 import java.awt.image.BufferedImage;
-import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
 
 public class ImageUtils {
     public static byte[] imageToBytes(BufferedImage image, float quality) {
         try {
-            ByteArrayOutputStream baos = new ByteArrayOutputStream();
-
             // Конвертируем в JPEG с настройкой качества
-            ImageWriter writer = ImageIO.getImageWritersByFormatName("jpeg").next();
-            ImageWriteParam param = writer.getDefaultWriteParam();
-            param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
-            param.setCompressionQuality(quality);
-
-            writer.setOutput(ImageIO.createImageOutputStream(baos));
-            writer.write(null, new IIOImage(image, null, null), param);
-            writer.dispose();
-
-            return baos.toByteArray();
+            JpegEncoder encoder = JpegEncoder.forCurrentThread();
+            int size = encoder.encode(image, quality);
+            return Arrays.copyOf(encoder.getBuffer(), size);
         } catch (Exception e) {
             e.printStackTrace();
             return null;
         }
     }
 
+    /**
+     * Кодирование в JPEG с записью прямо в поток, без промежуточного массива
+     *
+     * @return размер записанных данных
+     */
+    public static int imageToBytes(BufferedImage image, float quality, OutputStream out) throws IOException {
+        return JpegEncoder.forCurrentThread().encode(image, quality, out);
+    }
+
     public static BufferedImage scaleImage(BufferedImage original, int maxWidth) {
         double scale = (double) maxWidth / original.getWidth();
         int newWidth = (int) (original.getWidth() * scale);
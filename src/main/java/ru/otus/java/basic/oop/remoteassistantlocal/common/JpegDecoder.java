@@ -0,0 +1,102 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import javax.imageio.ImageIO;
+import javax.imageio.ImageReadParam;
+import javax.imageio.ImageReader;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+
+/**
+ * Переиспользуемый JPEG декодер.
+ * Плитка декодируется прямо в указанное место готового изображения вызывающего,
+ * поэтому на каждую плитку не создается новое изображение.
+ * ImageReader и входной поток создаются один раз на поток.
+ * Уменьшенная плитка (подстройка под канал, см. Protocol, SET_ADAPTIVE) декодируется
+ * в промежуточное изображение и растягивается на свою область.
+ *
+ * Экземпляр не потокобезопасен - используйте forCurrentThread().
+ */
+public class JpegDecoder {
+    private static final ThreadLocal<JpegDecoder> DECODERS = ThreadLocal.withInitial(JpegDecoder::new);
+
+    private final ImageReader reader;
+    private final ImageReadParam param;
+    private final ByteBufferImageInputStream input = new ByteBufferImageInputStream();
+    private final Point offset = new Point();
+    // Промежуточное изображение для уменьшенных плиток (создается при первой такой плитке)
+    private BufferedImage staging;
+
+    public JpegDecoder() {
+        reader = ImageIO.getImageReadersByFormatName("jpeg").next();
+        param = reader.getDefaultReadParam();
+    }
+
+    /**
+     * Декодер, закрепленный за текущим потоком
+     */
+    public static JpegDecoder forCurrentThread() {
+        return DECODERS.get();
+    }
+
+    /**
+     * Декодирование length байт JPEG из src (с абсолютной позиции position)
+     * в destination, левым верхним углом в точку (x, y).
+     * Изображение должно вмещать плитку; подходит TYPE_INT_RGB.
+     */
+    public void decode(ByteBuffer src, int position, int length,
+                       BufferedImage destination, int x, int y) throws IOException {
+        input.reset(src, position, length);
+        reader.setInput(input, true, true);
+        try {
+            offset.setLocation(x, y);
+            param.setDestination(destination);
+            param.setDestinationOffset(offset);
+            reader.read(0, param);
+        } finally {
+            param.setDestination(null);
+            reader.setInput(null);
+        }
+    }
+
+    /**
+     * Декодирование плитки в область x, y, width, height изображения destination.
+     * Если картинка в JPEG другого размера (уменьшена агентом), она растягивается на область.
+     */
+    public void decode(ByteBuffer src, int position, int length, BufferedImage destination,
+                       int x, int y, int width, int height) throws IOException {
+        input.reset(src, position, length);
+        reader.setInput(input, true, true);
+        try {
+            int sourceWidth = reader.getWidth(0);
+            int sourceHeight = reader.getHeight(0);
+            BufferedImage target = destination;
+            if (sourceWidth == width && sourceHeight == height) {
+                offset.setLocation(x, y);
+            } else {
+                if (staging == null || staging.getWidth() < sourceWidth || staging.getHeight() < sourceHeight) {
+                    staging = new BufferedImage(Math.max(sourceWidth, staging == null ? 0 : staging.getWidth()),
+                            Math.max(sourceHeight, staging == null ? 0 : staging.getHeight()),
+                            destination.getType() == BufferedImage.TYPE_CUSTOM
+                                    ? BufferedImage.TYPE_INT_RGB : destination.getType());
+                }
+                target = staging;
+                offset.setLocation(0, 0);
+            }
+            param.setDestination(target);
+            param.setDestinationOffset(offset);
+            reader.read(0, param);
+
+            if (target == staging) {
+                Graphics2D g2d = destination.createGraphics();
+                g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+                g2d.drawImage(staging, x, y, x + width, y + height, 0, 0, sourceWidth, sourceHeight, null);
+                g2d.dispose();
+            }
+        } finally {
+            param.setDestination(null);
+            reader.setInput(null);
+        }
+    }
+}
@@ -0,0 +1,146 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import javax.imageio.IIOImage;
+import javax.imageio.ImageIO;
+import javax.imageio.ImageWriteParam;
+import javax.imageio.ImageWriter;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Переиспользуемый JPEG кодировщик.
+ * ImageWriter, его параметры и выходной буфер создаются один раз на поток,
+ * поэтому на каждый кадр не выполняется поиск через ServiceLoader и не
+ * выделяются новые потоки и массивы.
+ *
+ * Экземпляр не потокобезопасен - используйте forCurrentThread().
+ */
+public class JpegEncoder {
+    private static final int INITIAL_BUFFER_SIZE = 256 * 1024;
+
+    private static final ThreadLocal<JpegEncoder> ENCODERS = ThreadLocal.withInitial(JpegEncoder::new);
+
+    private final ImageWriter writer;
+    private final ImageWriteParam param;
+    private final ByteArrayImageOutputStream output = new ByteArrayImageOutputStream(INITIAL_BUFFER_SIZE);
+
+    // Промежуточный кадр в формате BGR: для других форматов JPEG писатель
+    // конвертирует каждую строку через новые массивы
+    private BufferedImage staging;
+
+    public JpegEncoder() {
+        writer = ImageIO.getImageWritersByFormatName("jpeg").next();
+        param = writer.getDefaultWriteParam();
+        param.setCompressionMode(ImageWriteParam.MODE_EXPLICIT);
+        writer.setOutput(output);
+    }
+
+    /**
+     * Кодировщик, закрепленный за текущим потоком
+     */
+    public static JpegEncoder forCurrentThread() {
+        return ENCODERS.get();
+    }
+
+    /**
+     * Кодирование во внутренний буфер.
+     * Результат доступен через getBuffer()/size() до следующего вызова encode.
+     *
+     * @return размер JPEG данных
+     */
+    public int encode(BufferedImage image, float quality) throws IOException {
+        output.reset();
+        param.setCompressionQuality(quality);
+        writer.write(null, new IIOImage(toBgr(image), null, null), param);
+        return output.size();
+    }
+
+    /**
+     * Кодирование уменьшенной копии изображения (подстройка под медленный канал).
+     * Картинка сжимается до scale от исходного размера, но не меньше 1x1 пикселя;
+     * помощник растягивает ее обратно на область плитки.
+     *
+     * @param scale доля от исходного размера, (0, 1]; 1 - как encode(image, quality)
+     */
+    public int encode(BufferedImage image, float quality, double scale) throws IOException {
+        if (scale >= 1) {
+            return encode(image, quality);
+        }
+        int width = Math.max(1, (int) Math.round(image.getWidth() * scale));
+        int height = Math.max(1, (int) Math.round(image.getHeight() * scale));
+        ensureStaging(width, height);
+
+        Graphics2D g2d = staging.createGraphics();
+        g2d.setRenderingHint(RenderingHints.KEY_INTERPOLATION, RenderingHints.VALUE_INTERPOLATION_BILINEAR);
+        g2d.drawImage(image, 0, 0, width, height, null);
+        g2d.dispose();
+
+        output.reset();
+        param.setCompressionQuality(quality);
+        writer.write(null, new IIOImage(stagingView(width, height), null, null), param);
+        return output.size();
+    }
+
+    /**
+     * Кодирование с записью прямо в поток вызывающего
+     */
+    public int encode(BufferedImage image, float quality, OutputStream out) throws IOException {
+        int size = encode(image, quality);
+        output.writeTo(out);
+        return size;
+    }
+
+    /**
+     * Кодирование с записью в буфер вызывающего (в нем должно быть достаточно места)
+     */
+    public int encode(BufferedImage image, float quality, ByteBuffer dst) throws IOException {
+        int size = encode(image, quality);
+        output.writeTo(dst);
+        return size;
+    }
+
+    private BufferedImage toBgr(BufferedImage image) {
+        if (image.getType() == BufferedImage.TYPE_3BYTE_BGR) {
+            return image;
+        }
+
+        int width = image.getWidth();
+        int height = image.getHeight();
+        ensureStaging(width, height);
+
+        Graphics2D g2d = staging.createGraphics();
+        g2d.drawImage(image, 0, 0, null);
+        g2d.dispose();
+
+        return stagingView(width, height);
+    }
+
+    private void ensureStaging(int width, int height) {
+        if (staging == null || staging.getWidth() < width || staging.getHeight() < height) {
+            int stagingWidth = Math.max(width, staging == null ? 0 : staging.getWidth());
+            int stagingHeight = Math.max(height, staging == null ? 0 : staging.getHeight());
+            staging = new BufferedImage(stagingWidth, stagingHeight, BufferedImage.TYPE_3BYTE_BGR);
+        }
+    }
+
+    private BufferedImage stagingView(int width, int height) {
+        return staging.getWidth() == width && staging.getHeight() == height
+                ? staging
+                : staging.getSubimage(0, 0, width, height);
+    }
+
+    public byte[] getBuffer() {
+        return output.getBuffer();
+    }
+
+    public int size() {
+        return output.size();
+    }
+
+    public void writeTo(OutputStream out) throws IOException {
+        output.writeTo(out);
+    }
+}
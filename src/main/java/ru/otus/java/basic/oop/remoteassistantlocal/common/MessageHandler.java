@@ -0,0 +1,87 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Получатель сообщений, разобранных ProtocolDecoder.
+ * Данные передаются примитивами, без создания объектов Command на каждое сообщение.
+ * Все методы по умолчанию ничего не делают - переопределяются только нужные.
+ */
+public interface MessageHandler {
+
+    /**
+     * Команды мыши. Значения arg1/arg2 зависят от типа (см. Command.Type),
+     * неиспользуемые равны 0.
+     */
+    default void onMouse(Command.Type type, int x, int y, int arg1, int arg2) {
+    }
+
+    /**
+     * Команды клавиатуры
+     */
+    default void onKey(Command.Type type, int keyCode) {
+    }
+
+    /**
+     * Команды с одним числовым параметром (SET_QUALITY, SET_FPS, SET_TRANSPORT, SET_ADAPTIVE)
+     */
+    default void onValue(Command.Type type, int value) {
+    }
+
+    /**
+     * Команды без данных (DISCONNECT, SCREENSHOT_REQUEST, ...)
+     */
+    default void onSignal(Command.Type type) {
+    }
+
+    /**
+     * Запрос измерения задержки: ответ PONG должен вернуть seq и originTime без изменений
+     */
+    default void onPing(int seq, long originTime) {
+    }
+
+    /**
+     * Ответ на PING: отметки времени агента receiveTime и transmitTime (WallClock, мкс)
+     */
+    default void onPong(int seq, long originTime, long receiveTime, long transmitTime) {
+    }
+
+    /**
+     * Положение указателя агента; shapeId - номер формы из onCursorShape или Protocol.CURSOR_HIDDEN
+     */
+    default void onCursor(int x, int y, int shapeId) {
+    }
+
+    /**
+     * Новая форма указателя агента (приходит один раз на номер)
+     */
+    default void onCursorShape(CursorShape shape) {
+    }
+
+    /**
+     * Качество JPEG, частота кадров и масштаб плиток JPEG в процентах, которые агент
+     * выбрал под пропускную способность канала (после SET_ADAPTIVE)
+     */
+    default void onStreamState(int quality, int fps, int scale) {
+    }
+
+    /**
+     * Кадр экрана. Буфер действителен только во время вызова:
+     * данные кадра лежат между position и limit.
+     */
+    default void onFrame(ByteBuffer payload) {
+    }
+
+    /**
+     * Текстовые сообщения (чат, авторизация, информация о системе)
+     */
+    default void onText(Command.Type type, String text) {
+    }
+
+    /**
+     * Все сообщения, полученные одним чтением из соединения, разобраны.
+     * Удобно для действий, которые выгодно выполнять один раз на порцию данных.
+     */
+    default void onBatchComplete() {
+    }
+}
@@ -0,0 +1,214 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.zip.DataFormatException;
+import java.util.zip.Deflater;
+import java.util.zip.Inflater;
+
+/**
+ * Сжатие без потерь для областей с небольшим числом цветов (текст, элементы интерфейса):
+ * палитра до 256 цветов и индексы пикселей, сжатые Deflate (см. Protocol.CODEC_PALETTE).
+ * В отличие от JPEG, границы букв остаются резкими, а однотонный фон сжимается почти в ноль.
+ *
+ * Формат данных плитки:
+ *   byte   число цветов - 1
+ *   byte[] палитра, по 3 байта R, G, B на цвет
+ *   byte[] индексы пикселей по строкам, поток Deflate без заголовка zlib
+ *
+ * Экземпляр не потокобезопасен; для пула потоков кодирования и потока
+ * декодирования есть экземпляр на поток (forCurrentThread).
+ */
+public class PaletteCodec {
+    public static final int MAX_COLORS = 256;
+
+    private static final ThreadLocal<PaletteCodec> PER_THREAD = ThreadLocal.withInitial(PaletteCodec::new);
+
+    // Хеш-таблица цвет -> индекс палитры. Вместо очистки на каждую область
+    // записи помечаются поколением: запись чужого поколения считается пустой
+    private static final int TABLE_BITS = 10;
+    private static final int TABLE_SIZE = 1 << TABLE_BITS;
+    private final int[] keys = new int[TABLE_SIZE];
+    private final int[] generations = new int[TABLE_SIZE];
+    private final byte[] slots = new byte[TABLE_SIZE];
+    private int generation;
+
+    private final int[] palette = new int[MAX_COLORS];
+    private int colors;
+    private byte[] indices = new byte[64 * 64];
+    private byte[] buffer = new byte[16 * 1024];
+    private int size;
+
+    private final Deflater deflater = new Deflater(Deflater.BEST_SPEED, true);
+    private final Inflater inflater = new Inflater(true);
+
+    public static PaletteCodec forCurrentThread() {
+        return PER_THREAD.get();
+    }
+
+    /**
+     * Число различных цветов в области (RGB без альфы); подсчет прекращается, когда их больше limit
+     *
+     * @param pixels  пиксели изображения TYPE_INT_RGB
+     * @param scanline длина строки изображения в пикселях
+     * @return число цветов или limit + 1
+     */
+    public int countColors(int[] pixels, int scanline, int x, int y, int w, int h, int limit) {
+        startPalette();
+        for (int row = y; row < y + h; row++) {
+            int offset = row * scanline + x;
+            for (int i = offset; i < offset + w; i++) {
+                if (indexOf(pixels[i] & 0xFFFFFF) < 0 && colors > limit) {
+                    return limit + 1;
+                }
+            }
+        }
+        return colors;
+    }
+
+    /**
+     * Кодирование области; результат в getBuffer() от 0 до возвращенного размера
+     *
+     * @return размер данных или -1, если в области больше MAX_COLORS цветов
+     */
+    public int encode(int[] pixels, int scanline, int x, int y, int w, int h) {
+        int count = w * h;
+        if (indices.length < count) {
+            indices = new byte[Math.max(count, indices.length * 2)];
+        }
+
+        startPalette();
+        int n = 0;
+        for (int row = y; row < y + h; row++) {
+            int offset = row * scanline + x;
+            for (int i = offset; i < offset + w; i++) {
+                int index = indexOf(pixels[i] & 0xFFFFFF);
+                if (index < 0) {
+                    if (colors > MAX_COLORS) return -1;
+                    index = colors - 1;
+                }
+                indices[n++] = (byte) index;
+            }
+        }
+
+        size = 0;
+        ensureCapacity(1 + colors * 3);
+        buffer[size++] = (byte) (colors - 1);
+        for (int i = 0; i < colors; i++) {
+            int rgb = palette[i];
+            buffer[size++] = (byte) (rgb >> 16);
+            buffer[size++] = (byte) (rgb >> 8);
+            buffer[size++] = (byte) rgb;
+        }
+
+        deflater.reset();
+        deflater.setInput(indices, 0, count);
+        deflater.finish();
+        while (!deflater.finished()) {
+            ensureCapacity(Math.max(1024, count / 8));
+            size += deflater.deflate(buffer, size, buffer.length - size);
+        }
+        return size;
+    }
+
+    /**
+     * Данные последнего encode()
+     */
+    public byte[] getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Декодирование плитки прямо в изображение BGR (3 байта на пиксель)
+     *
+     * @param src      буфер с данными плитки между position и position + length (position не меняется)
+     * @param bgr      пиксели изображения
+     * @param scanline длина строки изображения в байтах
+     */
+    public void decode(ByteBuffer src, int position, int length, byte[] bgr, int scanline,
+                       int x, int y, int w, int h) throws DataFormatException {
+        if (length < 4) {
+            throw new DataFormatException("Слишком короткие данные плитки: " + length);
+        }
+        int n = Byte.toUnsignedInt(src.get(position)) + 1;
+        int header = 1 + n * 3;
+        if (header > length) {
+            throw new DataFormatException("Палитра из " + n + " цветов не помещается в " + length + " байт");
+        }
+        for (int i = 0; i < n; i++) {
+            int p = position + 1 + i * 3;
+            palette[i] = (Byte.toUnsignedInt(src.get(p)) << 16)
+                    | (Byte.toUnsignedInt(src.get(p + 1)) << 8)
+                    | Byte.toUnsignedInt(src.get(p + 2));
+        }
+
+        int count = w * h;
+        if (indices.length < count) {
+            indices = new byte[Math.max(count, indices.length * 2)];
+        }
+        ByteBuffer compressed = src.duplicate();
+        compressed.limit(position + length).position(position + header);
+        inflater.reset();
+        inflater.setInput(compressed);
+        int inflated = 0;
+        while (inflated < count && !inflater.finished()) {
+            int read = inflater.inflate(indices, inflated, count - inflated);
+            if (read == 0 && (inflater.needsInput() || inflater.needsDictionary())) break;
+            inflated += read;
+        }
+        if (inflated != count) {
+            throw new DataFormatException("Индексов " + inflated + " вместо " + count);
+        }
+
+        int i = 0;
+        for (int row = y; row < y + h; row++) {
+            int offset = row * scanline + x * 3;
+            for (int col = 0; col < w; col++) {
+                int index = Byte.toUnsignedInt(indices[i++]);
+                if (index >= n) {
+                    throw new DataFormatException("Индекс " + index + " вне палитры из " + n + " цветов");
+                }
+                int rgb = palette[index];
+                bgr[offset++] = (byte) rgb;
+                bgr[offset++] = (byte) (rgb >> 8);
+                bgr[offset++] = (byte) (rgb >> 16);
+            }
+        }
+    }
+
+    private void startPalette() {
+        colors = 0;
+        if (++generation == 0) {
+            // Переполнение счетчика поколений: старые пометки могли бы совпасть
+            Arrays.fill(generations, 0);
+            generation = 1;
+        }
+    }
+
+    /**
+     * Индекс цвета в палитре; новый цвет добавляется (если есть место) и дает -1
+     */
+    private int indexOf(int rgb) {
+        int slot = (rgb * 0x9E3779B1) >>> (32 - TABLE_BITS);
+        while (generations[slot] == generation) {
+            if (keys[slot] == rgb) {
+                return Byte.toUnsignedInt(slots[slot]);
+            }
+            slot = (slot + 1) & (TABLE_SIZE - 1);
+        }
+        if (colors < MAX_COLORS) {
+            generations[slot] = generation;
+            keys[slot] = rgb;
+            slots[slot] = (byte) colors;
+            palette[colors] = rgb;
+        }
+        colors++;
+        return -1;
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.length - size < bytes) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, size + bytes));
+        }
+    }
+}
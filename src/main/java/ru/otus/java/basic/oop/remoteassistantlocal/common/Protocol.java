@@ -1,15 +1,127 @@
 package ru.otus.java.basic.oop.remoteassistantlocal.common;
 
+/**
+ * Двоичный протокол обмена между агентом и помощником.
+ *
+ * После подключения каждая сторона отправляет приветствие:
+ *   int  MAGIC
+ *   byte VERSION
+ * Затем идут сообщения:
+ *   byte тип (Command.Type.getCode())
+ *   int  размер данных
+ *   byte[] данные фиксированного для типа формата (см. Command.Type)
+ * Все числа передаются в сетевом порядке байт (big-endian).
+ */
 public class Protocol {
     public static final int PORT = 5555;
 
-    public static final String CMD_SCREENSHOT = "SCREENSHOT";
-    public static final String CMD_MOUSE_MOVE = "MOUSE_MOVE";
-    public static final String CMD_MOUSE_CLICK = "MOUSE_CLICK";
-    public static final String CMD_KEY_PRESS = "KEY_PRESS";
-    public static final String CMD_DISCONNECT = "DISCONNECT";
+    // "RAL!" в ASCII
+    public static final int MAGIC = 0x52414C21;
+    public static final byte VERSION = 2;
+    public static final int HANDSHAKE_SIZE = 5;
 
-    public static String buildCommand(String command, String... params) {
-        return command + ":" + String.join(",", params);
-    }
+    // Тип + размер данных
+    public static final int HEADER_SIZE = 5;
+
+    // Защита от мусора в потоке: больше этого сообщение быть не может
+    public static final int MAX_PAYLOAD_SIZE = 32 * 1024 * 1024;
+
+    // Размер плитки, на которые делится кадр при поиске изменений
+    public static final int TILE_SIZE = 64;
+
+    /*
+     * Формат кадра SCREENSHOT_RESPONSE (агент -> помощник):
+     *   long  время захвата (мс)
+     *   int   количество плиток
+     *   далее для каждой плитки:
+     *     short x, short y, short ширина, short высота
+     *     byte  способ сжатия (CODEC_*)
+     *     int   размер данных
+     *     byte[] данные плитки
+     * Плитки накладываются на текущее изображение помощника.
+     * Байт способа сжатия появился во второй версии протокола.
+     */
+    public static final int FRAME_HEADER_SIZE = 12;
+    public static final int TILE_HEADER_SIZE = 13;
+
+    // Способы сжатия плитки
+    public static final byte CODEC_JPEG = 0;
+    // Палитра до 256 цветов и индексы в Deflate, без потерь (см. PaletteCodec)
+    public static final byte CODEC_PALETTE = 1;
+    // Режим TRANSPORT_DELTA: пиксели BGR, XOR с тем, что уже есть у помощника, в потоке Deflate сессии
+    public static final byte CODEC_XOR_DEFLATE = 2;
+    // Режим TRANSPORT_DELTA: ключевой кадр - новый поток Deflate, пиксели BGR как есть
+    public static final byte CODEC_DEFLATE_KEY = 3;
+    // Прокрутка или перемещение окна: область плитки заполняется копией другой области
+    // того же изображения помощника; данные - short x, short y источника (см. CopyRect).
+    // Идет первой плиткой кадра, остальные плитки кадра накладываются уже после копирования
+    public static final byte CODEC_COPY = 4;
+
+    /*
+     * Режимы передачи кадров (SET_TRANSPORT), выбираются для каждой сессии:
+     *   TRANSPORT_TILES - плитки сжимаются независимо (JPEG или палитра), общие кадры для всех помощников
+     *   TRANSPORT_DELTA - без потерь: изменившиеся области передаются как XOR с прошлым состоянием
+     *                     помощника, сжатый одним долгим потоком Deflate (raw, без заголовка zlib).
+     *                     Данные каждой плитки заканчиваются SYNC_FLUSH, так что плитка
+     *                     распаковывается целиком, а словарь (окно 32 КБ) переходит к следующей.
+     *                     Первый кадр и кадр после потери синхронизации - одна плитка CODEC_DEFLATE_KEY
+     *                     на весь экран; с нее помощник начинает поток заново.
+     */
+    public static final int TRANSPORT_TILES = 0;
+    public static final int TRANSPORT_DELTA = 1;
+
+    /*
+     * Подстройка под канал (помощник -> агент SET_ADAPTIVE, агент -> помощник STREAM_STATE).
+     * SET_QUALITY и SET_FPS помощника - потолок: агент снижает качество JPEG, затем частоту
+     * кадров, затем масштаб плиток JPEG, если кадры не успевают уходить в сокет за заданное
+     * время, и поднимает обратно, когда канал освобождается. SET_ADAPTIVE передает наименьший
+     * масштаб в процентах (ADAPTIVE_OFF - качество и частота ровно как заданы).
+     * Плитка JPEG в уменьшенном масштабе занимает на экране свою область из заголовка,
+     * а сама картинка меньше - помощник растягивает ее. Без SET_ADAPTIVE агент не уменьшает
+     * плитки, поэтому старый помощник их не получит, и версия протокола не меняется.
+     * STREAM_STATE: int качество, int кадров в секунду, int масштаб, % - после каждого изменения.
+     */
+    public static final int ADAPTIVE_OFF = 0;
+
+    /*
+     * Измерение задержки (помощник -> агент -> помощник), все отметки в мкс по WallClock:
+     *   PING: int номер, long t0 - время отправки по часам помощника
+     *   PONG: int номер, long t0 без изменений, long t1 - прием PING агентом,
+     *         long t2 - отправка PONG агентом
+     * Помощник запоминает t3 - время приема PONG, откуда
+     *   RTT      = (t3 - t0) - (t2 - t1)
+     *   смещение = ((t1 - t0) + (t2 - t3)) / 2  (часы агента минус часы помощника)
+     * Старый агент пропускает неизвестный PING, поэтому версия протокола не меняется.
+     */
+
+    /*
+     * Указатель мыши агента передается отдельно от кадров (агент -> помощник):
+     *   CURSOR_SHAPE:    int номер формы, short ширина, short высота, short x, short y точки нажатия,
+     *                    int[ширина * высота] пиксели ARGB (см. CursorShape)
+     *   CURSOR_POSITION: int x, int y в координатах кадра, int номер формы
+     * Форма с данным номером отправляется сессии один раз, до первого положения с ней;
+     * помощник хранит формы по номерам. Номер 0 - указатель скрыт или неизвестен.
+     * Старый помощник пропускает неизвестные сообщения, поэтому версия протокола не меняется.
+     */
+    public static final int CURSOR_SHAPE_HEADER_SIZE = 12;
+    public static final int CURSOR_HIDDEN = 0;
+
+    /*
+     * Подключение через сервер-посредник (server.RelayServer), когда агент за NAT.
+     * Агент и помощник сами подключаются к посреднику и первыми отправляют:
+     *   int  RELAY_MAGIC
+     *   byte роль (RELAY_ROLE_AGENT или RELAY_ROLE_VIEWER)
+     *   long номер сессии, который пользователь сообщает помощнику
+     * Посредник соединяет агента и помощника с одним номером и дальше пересылает байты
+     * в обе стороны без разбора, поэтому обычное приветствие MAGIC + VERSION идет уже сквозь него.
+     * Агенту в момент соединения посредник отправляет один байт RELAY_PAIRED: до него
+     * подключение агента - запасное, ожидающее помощника.
+     */
+    public static final int RELAY_PORT = 5556;
+    // "RLY!" в ASCII
+    public static final int RELAY_MAGIC = 0x524C5921;
+    public static final int RELAY_HELLO_SIZE = 13;
+    public static final byte RELAY_ROLE_AGENT = 1;
+    public static final byte RELAY_ROLE_VIEWER = 2;
+    public static final byte RELAY_PAIRED = 1;
 }
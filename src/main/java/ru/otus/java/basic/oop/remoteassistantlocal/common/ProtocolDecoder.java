@@ -0,0 +1,230 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Разбор потока сообщений двоичного протокола.
+ * Данные читаются в собственный переиспользуемый буфер, полностью пришедшие
+ * сообщения сразу передаются в MessageHandler, неполные остаются до следующего чтения.
+ * Буфер растет только если приходит сообщение больше текущей емкости.
+ *
+ * Экземпляр не потокобезопасен и обслуживает одно соединение.
+ */
+public class ProtocolDecoder {
+    private ByteBuffer buffer;
+    private boolean handshakeReceived;
+
+    public ProtocolDecoder(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * Одно чтение из канала и разбор всех полностью полученных сообщений
+     *
+     * @return число прочитанных байт или -1 при закрытии соединения
+     */
+    public int read(ReadableByteChannel channel, MessageHandler handler) throws IOException {
+        ensureCapacityForPendingMessage();
+
+        int read = channel.read(buffer);
+        if (read < 0) {
+            return -1;
+        }
+
+        buffer.flip();
+        try {
+            decode(buffer, handler);
+        } finally {
+            buffer.compact();
+        }
+        handler.onBatchComplete();
+        return read;
+    }
+
+    /**
+     * То же для блокирующего потока сокета: читаем прямо в массив буфера
+     *
+     * @return число прочитанных байт или -1 при закрытии соединения
+     */
+    public int read(InputStream in, MessageHandler handler) throws IOException {
+        ensureCapacityForPendingMessage();
+
+        int read = in.read(buffer.array(), buffer.arrayOffset() + buffer.position(), buffer.remaining());
+        if (read < 0) {
+            return -1;
+        }
+        buffer.position(buffer.position() + read);
+
+        buffer.flip();
+        try {
+            decode(buffer, handler);
+        } finally {
+            buffer.compact();
+        }
+        handler.onBatchComplete();
+        return read;
+    }
+
+    /**
+     * Разбор всех полных сообщений из src (между position и limit).
+     * После вызова position указывает на начало первого неполного сообщения.
+     */
+    public void decode(ByteBuffer src, MessageHandler handler) throws ProtocolException {
+        if (!handshakeReceived) {
+            if (src.remaining() < Protocol.HANDSHAKE_SIZE) {
+                return;
+            }
+            int magic = src.getInt();
+            byte version = src.get();
+            if (magic != Protocol.MAGIC) {
+                throw new ProtocolException("Неизвестный протокол: " + Integer.toHexString(magic));
+            }
+            if (version != Protocol.VERSION) {
+                throw new ProtocolException("Неподдерживаемая версия протокола: " + version);
+            }
+            handshakeReceived = true;
+        }
+
+        while (src.remaining() >= Protocol.HEADER_SIZE) {
+            int start = src.position();
+            int payloadSize = payloadSizeAt(src, start);
+            int end = start + Protocol.HEADER_SIZE + payloadSize;
+            if (end > src.limit()) {
+                return;
+            }
+
+            Command.Type type = Command.Type.fromCode(src.get(start));
+            src.position(start + Protocol.HEADER_SIZE);
+            if (type != null) {
+                // Неизвестные типы пропускаем - их может отправлять более новая версия
+                dispatch(type, src, payloadSize, end, handler);
+            }
+            src.position(end);
+        }
+    }
+
+    /**
+     * Разбор сообщений без приветствия: поток уже проверен (например, сообщения из записи сеанса)
+     */
+    public ProtocolDecoder withoutHandshake() {
+        handshakeReceived = true;
+        return this;
+    }
+
+    public boolean isHandshakeReceived() {
+        return handshakeReceived;
+    }
+
+    private void dispatch(Command.Type type, ByteBuffer src, int payloadSize, int end,
+                          MessageHandler handler) throws ProtocolException {
+        int expected = type.getPayloadSize();
+        if (expected != Command.VARIABLE && expected != payloadSize) {
+            throw new ProtocolException("Неверный размер данных " + type + ": " + payloadSize);
+        }
+
+        switch (type) {
+            case MOUSE_MOVE:
+                handler.onMouse(type, src.getInt(), src.getInt(), 0, 0);
+                break;
+
+            case MOUSE_PRESS:
+            case MOUSE_RELEASE:
+            case MOUSE_WHEEL:
+                handler.onMouse(type, src.getInt(), src.getInt(), src.getInt(), 0);
+                break;
+
+            case MOUSE_CLICK:
+            case MOUSE_DRAG:
+                handler.onMouse(type, src.getInt(), src.getInt(), src.getInt(), src.getInt());
+                break;
+
+            case KEY_PRESS:
+            case KEY_RELEASE:
+            case KEY_TYPED:
+                handler.onKey(type, src.getInt());
+                break;
+
+            case SET_QUALITY:
+            case SET_FPS:
+            case SET_TRANSPORT:
+            case SET_ADAPTIVE:
+                handler.onValue(type, src.getInt());
+                break;
+
+            case STREAM_STATE:
+                handler.onStreamState(src.getInt(), src.getInt(), src.getInt());
+                break;
+
+            case PING:
+                handler.onPing(src.getInt(), src.getLong());
+                break;
+
+            case PONG:
+                handler.onPong(src.getInt(), src.getLong(), src.getLong(), src.getLong());
+                break;
+
+            case CURSOR_POSITION:
+                handler.onCursor(src.getInt(), src.getInt(), src.getInt());
+                break;
+
+            case CURSOR_SHAPE:
+                handler.onCursorShape(CursorShape.read(src, payloadSize));
+                break;
+
+            case SCREENSHOT_RESPONSE:
+                int limit = src.limit();
+                src.limit(end);
+                try {
+                    handler.onFrame(src);
+                } finally {
+                    src.limit(limit);
+                }
+                break;
+
+            default:
+                if (expected == 0) {
+                    handler.onSignal(type);
+                } else {
+                    handler.onText(type, readText(src, payloadSize));
+                }
+        }
+    }
+
+    private static String readText(ByteBuffer src, int size) {
+        if (src.hasArray()) {
+            return new String(src.array(), src.arrayOffset() + src.position(), size, StandardCharsets.UTF_8);
+        }
+        byte[] bytes = new byte[size];
+        src.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int payloadSizeAt(ByteBuffer src, int start) throws ProtocolException {
+        int payloadSize = src.getInt(start + 1);
+        if (payloadSize < 0 || payloadSize > Protocol.MAX_PAYLOAD_SIZE) {
+            throw new ProtocolException("Неверный размер сообщения: " + payloadSize);
+        }
+        return payloadSize;
+    }
+
+    /**
+     * Если в буфере начато сообщение больше его емкости - увеличиваем буфер
+     */
+    private void ensureCapacityForPendingMessage() throws ProtocolException {
+        int required = Protocol.HANDSHAKE_SIZE;
+        if (handshakeReceived && buffer.position() >= Protocol.HEADER_SIZE) {
+            required = Protocol.HEADER_SIZE + payloadSizeAt(buffer, 0);
+        }
+        if (buffer.capacity() < required) {
+            ByteBuffer grown = ByteBuffer.allocate(Math.max(required, buffer.capacity() * 2));
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+}
@@ -0,0 +1,286 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Запись сообщений двоичного протокола в растущий ByteBuffer.
+ * Буфер переиспользуется между сообщениями: после writeTo() он очищается,
+ * поэтому в установившемся режиме кодирование не создает объектов.
+ *
+ * Экземпляр не потокобезопасен - вызывающий синхронизирует запись сам.
+ */
+public class ProtocolEncoder {
+    private ByteBuffer buffer;
+
+    public ProtocolEncoder(int initialCapacity) {
+        this.buffer = ByteBuffer.allocate(initialCapacity);
+    }
+
+    /**
+     * Приветствие с версией протокола, отправляется сразу после подключения
+     */
+    public ProtocolEncoder handshake() {
+        ensureCapacity(Protocol.HANDSHAKE_SIZE);
+        buffer.putInt(Protocol.MAGIC);
+        buffer.put(Protocol.VERSION);
+        return this;
+    }
+
+    /**
+     * Приветствие сервера-посредника: отправляется до handshake(), если подключение идет через него
+     *
+     * @param role Protocol.RELAY_ROLE_AGENT или Protocol.RELAY_ROLE_VIEWER
+     */
+    public ProtocolEncoder relayHello(byte role, long sessionId) {
+        ensureCapacity(Protocol.RELAY_HELLO_SIZE);
+        buffer.putInt(Protocol.RELAY_MAGIC);
+        buffer.put(role);
+        buffer.putLong(sessionId);
+        return this;
+    }
+
+    public ProtocolEncoder mouseMove(int x, int y) {
+        return mouse(Command.Type.MOUSE_MOVE, x, y, 0, 0);
+    }
+
+    /**
+     * Команда мыши; лишние аргументы для типа игнорируются
+     */
+    public ProtocolEncoder mouse(Command.Type type, int x, int y, int arg1, int arg2) {
+        header(type, type.getPayloadSize());
+        buffer.putInt(x);
+        buffer.putInt(y);
+        if (type.getPayloadSize() >= 12) buffer.putInt(arg1);
+        if (type.getPayloadSize() >= 16) buffer.putInt(arg2);
+        return this;
+    }
+
+    public ProtocolEncoder key(Command.Type type, int keyCode) {
+        header(type, 4);
+        buffer.putInt(keyCode);
+        return this;
+    }
+
+    public ProtocolEncoder value(Command.Type type, int value) {
+        header(type, 4);
+        buffer.putInt(value);
+        return this;
+    }
+
+    public ProtocolEncoder signal(Command.Type type) {
+        header(type, 0);
+        return this;
+    }
+
+    public ProtocolEncoder ping(int seq, long originTime) {
+        header(Command.Type.PING, Command.Type.PING.getPayloadSize());
+        buffer.putInt(seq);
+        buffer.putLong(originTime);
+        return this;
+    }
+
+    public ProtocolEncoder pong(int seq, long originTime, long receiveTime, long transmitTime) {
+        header(Command.Type.PONG, Command.Type.PONG.getPayloadSize());
+        buffer.putInt(seq);
+        buffer.putLong(originTime);
+        buffer.putLong(receiveTime);
+        buffer.putLong(transmitTime);
+        return this;
+    }
+
+    /**
+     * Положение указателя агента; форма shapeId должна быть уже отправлена через CursorShape.write()
+     */
+    public ProtocolEncoder cursor(int x, int y, int shapeId) {
+        header(Command.Type.CURSOR_POSITION, Command.Type.CURSOR_POSITION.getPayloadSize());
+        buffer.putInt(x);
+        buffer.putInt(y);
+        buffer.putInt(shapeId);
+        return this;
+    }
+
+    /**
+     * Текущие настройки потока кадров, выбранные агентом под канал
+     */
+    public ProtocolEncoder streamState(int quality, int fps, int scale) {
+        header(Command.Type.STREAM_STATE, Command.Type.STREAM_STATE.getPayloadSize());
+        buffer.putInt(quality);
+        buffer.putInt(fps);
+        buffer.putInt(scale);
+        return this;
+    }
+
+    public ProtocolEncoder text(Command.Type type, String text) {
+        byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+        header(type, bytes.length);
+        buffer.put(bytes);
+        return this;
+    }
+
+    /**
+     * Кодирование объекта Command (для кода, который работает с командами как с объектами)
+     */
+    public ProtocolEncoder command(Command command) {
+        Command.Type type = command.getType();
+        Object data = command.getData();
+
+        switch (type) {
+            case MOUSE_MOVE:
+                if (data instanceof Command.Point) {
+                    Command.Point point = (Command.Point) data;
+                    return mouseMove(point.x, point.y);
+                }
+                return mouse(type, intAt(data, 0), intAt(data, 1), 0, 0);
+
+            case MOUSE_PRESS:
+            case MOUSE_RELEASE:
+            case MOUSE_WHEEL:
+            case MOUSE_DRAG:
+                return mouse(type, intAt(data, 0), intAt(data, 1), intAt(data, 2), intAt(data, 3));
+
+            case MOUSE_CLICK:
+                int clicks = intAt(data, 3);
+                return mouse(type, intAt(data, 0), intAt(data, 1), intAt(data, 2), clicks > 0 ? clicks : 1);
+
+            case KEY_PRESS:
+            case KEY_RELEASE:
+            case KEY_TYPED:
+                return key(type, intAt(data, 0));
+
+            case SET_QUALITY:
+            case SET_FPS:
+            case SET_TRANSPORT:
+            case SET_ADAPTIVE:
+                return value(type, intAt(data, 0));
+
+            case STREAM_STATE:
+                return streamState(intAt(data, 0), intAt(data, 1), intAt(data, 2));
+
+            case PING:
+                // Время отправки проставляется при кодировании, а не при создании команды
+                return ping(intAt(data, 0), WallClock.micros());
+
+            case PONG:
+                throw new IllegalArgumentException("PONG отправляется агентом через pong()");
+
+            case CURSOR_POSITION:
+                return cursor(intAt(data, 0), intAt(data, 1), intAt(data, 2));
+
+            case CURSOR_SHAPE:
+                if (!(data instanceof CursorShape)) {
+                    throw new IllegalArgumentException("Форма указателя должна передаваться как CursorShape");
+                }
+                ((CursorShape) data).write(this);
+                return this;
+
+            case SCREENSHOT_RESPONSE:
+                if (!(data instanceof byte[])) {
+                    throw new IllegalArgumentException("Кадр должен передаваться как byte[]");
+                }
+                byte[] frame = (byte[]) data;
+                header(type, frame.length);
+                buffer.put(frame);
+                return this;
+
+            default:
+                if (type.getPayloadSize() == 0) {
+                    return signal(type);
+                }
+                return text(type, data == null ? "" : data.toString());
+        }
+    }
+
+    /**
+     * Начало сообщения, размер которого заранее неизвестен (кадр).
+     * Данные пишутся через reserve(), затем вызывается endMessage().
+     *
+     * @return позиция начала сообщения для endMessage()
+     */
+    public int beginMessage(Command.Type type) {
+        int start = buffer.position();
+        header(type, 0);
+        return start;
+    }
+
+    /**
+     * Проставляет размер данных сообщения, начатого beginMessage()
+     */
+    public void endMessage(int start) {
+        buffer.putInt(start + 1, buffer.position() - start - Protocol.HEADER_SIZE);
+    }
+
+    /**
+     * Буфер с местом как минимум под bytes байт для записи данных сообщения.
+     * Ссылку нельзя сохранять: буфер может быть заменен при росте.
+     */
+    public ByteBuffer reserve(int bytes) {
+        ensureCapacity(bytes);
+        return buffer;
+    }
+
+    /**
+     * Отправка накопленных сообщений и очистка буфера
+     */
+    public void writeTo(WritableByteChannel channel) throws IOException {
+        buffer.flip();
+        try {
+            while (buffer.hasRemaining()) {
+                channel.write(buffer);
+            }
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Отправка в поток сокета одним вызовом write
+     */
+    public void writeTo(OutputStream out) throws IOException {
+        try {
+            out.write(buffer.array(), buffer.arrayOffset(), buffer.position());
+            out.flush();
+        } finally {
+            buffer.clear();
+        }
+    }
+
+    /**
+     * Накопленные данные (от 0 до position)
+     */
+    public ByteBuffer buffer() {
+        return buffer;
+    }
+
+    public void clear() {
+        buffer.clear();
+    }
+
+    private void header(Command.Type type, int payloadSize) {
+        ensureCapacity(Protocol.HEADER_SIZE + payloadSize);
+        buffer.put(type.getCode());
+        buffer.putInt(payloadSize);
+    }
+
+    private void ensureCapacity(int bytes) {
+        if (buffer.remaining() < bytes) {
+            int capacity = Math.max(buffer.capacity() * 2, buffer.position() + bytes);
+            ByteBuffer grown = ByteBuffer.allocate(capacity);
+            buffer.flip();
+            grown.put(buffer);
+            buffer = grown;
+        }
+    }
+
+    private static int intAt(Object data, int index) {
+        if (data instanceof Object[]) {
+            Object[] values = (Object[]) data;
+            return index < values.length && values[index] instanceof Number
+                    ? ((Number) values[index]).intValue() : 0;
+        }
+        return index == 0 && data instanceof Number ? ((Number) data).intValue() : 0;
+    }
+}
@@ -0,0 +1,77 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import java.net.InetSocketAddress;
+
+/**
+ * Сессия на сервере-посреднике: номер сессии и адрес посредника.
+ * Помощник вводит ее вместо IP агента в виде номер@хост[:порт].
+ */
+public final class RelayAddress {
+    private final long sessionId;
+    private final String host;
+    private final int port;
+
+    public RelayAddress(long sessionId, String host, int port) {
+        if (host.isEmpty()) {
+            throw new IllegalArgumentException("Не задан адрес посредника");
+        }
+        if (port < 1 || port > 65535) {
+            throw new IllegalArgumentException("Неверный порт посредника: " + port);
+        }
+        this.sessionId = sessionId;
+        this.host = host;
+        this.port = port;
+    }
+
+    /**
+     * Разбор "номер@хост[:порт]"
+     *
+     * @return адрес или null, если текст - обычный адрес агента (без '@')
+     */
+    public static RelayAddress parse(String text) {
+        int at = text.indexOf('@');
+        if (at < 0) return null;
+        try {
+            return of(Long.parseLong(text.substring(0, at).trim()), text.substring(at + 1));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Номер сессии должен быть числом: " + text.substring(0, at));
+        }
+    }
+
+    /**
+     * Сессия sessionId на посреднике "хост[:порт]" (порт по умолчанию Protocol.RELAY_PORT)
+     */
+    public static RelayAddress of(long sessionId, String hostPort) {
+        String address = hostPort.trim();
+        int colon = address.lastIndexOf(':');
+        if (colon < 0) {
+            return new RelayAddress(sessionId, address, Protocol.RELAY_PORT);
+        }
+        try {
+            return new RelayAddress(sessionId, address.substring(0, colon), Integer.parseInt(address.substring(colon + 1)));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Неверный порт посредника: " + address.substring(colon + 1));
+        }
+    }
+
+    public long getSessionId() {
+        return sessionId;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    public InetSocketAddress toSocketAddress() {
+        return new InetSocketAddress(host, port);
+    }
+
+    @Override
+    public String toString() {
+        return sessionId + "@" + host + ":" + port;
+    }
+}
@@ -0,0 +1,30 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+/**
+ * Настенное время в микросекундах для отметок PING/PONG.
+ * System.currentTimeMillis() дает только миллисекунды, а в локальной сети
+ * круговая задержка бывает меньше миллисекунды. Поэтому время один раз
+ * привязывается к currentTimeMillis при загрузке класса, а дальше отсчитывается
+ * по монотонному System.nanoTime(): отметки не прыгают при подстройке часов системы.
+ */
+public final class WallClock {
+    private static final long BASE_MICROS = System.currentTimeMillis() * 1000;
+    private static final long BASE_NANOS = System.nanoTime();
+
+    private WallClock() {
+    }
+
+    /**
+     * Текущее время, мкс от эпохи
+     */
+    public static long micros() {
+        return fromNanos(System.nanoTime());
+    }
+
+    /**
+     * Время, соответствующее отметке System.nanoTime(), мкс от эпохи
+     */
+    public static long fromNanos(long nanos) {
+        return BASE_MICROS + (nanos - BASE_NANOS) / 1000;
+    }
+}
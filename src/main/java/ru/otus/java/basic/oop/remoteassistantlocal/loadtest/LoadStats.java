@@ -0,0 +1,50 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.loadtest;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.agent.Histogram;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Общие счетчики всех имитируемых помощников.
+ * Задержка кадров пишется в две гистограммы: за все время теста и за текущий
+ * интервал отчета (ее заменяет отчет, запись в старую после замены безвредна).
+ */
+public class LoadStats {
+    final AtomicInteger activeSessions = new AtomicInteger();
+    final AtomicLong connects = new AtomicLong();
+    final AtomicLong connectFailures = new AtomicLong();
+    final AtomicLong disconnects = new AtomicLong();
+    final AtomicLong framesReceived = new AtomicLong();
+    final AtomicLong bytesReceived = new AtomicLong();
+    final AtomicLong decodeErrors = new AtomicLong();
+    final AtomicLong inputsSent = new AtomicLong();
+    // Сообщения канала указателя (положения и формы)
+    final AtomicLong cursorUpdates = new AtomicLong();
+    final AtomicLong cursorShapes = new AtomicLong();
+    // Подстройка агента под канал: сообщения STREAM_STATE и последнее из них
+    final AtomicLong streamStates = new AtomicLong();
+    volatile String lastStreamState = "нет";
+
+    // Задержка от захвата кадра на агенте до его готовности у помощника, мкс
+    final Histogram totalLatency = new Histogram("frameLatency", "мс", 1000);
+    private volatile Histogram intervalLatency = new Histogram("frameLatency", "мс", 1000);
+
+    void frameReceived(int bytes, long latencyMicros) {
+        framesReceived.incrementAndGet();
+        bytesReceived.addAndGet(bytes);
+        if (latencyMicros >= 0) {
+            totalLatency.record(latencyMicros);
+            intervalLatency.record(latencyMicros);
+        }
+    }
+
+    /**
+     * Гистограмма прошедшего интервала; следующий интервал пишется в новую
+     */
+    Histogram swapIntervalLatency() {
+        Histogram finished = intervalLatency;
+        intervalLatency = new Histogram("frameLatency", "мс", 1000);
+        return finished;
+    }
+}
@@ -0,0 +1,325 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.loadtest;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.agent.AgentConfig;
+import ru.otus.java.basic.oop.remoteassistantlocal.agent.DesktopAgent;
+import ru.otus.java.basic.oop.remoteassistantlocal.agent.FrameSource;
+import ru.otus.java.basic.oop.remoteassistantlocal.agent.Histogram;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.server.RelayConfig;
+import ru.otus.java.basic.oop.remoteassistantlocal.server.RelayServer;
+import ru.otus.java.basic.oop.remoteassistantlocal.server.RelayStats;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.SessionRecorder;
+
+import javax.management.MBeanServerConnection;
+import javax.management.remote.JMXConnectorFactory;
+import javax.management.remote.JMXServiceURL;
+import java.awt.*;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+// LoadTestApp.java - Нагрузочный и длительный тест агента
+/**
+ * Открывает N имитируемых помощников (SimulatedViewer) к агенту по обычному протоколу
+ * и периодически печатает: число сессий, кадры и трафик в секунду, события ввода,
+ * процентили задержки кадров, разрывы и память после сборки мусора (рост с первого отчета).
+ *
+ * Агент может быть отдельным процессом (load.host, load.port) или запускаться
+ * здесь же без дисплея: -Dload.agent=synthetic. Память отдельного агента видна,
+ * если он запущен с JMX (-Dcom.sun.management.jmxremote.port=9010 ...) и задан -Dload.jmx=host:9010.
+ *
+ * С -Dload.relay=хост[:порт] помощники подключаются через сервер-посредник с номером
+ * сессии load.relayId; -Dload.relay=local запускает посредника здесь же на loopback.
+ * С -Dload.recordDir=каталог каждый помощник записывает сеанс, как кнопка записи помощника.
+ */
+public class LoadTestApp {
+    private static final long MB = 1024 * 1024;
+
+    private final LoadTestConfig config;
+    private final LoadStats stats = new LoadStats();
+    private final List<SimulatedViewer> viewers = new ArrayList<>();
+    private final ScheduledExecutorService scheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread thread = new Thread(r, "Load-Input");
+        thread.setDaemon(true);
+        return thread;
+    });
+    private final AtomicBoolean finished = new AtomicBoolean();
+
+    private final List<MemoryPoolMXBean> localHeap;
+    private List<MemoryPoolMXBean> agentHeap;
+    private DesktopAgent agent;
+    private RelayServer relay;
+
+    private long startNanos;
+    private long baseLocalHeap = -1;
+    private long baseAgentHeap = -1;
+    private long lastReportNanos;
+    private long lastFrames;
+    private long lastBytes;
+    private long lastInputs;
+
+    public LoadTestApp(LoadTestConfig config) {
+        this.config = config;
+        this.localHeap = heapPools(ManagementFactory.getPlatformMBeanServer());
+    }
+
+    public static void main(String[] args) {
+        try {
+            System.out.println("=== Удаленный помощник - Нагрузочный тест ===");
+            new LoadTestApp(LoadTestConfig.fromSystemProperties()).run();
+        } catch (AWTException | IOException e) {
+            System.err.println("Ошибка запуска теста:");
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ошибка настройки теста: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    public void run() throws AWTException, IOException, InterruptedException {
+        startRelay();
+        startAgent();
+        connectAgentJmx();
+
+        String target = config.getRelay() != null
+                ? "посредник " + config.getRelay() + ", сессия " + config.getRelayId()
+                : "агент " + config.getHost() + ":" + config.getPort();
+        System.out.println("Помощников: " + config.getViewers() + ", " + target
+                + ", ввод " + config.getInputRate() + "/с, декодирование " + (config.isDecode() ? "да" : "нет")
+                + ", режим " + (config.getTransport() == Protocol.TRANSPORT_DELTA ? "DELTA" : "TILES")
+                + (config.getAdaptive() != Protocol.ADAPTIVE_OFF ? ", подстройка до " + config.getAdaptive() + "%" : "")
+                + (config.getLinkKbps() > 0 ? ", канал " + config.getLinkKbps() + " кбит/с" : "")
+                + (config.getRecordDir() != null ? ", запись в " + config.getRecordDir() : "")
+                + ", длительность " + (config.getDurationSeconds() == 0 ? "без ограничения" : config.getDurationSeconds() + " с"));
+
+        startNanos = System.nanoTime();
+        lastReportNanos = startNanos;
+        for (int i = 0; i < config.getViewers(); i++) {
+            SimulatedViewer viewer = new SimulatedViewer(i + 1, config, stats);
+            viewers.add(viewer);
+            viewer.start();
+        }
+
+        if (config.getInputRate() > 0) {
+            long period = 1_000_000 / config.getInputRate();
+            scheduler.scheduleAtFixedRate(() -> viewers.forEach(SimulatedViewer::tick), period, period, TimeUnit.MICROSECONDS);
+        }
+        scheduler.scheduleAtFixedRate(() -> viewers.forEach(SimulatedViewer::ping), 0, 1, TimeUnit.SECONDS);
+
+        // Итог печатается и при остановке по Ctrl+C
+        Runtime.getRuntime().addShutdownHook(new Thread(this::finish, "Load-Shutdown"));
+
+        long durationNanos = TimeUnit.SECONDS.toNanos(config.getDurationSeconds());
+        while (durationNanos == 0 || System.nanoTime() - startNanos < durationNanos) {
+            long left = durationNanos == 0 ? Long.MAX_VALUE : durationNanos - (System.nanoTime() - startNanos);
+            TimeUnit.NANOSECONDS.sleep(Math.min(TimeUnit.SECONDS.toNanos(config.getReportSeconds()), left));
+            report();
+        }
+        finish();
+    }
+
+    /**
+     * Посредник в этом процессе (load.relay=local) на свободном порту loopback
+     */
+    private void startRelay() throws IOException {
+        if (!"local".equalsIgnoreCase(config.getRelay())) return;
+
+        RelayConfig relayConfig = RelayConfig.fromSystemProperties();
+        relayConfig.setPort(0);
+        relay = new RelayServer(relayConfig, new RelayStats());
+        config.setRelay("127.0.0.1:" + relay.getPort());
+        Thread thread = new Thread(() -> {
+            try {
+                relay.run();
+            } catch (IOException e) {
+                System.err.println("Ошибка посредника: " + e.getMessage());
+            }
+        }, "Load-Relay");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void startAgent() throws AWTException, IOException, InterruptedException {
+        if (config.getAgentSource() == null) return;
+
+        AgentConfig agentConfig = AgentConfig.fromSystemProperties();
+        agentConfig.setSource(config.getAgentSource());
+        if (config.getRelay() != null) {
+            agentConfig.setRelay(config.getRelay());
+            agentConfig.setRelayId(config.getRelayId());
+        }
+        agent = new DesktopAgent(agentConfig, FrameSource.open(agentConfig.getSource()), null);
+        Thread thread = new Thread(() -> {
+            try {
+                agent.start(config.getPort());
+            } catch (IOException e) {
+                System.err.println("Ошибка запуска агента: " + e.getMessage());
+            }
+        }, "Load-Agent");
+        thread.setDaemon(true);
+        thread.start();
+        // Даем серверу агента открыть порт до подключения помощников
+        Thread.sleep(500);
+    }
+
+    private void connectAgentJmx() throws IOException {
+        if (config.getAgentJmx() != null) {
+            JMXServiceURL url = new JMXServiceURL("service:jmx:rmi:///jndi/rmi://" + config.getAgentJmx() + "/jmxrmi");
+            agentHeap = heapPools(JMXConnectorFactory.connect(url).getMBeanServerConnection());
+        }
+    }
+
+    private void report() {
+        long now = System.nanoTime();
+        double seconds = (now - lastReportNanos) / 1e9;
+        lastReportNanos = now;
+
+        long frames = stats.framesReceived.get();
+        long bytes = stats.bytesReceived.get();
+        long inputs = stats.inputsSent.get();
+        Histogram latency = stats.swapIntervalLatency();
+
+        System.out.println(String.format("[%s] сессий %d/%d, кадров %.1f/с, %.2f МБ/с, ввод %.0f/с, "
+                        + "задержка кадра p50=%.1f p90=%.1f p99=%.1f макс=%.1f мс, разрывов %d, "
+                        + "ошибок подключения %d, %s",
+                elapsed(now), stats.activeSessions.get(), config.getViewers(),
+                (frames - lastFrames) / seconds, (bytes - lastBytes) / seconds / MB, (inputs - lastInputs) / seconds,
+                latency.getP50(), latency.getP90(), latency.getP99(), latency.getMax(),
+                stats.disconnects.get(), stats.connectFailures.get(), memory()));
+
+        lastFrames = frames;
+        lastBytes = bytes;
+        lastInputs = inputs;
+    }
+
+    /**
+     * Память после последней сборки мусора и рост с первого отчета
+     */
+    private String memory() {
+        long local = heapAfterGc(localHeap);
+        if (baseLocalHeap < 0) baseLocalHeap = local;
+        String text = String.format("куча теста %d МБ (%+d)", local / MB, (local - baseLocalHeap) / MB);
+
+        if (agentHeap != null) {
+            try {
+                long remote = heapAfterGc(agentHeap);
+                if (baseAgentHeap < 0) baseAgentHeap = remote;
+                text += String.format(", куча агента %d МБ (%+d)", remote / MB, (remote - baseAgentHeap) / MB);
+            } catch (RuntimeException e) {
+                text += ", куча агента недоступна";
+            }
+        } else if (agent != null) {
+            text += " (вместе с агентом)";
+        }
+        return text;
+    }
+
+    private void finish() {
+        if (!finished.compareAndSet(false, true)) return;
+
+        scheduler.shutdownNow();
+        viewers.forEach(SimulatedViewer::close);
+        String recording = awaitRecordings();
+
+        double seconds = (System.nanoTime() - startNanos) / 1e9;
+        Histogram latency = stats.totalLatency;
+        System.out.println("=== Итог за " + elapsed(System.nanoTime()) + " ===");
+        System.out.println(String.format("Подключений %d, разрывов %d, ошибок подключения %d, ошибок декодирования %d",
+                stats.connects.get(), stats.disconnects.get(), stats.connectFailures.get(), stats.decodeErrors.get()));
+        System.out.println(String.format("Кадров %d (%.1f/с), принято %.1f МБ (%.2f МБ/с), событий ввода %d",
+                stats.framesReceived.get(), stats.framesReceived.get() / seconds,
+                stats.bytesReceived.get() / (double) MB, stats.bytesReceived.get() / seconds / MB,
+                stats.inputsSent.get()));
+        System.out.println(String.format("Указатель: положений %d, форм %d",
+                stats.cursorUpdates.get(), stats.cursorShapes.get()));
+        System.out.println(String.format("Подстройка под канал: изменений %d, последнее: %s",
+                stats.streamStates.get(), stats.lastStreamState));
+        System.out.println("Задержка кадра: " + latency);
+        if (recording != null) {
+            System.out.println(recording);
+        }
+        System.out.println("Память: " + memory());
+
+        if (relay != null) {
+            System.out.print(relay.getStats().dump());
+        }
+        if (agent != null) {
+            System.out.print(agent.dumpMetrics());
+            agent.stop();
+        }
+        if (relay != null) {
+            relay.close();
+        }
+    }
+
+    /**
+     * Дожидается, пока помощники допишут записи сеансов (load.recordDir)
+     *
+     * @return строка итога или null, если запись не велась
+     */
+    private String awaitRecordings() {
+        int files = 0;
+        long bytes = 0;
+        long keyframes = 0;
+        long dropped = 0;
+        for (SimulatedViewer viewer : viewers) {
+            SessionRecorder recorder = viewer.getRecorder();
+            if (recorder == null) continue;
+            try {
+                if (!recorder.awaitWritten(10, TimeUnit.SECONDS)) {
+                    System.err.println("Запись " + recorder.getPath() + " не закончена за 10 с");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            files++;
+            bytes += recorder.getBytesWritten();
+            keyframes += recorder.getKeyframes();
+            dropped += recorder.getDroppedRecords();
+        }
+        if (files == 0) return null;
+        return String.format("Запись сеансов: файлов %d, %.1f МБ, ключевых кадров %d, пропущено записей %d",
+                files, bytes / (double) MB, keyframes, dropped);
+    }
+
+    private String elapsed(long now) {
+        long total = TimeUnit.NANOSECONDS.toSeconds(now - startNanos);
+        return String.format("%02d:%02d:%02d", total / 3600, total / 60 % 60, total % 60);
+    }
+
+    private static List<MemoryPoolMXBean> heapPools(MBeanServerConnection connection) {
+        try {
+            List<MemoryPoolMXBean> heap = new ArrayList<>();
+            for (MemoryPoolMXBean pool : ManagementFactory.getPlatformMXBeans(connection, MemoryPoolMXBean.class)) {
+                if (pool.getType() == MemoryType.HEAP) {
+                    heap.add(pool);
+                }
+            }
+            return heap;
+        } catch (IOException e) {
+            throw new IllegalStateException("Нет доступа к JMX: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Занятая куча по данным последней сборки мусора: не зависит от того,
+     * сколько мусора накопилось с тех пор, поэтому годится для поиска утечек
+     */
+    private static long heapAfterGc(List<MemoryPoolMXBean> pools) {
+        long used = 0;
+        for (MemoryPoolMXBean pool : pools) {
+            MemoryUsage usage = pool.getCollectionUsage();
+            used += usage != null ? usage.getUsed() : 0;
+        }
+        return used;
+    }
+}
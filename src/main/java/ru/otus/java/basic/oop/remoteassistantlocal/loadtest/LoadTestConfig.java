@@ -0,0 +1,228 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.loadtest;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+/**
+ * Настройки нагрузочного теста.
+ * Значения по умолчанию переопределяются системными свойствами, например:
+ *   java -Dload.viewers=50 -Dload.durationSec=14400 ... LoadTestApp
+ */
+public class LoadTestConfig {
+    private String host = "127.0.0.1";
+    private int port = Protocol.PORT;
+    private int viewers = 10;
+    private long durationSeconds = 60;
+    private int reportSeconds = 10;
+    private int inputRate = 30;
+    private boolean decode = true;
+    private boolean reconnect = true;
+    private int quality = 70;
+    private int fps = 10;
+    private int transport = Protocol.TRANSPORT_TILES;
+    private int adaptive = Protocol.ADAPTIVE_OFF;
+    private int linkKbps;
+    private String agentSource;
+    private String agentJmx;
+    private String relay;
+    private long relayId = 1;
+    private String recordDir;
+
+    /**
+     * Настройки из системных свойств (load.*)
+     */
+    public static LoadTestConfig fromSystemProperties() {
+        LoadTestConfig config = new LoadTestConfig();
+        config.host = System.getProperty("load.host", config.host);
+        config.port = Integer.getInteger("load.port", config.port);
+        config.setViewers(Integer.getInteger("load.viewers", config.viewers));
+        config.setDurationSeconds(Long.getLong("load.durationSec", config.durationSeconds));
+        config.setReportSeconds(Integer.getInteger("load.reportSec", config.reportSeconds));
+        config.setInputRate(Integer.getInteger("load.inputRate", config.inputRate));
+        config.decode = Boolean.parseBoolean(System.getProperty("load.decode", String.valueOf(config.decode)));
+        config.reconnect = Boolean.parseBoolean(System.getProperty("load.reconnect", String.valueOf(config.reconnect)));
+        config.quality = Integer.getInteger("load.quality", config.quality);
+        config.fps = Integer.getInteger("load.fps", config.fps);
+        config.setTransport(System.getProperty("load.transport", "TILES"));
+        config.adaptive = Integer.getInteger("load.adaptive", config.adaptive);
+        config.setLinkKbps(Integer.getInteger("load.linkKbps", config.linkKbps));
+        config.agentSource = System.getProperty("load.agent");
+        config.agentJmx = System.getProperty("load.jmx");
+        config.setRelay(System.getProperty("load.relay"));
+        config.relayId = Long.getLong("load.relayId", config.relayId);
+        config.recordDir = System.getProperty("load.recordDir");
+        return config;
+    }
+
+    public String getHost() {
+        return host;
+    }
+
+    public int getPort() {
+        return port;
+    }
+
+    /**
+     * Число одновременных помощников
+     */
+    public int getViewers() {
+        return viewers;
+    }
+
+    public void setViewers(int viewers) {
+        if (viewers < 1) {
+            throw new IllegalArgumentException("Число помощников должно быть больше 0: " + viewers);
+        }
+        this.viewers = viewers;
+    }
+
+    /**
+     * Длительность теста в секундах; 0 - до остановки (Ctrl+C)
+     */
+    public long getDurationSeconds() {
+        return durationSeconds;
+    }
+
+    public void setDurationSeconds(long durationSeconds) {
+        if (durationSeconds < 0) {
+            throw new IllegalArgumentException("Длительность не может быть отрицательной: " + durationSeconds);
+        }
+        this.durationSeconds = durationSeconds;
+    }
+
+    /**
+     * Период промежуточных отчетов в секундах
+     */
+    public int getReportSeconds() {
+        return reportSeconds;
+    }
+
+    public void setReportSeconds(int reportSeconds) {
+        if (reportSeconds < 1) {
+            throw new IllegalArgumentException("Период отчета должен быть больше 0: " + reportSeconds);
+        }
+        this.reportSeconds = reportSeconds;
+    }
+
+    /**
+     * Событий ввода в секунду от каждого помощника; 0 - без ввода
+     */
+    public int getInputRate() {
+        return inputRate;
+    }
+
+    public void setInputRate(int inputRate) {
+        if (inputRate < 0 || inputRate > 1000) {
+            throw new IllegalArgumentException("Частота ввода должна быть от 0 до 1000: " + inputRate);
+        }
+        this.inputRate = inputRate;
+    }
+
+    /**
+     * Декодировать ли кадры, как настоящий помощник (иначе только прием)
+     */
+    public boolean isDecode() {
+        return decode;
+    }
+
+    /**
+     * Переподключать ли помощника после разрыва, чтобы число сессий не падало
+     */
+    public boolean isReconnect() {
+        return reconnect;
+    }
+
+    public int getQuality() {
+        return quality;
+    }
+
+    public int getFps() {
+        return fps;
+    }
+
+    /**
+     * Режим передачи кадров, который запрашивают помощники (Protocol.TRANSPORT_*)
+     */
+    public int getTransport() {
+        return transport;
+    }
+
+    /**
+     * @param transport TILES или DELTA
+     */
+    public void setTransport(String transport) {
+        switch (transport.trim().toUpperCase()) {
+            case "TILES":
+                this.transport = Protocol.TRANSPORT_TILES;
+                break;
+            case "DELTA":
+                this.transport = Protocol.TRANSPORT_DELTA;
+                break;
+            default:
+                throw new IllegalArgumentException("Режим передачи должен быть TILES или DELTA: " + transport);
+        }
+    }
+
+    /**
+     * Подстройка агента под канал, которую запрашивают помощники (SET_ADAPTIVE):
+     * наименьший масштаб в процентах или Protocol.ADAPTIVE_OFF
+     */
+    public int getAdaptive() {
+        return adaptive;
+    }
+
+    /**
+     * Имитация медленного канала: сколько килобит в секунду принимает каждый помощник; 0 - без ограничения
+     */
+    public int getLinkKbps() {
+        return linkKbps;
+    }
+
+    public void setLinkKbps(int linkKbps) {
+        if (linkKbps < 0) {
+            throw new IllegalArgumentException("Скорость канала не может быть отрицательной: " + linkKbps);
+        }
+        this.linkKbps = linkKbps;
+    }
+
+    /**
+     * Источник кадров для агента в том же процессе (например, synthetic)
+     * или null, если агент запущен отдельно
+     */
+    public String getAgentSource() {
+        return agentSource;
+    }
+
+    /**
+     * Сервер-посредник "хост[:порт]", через который помощники подключаются к агенту,
+     * "local" - посредник в этом же процессе на loopback, или null - прямое подключение
+     */
+    public String getRelay() {
+        return relay;
+    }
+
+    public void setRelay(String relay) {
+        this.relay = relay == null || relay.trim().isEmpty() ? null : relay.trim();
+    }
+
+    /**
+     * Номер сессии агента на посреднике
+     */
+    public long getRelayId() {
+        return relayId;
+    }
+
+    /**
+     * Каталог, в который каждый помощник записывает свой сеанс (SessionRecorder), или null - без записи.
+     * Запись идет только вместе с декодированием: ключевые кадры берутся из изображения декодера.
+     */
+    public String getRecordDir() {
+        return recordDir;
+    }
+
+    /**
+     * Адрес JMX агента (host:port) для наблюдения за его памятью или null
+     */
+    public String getAgentJmx() {
+        return agentJmx;
+    }
+}
@@ -0,0 +1,299 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.loadtest;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.RelayAddress;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.WallClock;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.FrameDecoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.FrameReceiver;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.LatencyEstimator;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.Recording;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.SessionRecorder;
+
+import java.awt.event.InputEvent;
+import java.awt.event.KeyEvent;
+import java.io.IOException;
+import java.net.ConnectException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.nio.file.Path;
+import java.util.Random;
+
+/**
+ * Имитация помощника без интерфейса: то же подключение и прием кадров, что у ViewerController
+ * (FrameReceiver и, если включено, FrameDecoder), и поток ввода, похожий на живого человека:
+ * движения мыши по плавной траектории, клики, прокрутка и набор текста очередями.
+ *
+ * Ввод и PING отправляет общий планировщик LoadTestApp (tick, ping), прием идет в своем потоке.
+ * С load.linkKbps поток приема выдерживает паузу после каждого кадра, как будто кадр шел
+ * по медленному каналу, а буфер приема сокета уменьшен: агент видит узкий канал.
+ * После разрыва помощник переподключается, если это разрешено настройками.
+ * С load.recordDir помощник записывает сеанс в файл, как ViewerController с кнопкой записи.
+ */
+public class SimulatedViewer implements AutoCloseable {
+    private static final int SCREEN_WIDTH = 1920;
+    private static final int SCREEN_HEIGHT = 1080;
+    private static final long RECONNECT_DELAY_MS = 1000;
+    // Буфер приема при имитации медленного канала: иначе loopback копит мегабайты
+    private static final int SLOW_LINK_RECEIVE_BUFFER = 32 * 1024;
+
+    private final int id;
+    private final LoadTestConfig config;
+    private final LoadStats stats;
+    private final Random random;
+    private final LatencyEstimator latency = new LatencyEstimator();
+    private final ProtocolEncoder encoder = new ProtocolEncoder(256);
+
+    private volatile SocketChannel channel;
+    private volatile FrameReceiver receiver;
+    private volatile boolean closed;
+    private volatile SessionRecorder recorder;
+    private Thread thread;
+
+    // Состояние ввода (только поток планировщика)
+    private double angle;
+    private int typing;
+
+    public SimulatedViewer(int id, LoadTestConfig config, LoadStats stats) {
+        this.id = id;
+        this.config = config;
+        this.stats = stats;
+        this.random = new Random(id);
+        this.angle = random.nextDouble() * Math.PI * 2;
+    }
+
+    public void start() {
+        thread = new Thread(this::run, "Load-Viewer-" + id);
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    private void run() {
+        // Изображение экрана одно на все переподключения, как у настоящего помощника
+        FrameDecoder decoder = config.isDecode() ? new FrameDecoder(SCREEN_WIDTH, SCREEN_HEIGHT) : null;
+        if (decoder != null && config.getRecordDir() != null) {
+            // Запись тоже одна на все переподключения: изображение декодера не сбрасывается
+            Path file = Path.of(config.getRecordDir(),
+                    "viewer-" + id + "-" + System.currentTimeMillis() + Recording.EXTENSION);
+            try {
+                recorder = new SessionRecorder(file, SCREEN_WIDTH, SCREEN_HEIGHT);
+            } catch (IOException e) {
+                System.err.println("Помощник #" + id + " не может записывать сеанс: " + e.getMessage());
+            }
+        }
+        while (!closed) {
+            try {
+                receive(decoder);
+            } catch (ConnectException e) {
+                stats.connectFailures.incrementAndGet();
+            } catch (IOException | RuntimeException e) {
+                if (!closed) {
+                    stats.disconnects.incrementAndGet();
+                    System.out.println("Помощник #" + id + " отключен: " + e.getMessage());
+                }
+            } catch (InterruptedException e) {
+                break;
+            }
+
+            if (closed || !config.isReconnect()) break;
+            try {
+                Thread.sleep(RECONNECT_DELAY_MS);
+            } catch (InterruptedException e) {
+                break;
+            }
+        }
+    }
+
+    private void receive(FrameDecoder decoder) throws IOException, InterruptedException {
+        RelayAddress relay = config.getRelay() != null ? RelayAddress.of(config.getRelayId(), config.getRelay()) : null;
+        SocketChannel opened = SocketChannel.open();
+        if (config.getLinkKbps() > 0) {
+            opened.socket().setReceiveBufferSize(SLOW_LINK_RECEIVE_BUFFER);
+        }
+        opened.connect(relay != null
+                ? relay.toSocketAddress() : new InetSocketAddress(config.getHost(), config.getPort()));
+        opened.socket().setTcpNoDelay(true);
+        latency.reset();
+        synchronized (encoder) {
+            if (relay != null) {
+                encoder.relayHello(Protocol.RELAY_ROLE_VIEWER, relay.getSessionId());
+            }
+            encoder.handshake()
+                    .value(Command.Type.SET_QUALITY, config.getQuality())
+                    .value(Command.Type.SET_FPS, config.getFps())
+                    .value(Command.Type.SET_TRANSPORT, config.getTransport())
+                    .value(Command.Type.SET_ADAPTIVE, config.getAdaptive())
+                    .writeTo(opened);
+        }
+
+        FrameReceiver frames = new FrameReceiver(opened, new MessageHandler() {
+            @Override
+            public void onPong(int seq, long originTime, long receiveTime, long transmitTime) {
+                latency.onPong(seq, originTime, receiveTime, transmitTime, WallClock.micros());
+            }
+
+            @Override
+            public void onCursor(int x, int y, int shapeId) {
+                stats.cursorUpdates.incrementAndGet();
+            }
+
+            @Override
+            public void onCursorShape(CursorShape shape) {
+                stats.cursorShapes.incrementAndGet();
+            }
+
+            @Override
+            public void onStreamState(int quality, int fps, int scale) {
+                stats.streamStates.incrementAndGet();
+                stats.lastStreamState = "качество " + quality + "%, " + fps + " к/с, масштаб " + scale + "%";
+            }
+
+            @Override
+            public void onFrame(ByteBuffer payload) {
+                int size = payload.remaining();
+                long captureTime = payload.getLong(payload.position());
+                if (decoder != null) {
+                    try {
+                        int start = payload.position();
+                        decoder.decode(payload);
+                        SessionRecorder current = recorder;
+                        if (current != null) {
+                            current.onFrame(payload.position(start), decoder);
+                        }
+                    } catch (IOException | RuntimeException e) {
+                        stats.decodeErrors.incrementAndGet();
+                    }
+                }
+                // Пока нет смещения часов агента, задержку не считаем; ошибка смещения может дать < 0
+                long frameLatency = latency.hasSample()
+                        ? Math.max(0, Math.round(latency.frameLatencyMillis(captureTime) * 1000)) : -1;
+                stats.frameReceived(size, frameLatency);
+                throttle(size);
+            }
+        });
+
+        frames.setRecorder(recorder);
+        channel = opened;
+        receiver = frames;
+        stats.connects.incrementAndGet();
+        stats.activeSessions.incrementAndGet();
+        try {
+            frames.run();
+        } finally {
+            stats.activeSessions.decrementAndGet();
+            channel = null;
+            frames.close();
+            opened.close();
+        }
+    }
+
+    /**
+     * Пауза, за которую кадр прошел бы по каналу load.linkKbps (поток приема)
+     */
+    private void throttle(int bytes) {
+        int kbps = config.getLinkKbps();
+        if (kbps <= 0) return;
+        try {
+            Thread.sleep(bytes * 8L / kbps);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Одно событие ввода (поток планировщика)
+     */
+    void tick() {
+        SocketChannel current = channel;
+        if (current == null) return;
+
+        synchronized (encoder) {
+            int x = (int) (SCREEN_WIDTH / 2 + Math.cos(angle) * SCREEN_WIDTH * 0.4);
+            int y = (int) (SCREEN_HEIGHT / 2 + Math.sin(angle * 1.3) * SCREEN_HEIGHT * 0.4);
+            int dice = random.nextInt(100);
+
+            if (typing > 0) {
+                int key = KeyEvent.VK_A + random.nextInt(26);
+                encoder.key(Command.Type.KEY_PRESS, key).key(Command.Type.KEY_RELEASE, key);
+                typing--;
+            } else if (dice < 3) {
+                encoder.mouse(Command.Type.MOUSE_CLICK, x, y, InputEvent.BUTTON1_DOWN_MASK, 1);
+            } else if (dice < 5) {
+                encoder.mouse(Command.Type.MOUSE_WHEEL, x, y, random.nextBoolean() ? 1 : -1, 0);
+            } else if (dice < 7) {
+                // Начало очереди нажатий: клавиши пойдут со следующих тактов
+                typing = 5 + random.nextInt(16);
+                return;
+            } else {
+                angle += 0.02 + random.nextDouble() * 0.03;
+                encoder.mouseMove(x, y);
+            }
+            send(current);
+        }
+        stats.inputsSent.incrementAndGet();
+    }
+
+    /**
+     * Измерение задержки и смещения часов агента (поток планировщика)
+     */
+    void ping() {
+        SocketChannel current = channel;
+        if (current == null) return;
+
+        synchronized (encoder) {
+            encoder.ping(latency.nextSeq(), WallClock.micros());
+            send(current);
+        }
+    }
+
+    private void send(SocketChannel current) {
+        SessionRecorder recording = recorder;
+        if (recording != null) {
+            recording.onViewerMessages(encoder.buffer());
+        }
+        try {
+            encoder.writeTo(current);
+        } catch (IOException e) {
+            // Разрыв обнаружит поток приема
+        }
+    }
+
+    @Override
+    public void close() {
+        closed = true;
+        SocketChannel current = channel;
+        if (current != null) {
+            synchronized (encoder) {
+                encoder.signal(Command.Type.DISCONNECT);
+                send(current);
+            }
+            try {
+                current.close();
+            } catch (IOException e) {
+                // уже закрыт
+            }
+        }
+        if (thread != null) {
+            thread.interrupt();
+        }
+        FrameReceiver frames = receiver;
+        if (frames != null) {
+            frames.close();
+        }
+        SessionRecorder recording = recorder;
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    /**
+     * Запись сеанса этого помощника или null
+     */
+    SessionRecorder getRecorder() {
+        return recorder;
+    }
+}
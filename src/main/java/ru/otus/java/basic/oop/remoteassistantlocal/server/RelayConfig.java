@@ -0,0 +1,100 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.server;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+/**
+ * Настройки сервера-посредника.
+ * Значения по умолчанию можно переопределить системными свойствами, например:
+ *   java -Drelay.port=6000 -Drelay.bufferKb=32 ... ServerApp
+ */
+public class RelayConfig {
+    private int port = Protocol.RELAY_PORT;
+    private int bufferKb = 64;
+    private int maxWaiting = 8;
+    private int helloTimeoutSeconds = 10;
+    private int reportSeconds = 10;
+
+    /**
+     * Настройки из системных свойств (relay.*)
+     */
+    public static RelayConfig fromSystemProperties() {
+        RelayConfig config = new RelayConfig();
+        config.setPort(Integer.getInteger("relay.port", config.port));
+        config.setBufferKb(Integer.getInteger("relay.bufferKb", config.bufferKb));
+        config.setMaxWaiting(Integer.getInteger("relay.maxWaiting", config.maxWaiting));
+        config.setHelloTimeoutSeconds(Integer.getInteger("relay.helloTimeoutSec", config.helloTimeoutSeconds));
+        config.setReportSeconds(Integer.getInteger("relay.reportSec", config.reportSeconds));
+        return config;
+    }
+
+    /**
+     * Порт посредника (relay.port); 0 - любой свободный
+     */
+    public int getPort() {
+        return port;
+    }
+
+    public void setPort(int port) {
+        if (port < 0 || port > 65535) {
+            throw new IllegalArgumentException("Неверный порт: " + port);
+        }
+        this.port = port;
+    }
+
+    /**
+     * Размер буфера пересылки в КБ (relay.bufferKb). Буфер занят, только пока прочитанные
+     * данные ждут записи в другую сторону, поэтому простаивающие сессии памяти не держат.
+     */
+    public int getBufferKb() {
+        return bufferKb;
+    }
+
+    public void setBufferKb(int bufferKb) {
+        if (bufferKb < 1 || bufferKb > 4096) {
+            throw new IllegalArgumentException("Размер буфера должен быть от 1 до 4096 КБ: " + bufferKb);
+        }
+        this.bufferKb = bufferKb;
+    }
+
+    /**
+     * Сколько подключений одной роли может ждать пары с одним номером сессии (relay.maxWaiting)
+     */
+    public int getMaxWaiting() {
+        return maxWaiting;
+    }
+
+    public void setMaxWaiting(int maxWaiting) {
+        if (maxWaiting < 1) {
+            throw new IllegalArgumentException("Число ожидающих должно быть больше 0: " + maxWaiting);
+        }
+        this.maxWaiting = maxWaiting;
+    }
+
+    /**
+     * За сколько секунд после подключения нужно прислать приветствие посредника (relay.helloTimeoutSec)
+     */
+    public int getHelloTimeoutSeconds() {
+        return helloTimeoutSeconds;
+    }
+
+    public void setHelloTimeoutSeconds(int helloTimeoutSeconds) {
+        if (helloTimeoutSeconds < 1) {
+            throw new IllegalArgumentException("Время ожидания приветствия должно быть больше 0: " + helloTimeoutSeconds);
+        }
+        this.helloTimeoutSeconds = helloTimeoutSeconds;
+    }
+
+    /**
+     * Период отчета о пропускной способности в консоль в секундах (relay.reportSec); 0 - без отчетов
+     */
+    public int getReportSeconds() {
+        return reportSeconds;
+    }
+
+    public void setReportSeconds(int reportSeconds) {
+        if (reportSeconds < 0) {
+            throw new IllegalArgumentException("Период отчета не может быть отрицательным: " + reportSeconds);
+        }
+        this.reportSeconds = reportSeconds;
+    }
+}
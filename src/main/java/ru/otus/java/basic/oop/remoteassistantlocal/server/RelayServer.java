@@ -0,0 +1,452 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.server;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.io.IOException;
+import java.net.InetSocketAddress;
+import java.nio.ByteBuffer;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.ServerSocketChannel;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayDeque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Сервер-посредник для агентов за NAT: агент и помощник сами подключаются к нему,
+ * а он соединяет их по номеру сессии и пересылает байты в обе стороны (см. Protocol, RELAY_*).
+ *
+ * Все подключения обслуживает один поток на одном Selector. Содержимое не разбирается
+ * и не копируется: данные читаются из сокета в прямой (direct) ByteBuffer и из него же
+ * пишутся в сокет другой стороны. Буфер берется из пула только на время пересылки и сразу
+ * возвращается, если получатель принял все, поэтому простаивающие сессии памяти не держат.
+ * Если получатель не успевает, чтение отправителя приостанавливается до освобождения буфера,
+ * и TCP притормаживает отправителя - очередь в посреднике не растет.
+ *
+ * Ожидающие пары подключения тоже читаются, чтобы сразу заметить отключение. Агент до
+ * соединения молчит, так что чтение означает отключение. Помощник сразу шлет свое приветствие
+ * агенту: эти несколько байт копятся в маленьком буфере подключения и уходят агенту
+ * при соединении; если буфер полон, чтение помощника приостанавливается.
+ */
+public class RelayServer implements AutoCloseable {
+    private static final ByteBuffer PAIRED = ByteBuffer.allocateDirect(1).put(0, Protocol.RELAY_PAIRED);
+    // Данные помощника до соединения: приветствие протокола агента занимает несколько байт
+    private static final int EARLY_SIZE = 64;
+
+    private final RelayConfig config;
+    private final RelayStats stats;
+    private final Selector selector;
+    private final ServerSocketChannel serverChannel;
+    private final int bufferSize;
+    private final long helloTimeoutNanos;
+
+    // Состояние потока селектора
+    private final Map<Long, ArrayDeque<Connection>> waitingAgents = new HashMap<>();
+    private final Map<Long, ArrayDeque<Connection>> waitingViewers = new HashMap<>();
+    // Подключения без приветствия в порядке подключения - для тайм-аута
+    private final ArrayDeque<Connection> handshaking = new ArrayDeque<>();
+    private final ArrayDeque<ByteBuffer> freeBuffers = new ArrayDeque<>();
+    private final ByteBuffer probe = ByteBuffer.allocate(1);
+    private volatile boolean running;
+
+    private enum State {
+        HELLO, WAITING, PAIRED, CLOSED
+    }
+
+    /**
+     * Подключение агента или помощника
+     */
+    private static class Connection {
+        final SocketChannel channel;
+        final long openedNanos = System.nanoTime();
+        SelectionKey key;
+        State state = State.HELLO;
+        // Приветствие посредника; после разбора не нужно
+        ByteBuffer hello = ByteBuffer.allocate(Protocol.RELAY_HELLO_SIZE);
+        byte role;
+        long sessionId;
+        Connection peer;
+        // Прочитанное из этого подключения и еще не записанное в peer
+        ByteBuffer pending;
+        // Прочитанное от ожидающего помощника до соединения
+        ByteBuffer early;
+
+        Connection(SocketChannel channel) {
+            this.channel = channel;
+        }
+
+        @Override
+        public String toString() {
+            String who = role == Protocol.RELAY_ROLE_AGENT ? "агент" : role == Protocol.RELAY_ROLE_VIEWER ? "помощник" : "?";
+            return who + " " + sessionId + " " + channel.socket().getRemoteSocketAddress();
+        }
+    }
+
+    public RelayServer(RelayConfig config, RelayStats stats) throws IOException {
+        this.config = config;
+        this.stats = stats;
+        this.bufferSize = config.getBufferKb() * 1024;
+        this.helloTimeoutNanos = TimeUnit.SECONDS.toNanos(config.getHelloTimeoutSeconds());
+        this.selector = Selector.open();
+        this.serverChannel = ServerSocketChannel.open();
+        // Очередь подключений побольше: агенты и помощники приходят волнами после сбоев сети
+        serverChannel.bind(new InetSocketAddress(config.getPort()), 1024);
+        serverChannel.configureBlocking(false);
+        serverChannel.register(selector, SelectionKey.OP_ACCEPT);
+    }
+
+    /**
+     * Фактический порт (если в настройках 0)
+     */
+    public int getPort() {
+        return serverChannel.socket().getLocalPort();
+    }
+
+    public RelayStats getStats() {
+        return stats;
+    }
+
+    /**
+     * Цикл обработки событий до вызова close()
+     */
+    public void run() throws IOException {
+        running = true;
+        long reportNanos = TimeUnit.SECONDS.toNanos(config.getReportSeconds());
+        long lastReport = System.nanoTime();
+        try {
+            while (running) {
+                selector.select(1000);
+
+                Iterator<SelectionKey> keys = selector.selectedKeys().iterator();
+                while (keys.hasNext()) {
+                    SelectionKey key = keys.next();
+                    keys.remove();
+                    if (!key.isValid()) continue;
+
+                    if (key.isAcceptable()) {
+                        accept();
+                        continue;
+                    }
+                    Connection connection = (Connection) key.attachment();
+                    if (key.isReadable()) {
+                        readable(connection);
+                    }
+                    if (key.isValid() && key.isWritable()) {
+                        writable(connection);
+                    }
+                }
+
+                long now = System.nanoTime();
+                expireHandshakes(now);
+                if (reportNanos > 0 && now - lastReport >= reportNanos) {
+                    lastReport = now;
+                    System.out.println(stats.report());
+                }
+            }
+        } finally {
+            for (SelectionKey key : selector.keys()) {
+                if (key.attachment() instanceof Connection) {
+                    close((Connection) key.attachment());
+                }
+            }
+            serverChannel.close();
+            selector.close();
+        }
+    }
+
+    @Override
+    public void close() {
+        running = false;
+        selector.wakeup();
+    }
+
+    private void accept() throws IOException {
+        // Все ожидающие подключения за одно событие
+        SocketChannel channel;
+        while ((channel = serverChannel.accept()) != null) {
+            channel.configureBlocking(false);
+            channel.socket().setTcpNoDelay(true);
+            Connection connection = new Connection(channel);
+            connection.key = channel.register(selector, SelectionKey.OP_READ, connection);
+            handshaking.add(connection);
+            stats.connectionsAccepted.incrementAndGet();
+        }
+    }
+
+    private void readable(Connection connection) {
+        try {
+            switch (connection.state) {
+                case HELLO:
+                    readHello(connection);
+                    break;
+
+                case WAITING:
+                    readWaiting(connection);
+                    break;
+
+                case PAIRED:
+                    forward(connection);
+                    break;
+
+                default:
+                    break;
+            }
+        } catch (IOException e) {
+            close(connection);
+        }
+    }
+
+    private void readHello(Connection connection) throws IOException {
+        if (connection.channel.read(connection.hello) < 0) {
+            reject(connection, null);
+            return;
+        }
+        if (connection.hello.hasRemaining()) return;
+
+        ByteBuffer hello = connection.hello.flip();
+        connection.hello = null;
+        int magic = hello.getInt();
+        byte role = hello.get();
+        long sessionId = hello.getLong();
+        if (magic != Protocol.RELAY_MAGIC
+                || (role != Protocol.RELAY_ROLE_AGENT && role != Protocol.RELAY_ROLE_VIEWER)) {
+            reject(connection, "неверное приветствие");
+            return;
+        }
+        connection.role = role;
+        connection.sessionId = sessionId;
+
+        boolean agent = role == Protocol.RELAY_ROLE_AGENT;
+        Connection peer = pollWaiting(agent ? waitingViewers : waitingAgents, sessionId);
+        if (peer != null) {
+            if (agent) {
+                pair(connection, peer);
+            } else {
+                pair(peer, connection);
+            }
+            return;
+        }
+
+        ArrayDeque<Connection> queue = (agent ? waitingAgents : waitingViewers)
+                .computeIfAbsent(sessionId, id -> new ArrayDeque<>());
+        if (queue.size() >= config.getMaxWaiting()) {
+            reject(connection, "слишком много ожидающих с номером " + sessionId);
+            return;
+        }
+        queue.add(connection);
+        connection.state = State.WAITING;
+        (agent ? stats.waitingAgents : stats.waitingViewers).incrementAndGet();
+    }
+
+    /**
+     * Чтение ожидающего пары подключения: отключение или данные помощника для агента
+     */
+    private void readWaiting(Connection connection) throws IOException {
+        if (connection.role == Protocol.RELAY_ROLE_AGENT) {
+            // Агент до соединения молчит: чтение - это отключение или чужие данные
+            probe.clear();
+            connection.channel.read(probe);
+            close(connection);
+            return;
+        }
+        if (connection.early == null) {
+            connection.early = ByteBuffer.allocate(EARLY_SIZE);
+        }
+        if (connection.channel.read(connection.early) < 0) {
+            close(connection);
+        } else if (!connection.early.hasRemaining()) {
+            // Остальное подождет в буфере сокета до соединения
+            connection.key.interestOps(0);
+        }
+    }
+
+    private Connection pollWaiting(Map<Long, ArrayDeque<Connection>> waiting, long sessionId) {
+        ArrayDeque<Connection> queue = waiting.get(sessionId);
+        if (queue == null) return null;
+        Connection connection = queue.poll();
+        if (queue.isEmpty()) {
+            waiting.remove(sessionId);
+        }
+        if (connection != null) {
+            (connection.role == Protocol.RELAY_ROLE_AGENT ? stats.waitingAgents : stats.waitingViewers)
+                    .decrementAndGet();
+        }
+        return connection;
+    }
+
+    private void pair(Connection agent, Connection viewer) throws IOException {
+        agent.peer = viewer;
+        viewer.peer = agent;
+        agent.state = State.PAIRED;
+        viewer.state = State.PAIRED;
+        stats.pairsTotal.incrementAndGet();
+        stats.activePairs.incrementAndGet();
+
+        // Запасное подключение агента становится сессией
+        if (agent.channel.write(PAIRED.duplicate()) != 1) {
+            close(agent);
+            return;
+        }
+        agent.key.interestOps(SelectionKey.OP_READ);
+        viewer.key.interestOps(SelectionKey.OP_READ);
+
+        ByteBuffer early = viewer.early;
+        viewer.early = null;
+        if (early != null && early.position() > 0) {
+            ByteBuffer buffer = acquireBuffer().put(early.flip());
+            buffer.flip();
+            stats.bytesToAgents.addAndGet(buffer.remaining());
+            send(viewer, agent, buffer);
+        }
+    }
+
+    /**
+     * Пересылка прочитанного из source в его пару
+     */
+    private void forward(Connection source) throws IOException {
+        Connection target = source.peer;
+        ByteBuffer buffer = acquireBuffer();
+        int read;
+        try {
+            read = source.channel.read(buffer);
+        } catch (IOException e) {
+            releaseBuffer(buffer);
+            throw e;
+        }
+        if (read <= 0) {
+            releaseBuffer(buffer);
+            if (read < 0) close(source);
+            return;
+        }
+
+        buffer.flip();
+        (source.role == Protocol.RELAY_ROLE_AGENT ? stats.bytesToViewers : stats.bytesToAgents).addAndGet(read);
+        send(source, target, buffer);
+    }
+
+    /**
+     * Запись буфера source в target; недописанный остаток ждет готовности target
+     */
+    private void send(Connection source, Connection target, ByteBuffer buffer) {
+        try {
+            target.channel.write(buffer);
+        } catch (IOException e) {
+            releaseBuffer(buffer);
+            close(target);
+            return;
+        }
+
+        if (buffer.hasRemaining()) {
+            // Получатель занят: отправителя не читаем, пока буфер не уйдет
+            source.pending = buffer;
+            source.key.interestOpsAnd(~SelectionKey.OP_READ);
+            target.key.interestOpsOr(SelectionKey.OP_WRITE);
+            stats.stalls.incrementAndGet();
+        } else {
+            releaseBuffer(buffer);
+        }
+    }
+
+    /**
+     * Дописывание данных пары в target по готовности сокета
+     */
+    private void writable(Connection target) {
+        Connection source = target.peer;
+        if (target.state != State.PAIRED || source.pending == null) {
+            target.key.interestOpsAnd(~SelectionKey.OP_WRITE);
+            return;
+        }
+        try {
+            target.channel.write(source.pending);
+        } catch (IOException e) {
+            close(target);
+            return;
+        }
+        if (source.pending.hasRemaining()) return;
+
+        releaseBuffer(source.pending);
+        source.pending = null;
+        target.key.interestOpsAnd(~SelectionKey.OP_WRITE);
+        source.key.interestOpsOr(SelectionKey.OP_READ);
+    }
+
+    /**
+     * Подключения, не приславшие приветствие вовремя. Очередь упорядочена по времени
+     * подключения, так что проверяется только ее начало.
+     */
+    private void expireHandshakes(long now) {
+        Connection connection;
+        while ((connection = handshaking.peek()) != null) {
+            if (connection.state == State.HELLO) {
+                if (now - connection.openedNanos < helloTimeoutNanos) return;
+                reject(connection, "нет приветствия");
+            }
+            handshaking.poll();
+        }
+    }
+
+    private void reject(Connection connection, String reason) {
+        if (reason != null) {
+            System.out.println("Посредник: отклонено подключение " + connection.channel.socket().getRemoteSocketAddress()
+                    + ": " + reason);
+        }
+        stats.connectionsRejected.incrementAndGet();
+        close(connection);
+    }
+
+    /**
+     * Закрытие подключения; пара закрывается вместе с ним
+     */
+    private void close(Connection connection) {
+        State state = connection.state;
+        if (state == State.CLOSED) return;
+        connection.state = State.CLOSED;
+
+        connection.key.cancel();
+        try {
+            connection.channel.close();
+        } catch (IOException e) {
+            // уже закрыто
+        }
+        if (connection.pending != null) {
+            releaseBuffer(connection.pending);
+            connection.pending = null;
+        }
+
+        if (state == State.WAITING) {
+            boolean agent = connection.role == Protocol.RELAY_ROLE_AGENT;
+            Map<Long, ArrayDeque<Connection>> waiting = agent ? waitingAgents : waitingViewers;
+            ArrayDeque<Connection> queue = waiting.get(connection.sessionId);
+            if (queue != null && queue.remove(connection)) {
+                (agent ? stats.waitingAgents : stats.waitingViewers).decrementAndGet();
+                if (queue.isEmpty()) {
+                    waiting.remove(connection.sessionId);
+                }
+            }
+        } else if (state == State.PAIRED) {
+            if (connection.peer.state != State.CLOSED) {
+                stats.activePairs.decrementAndGet();
+            }
+            close(connection.peer);
+        }
+    }
+
+    private ByteBuffer acquireBuffer() {
+        ByteBuffer buffer = freeBuffers.poll();
+        if (buffer == null) {
+            buffer = ByteBuffer.allocateDirect(bufferSize);
+            stats.buffersAllocated.incrementAndGet();
+        }
+        stats.buffersInUse.incrementAndGet();
+        return buffer;
+    }
+
+    private void releaseBuffer(ByteBuffer buffer) {
+        buffer.clear();
+        freeBuffers.push(buffer);
+        stats.buffersInUse.decrementAndGet();
+    }
+}
@@ -0,0 +1,136 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.server;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Счетчики сервера-посредника. Пишет только поток селектора, читают JMX
+ * (ru.otus.java.basic.oop.remoteassistantlocal:type=Relay) и периодический отчет.
+ */
+public class RelayStats implements RelayStatsMBean {
+    private static final String DOMAIN = "ru.otus.java.basic.oop.remoteassistantlocal";
+    private static final double MB = 1024 * 1024;
+
+    final AtomicLong connectionsAccepted = new AtomicLong();
+    final AtomicLong connectionsRejected = new AtomicLong();
+    final AtomicLong pairsTotal = new AtomicLong();
+    final AtomicInteger activePairs = new AtomicInteger();
+    final AtomicInteger waitingAgents = new AtomicInteger();
+    final AtomicInteger waitingViewers = new AtomicInteger();
+    final AtomicLong bytesToViewers = new AtomicLong();
+    final AtomicLong bytesToAgents = new AtomicLong();
+    final AtomicLong stalls = new AtomicLong();
+    final AtomicInteger buffersAllocated = new AtomicInteger();
+    final AtomicInteger buffersInUse = new AtomicInteger();
+
+    // Состояние отчета о скорости (поток отчета)
+    private long lastReportNanos = System.nanoTime();
+    private long lastToViewers;
+    private long lastToAgents;
+
+    /**
+     * Регистрация в платформенном MBeanServer
+     */
+    public void register() {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        try {
+            ObjectName name = new ObjectName(DOMAIN + ":type=Relay");
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(this, name);
+        } catch (JMException e) {
+            System.err.println("Не удалось зарегистрировать JMX метрики: " + e.getMessage());
+        }
+    }
+
+    @Override
+    public long getConnectionsAccepted() {
+        return connectionsAccepted.get();
+    }
+
+    @Override
+    public long getConnectionsRejected() {
+        return connectionsRejected.get();
+    }
+
+    @Override
+    public long getPairsTotal() {
+        return pairsTotal.get();
+    }
+
+    @Override
+    public int getActivePairs() {
+        return activePairs.get();
+    }
+
+    @Override
+    public int getWaitingAgents() {
+        return waitingAgents.get();
+    }
+
+    @Override
+    public int getWaitingViewers() {
+        return waitingViewers.get();
+    }
+
+    @Override
+    public long getBytesToViewers() {
+        return bytesToViewers.get();
+    }
+
+    @Override
+    public long getBytesToAgents() {
+        return bytesToAgents.get();
+    }
+
+    @Override
+    public long getStalls() {
+        return stalls.get();
+    }
+
+    @Override
+    public int getBuffersAllocated() {
+        return buffersAllocated.get();
+    }
+
+    @Override
+    public int getBuffersInUse() {
+        return buffersInUse.get();
+    }
+
+    @Override
+    public String dump() {
+        return String.format("Пар: сейчас %d, всего %d; ждут агентов %d, помощников %d; "
+                        + "подключений %d, отклонено %d%n"
+                        + "Передано: агенты -> помощники %.1f МБ, помощники -> агенты %.1f МБ, "
+                        + "приостановок чтения %d, буферов %d (занято %d)%n",
+                getActivePairs(), getPairsTotal(), getWaitingAgents(), getWaitingViewers(),
+                getConnectionsAccepted(), getConnectionsRejected(),
+                getBytesToViewers() / MB, getBytesToAgents() / MB,
+                getStalls(), getBuffersAllocated(), getBuffersInUse());
+    }
+
+    /**
+     * Строка отчета о скорости с прошлого вызова
+     */
+    String report() {
+        long now = System.nanoTime();
+        double seconds = Math.max(1e-3, (now - lastReportNanos) / 1e9);
+        long toViewers = getBytesToViewers();
+        long toAgents = getBytesToAgents();
+        String text = String.format("Посредник: пар %d, ждут агентов %d, помощников %d, "
+                        + "агенты -> помощники %.2f МБ/с, помощники -> агенты %.3f МБ/с, буферов %d (занято %d)",
+                getActivePairs(), getWaitingAgents(), getWaitingViewers(),
+                (toViewers - lastToViewers) / seconds / MB, (toAgents - lastToAgents) / seconds / MB,
+                getBuffersAllocated(), getBuffersInUse());
+        lastReportNanos = now;
+        lastToViewers = toViewers;
+        lastToAgents = toAgents;
+        return text;
+    }
+}
@@ -0,0 +1,39 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.server;
+
+/**
+ * Счетчики сервера-посредника в JMX
+ */
+public interface RelayStatsMBean {
+    long getConnectionsAccepted();
+
+    /**
+     * Подключения, закрытые без пары: неверное приветствие, тайм-аут, переполнение очереди ожидания
+     */
+    long getConnectionsRejected();
+
+    long getPairsTotal();
+
+    int getActivePairs();
+
+    int getWaitingAgents();
+
+    int getWaitingViewers();
+
+    long getBytesToViewers();
+
+    long getBytesToAgents();
+
+    /**
+     * Сколько раз получатель не принял данные сразу и чтение отправителя приостанавливалось
+     */
+    long getStalls();
+
+    int getBuffersAllocated();
+
+    int getBuffersInUse();
+
+    /**
+     * Текстовый отчет по счетчикам
+     */
+    String dump();
+}
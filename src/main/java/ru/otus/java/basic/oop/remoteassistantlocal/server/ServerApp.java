@@ -0,0 +1,55 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.server;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+
+// ServerApp.java - Запуск сервера-посредника
+public class ServerApp {
+    public static void main(String[] args) {
+        try {
+            System.out.println("=== Удаленный помощник - Сервер-посредник ===");
+            System.out.println("Для выхода нажмите Ctrl+C");
+            System.out.println("Отчет по счетчикам: введите stats (также доступны через JMX)");
+
+            RelayConfig config = RelayConfig.fromSystemProperties();
+            RelayStats stats = new RelayStats();
+            RelayServer server = new RelayServer(config, stats);
+            stats.register();
+            startConsole(stats);
+
+            System.out.println("Посредник запущен на порту " + server.getPort()
+                    + ", буфер пересылки " + config.getBufferKb() + " КБ");
+            System.out.println("Агент: -Dagent.relay=адрес:" + server.getPort()
+                    + ", помощник вводит номер_сессии@адрес:" + server.getPort());
+            server.run();
+
+        } catch (IOException e) {
+            System.err.println("Ошибка запуска сервера:");
+            e.printStackTrace();
+        } catch (IllegalArgumentException e) {
+            System.err.println("Ошибка настройки сервера: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Команды с консоли посредника: stats - отчет по счетчикам
+     */
+    private static void startConsole(RelayStats stats) {
+        Thread console = new Thread(() -> {
+            try {
+                BufferedReader reader = new BufferedReader(new InputStreamReader(System.in));
+                String line;
+                while ((line = reader.readLine()) != null) {
+                    if (line.trim().equalsIgnoreCase("stats")) {
+                        System.out.print(stats.dump());
+                    }
+                }
+            } catch (IOException e) {
+                // консоль недоступна
+            }
+        }, "Relay-Console");
+        console.setDaemon(true);
+        console.start();
+    }
+}
@@ -1,9 +1,14 @@
 package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
 
 import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolDecoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.WallClock;
 import javafx.application.Platform;
 import java.io.*;
 import java.net.Socket;
+import java.nio.ByteBuffer;
 import java.util.concurrent.BlockingQueue;
 import java.util.concurrent.LinkedBlockingQueue;
 import java.util.concurrent.atomic.AtomicBoolean;
@@ -12,12 +17,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
  * Менеджер соединения - отвечает за обмен данными с агентом
  */
 public class ConnectionManager {
+    // Период измерения задержки (-Dviewer.pingIntervalMs)
+    private static final long PING_INTERVAL_MILLIS = Long.getLong("viewer.pingIntervalMs", 1000);
+
     private Socket socket;
-    private ObjectOutputStream out;
-    private ObjectInputStream in;
+    private OutputStream out;
+    private InputStream in;
+    private final ProtocolEncoder encoder = new ProtocolEncoder(1024);
     private AtomicBoolean connected = new AtomicBoolean(false);
     private Thread receiverThread;
     private Thread senderThread;
+    private Thread pingThread;
+    private final LatencyEstimator latency = new LatencyEstimator();
     private BlockingQueue<Command> sendQueue = new LinkedBlockingQueue<>();
 
     private ConnectionListener listener;
@@ -42,16 +53,21 @@ public class ConnectionManager {
                 socket = new Socket(host, port);
                 socket.setTcpNoDelay(true); // Отключаем задержку Nagle
 
-                // Создаем потоки в правильном порядке!
-                out = new ObjectOutputStream(socket.getOutputStream());
-                out.flush(); // Важно для ObjectInputStream
-                in = new ObjectInputStream(socket.getInputStream());
+                out = socket.getOutputStream();
+                in = socket.getInputStream();
+
+                // Приветствие с версией протокола
+                synchronized (encoder) {
+                    encoder.handshake().writeTo(out);
+                }
 
+                latency.reset();
                 connected.set(true);
 
-                // Запускаем потоки приема и отправки
+                // Запускаем потоки приема, отправки и измерения задержки
                 startReceiver();
                 startSender();
+                startPinger();
 
                 Platform.runLater(() -> listener.onConnected());
 
@@ -70,17 +86,13 @@ public class ConnectionManager {
     private void startReceiver() {
         receiverThread = new Thread(() -> {
             try {
-                while (connected.get() && !socket.isClosed()) {
-                    Command command = (Command) in.readObject();
+                ProtocolDecoder decoder = new ProtocolDecoder(64 * 1024);
+                CommandReceiver receiver = new CommandReceiver();
 
-                    if (command.getType() == Command.Type.DISCONNECT) {
-                        disconnect();
+                while (connected.get() && !socket.isClosed()) {
+                    if (decoder.read(in, receiver) < 0) {
                         break;
                     }
-
-                    Platform.runLater(() ->
-                            listener.onCommandReceived(command)
-                    );
                 }
             } catch (EOFException e) {
                 // Нормальное завершение соединения
@@ -105,8 +117,9 @@ public class ConnectionManager {
             try {
                 while (connected.get() && !socket.isClosed()) {
                     Command command = sendQueue.take(); // Блокируется пока нет команд
-                    out.writeObject(command);
-                    out.flush();
+                    synchronized (encoder) {
+                        encoder.command(command).writeTo(out);
+                    }
                 }
             } catch (Exception e) {
                 if (connected.get()) {
@@ -120,6 +133,34 @@ public class ConnectionManager {
         senderThread.start();
     }
 
+    /**
+     * Запуск потока измерения задержки: PING раз в PING_INTERVAL_MILLIS.
+     * PING пишется в сокет сразу, минуя очередь команд, чтобы время ожидания
+     * в очереди не попадало в измеренную задержку.
+     */
+    private void startPinger() {
+        pingThread = new Thread(() -> {
+            try {
+                while (connected.get() && !socket.isClosed()) {
+                    synchronized (encoder) {
+                        encoder.ping(latency.nextSeq(), WallClock.micros()).writeTo(out);
+                    }
+                    Thread.sleep(PING_INTERVAL_MILLIS);
+                }
+            } catch (InterruptedException e) {
+                // Отключение
+            } catch (IOException e) {
+                if (connected.get()) {
+                    Platform.runLater(() ->
+                            listener.onError("Ошибка отправки: " + e.getMessage())
+                    );
+                }
+            }
+        }, "Ping-Thread");
+        pingThread.setDaemon(true);
+        pingThread.start();
+    }
+
     /**
      * Отправка команды агенту
      */
@@ -139,8 +180,9 @@ public class ConnectionManager {
     public void sendCommandImmediately(Command command) {
         if (connected.get()) {
             try {
-                out.writeObject(command);
-                out.flush();
+                synchronized (encoder) {
+                    encoder.command(command).writeTo(out);
+                }
             } catch (IOException e) {
                 Platform.runLater(() ->
                         listener.onError("Ошибка отправки: " + e.getMessage())
@@ -150,6 +192,60 @@ public class ConnectionManager {
         }
     }
 
+    /**
+     * Преобразование сообщений протокола в объекты Command для слушателя
+     */
+    private class CommandReceiver implements MessageHandler {
+
+        @Override
+        public void onMouse(Command.Type type, int x, int y, int arg1, int arg2) {
+            deliver(type == Command.Type.MOUSE_MOVE
+                    ? Command.mouseMove(x, y)
+                    : new Command(type, new Object[]{x, y, arg1, arg2}));
+        }
+
+        @Override
+        public void onKey(Command.Type type, int keyCode) {
+            deliver(new Command(type, keyCode));
+        }
+
+        @Override
+        public void onValue(Command.Type type, int value) {
+            deliver(new Command(type, value));
+        }
+
+        @Override
+        public void onSignal(Command.Type type) {
+            if (type == Command.Type.DISCONNECT) {
+                disconnect();
+                return;
+            }
+            deliver(new Command(type));
+        }
+
+        @Override
+        public void onPong(int seq, long originTime, long receiveTime, long transmitTime) {
+            latency.onPong(seq, originTime, receiveTime, transmitTime, WallClock.micros());
+        }
+
+        @Override
+        public void onFrame(ByteBuffer payload) {
+            // Буфер декодера переиспользуется - копируем данные кадра
+            byte[] frame = new byte[payload.remaining()];
+            payload.get(frame);
+            deliver(new Command(Command.Type.SCREENSHOT_RESPONSE, frame));
+        }
+
+        @Override
+        public void onText(Command.Type type, String text) {
+            deliver(new Command(type, text));
+        }
+
+        private void deliver(Command command) {
+            Platform.runLater(() -> listener.onCommandReceived(command));
+        }
+    }
+
     /**
      * Проверка соединения
      */
@@ -158,19 +254,21 @@ public class ConnectionManager {
     }
 
     /**
-     * Получение задержки соединения (ping)
+     * Сглаженная круговая задержка до агента по PING/PONG, мс
+     *
+     * @return задержка или -1, если соединения или свежих измерений нет
      */
     public long getPing() {
-        if (!isConnected()) return -1;
-
-        try {
-            long start = System.currentTimeMillis();
-            sendCommandImmediately(new Command(Command.Type.SCREENSHOT_REQUEST));
-            // Здесь нужно было бы ждать ответа, упрощенная версия
-            return System.currentTimeMillis() - start;
-        } catch (Exception e) {
-            return -1;
-        }
+        double rtt = latency.getRttMillis();
+        if (!isConnected() || rtt < 0) return -1;
+        return Math.round(rtt);
+    }
+
+    /**
+     * Оценка задержки и смещения часов агента (например, для задержки кадров)
+     */
+    public LatencyEstimator getLatency() {
+        return latency;
     }
 
     /**
@@ -192,6 +290,7 @@ public class ConnectionManager {
                 // Прерываем потоки
                 if (receiverThread != null) receiverThread.interrupt();
                 if (senderThread != null) senderThread.interrupt();
+                if (pingThread != null) pingThread.interrupt();
 
                 // Очищаем очередь
                 sendQueue.clear();
@@ -210,25 +309,52 @@ public class ConnectionManager {
      * Получение статистики соединения
      */
     public ConnectionStats getStats() {
+        boolean measured = isConnected() && latency.hasSample();
         return new ConnectionStats(
                 isConnected(),
                 sendQueue.size(),
-                getPing()
+                getPing(),
+                measured ? latency.getRttMillis() : -1,
+                measured ? latency.getJitterMillis() : 0,
+                measured ? latency.getClockOffsetMillis() : 0,
+                latency.getLostPings()
         );
     }
 
     /**
-     * Статистика соединения
+     * Статистика соединения.
+     * Задержки в миллисекундах; rtt и ping равны -1, пока нет ни одного ответа PONG
+     * или если агент перестал отвечать (LatencyEstimator.isStale()).
      */
     public static class ConnectionStats {
         public final boolean connected;
         public final int queueSize;
         public final long ping;
+        public final double rtt;
+        public final double jitter;
+        /** Часы агента минус часы помощника */
+        public final double clockOffset;
+        public final long lostPings;
 
         public ConnectionStats(boolean connected, int queueSize, long ping) {
+            this(connected, queueSize, ping, ping, 0, 0, 0);
+        }
+
+        public ConnectionStats(boolean connected, int queueSize, long ping, double rtt,
+                               double jitter, double clockOffset, long lostPings) {
             this.connected = connected;
             this.queueSize = queueSize;
             this.ping = ping;
+            this.rtt = rtt;
+            this.jitter = jitter;
+            this.clockOffset = clockOffset;
+            this.lostPings = lostPings;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("RTT: %.1f мс, джиттер: %.1f мс, смещение часов: %.1f мс, потеряно PING: %d",
+                    rtt, jitter, clockOffset, lostPings);
         }
     }
 }
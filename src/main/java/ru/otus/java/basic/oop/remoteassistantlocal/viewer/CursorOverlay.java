@@ -0,0 +1,140 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import javafx.animation.PauseTransition;
+import javafx.application.Platform;
+import javafx.scene.Cursor;
+import javafx.scene.Node;
+import javafx.scene.image.ImageView;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.WritableImage;
+import javafx.util.Duration;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Указатель агента поверх изображения удаленного экрана.
+ * Положение и форма приходят отдельным каналом (CURSOR_POSITION, CURSOR_SHAPE), а пока
+ * помощник сам двигает мышь, указатель рисуется там, где мышь помощника: ответ агента
+ * придет только через RTT и покажет то же место. Когда движение прекращается, через
+ * время удержания указатель снова следует за агентом - например, если программа
+ * на удаленной стороне сама переставила указатель.
+ *
+ * Собственный указатель системы над изображением скрывается, пока виден указатель агента.
+ * onShape и onPosition вызываются из потока приема, остальные методы - из FX потока.
+ */
+public class CursorOverlay {
+    private final ImageView view;
+    private final Node surface;
+    private final PauseTransition settle = new PauseTransition();
+
+    // Состояние FX потока
+    private final Map<Integer, Shape> shapes = new HashMap<>();
+    private int remoteX;
+    private int remoteY;
+    private int remoteShape = Protocol.CURSOR_HIDDEN;
+    private int localX;
+    private int localY;
+    private boolean predicting;
+
+    /**
+     * Форма, готовая к показу
+     */
+    private static class Shape {
+        final WritableImage image;
+        final int hotX;
+        final int hotY;
+
+        Shape(CursorShape shape) {
+            int w = shape.getWidth();
+            int h = shape.getHeight();
+            this.image = new WritableImage(w, h);
+            this.image.getPixelWriter().setPixels(0, 0, w, h, PixelFormat.getIntArgbInstance(),
+                    shape.getArgb(), 0, w);
+            this.hotX = shape.getHotX();
+            this.hotY = shape.getHotY();
+        }
+    }
+
+    /**
+     * @param view    изображение указателя поверх surface, в тех же координатах
+     * @param surface изображение удаленного экрана
+     */
+    public CursorOverlay(ImageView view, Node surface) {
+        this.view = view;
+        this.surface = surface;
+        view.setMouseTransparent(true);
+        view.setVisible(false);
+        settle.setOnFinished(event -> {
+            predicting = false;
+            update();
+        });
+    }
+
+    /**
+     * Новая форма указателя (поток приема)
+     */
+    public void onShape(CursorShape shape) {
+        Platform.runLater(() -> {
+            shapes.put(shape.getId(), new Shape(shape));
+            update();
+        });
+    }
+
+    /**
+     * Положение указателя агента (поток приема)
+     */
+    public void onPosition(int x, int y, int shapeId) {
+        Platform.runLater(() -> {
+            remoteX = x;
+            remoteY = y;
+            remoteShape = shapeId;
+            update();
+        });
+    }
+
+    /**
+     * Помощник двигает мышь: указатель сразу встает в эту точку удаленного экрана
+     *
+     * @param holdMillis сколько после последнего движения не слушать положение агента
+     */
+    public void predict(int x, int y, long holdMillis) {
+        localX = x;
+        localY = y;
+        predicting = true;
+        settle.setDuration(Duration.millis(holdMillis));
+        settle.playFromStart();
+        update();
+    }
+
+    /**
+     * Соединение закрыто: формы нового агента могут иметь те же номера
+     */
+    public void reset() {
+        settle.stop();
+        shapes.clear();
+        remoteShape = Protocol.CURSOR_HIDDEN;
+        predicting = false;
+        update();
+    }
+
+    private void update() {
+        Shape shape = shapes.get(remoteShape);
+        if (shape == null) {
+            view.setVisible(false);
+            surface.setCursor(Cursor.DEFAULT);
+            return;
+        }
+
+        int x = predicting ? localX : remoteX;
+        int y = predicting ? localY : remoteY;
+        if (view.getImage() != shape.image) {
+            view.setImage(shape.image);
+        }
+        view.relocate(x - shape.hotX, y - shape.hotY);
+        view.setVisible(true);
+        surface.setCursor(Cursor.NONE);
+    }
+}
@@ -0,0 +1,75 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.nio.ByteBuffer;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+
+/**
+ * Распаковка плиток режима без потерь (Protocol.TRANSPORT_DELTA) прямо в изображение помощника.
+ * Поток Inflate живет всю сессию, как поток Deflate агента, и начинается заново
+ * с каждой ключевой плитки (CODEC_DEFLATE_KEY).
+ *
+ * Экземпляр не потокобезопасен: используется потоком декодирования вместе с FrameDecoder.
+ */
+class DeltaDecoder {
+    private final Inflater inflater = new Inflater(true);
+    private final byte[] probe = new byte[1];
+    private byte[] row = new byte[0];
+    private boolean started;
+
+    /**
+     * @param src      буфер с данными плитки между position и position + length (position не меняется)
+     * @param bgr      пиксели изображения, 3 байта на пиксель
+     * @param scanline длина строки изображения в байтах
+     */
+    void decode(byte codec, ByteBuffer src, int position, int length, byte[] bgr, int scanline,
+                int x, int y, int w, int h) throws DataFormatException {
+        boolean key = codec == Protocol.CODEC_DEFLATE_KEY;
+        if (key) {
+            inflater.reset();
+            started = true;
+        } else if (!started) {
+            throw new DataFormatException("Дельта-плитка до ключевого кадра");
+        }
+
+        ByteBuffer compressed = src.duplicate();
+        compressed.limit(position + length).position(position);
+        inflater.setInput(compressed);
+
+        int rowBytes = w * 3;
+        if (row.length < rowBytes) {
+            row = new byte[rowBytes];
+        }
+        for (int r = y; r < y + h; r++) {
+            int offset = r * scanline + x * 3;
+            if (key) {
+                inflate(bgr, offset, rowBytes);
+            } else {
+                inflate(row, 0, rowBytes);
+                for (int i = 0; i < rowBytes; i++) {
+                    bgr[offset + i] ^= row[i];
+                }
+            }
+        }
+
+        // Дочитываем метку SYNC_FLUSH: следующая плитка продолжит поток с границы
+        if (inflater.inflate(probe) != 0 || !inflater.needsInput()) {
+            started = false;
+            throw new DataFormatException("Лишние данные в конце дельта-плитки");
+        }
+    }
+
+    private void inflate(byte[] dst, int offset, int length) throws DataFormatException {
+        while (length > 0) {
+            int read = inflater.inflate(dst, offset, length);
+            if (read == 0 && (inflater.needsInput() || inflater.needsDictionary() || inflater.finished())) {
+                started = false;
+                throw new DataFormatException("Дельта-плитка короче своей области");
+            }
+            offset += read;
+            length -= read;
+        }
+    }
+}
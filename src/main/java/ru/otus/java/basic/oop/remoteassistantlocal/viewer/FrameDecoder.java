@@ -0,0 +1,153 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CopyRect;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.JpegDecoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.PaletteCodec;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.DataFormatException;
+
+/**
+ * Декодирование кадров агента в изменившиеся области.
+ * Все плитки кадра декодируются в одно постоянное изображение размером с экран
+ * (BGR, по 3 байта на пиксель) на свои места, новые изображения не создаются.
+ * Результат - список областей, обновленных последним кадром; пиксели
+ * берутся из getPixels() и остаются действительными до следующего decode().
+ * Плитки JPEG и палитровые (без потерь) пишутся в одно и то же изображение.
+ * Дельта-плитки режима TRANSPORT_DELTA накладываются на него XOR и требуют,
+ * чтобы один декодер разбирал все кадры сессии по порядку.
+ * Плитка копирования (прокрутка) переносит уже показанные пиксели внутри изображения.
+ *
+ * Экземпляр не потокобезопасен: используется одним потоком декодирования.
+ */
+public class FrameDecoder {
+    private final int width;
+    private final int height;
+    private final BufferedImage canvas;
+    private final byte[] pixels;
+    private final List<Rectangle> regions = new ArrayList<>();
+    private final DeltaDecoder delta = new DeltaDecoder();
+    private final Rectangle copyTarget = new Rectangle();
+    private int regionCount;
+    private long captureTime;
+
+    public FrameDecoder(int width, int height) {
+        this.width = width;
+        this.height = height;
+        this.canvas = new BufferedImage(width, height, BufferedImage.TYPE_3BYTE_BGR);
+        this.pixels = ((DataBufferByte) canvas.getRaster().getDataBuffer()).getData();
+    }
+
+    /**
+     * Разбор кадра (SCREENSHOT_RESPONSE) от position до limit буфера.
+     * Плитки читаются прямо из буфера приема, без копирования.
+     *
+     * @return области, обновленные кадром (список переиспользуется)
+     */
+    public List<Rectangle> decode(ByteBuffer payload) throws IOException {
+        captureTime = payload.getLong();
+        int tileCount = payload.getInt();
+        if (tileCount < 0 || tileCount > payload.remaining() / Protocol.TILE_HEADER_SIZE) {
+            throw new ProtocolException("Неверное число плиток: " + tileCount);
+        }
+
+        JpegDecoder jpeg = JpegDecoder.forCurrentThread();
+        PaletteCodec palette = PaletteCodec.forCurrentThread();
+        regionCount = 0;
+        for (int i = 0; i < tileCount; i++) {
+            int x = Short.toUnsignedInt(payload.getShort());
+            int y = Short.toUnsignedInt(payload.getShort());
+            int w = Short.toUnsignedInt(payload.getShort());
+            int h = Short.toUnsignedInt(payload.getShort());
+            byte codec = payload.get();
+            int size = payload.getInt();
+            if (size < 0 || size > payload.remaining()) {
+                throw new ProtocolException("Неверный размер плитки: " + size);
+            }
+            if (x + w > width || y + h > height) {
+                throw new ProtocolException("Плитка " + w + "x" + h + " в (" + x + "," + y + ") вне кадра");
+            }
+
+            if (codec == Protocol.CODEC_JPEG) {
+                jpeg.decode(payload, payload.position(), size, canvas, x, y, w, h);
+            } else if (codec == Protocol.CODEC_PALETTE) {
+                try {
+                    palette.decode(payload, payload.position(), size, pixels, getScanline(), x, y, w, h);
+                } catch (DataFormatException e) {
+                    throw new ProtocolException("Поврежденная плитка без потерь: " + e.getMessage());
+                }
+            } else if (codec == Protocol.CODEC_XOR_DEFLATE || codec == Protocol.CODEC_DEFLATE_KEY) {
+                try {
+                    delta.decode(codec, payload, payload.position(), size, pixels, getScanline(), x, y, w, h);
+                } catch (DataFormatException e) {
+                    throw new ProtocolException("Поврежденная дельта-плитка: " + e.getMessage());
+                }
+            } else if (codec == Protocol.CODEC_COPY) {
+                copy(payload, size, x, y, w, h);
+            } else {
+                throw new ProtocolException("Неизвестный способ сжатия плитки: " + codec);
+            }
+            payload.position(payload.position() + size);
+            addRegion(x, y, w, h);
+        }
+        return regions.subList(0, regionCount);
+    }
+
+    /**
+     * Прокрутка: область x, y, w, h заполняется копией области того же размера из текущего изображения
+     */
+    private void copy(ByteBuffer payload, int size, int x, int y, int w, int h) throws ProtocolException {
+        if (size != CopyRect.DATA_SIZE) {
+            throw new ProtocolException("Неверный размер плитки копирования: " + size);
+        }
+        int sourceX = Short.toUnsignedInt(payload.getShort(payload.position()));
+        int sourceY = Short.toUnsignedInt(payload.getShort(payload.position() + 2));
+        if (sourceX + w > width || sourceY + h > height) {
+            throw new ProtocolException("Источник копирования " + w + "x" + h
+                    + " в (" + sourceX + "," + sourceY + ") вне кадра");
+        }
+        copyTarget.setBounds(x, y, w, h);
+        CopyRect.apply(pixels, getScanline(), 3, sourceX, sourceY, copyTarget);
+    }
+
+    /**
+     * Пиксели всего экрана в формате BGR, строка занимает getScanline() байт
+     */
+    public byte[] getPixels() {
+        return pixels;
+    }
+
+    public int getScanline() {
+        return width * 3;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Время захвата последнего декодированного кадра на агенте
+     */
+    public long getCaptureTime() {
+        return captureTime;
+    }
+
+    private void addRegion(int x, int y, int w, int h) {
+        if (regionCount == regions.size()) {
+            regions.add(new Rectangle());
+        }
+        regions.get(regionCount++).setBounds(x, y, w, h);
+    }
+}
@@ -0,0 +1,155 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import javafx.application.Platform;
+import javafx.scene.image.PixelFormat;
+import javafx.scene.image.PixelWriter;
+import javafx.scene.image.WritablePixelFormat;
+
+import java.awt.*;
+import java.nio.IntBuffer;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Почтовый ящик кадров "побеждает последний".
+ * Поток приема накладывает плитки на собственный буфер экрана и отмечает
+ * изменившуюся область. На FX поток ставится не больше одного Platform.runLater:
+ * если FX поток не успевает, следующие кадры сливаются в общую изменившуюся
+ * область и отображаются одним обновлением. Так очередь runLater не растет,
+ * а задержка отображения остается ограниченной.
+ *
+ * Вместе с постоянным WritableImage на FX потоке буфер образует двойную
+ * буферизацию: поток приема пишет только в свой буфер, FX поток копирует
+ * в изображение только изменившуюся область.
+ */
+public class FrameMailbox {
+    private static final WritablePixelFormat<IntBuffer> FORMAT = PixelFormat.getIntArgbInstance();
+
+    private final int width;
+    private final int height;
+    private final int[] pixels;
+
+    // Изменившаяся с прошлого отображения область (пустая, если minX > maxX)
+    private int minX;
+    private int minY;
+    private int maxX;
+    private int maxY;
+
+    private final AtomicBoolean pulsePending = new AtomicBoolean(false);
+    private final AtomicLong publishedFrames = new AtomicLong();
+    private final AtomicLong droppedFrames = new AtomicLong();
+    private final Runnable pulse;
+
+    /**
+     * @param pulse действие на FX потоке, которое забирает кадр через drainTo()
+     */
+    public FrameMailbox(int width, int height, Runnable pulse) {
+        this.width = width;
+        this.height = height;
+        this.pixels = new int[width * height];
+        this.pulse = pulse;
+        clearDirty();
+    }
+
+    /**
+     * Наложение декодированных областей кадра на буфер и публикация кадра (поток приема).
+     * Области берутся из изображения source с теми же координатами (BGR, см. FrameDecoder).
+     * Области кадра пишутся под одной блокировкой, чтобы FX поток не увидел половину кадра.
+     */
+    public void publish(List<Rectangle> regions, byte[] source, int scanline) {
+        synchronized (this) {
+            for (Rectangle region : regions) {
+                write(region.x, region.y, region.width, region.height,
+                        source, region.y * scanline + region.x * 3, scanline);
+            }
+        }
+        publish();
+    }
+
+    /**
+     * Наложение области из BGR пикселей (3 байта на пиксель) на буфер.
+     * Кадр становится видимым только после publish().
+     */
+    public synchronized void write(int x, int y, int w, int h, byte[] source, int offset, int scanline) {
+        int clippedWidth = Math.min(w, width - x);
+        int clippedHeight = Math.min(h, height - y);
+        if (clippedWidth <= 0 || clippedHeight <= 0) return;
+
+        for (int row = 0; row < clippedHeight; row++) {
+            int src = offset + row * scanline;
+            int dst = (y + row) * width + x;
+            for (int col = 0; col < clippedWidth; col++, src += 3) {
+                pixels[dst + col] = 0xFF000000
+                        | (source[src + 2] & 0xFF) << 16
+                        | (source[src + 1] & 0xFF) << 8
+                        | (source[src] & 0xFF);
+            }
+        }
+
+        minX = Math.min(minX, x);
+        minY = Math.min(minY, y);
+        maxX = Math.max(maxX, x + clippedWidth - 1);
+        maxY = Math.max(maxY, y + clippedHeight - 1);
+    }
+
+    /**
+     * Кадр готов к отображению. Если предыдущий еще не отображен,
+     * новый сливается с ним и считается пропущенным.
+     */
+    public void publish() {
+        publishedFrames.incrementAndGet();
+        if (pulsePending.compareAndSet(false, true)) {
+            Platform.runLater(pulse);
+        } else {
+            droppedFrames.incrementAndGet();
+        }
+    }
+
+    /**
+     * Перенос изменившейся области в изображение (FX поток)
+     *
+     * @return true, если что-то было скопировано
+     */
+    public boolean drainTo(PixelWriter target) {
+        // Сбрасываем флаг до копирования: кадр, пришедший во время копирования,
+        // запланирует новое обновление
+        pulsePending.set(false);
+
+        synchronized (this) {
+            if (minX > maxX) return false;
+
+            int w = maxX - minX + 1;
+            int h = maxY - minY + 1;
+            target.setPixels(minX, minY, w, h, FORMAT, pixels, minY * width + minX, width);
+            clearDirty();
+            return true;
+        }
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    public long getPublishedFrames() {
+        return publishedFrames.get();
+    }
+
+    /**
+     * Кадры, которые не были отображены отдельно, потому что их вытеснил более новый
+     */
+    public long getDroppedFrames() {
+        return droppedFrames.get();
+    }
+
+    private void clearDirty() {
+        minX = Integer.MAX_VALUE;
+        minY = Integer.MAX_VALUE;
+        maxX = -1;
+        maxY = -1;
+    }
+}
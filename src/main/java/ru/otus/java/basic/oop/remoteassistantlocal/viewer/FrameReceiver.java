@@ -0,0 +1,167 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.BufferPool;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolDecoder;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Прием сообщений агента из блокирующего SocketChannel.
+ * Данные кадра читаются из сокета прямо в буфер из пула, без промежуточных
+ * массивов, и передаются на отдельный поток декодирования. После декодирования
+ * буфер возвращается в пул, так что в установившемся режиме прием кадров
+ * не создает мусора. Пока поток декодирования занят, прием уже читает следующий
+ * кадр; когда свободные буферы кончаются, прием ждет (и TCP притормаживает агента).
+ *
+ * Остальные сообщения небольшие и разбираются ProtocolDecoder в потоке приема.
+ */
+public class FrameReceiver implements AutoCloseable {
+    private static final int POOL_SIZE = 3;
+    private static final int INITIAL_FRAME_CAPACITY = 512 * 1024;
+
+    private final ReadableByteChannel channel;
+    private final MessageHandler handler;
+    private final BufferPool pool = new BufferPool(POOL_SIZE, INITIAL_FRAME_CAPACITY, true);
+    private final ProtocolDecoder decoder = new ProtocolDecoder(0);
+    private final ExecutorService decodeThread = Executors.newSingleThreadExecutor(r -> {
+        Thread thread = new Thread(r, "Frame-Decoder");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    private ByteBuffer message = ByteBuffer.allocate(4096);
+    // Состояние указателя для записи, начатой посреди сессии; recorder и pointer под pointer
+    private final PointerState pointer = new PointerState();
+    private SessionRecorder recorder;
+
+    /**
+     * @param handler получатель сообщений; onFrame вызывается на потоке декодирования
+     */
+    public FrameReceiver(ReadableByteChannel channel, MessageHandler handler) {
+        this.channel = channel;
+        this.handler = handler;
+    }
+
+    /**
+     * Цикл приема до закрытия соединения
+     */
+    public void run() throws IOException, InterruptedException {
+        // Приветствие агента проверяет ProtocolDecoder
+        message.clear().limit(Protocol.HANDSHAKE_SIZE);
+        readFully(message);
+        message.flip();
+        decoder.decode(message, handler);
+
+        while (!Thread.currentThread().isInterrupted()) {
+            message.clear().limit(Protocol.HEADER_SIZE);
+            readFully(message);
+
+            Command.Type type = Command.Type.fromCode(message.get(0));
+            int payloadSize = message.getInt(1);
+            if (payloadSize < 0 || payloadSize > Protocol.MAX_PAYLOAD_SIZE) {
+                throw new ProtocolException("Неверный размер сообщения: " + payloadSize);
+            }
+
+            if (type == Command.Type.SCREENSHOT_RESPONSE) {
+                receiveFrame(payloadSize);
+            } else {
+                receiveMessage(payloadSize);
+            }
+        }
+    }
+
+    /**
+     * Запись сеанса: сообщения агента, кроме кадров, копируются в recorder в потоке приема
+     * (null - не записывать). Кадры записывает получатель после декодирования, см. SessionRecorder.onFrame().
+     * Новая запись сразу получает формы и положение указателя, пришедшие раньше.
+     */
+    public void setRecorder(SessionRecorder recorder) {
+        synchronized (pointer) {
+            if (recorder != null) {
+                recorder.onPointerState(pointer);
+            }
+            this.recorder = recorder;
+        }
+    }
+
+    /**
+     * Сколько буферов кадров создано за время работы (растет только при увеличении кадров)
+     */
+    public long getBufferAllocations() {
+        return pool.getAllocations();
+    }
+
+    @Override
+    public void close() {
+        decodeThread.shutdownNow();
+    }
+
+    /**
+     * Ожидание окончания декодирования уже принятых кадров
+     */
+    public void awaitDecoding(long timeout, TimeUnit unit) throws InterruptedException {
+        decodeThread.shutdown();
+        decodeThread.awaitTermination(timeout, unit);
+    }
+
+    private void receiveFrame(int payloadSize) throws IOException, InterruptedException {
+        ByteBuffer frame = pool.acquire(payloadSize);
+        try {
+            readFully(frame);
+            frame.flip();
+        } catch (IOException e) {
+            pool.release(frame);
+            throw e;
+        }
+
+        decodeThread.execute(() -> {
+            try {
+                handler.onFrame(frame);
+            } catch (RuntimeException e) {
+                System.err.println("Ошибка декодирования кадра: " + e.getMessage());
+            } finally {
+                pool.release(frame);
+            }
+        });
+    }
+
+    private void receiveMessage(int payloadSize) throws IOException {
+        int total = Protocol.HEADER_SIZE + payloadSize;
+        if (message.capacity() < total) {
+            ByteBuffer grown = ByteBuffer.allocate(total);
+            message.flip();
+            grown.put(message);
+            message = grown;
+        }
+        message.limit(total);
+        readFully(message);
+        message.flip();
+        SessionRecorder current;
+        synchronized (pointer) {
+            pointer.update(message);
+            current = recorder;
+        }
+        if (current != null) {
+            current.onAgentMessage(message);
+        }
+        decoder.decode(message, handler);
+    }
+
+    private void readFully(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer) < 0) {
+                throw new EOFException("Агент закрыл соединение");
+            }
+        }
+    }
+}
@@ -0,0 +1,132 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Объединение движений мыши перед отправкой агенту.
+ * Движения (MOUSE_MOVE, MOUSE_DRAG) отправляются не чаще одного раза за такт:
+ * внутри такта сохраняется только последняя позиция. Остальные события
+ * (нажатия, отпускания, клики, колесо, клавиатура) никогда не объединяются
+ * и не переставляются: перед ними сначала уходит отложенное движение,
+ * затем само событие без ожидания такта.
+ */
+public class InputCoalescer implements AutoCloseable {
+    public static final long DEFAULT_TICK_MILLIS = 16;
+
+    /**
+     * Куда уходят события мыши после объединения
+     */
+    public interface Sink {
+        void sendMouse(Command.Type type, int x, int y, int arg1, int arg2);
+    }
+
+    private final long tickNanos;
+    private final Sink sink;
+    private final ScheduledExecutorService timer;
+
+    private boolean pending;
+    private boolean flushScheduled;
+    private Command.Type pendingType;
+    private int pendingX;
+    private int pendingY;
+    private int pendingArg1;
+    private int pendingArg2;
+    private long lastSentNanos;
+
+    private long receivedMoves;
+    private long sentMoves;
+
+    public InputCoalescer(long tickMillis, Sink sink) {
+        if (tickMillis < 0) {
+            throw new IllegalArgumentException("Такт не может быть отрицательным: " + tickMillis);
+        }
+        this.tickNanos = TimeUnit.MILLISECONDS.toNanos(tickMillis);
+        this.sink = sink;
+        // Первое движение уходит сразу (System.nanoTime() может быть и отрицательным)
+        this.lastSentNanos = System.nanoTime() - tickNanos;
+        this.timer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "Input-Coalescer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Движение мыши. Для MOUSE_DRAG arg1/arg2 - начальная точка перетаскивания,
+     * при объединении сохраняется точка первого отложенного движения.
+     */
+    public synchronized void move(Command.Type type, int x, int y, int arg1, int arg2) {
+        receivedMoves++;
+
+        if (pending && pendingType != type) {
+            flushPending();
+        }
+        if (!pending) {
+            pendingType = type;
+            pendingArg1 = arg1;
+            pendingArg2 = arg2;
+        }
+        pending = true;
+        pendingX = x;
+        pendingY = y;
+
+        long sinceLastSend = System.nanoTime() - lastSentNanos;
+        if (sinceLastSend >= tickNanos) {
+            flushPending();
+        } else if (!flushScheduled) {
+            flushScheduled = true;
+            timer.schedule(this::onTick, tickNanos - sinceLastSend, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    /**
+     * Событие, которое нельзя объединять: отправляется сразу,
+     * но после отложенного движения, чтобы сохранить порядок
+     */
+    public synchronized void event(Command.Type type, int x, int y, int arg1, int arg2) {
+        flushPending();
+        sink.sendMouse(type, x, y, arg1, arg2);
+    }
+
+    /**
+     * Произвольная отправка (например, клавиатура) с сохранением порядка относительно движений
+     */
+    public synchronized void ordered(Runnable send) {
+        flushPending();
+        send.run();
+    }
+
+    /**
+     * Сколько движений получено и сколько реально отправлено
+     */
+    public synchronized long getReceivedMoves() {
+        return receivedMoves;
+    }
+
+    public synchronized long getSentMoves() {
+        return sentMoves;
+    }
+
+    @Override
+    public void close() {
+        timer.shutdownNow();
+    }
+
+    private synchronized void onTick() {
+        flushScheduled = false;
+        flushPending();
+    }
+
+    private void flushPending() {
+        if (!pending) return;
+
+        pending = false;
+        lastSentNanos = System.nanoTime();
+        sentMoves++;
+        sink.sendMouse(pendingType, pendingX, pendingY, pendingArg1, pendingArg2);
+    }
+}
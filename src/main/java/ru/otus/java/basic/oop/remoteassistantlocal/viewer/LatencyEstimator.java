@@ -0,0 +1,167 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.WallClock;
+
+/**
+ * Оценка задержки до агента по обмену PING/PONG (формулы см. Protocol).
+ *
+ * Сглаженная круговая задержка и ее разброс считаются как в TCP (RFC 6298):
+ *   srtt   = 7/8 srtt + 1/8 rtt
+ *   rttvar = 3/4 rttvar + 1/4 |srtt - rtt|
+ * Джиттер - как межпакетный джиттер RTP (RFC 3550) по соседним измерениям:
+ *   jitter += (|rtt - предыдущий rtt| - jitter) / 16
+ * Смещение часов агента берется из измерения с наименьшим RTT среди последних
+ * OFFSET_WINDOW (как фильтр часов NTP): чем короче обмен, тем меньше в нем
+ * несимметричной задержки очередей, которая искажает смещение.
+ *
+ * Если на STALE_PINGS последних PING подряд нет ответа, круговая задержка считается
+ * устаревшей: getRttMillis() возвращает -1, пока агент снова не ответит.
+ *
+ * Методы синхронизированы: ответы приходят в потоке приема, статистику читают другие потоки.
+ */
+public class LatencyEstimator {
+    private static final int OFFSET_WINDOW = 8;
+    // Столько PING подряд без ответа - и круговая задержка устарела
+    static final int STALE_PINGS = 3;
+
+    private int lastSent;
+    private int lastReceived;
+    private long received;
+
+    private boolean hasSample;
+    private long lastRtt;
+    private double srtt;
+    private double rttvar;
+    private double jitter;
+
+    private final long[] windowRtt = new long[OFFSET_WINDOW];
+    private final long[] windowOffset = new long[OFFSET_WINDOW];
+    private int windowCount;
+    private int windowNext;
+    private long offset;
+
+    /**
+     * Номер следующего PING
+     */
+    public synchronized int nextSeq() {
+        return ++lastSent;
+    }
+
+    /**
+     * Обработка PONG; все отметки в мкс по WallClock
+     *
+     * @param arrivalTime время приема PONG помощником
+     */
+    public synchronized void onPong(int seq, long originTime, long receiveTime, long transmitTime,
+                                    long arrivalTime) {
+        // Опоздавший ответ на старый PING не должен портить сглаженные значения
+        if (seq <= lastReceived || seq > lastSent) return;
+        lastReceived = seq;
+        received++;
+
+        long rtt = Math.max(0, (arrivalTime - originTime) - (transmitTime - receiveTime));
+        long sampleOffset = ((receiveTime - originTime) + (transmitTime - arrivalTime)) / 2;
+
+        if (!hasSample) {
+            srtt = rtt;
+            rttvar = rtt / 2.0;
+            hasSample = true;
+        } else {
+            rttvar += (Math.abs(srtt - rtt) - rttvar) / 4;
+            srtt += (rtt - srtt) / 8;
+            jitter += (Math.abs(rtt - lastRtt) - jitter) / 16;
+        }
+        lastRtt = rtt;
+
+        windowRtt[windowNext] = rtt;
+        windowOffset[windowNext] = sampleOffset;
+        windowNext = (windowNext + 1) % OFFSET_WINDOW;
+        windowCount = Math.min(windowCount + 1, OFFSET_WINDOW);
+
+        int best = 0;
+        for (int i = 1; i < windowCount; i++) {
+            if (windowRtt[i] < windowRtt[best]) best = i;
+        }
+        offset = windowOffset[best];
+    }
+
+    /**
+     * Есть ли хотя бы одно измерение
+     */
+    public synchronized boolean hasSample() {
+        return hasSample;
+    }
+
+    /**
+     * Ответов нет уже на STALE_PINGS последних PING (агент замолчал или связь пропала)
+     */
+    public synchronized boolean isStale() {
+        return hasSample && lastSent - lastReceived >= STALE_PINGS;
+    }
+
+    /**
+     * Сглаженная круговая задержка, мс (-1, если измерений еще нет или они устарели)
+     */
+    public synchronized double getRttMillis() {
+        return hasSample && !isStale() ? srtt / 1000 : -1;
+    }
+
+    /**
+     * Разброс круговой задержки (rttvar), мс
+     */
+    public synchronized double getRttVarianceMillis() {
+        return rttvar / 1000;
+    }
+
+    /**
+     * Джиттер круговой задержки, мс
+     */
+    public synchronized double getJitterMillis() {
+        return jitter / 1000;
+    }
+
+    /**
+     * Смещение часов агента относительно часов помощника, мс
+     * (положительное - часы агента спешат)
+     */
+    public synchronized double getClockOffsetMillis() {
+        return offset / 1000.0;
+    }
+
+    /**
+     * Сколько PING осталось без ответа, не считая последнего (на него ответ может быть в пути)
+     */
+    public synchronized long getLostPings() {
+        // Ответ на последний PING может быть еще в пути
+        long pending = lastReceived == lastSent ? 0 : 1;
+        return Math.max(0, lastSent - pending - received);
+    }
+
+    /**
+     * Задержка от захвата кадра на агенте до текущего момента у помощника, мс.
+     * Время захвата переводится на часы помощника с учетом смещения.
+     *
+     * @param captureTime время захвата из кадра (часы агента, мс)
+     */
+    public double frameLatencyMillis(long captureTime) {
+        double localCapture = captureTime - getClockOffsetMillis();
+        return WallClock.micros() / 1000.0 - localCapture;
+    }
+
+    /**
+     * Сброс при новом подключении
+     */
+    public synchronized void reset() {
+        lastSent = 0;
+        lastReceived = 0;
+        received = 0;
+        hasSample = false;
+        lastRtt = 0;
+        srtt = 0;
+        rttvar = 0;
+        jitter = 0;
+        windowCount = 0;
+        windowNext = 0;
+        offset = 0;
+    }
+}
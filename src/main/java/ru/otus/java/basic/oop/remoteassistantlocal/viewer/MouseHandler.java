@@ -11,8 +11,12 @@ import java.awt.event.InputEvent;
  * Обработчик событий мыши для преобразования координат и отправки команд
  */
 public class MouseHandler {
+    // Смещение JavaFX ScrollEvent на один щелчок колеса
+    private static final double WHEEL_NOTCH_DELTA = 40.0;
+
     private ImageView desktopView;
     private ConnectionManager connectionManager;
+    private final InputCoalescer input;
 
     private double scaleX = 1.0;
     private double scaleY = 1.0;
@@ -24,8 +28,17 @@ public class MouseHandler {
     private int lastY = 0;
 
     public MouseHandler(ImageView desktopView, ConnectionManager connectionManager) {
+        this(desktopView, connectionManager, InputCoalescer.DEFAULT_TICK_MILLIS);
+    }
+
+    /**
+     * @param inputTickMillis как часто отправлять накопленные движения мыши
+     */
+    public MouseHandler(ImageView desktopView, ConnectionManager connectionManager, long inputTickMillis) {
         this.desktopView = desktopView;
         this.connectionManager = connectionManager;
+        this.input = new InputCoalescer(inputTickMillis, (type, x, y, arg1, arg2) ->
+                connectionManager.sendCommand(new Command(type, new Object[]{x, y, arg1, arg2})));
         setupEventHandlers();
     }
 
@@ -108,10 +121,7 @@ public class MouseHandler {
         Command.Point point = convertCoordinates(event);
 
         int button = getMouseButtonCode(event.getButton());
-        Command command = new Command(Command.Type.MOUSE_PRESS,
-                new Object[]{point.x, point.y, button});
-
-        connectionManager.sendCommand(command);
+        input.event(Command.Type.MOUSE_PRESS, point.x, point.y, button, 0);
         event.consume();
     }
 
@@ -125,10 +135,7 @@ public class MouseHandler {
         Command.Point point = convertCoordinates(event);
 
         int button = getMouseButtonCode(event.getButton());
-        Command command = new Command(Command.Type.MOUSE_RELEASE,
-                new Object[]{point.x, point.y, button});
-
-        connectionManager.sendCommand(command);
+        input.event(Command.Type.MOUSE_RELEASE, point.x, point.y, button, 0);
         event.consume();
     }
 
@@ -139,8 +146,7 @@ public class MouseHandler {
         if (!connectionManager.isConnected()) return;
 
         Command.Point point = convertCoordinates(event);
-        Command command = Command.mouseMove(point.x, point.y);
-        connectionManager.sendCommand(command);
+        input.move(Command.Type.MOUSE_MOVE, point.x, point.y, 0, 0);
         event.consume();
     }
 
@@ -150,15 +156,14 @@ public class MouseHandler {
     private void handleMouseDragged(MouseEvent event) {
         if (!connectionManager.isConnected()) return;
 
+        int fromX = lastX;
+        int fromY = lastY;
         Command.Point point = convertCoordinates(event);
 
         if (mousePressed) {
-            Command command = new Command(Command.Type.MOUSE_DRAG,
-                    new Object[]{point.x, point.y, lastX, lastY});
-            connectionManager.sendCommand(command);
+            input.move(Command.Type.MOUSE_DRAG, point.x, point.y, fromX, fromY);
         } else {
-            Command command = Command.mouseMove(point.x, point.y);
-            connectionManager.sendCommand(command);
+            input.move(Command.Type.MOUSE_MOVE, point.x, point.y, 0, 0);
         }
 
         event.consume();
@@ -178,9 +183,7 @@ public class MouseHandler {
         } else if (event.getClickCount() == 2) {
             // Двойной клик
             int button = getMouseButtonCode(event.getButton());
-            Command command = new Command(Command.Type.MOUSE_CLICK,
-                    new Object[]{point.x, point.y, button, 2}); // 2 = двойной клик
-            connectionManager.sendCommand(command);
+            input.event(Command.Type.MOUSE_CLICK, point.x, point.y, button, 2); // 2 = двойной клик
         }
 
         event.consume();
@@ -202,12 +205,14 @@ public class MouseHandler {
 
         Command.Point point = convertCoordinates(event);
         double deltaY = event.getDeltaY();  // Используем getDeltaY() вместо getY()
-        int scrollAmount = (int) deltaY;
+        if (deltaY == 0) return;
 
-        Command command = new Command(Command.Type.MOUSE_WHEEL,
-                new Object[]{point.x, point.y, scrollAmount});
+        // В протоколе прокрутка передается в щелчках колеса, как в AWT:
+        // положительное значение - вниз, в JavaFX наоборот
+        int notches = Math.max(1, (int) Math.abs(deltaY / WHEEL_NOTCH_DELTA));
+        int scrollAmount = deltaY > 0 ? -notches : notches;
 
-        connectionManager.sendCommand(command);
+        input.event(Command.Type.MOUSE_WHEEL, point.x, point.y, scrollAmount, 0);
         event.consume();
     }
 
@@ -233,8 +238,7 @@ public class MouseHandler {
     public void emulateClick(int x, int y, int button) {
         if (!connectionManager.isConnected()) return;
 
-        Command command = Command.mouseClick(x, y, button);
-        connectionManager.sendCommand(command);
+        input.event(Command.Type.MOUSE_CLICK, x, y, button, 1);
     }
 
     /**
@@ -243,8 +247,7 @@ public class MouseHandler {
     public void emulateMove(int x, int y) {
         if (!connectionManager.isConnected()) return;
 
-        Command command = Command.mouseMove(x, y);
-        connectionManager.sendCommand(command);
+        input.move(Command.Type.MOUSE_MOVE, x, y, 0, 0);
     }
 
     /**
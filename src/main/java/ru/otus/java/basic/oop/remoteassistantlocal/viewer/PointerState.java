@@ -0,0 +1,58 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Последнее состояние указателя агента в виде исходных сообщений с заголовком Protocol:
+ * форма для каждого номера и положение.
+ *
+ * Агент отправляет форму один раз за сессию, поэтому запись, начатая посреди сессии,
+ * и воспроизведение с ключевого кадра получают формы отсюда (см. SessionRecorder).
+ * Не потокобезопасен.
+ */
+class PointerState {
+    private final Map<Integer, byte[]> shapes = new LinkedHashMap<>();
+    private byte[] position;
+
+    /**
+     * Запоминание сообщения между position и limit, если это форма или положение указателя.
+     * Position не меняется.
+     */
+    void update(ByteBuffer message) {
+        Command.Type type = Command.Type.fromCode(message.get(message.position()));
+        if (type == Command.Type.CURSOR_SHAPE) {
+            shapes.put(message.getInt(message.position() + Protocol.HEADER_SIZE), copy(message));
+        } else if (type == Command.Type.CURSOR_POSITION) {
+            position = copy(message);
+        }
+    }
+
+    void copyFrom(PointerState other) {
+        shapes.clear();
+        shapes.putAll(other.shapes);
+        position = other.position;
+    }
+
+    /**
+     * Сообщения состояния по порядку: формы, затем положение
+     */
+    Iterable<byte[]> messages() {
+        if (position == null) return shapes.values();
+        List<byte[]> all = new ArrayList<>(shapes.values());
+        all.add(position);
+        return all;
+    }
+
+    private static byte[] copy(ByteBuffer message) {
+        byte[] bytes = new byte[message.remaining()];
+        message.get(message.position(), bytes);
+        return bytes;
+    }
+}
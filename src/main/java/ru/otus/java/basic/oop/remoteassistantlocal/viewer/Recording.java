@@ -0,0 +1,65 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+/**
+ * Формат файла записи сеанса (см. SessionRecorder).
+ *
+ * Файл только дописывается. В начале заголовок:
+ *   int   MAGIC
+ *   byte  VERSION
+ *   short ширина, short высота экрана
+ *   long  время начала записи (мс от эпохи)
+ * Затем записи:
+ *   byte  вид (KIND_*)
+ *   int   размер данных
+ *   long  время от начала записи (мкс)
+ *   byte[] данные
+ * Все числа в сетевом порядке байт (big-endian), как в Protocol.
+ *
+ * Кадры хранятся в формате SCREENSHOT_RESPONSE (Protocol) и накладываются на изображение
+ * по порядку, начиная с ключевого кадра. Чтобы с любого ключевого кадра можно было
+ * декодировать вперед, плитки записанных кадров не зависят от потока Deflate сессии:
+ * дельта-плитки режима без потерь (CODEC_XOR_DEFLATE) записываются ключевыми
+ * (CODEC_DEFLATE_KEY) с уже восстановленными пикселями. За каждым ключевым кадром (и в начале
+ * записи) идут записи KIND_AGENT с формами и положением указателя, которые агент прислал раньше.
+ *
+ * Оглавление ключевых кадров пишется записью KIND_INDEX каждые KEYFRAMES_PER_INDEX ключевых
+ * кадров и при закрытии; каждое оглавление ссылается на предыдущее. Закрытый файл
+ * заканчивается концовкой: long смещение последнего оглавления, int TRAILER_MAGIC.
+ * Если концовки нет (запись оборвалась), оглавление восстанавливается проходом по заголовкам записей.
+ */
+public class Recording {
+    // "RAR1" в ASCII
+    public static final int MAGIC = 0x52415231;
+    public static final byte VERSION = 1;
+    public static final int FILE_HEADER_SIZE = 17;
+
+    // Вид + размер данных + время
+    public static final int RECORD_HEADER_SIZE = 13;
+
+    // Кадр, который накладывается на предыдущий
+    public static final byte KIND_FRAME = 1;
+    // Весь экран одной плиткой CODEC_DEFLATE_KEY: с него можно начать воспроизведение
+    public static final byte KIND_KEYFRAME = 2;
+    // Прочие сообщения агента (указатель, состояние потока...) с заголовками Protocol
+    public static final byte KIND_AGENT = 3;
+    // Сообщения помощника агенту (ввод, настройки) с заголовками Protocol
+    public static final byte KIND_VIEWER = 4;
+    /*
+     * Оглавление:
+     *   long смещение предыдущего оглавления (NO_INDEX - это первое)
+     *   int  число ключевых кадров
+     *   далее для каждого: long время (мкс), long смещение записи KIND_KEYFRAME
+     */
+    public static final byte KIND_INDEX = 5;
+    public static final int INDEX_ENTRY_SIZE = 16;
+    public static final long NO_INDEX = -1;
+
+    public static final int KEYFRAMES_PER_INDEX = 8;
+
+    // "END!" в ASCII
+    public static final int TRAILER_MAGIC = 0x454E4421;
+    public static final int TRAILER_SIZE = 12;
+
+    // Расширение файлов записи
+    public static final String EXTENSION = ".rarec";
+}
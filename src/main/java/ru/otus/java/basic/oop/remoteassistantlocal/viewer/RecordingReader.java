@@ -0,0 +1,318 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * Чтение файла записи сеанса (формат см. Recording) по одной записи.
+ *
+ * Файл не читается в память целиком: он отображается окнами по WINDOW байт (mmap),
+ * и окно переносится, когда очередная запись в него не помещается. Поэтому перемотка
+ * многочасовой записи стоит одного отображения и чтения с ключевого кадра.
+ * Оглавление ключевых кадров загружается при открытии по цепочке записей KIND_INDEX
+ * от концовки; если концовки нет (запись оборвалась), оно собирается проходом
+ * по заголовкам записей, без чтения их данных.
+ *
+ * Экземпляр не потокобезопасен: используется потоком воспроизведения.
+ */
+public class RecordingReader implements AutoCloseable {
+    private static final long WINDOW = 64L * 1024 * 1024;
+
+    private final Path path;
+    private final FileChannel file;
+    private final int width;
+    private final int height;
+    private final long startMillis;
+    // Конец записей: начало концовки, а в файле без концовки - начало оборванной записи
+    private long end;
+    private long duration;
+
+    // Оглавление: время (мкс) и смещение ключевых кадров по возрастанию
+    private long[] keyframeTimes = new long[64];
+    private long[] keyframeOffsets = new long[64];
+    private int keyframeCount;
+
+    // Текущее окно отображения
+    private ByteBuffer window;
+    private long windowStart;
+    private long windowEnd;
+
+    // Текущая запись
+    private long next = Recording.FILE_HEADER_SIZE;
+    private long offset;
+    private byte kind;
+    private long time;
+    private ByteBuffer data;
+
+    public RecordingReader(Path path) throws IOException {
+        this.path = path;
+        this.file = FileChannel.open(path, StandardOpenOption.READ);
+        try {
+            long size = file.size();
+            ByteBuffer header = ByteBuffer.allocate(Recording.FILE_HEADER_SIZE);
+            readAt(header, 0);
+            if (header.limit() < Recording.FILE_HEADER_SIZE || header.getInt(0) != Recording.MAGIC) {
+                throw new IOException("Не файл записи сеанса: " + path);
+            }
+            if (header.get(4) != Recording.VERSION) {
+                throw new IOException("Неподдерживаемая версия записи: " + header.get(4));
+            }
+            width = Short.toUnsignedInt(header.getShort(5));
+            height = Short.toUnsignedInt(header.getShort(7));
+            startMillis = header.getLong(9);
+
+            long lastIndex = Recording.NO_INDEX;
+            boolean closed = false;
+            if (size >= Recording.FILE_HEADER_SIZE + Recording.TRAILER_SIZE) {
+                ByteBuffer trailer = ByteBuffer.allocate(Recording.TRAILER_SIZE);
+                readAt(trailer, size - Recording.TRAILER_SIZE);
+                if (trailer.getInt(8) == Recording.TRAILER_MAGIC) {
+                    closed = true;
+                    lastIndex = trailer.getLong(0);
+                }
+            }
+            end = closed ? size - Recording.TRAILER_SIZE : size;
+            if (closed) {
+                loadIndex(lastIndex);
+            } else {
+                scanIndex();
+            }
+        } catch (IOException | RuntimeException e) {
+            file.close();
+            throw e;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    public int getWidth() {
+        return width;
+    }
+
+    public int getHeight() {
+        return height;
+    }
+
+    /**
+     * Время начала записи, мс от эпохи
+     */
+    public long getStartMillis() {
+        return startMillis;
+    }
+
+    /**
+     * Длительность записи, мкс
+     */
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getKeyframeCount() {
+        return keyframeCount;
+    }
+
+    public long getKeyframeTime(int i) {
+        return keyframeTimes[i];
+    }
+
+    /**
+     * Номер последнего ключевого кадра не позже time (мкс); -1, если таких нет
+     */
+    public int keyframeAt(long time) {
+        int found = Arrays.binarySearch(keyframeTimes, 0, keyframeCount, time);
+        if (found >= 0) {
+            // Одинаковое время у соседних ключевых кадров: берем последний
+            while (found + 1 < keyframeCount && keyframeTimes[found + 1] == time) found++;
+            return found;
+        }
+        return -(found + 1) - 1;
+    }
+
+    /**
+     * Следующая запись будет ключевым кадром номер i
+     */
+    public void seekKeyframe(int i) {
+        next = keyframeOffsets[i];
+    }
+
+    /**
+     * Следующая запись будет первой в файле
+     */
+    public void rewind() {
+        next = Recording.FILE_HEADER_SIZE;
+    }
+
+    /**
+     * Переход к следующей записи
+     *
+     * @return false в конце записи (или на оборванной последней записи)
+     */
+    public boolean next() throws IOException {
+        while (next + Recording.RECORD_HEADER_SIZE <= end) {
+            ByteBuffer records = map(next, Recording.RECORD_HEADER_SIZE);
+            int at = (int) (next - windowStart);
+            byte recordKind = records.get(at);
+            int length = records.getInt(at + 1);
+            long recordTime = records.getLong(at + 5);
+            long recordEnd = next + Recording.RECORD_HEADER_SIZE + length;
+            if (length < 0 || recordEnd > end) return false;
+
+            offset = next;
+            next = recordEnd;
+            if (recordKind == Recording.KIND_INDEX) continue;
+
+            records = map(offset, Recording.RECORD_HEADER_SIZE + length);
+            int start = (int) (offset - windowStart) + Recording.RECORD_HEADER_SIZE;
+            data.limit(start + length).position(start);
+            kind = recordKind;
+            time = recordTime;
+            return true;
+        }
+        return false;
+    }
+
+    /**
+     * Время следующей записи без перехода к ней (мкс); -1 в конце записи
+     */
+    public long peekTime() throws IOException {
+        if (next + Recording.RECORD_HEADER_SIZE > end) return -1;
+        ByteBuffer records = map(next, Recording.RECORD_HEADER_SIZE);
+        int at = (int) (next - windowStart);
+        // Те же проверки, что в next(): на испорченной записи воспроизведение заканчивается
+        int length = records.getInt(at + 1);
+        if (length < 0 || next + Recording.RECORD_HEADER_SIZE + length > end) return -1;
+        return records.getLong(at + 5);
+    }
+
+    /**
+     * Вид текущей записи (Recording.KIND_*)
+     */
+    public byte getKind() {
+        return kind;
+    }
+
+    /**
+     * Время текущей записи от начала, мкс
+     */
+    public long getTime() {
+        return time;
+    }
+
+    /**
+     * Данные текущей записи между position и limit; действительны до следующего next()
+     */
+    public ByteBuffer getData() {
+        return data;
+    }
+
+    @Override
+    public void close() throws IOException {
+        file.close();
+    }
+
+    /**
+     * Окно отображения, в котором целиком лежат bytes байт с позиции position файла
+     */
+    private ByteBuffer map(long position, int bytes) throws IOException {
+        if (window == null || position < windowStart || position + bytes > windowEnd) {
+            long length = Math.min(Math.max(WINDOW, bytes), end - position);
+            window = file.map(FileChannel.MapMode.READ_ONLY, position, length);
+            windowStart = position;
+            windowEnd = position + length;
+            data = window.duplicate();
+        }
+        return window;
+    }
+
+    /**
+     * Оглавление по цепочке записей KIND_INDEX от последней к первой
+     */
+    private void loadIndex(long index) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Recording.RECORD_HEADER_SIZE + 12);
+        boolean last = true;
+        while (index != Recording.NO_INDEX) {
+            readAt(header.clear(), index);
+            int length = header.getInt(1);
+            if (header.get(0) != Recording.KIND_INDEX || length < 12
+                    || index + Recording.RECORD_HEADER_SIZE + length > end) {
+                throw new IOException("Поврежденное оглавление записи в " + index);
+            }
+            if (last) {
+                // Последнее оглавление пишется при закрытии: его время - конец записи
+                duration = header.getLong(5);
+                last = false;
+            }
+            long previous = header.getLong(Recording.RECORD_HEADER_SIZE);
+            int count = header.getInt(Recording.RECORD_HEADER_SIZE + 8);
+
+            ByteBuffer entries = ByteBuffer.allocate(count * Recording.INDEX_ENTRY_SIZE);
+            readAt(entries, index + Recording.RECORD_HEADER_SIZE + 12);
+            // Оглавления читаются от конца, записи внутри оглавления - по возрастанию
+            for (int i = count - 1; i >= 0; i--) {
+                addKeyframe(entries.getLong(i * Recording.INDEX_ENTRY_SIZE),
+                        entries.getLong(i * Recording.INDEX_ENTRY_SIZE + 8));
+            }
+            index = previous;
+        }
+        reverse(keyframeTimes, keyframeCount);
+        reverse(keyframeOffsets, keyframeCount);
+    }
+
+    /**
+     * Оглавление проходом по заголовкам записей (файл без концовки)
+     */
+    private void scanIndex() throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(Recording.RECORD_HEADER_SIZE);
+        long position = Recording.FILE_HEADER_SIZE;
+        while (position + Recording.RECORD_HEADER_SIZE <= end) {
+            readAt(header.clear(), position);
+            int length = header.getInt(1);
+            long recordEnd = position + Recording.RECORD_HEADER_SIZE + length;
+            if (length < 0 || recordEnd > end) break;
+            long recordTime = header.getLong(5);
+            if (header.get(0) == Recording.KIND_KEYFRAME) {
+                addKeyframe(recordTime, position);
+            }
+            duration = Math.max(duration, recordTime);
+            position = recordEnd;
+        }
+        // Оборванный хвост не читается ни next(), ни peekTime()
+        end = position;
+    }
+
+    private void addKeyframe(long time, long offset) {
+        if (keyframeCount == keyframeTimes.length) {
+            keyframeTimes = Arrays.copyOf(keyframeTimes, keyframeCount * 2);
+            keyframeOffsets = Arrays.copyOf(keyframeOffsets, keyframeCount * 2);
+        }
+        keyframeTimes[keyframeCount] = time;
+        keyframeOffsets[keyframeCount] = offset;
+        keyframeCount++;
+    }
+
+    private static void reverse(long[] values, int count) {
+        for (int i = 0, j = count - 1; i < j; i++, j--) {
+            long value = values[i];
+            values[i] = values[j];
+            values[j] = value;
+        }
+    }
+
+    /**
+     * Чтение в buffer с позиции файла до заполнения или конца файла; buffer переводится в режим чтения
+     */
+    private void readAt(ByteBuffer buffer, long position) throws IOException {
+        while (buffer.hasRemaining()) {
+            int read = file.read(buffer, position);
+            if (read < 0) break;
+            position += read;
+        }
+        buffer.flip();
+    }
+}
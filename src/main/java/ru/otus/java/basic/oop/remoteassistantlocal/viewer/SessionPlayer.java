@@ -0,0 +1,352 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolDecoder;
+
+import java.awt.Rectangle;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Воспроизведение записи сеанса (RecordingReader) со скоростью 1x-16x и перемоткой.
+ *
+ * Записи накладываются на FrameDecoder по порядку в собственном потоке, в момент
+ * wallBase + (время записи - mediaBase) / speed; кадры уходят в FrameListener так же,
+ * как кадры живой сессии. Перемотка к моменту t начинается с ближайшего ключевого
+ * кадра не позже t (по оглавлению) и декодирует вперед до t без показа, после чего
+ * показывается весь экран. Если декодирование отстает от часов больше чем на CATCH_UP
+ * (высокая скорость, тяжелые кадры), поток так же перескакивает к ключевому кадру.
+ *
+ * Из сообщений агента воспроизводится указатель; команды помощника (KIND_VIEWER) не нужны
+ * для изображения и пропускаются. Методы управления вызываются из любого потока.
+ */
+public class SessionPlayer implements AutoCloseable {
+    public static final int MIN_SPEED = 1;
+    public static final int MAX_SPEED = 16;
+
+    // Отставание от часов воспроизведения, после которого поток перескакивает к ключевому кадру, мкс
+    private static final long CATCH_UP = 2_000_000;
+
+    /**
+     * Получатель кадров (поток воспроизведения): области, обновленные в decoder
+     */
+    public interface FrameListener {
+        void onFrame(List<Rectangle> regions, FrameDecoder decoder);
+    }
+
+    private final RecordingReader reader;
+    private final FrameDecoder decoder;
+    private final FrameListener frames;
+    private final MessageHandler messages;
+    private final ProtocolDecoder agent = new ProtocolDecoder(0).withoutHandshake();
+    private final SilentHandler silent = new SilentHandler();
+    private final List<Rectangle> fullScreen;
+    private final Thread thread;
+
+    // Состояние под lock
+    private final Object lock = new Object();
+    private int speed = MIN_SPEED;
+    private boolean paused = true;
+    private boolean ended;
+    private boolean closed;
+    // Запрошенная перемотка, мкс (-1 - нет)
+    private long seekTarget = 0;
+    // Часы воспроизведения: моменту mediaBase записи (мкс) соответствует wallBase (System.nanoTime)
+    private long wallBase;
+    private long mediaBase;
+    // Время последней показанной записи, мкс
+    private long position;
+
+    private volatile long seeks;
+    private volatile long catchUps;
+
+    /**
+     * Поток воспроизведения стартует сразу, показывает начало записи и ждет play()
+     */
+    public SessionPlayer(RecordingReader reader, FrameDecoder decoder, FrameListener frames, MessageHandler messages) {
+        this.reader = reader;
+        this.decoder = decoder;
+        this.frames = frames;
+        this.messages = messages;
+        this.fullScreen = List.of(new Rectangle(0, 0, decoder.getWidth(), decoder.getHeight()));
+        this.thread = new Thread(this::run, "Session-Player");
+        thread.setDaemon(true);
+        thread.start();
+    }
+
+    public RecordingReader getReader() {
+        return reader;
+    }
+
+    public void play() {
+        synchronized (lock) {
+            if (ended) {
+                // Запись закончилась: воспроизведение с начала
+                ended = false;
+                seekTarget = 0;
+                position = 0;
+            }
+            paused = false;
+            rebase(position);
+            lock.notifyAll();
+        }
+    }
+
+    public void pause() {
+        synchronized (lock) {
+            position = mediaNow();
+            paused = true;
+            lock.notifyAll();
+        }
+    }
+
+    public boolean isPaused() {
+        synchronized (lock) {
+            return paused;
+        }
+    }
+
+    public boolean isEnded() {
+        synchronized (lock) {
+            return ended;
+        }
+    }
+
+    /**
+     * Скорость воспроизведения, MIN_SPEED..MAX_SPEED; часы продолжают идти с текущего момента
+     */
+    public void setSpeed(int speed) {
+        synchronized (lock) {
+            position = mediaNow();
+            this.speed = Math.max(MIN_SPEED, Math.min(MAX_SPEED, speed));
+            rebase(position);
+            lock.notifyAll();
+        }
+    }
+
+    public int getSpeed() {
+        synchronized (lock) {
+            return speed;
+        }
+    }
+
+    /**
+     * Перемотка к моменту time (мкс от начала записи); выполняется потоком воспроизведения
+     */
+    public void seek(long time) {
+        synchronized (lock) {
+            seekTarget = Math.max(0, Math.min(reader.getDuration(), time));
+            position = seekTarget;
+            ended = false;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Текущий момент воспроизведения, мкс от начала записи
+     */
+    public long getPosition() {
+        synchronized (lock) {
+            return Math.min(reader.getDuration(), mediaNow());
+        }
+    }
+
+    public long getDuration() {
+        return reader.getDuration();
+    }
+
+    /**
+     * Перемоток с декодированием от ключевого кадра (по запросу и при отставании)
+     */
+    public long getSeeks() {
+        return seeks;
+    }
+
+    /**
+     * Перескоков к ключевому кадру из-за отставания декодирования от часов
+     */
+    public long getCatchUps() {
+        return catchUps;
+    }
+
+    /**
+     * Остановка потока воспроизведения и закрытие файла записи
+     */
+    @Override
+    public void close() throws IOException {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+        try {
+            thread.join(TimeUnit.SECONDS.toMillis(1));
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        reader.close();
+    }
+
+    private void run() {
+        try {
+            while (true) {
+                long target;
+                synchronized (lock) {
+                    while (!closed && seekTarget < 0 && (paused || ended)) {
+                        lock.wait();
+                    }
+                    if (closed) return;
+                    target = seekTarget;
+                    seekTarget = -1;
+                    if (target < 0) {
+                        long next = reader.peekTime();
+                        if (next < 0) {
+                            ended = true;
+                            paused = true;
+                            position = reader.getDuration();
+                            continue;
+                        }
+                        long wait = wallBase + (next - mediaBase) * 1000 / speed - System.nanoTime();
+                        if (wait > 0) {
+                            // Проснемся к сроку записи или раньше - от паузы, перемотки, смены скорости
+                            TimeUnit.NANOSECONDS.timedWait(lock, wait);
+                            continue;
+                        }
+                        if (-wait / 1000 * speed > CATCH_UP) {
+                            // Декодирование не успевает за часами: к ключевому кадру у текущего момента
+                            long now = mediaNow();
+                            int keyframe = reader.keyframeAt(now);
+                            if (keyframe >= 0 && reader.getKeyframeTime(keyframe) > next) {
+                                target = now;
+                                catchUps++;
+                            }
+                        }
+                    }
+                }
+
+                if (target >= 0) {
+                    seekTo(target);
+                    continue;
+                }
+                if (!reader.next()) {
+                    // Испорченная запись: дальше читать нечего, повтор только крутил бы поток
+                    synchronized (lock) {
+                        if (seekTarget < 0) {
+                            ended = true;
+                            paused = true;
+                            position = reader.getDuration();
+                        }
+                    }
+                    continue;
+                }
+                apply(messages, true);
+                synchronized (lock) {
+                    if (seekTarget < 0) {
+                        position = Math.max(position, reader.getTime());
+                    }
+                }
+            }
+        } catch (IOException e) {
+            System.err.println("Ошибка воспроизведения записи: " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Декодирование от ключевого кадра до момента time без показа, затем показ всего экрана
+     */
+    private void seekTo(long time) throws IOException {
+        seeks++;
+        silent.reset();
+        int keyframe = reader.keyframeAt(time);
+        if (keyframe < 0 && reader.getKeyframeCount() > 0) {
+            // До первого ключевого кадра изображения еще нет: начинаем с него
+            keyframe = 0;
+        }
+        if (keyframe >= 0) {
+            reader.seekKeyframe(keyframe);
+            if (reader.next()) {
+                apply(silent, false);
+            }
+        } else {
+            reader.rewind();
+        }
+        long next;
+        while ((next = reader.peekTime()) >= 0 && next <= time && reader.next()) {
+            apply(silent, false);
+        }
+        synchronized (lock) {
+            // Отставание после перескока не копится: часы идут от показанного момента
+            position = Math.max(time, reader.getTime());
+            rebase(position);
+        }
+        frames.onFrame(fullScreen, decoder);
+        silent.flush();
+    }
+
+    /**
+     * Текущая запись: кадр накладывается на decoder, сообщения агента уходят в handler
+     */
+    private void apply(MessageHandler handler, boolean show) throws IOException {
+        byte kind = reader.getKind();
+        if (kind == Recording.KIND_FRAME || kind == Recording.KIND_KEYFRAME) {
+            if (!reader.getData().hasRemaining()) return;
+            List<Rectangle> regions = decoder.decode(reader.getData());
+            if (show && !regions.isEmpty()) {
+                frames.onFrame(regions, decoder);
+            }
+        } else if (kind == Recording.KIND_AGENT) {
+            agent.decode(reader.getData(), handler);
+        }
+    }
+
+    private void rebase(long media) {
+        wallBase = System.nanoTime();
+        mediaBase = media;
+    }
+
+    /**
+     * Момент записи по часам воспроизведения (под lock)
+     */
+    private long mediaNow() {
+        if (paused || ended || seekTarget >= 0) return position;
+        return Math.max(position, mediaBase + (System.nanoTime() - wallBase) / 1000 * speed);
+    }
+
+    /**
+     * Сообщения агента при перемотке: формы указателя передаются сразу (они приходят
+     * один раз на номер), из положений - только последнее
+     */
+    private class SilentHandler implements MessageHandler {
+        private boolean moved;
+        private int x;
+        private int y;
+        private int shapeId;
+
+        void reset() {
+            moved = false;
+        }
+
+        void flush() {
+            if (moved) {
+                messages.onCursor(x, y, shapeId);
+                moved = false;
+            }
+        }
+
+        @Override
+        public void onCursor(int x, int y, int shapeId) {
+            this.x = x;
+            this.y = y;
+            this.shapeId = shapeId;
+            moved = true;
+        }
+
+        @Override
+        public void onCursorShape(CursorShape shape) {
+            messages.onCursorShape(shape);
+        }
+    }
+}
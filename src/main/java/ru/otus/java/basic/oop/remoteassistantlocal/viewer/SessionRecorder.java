@@ -0,0 +1,478 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.zip.Deflater;
+
+/**
+ * Запись сеанса в файл (формат см. Recording): кадры агента в том виде, в каком они пришли,
+ * прочие его сообщения, команды помощника и ключевые кадры с оглавлением.
+ *
+ * Потоки приема и декодирования только копируют запись в промежуточный буфер под короткой
+ * блокировкой. В файл (FileChannel, только дописывание) пишет отдельный поток записи,
+ * он же сжимает ключевые кадры. Буферов два: пока поток записи пишет один, другой заполняется.
+ * Если диск не успевает и места в буфере нет, запись выбрасывается, а не ждет;
+ * после выброшенного кадра следующим пишется ключевой, так что запись остается целостной.
+ *
+ * Ключевой кадр - снимок изображения FrameDecoder после очередного кадра раз в viewer.keyframeSec
+ * секунд. Поток декодирования копирует снимок в отдельный массив и оставляет в буфере метку,
+ * поток записи на месте метки сжимает снимок в запись KIND_KEYFRAME. Пока прошлый снимок
+ * не сжат, новый не берется - ключевой кадр просто откладывается.
+ *
+ * Формы указателя агент отправляет один раз за сессию, поэтому последнее состояние указателя
+ * (PointerState) пишется записями KIND_AGENT в начале записи и сразу после каждого ключевого кадра.
+ */
+public class SessionRecorder implements AutoCloseable {
+    // Период ключевых кадров (-Dviewer.keyframeSec) и размер каждого из двух буферов (-Dviewer.recordBufferMb)
+    private static final long KEYFRAME_INTERVAL_NANOS =
+            TimeUnit.SECONDS.toNanos(Long.getLong("viewer.keyframeSec", 10));
+    private static final int BUFFER_SIZE = Integer.getInteger("viewer.recordBufferMb", 8) * 1024 * 1024;
+    // Поток записи сбрасывает накопленное не реже, чем раз в столько миллисекунд
+    private static final long FLUSH_INTERVAL_MILLIS = 200;
+    // Место под выход Deflate за один вызов
+    private static final int DEFLATE_CHUNK = 16 * 1024;
+
+    private final Path path;
+    private final FileChannel file;
+    private final int width;
+    private final int height;
+    private final long keyframeInterval;
+    private final long startNanos = System.nanoTime();
+    private final Thread writer;
+
+    // Заполняемый буфер принадлежит lock, записываемый - потоку записи
+    private final Object lock = new Object();
+    private ByteBuffer filling = ByteBuffer.allocate(BUFFER_SIZE);
+    private ByteBuffer draining = ByteBuffer.allocate(BUFFER_SIZE);
+    private boolean closed;
+    private final PointerState pointer = new PointerState();
+
+    // Снимок для ключевого кадра: заполняет поток декодирования, пока snapshotBusy == false
+    private final byte[] snapshot;
+    private long snapshotCaptureTime;
+    private volatile boolean snapshotBusy;
+
+    // Поток декодирования
+    private boolean keyframeNeeded = true;
+    private long nextKeyframe;
+    private final Deflater tileDeflater = new Deflater(Deflater.BEST_SPEED, true);
+    private ByteBuffer frame = ByteBuffer.allocate(64 * 1024);
+
+    // Поток записи
+    private final Deflater keyframeDeflater = new Deflater(Deflater.BEST_SPEED, true);
+    private ByteBuffer keyframe = ByteBuffer.allocate(1024 * 1024);
+    private final long[] index = new long[2 * Recording.KEYFRAMES_PER_INDEX];
+    private int indexCount;
+    private long lastIndex = Recording.NO_INDEX;
+    private volatile long position;
+
+    private final AtomicLong droppedRecords = new AtomicLong();
+    private final AtomicLong keyframes = new AtomicLong();
+
+    /**
+     * Создание файла записи (существующий не перезаписывается) и запуск потока записи
+     *
+     * @param width  ширина экрана агента, как у FrameDecoder
+     * @param height высота экрана агента
+     */
+    public SessionRecorder(Path path, int width, int height) throws IOException {
+        this(path, width, height, KEYFRAME_INTERVAL_NANOS);
+    }
+
+    /**
+     * @param keyframeInterval период ключевых кадров, нс (0 - как только прошлый снимок сжат)
+     */
+    public SessionRecorder(Path path, int width, int height, long keyframeInterval) throws IOException {
+        this.path = path;
+        this.width = width;
+        this.height = height;
+        this.keyframeInterval = keyframeInterval;
+        this.snapshot = new byte[width * height * 3];
+        this.file = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE);
+
+        ByteBuffer header = ByteBuffer.allocate(Recording.FILE_HEADER_SIZE);
+        header.putInt(Recording.MAGIC)
+                .put(Recording.VERSION)
+                .putShort((short) width)
+                .putShort((short) height)
+                .putLong(System.currentTimeMillis())
+                .flip();
+        try {
+            write(header);
+        } catch (IOException e) {
+            file.close();
+            throw e;
+        }
+
+        // Не демон: при выходе из программы запись дописывается и закрывается
+        writer = new Thread(this::writeLoop, "Session-Recorder");
+        writer.start();
+    }
+
+    /**
+     * Сообщение агента (кроме кадра) между position и limit, с заголовком Protocol (поток приема).
+     * Position не меняется.
+     */
+    public void onAgentMessage(ByteBuffer message) {
+        synchronized (lock) {
+            pointer.update(message);
+            if (!append(Recording.KIND_AGENT, System.nanoTime(), message, message.position(), message.remaining())) {
+                droppedRecords.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Состояние указателя, накопленное до начала записи (FrameReceiver.setRecorder())
+     */
+    void onPointerState(PointerState state) {
+        synchronized (lock) {
+            pointer.copyFrom(state);
+            appendPointer(System.nanoTime());
+        }
+    }
+
+    /**
+     * Сообщения помощника агенту: накопленные в буфере ProtocolEncoder от 0 до position
+     */
+    public void onViewerMessages(ByteBuffer messages) {
+        if (messages.position() == 0) return;
+        if (!append(Recording.KIND_VIEWER, System.nanoTime(), messages, 0, messages.position())) {
+            droppedRecords.incrementAndGet();
+        }
+    }
+
+    /**
+     * Кадр агента (поток декодирования, сразу после decoder.decode()).
+     * Данные кадра между position и limit, position не меняется.
+     */
+    public void onFrame(ByteBuffer payload, FrameDecoder decoder) {
+        long now = System.nanoTime();
+        if (keyframeNeeded || now - nextKeyframe >= 0) {
+            if (!snapshotBusy) {
+                // Снимок уже содержит этот кадр, сам кадр не пишется
+                takeSnapshot(decoder, now);
+                return;
+            }
+            if (keyframeNeeded) {
+                // Без ключевого кадра кадры не на что накладывать
+                droppedRecords.incrementAndGet();
+                return;
+            }
+        }
+
+        ByteBuffer data = hasDeltaTiles(payload) ? transcode(payload, decoder) : payload;
+        if (!append(Recording.KIND_FRAME, now, data, data.position(), data.remaining())) {
+            droppedRecords.incrementAndGet();
+            keyframeNeeded = true;
+        }
+    }
+
+    public Path getPath() {
+        return path;
+    }
+
+    /**
+     * Сколько байт записано в файл
+     */
+    public long getBytesWritten() {
+        return position;
+    }
+
+    /**
+     * Записи, выброшенные из-за того, что диск не успевал
+     */
+    public long getDroppedRecords() {
+        return droppedRecords.get();
+    }
+
+    public long getKeyframes() {
+        return keyframes.get();
+    }
+
+    /**
+     * Окончание записи: поток записи дописывает накопленное, оглавление и концовку и закрывает файл.
+     * Не ждет окончания, см. awaitWritten().
+     */
+    @Override
+    public void close() {
+        synchronized (lock) {
+            closed = true;
+            lock.notifyAll();
+        }
+    }
+
+    /**
+     * Ожидание, пока файл записи будет дописан и закрыт
+     */
+    public boolean awaitWritten(long timeout, TimeUnit unit) throws InterruptedException {
+        writer.join(Math.max(1, unit.toMillis(timeout)));
+        return !writer.isAlive();
+    }
+
+    private void takeSnapshot(FrameDecoder decoder, long now) {
+        snapshotBusy = true;
+        System.arraycopy(decoder.getPixels(), 0, snapshot, 0, snapshot.length);
+        snapshotCaptureTime = decoder.getCaptureTime();
+        // Метка в буфере: данные ключевого кадра подставит поток записи
+        synchronized (lock) {
+            if (append(Recording.KIND_KEYFRAME, now, null, 0, 0)) {
+                // Воспроизведение с этого ключевого кадра получит указатель из следующих записей
+                appendPointer(now);
+                keyframeNeeded = false;
+                nextKeyframe = now + keyframeInterval;
+            } else {
+                snapshotBusy = false;
+                droppedRecords.incrementAndGet();
+                keyframeNeeded = true;
+            }
+        }
+    }
+
+    /**
+     * Записи KIND_AGENT с состоянием указателя (под lock)
+     */
+    private void appendPointer(long nanos) {
+        for (byte[] message : pointer.messages()) {
+            if (!append(Recording.KIND_AGENT, nanos, ByteBuffer.wrap(message), 0, message.length)) {
+                droppedRecords.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Копирование записи в заполняемый буфер
+     *
+     * @return false, если места нет или запись закончена
+     */
+    private boolean append(byte kind, long nanos, ByteBuffer data, int offset, int length) {
+        synchronized (lock) {
+            if (closed || filling.remaining() < Recording.RECORD_HEADER_SIZE + length) return false;
+            filling.put(kind).putInt(length).putLong((nanos - startNanos) / 1000);
+            if (length > 0) {
+                filling.put(filling.position(), data, offset, length);
+                filling.position(filling.position() + length);
+            }
+            // Поток записи просыпается сам по таймеру; раньше - только если буфер заполнен наполовину
+            if (filling.position() > filling.capacity() / 2) {
+                lock.notifyAll();
+            }
+            return true;
+        }
+    }
+
+    /**
+     * Есть ли в кадре дельта-плитки, которые зависят от потока Deflate сессии
+     */
+    private static boolean hasDeltaTiles(ByteBuffer payload) {
+        int tileCount = payload.getInt(payload.position() + 8);
+        int tile = payload.position() + Protocol.FRAME_HEADER_SIZE;
+        for (int i = 0; i < tileCount; i++) {
+            if (payload.get(tile + 8) == Protocol.CODEC_XOR_DEFLATE) return true;
+            tile += Protocol.TILE_HEADER_SIZE + payload.getInt(tile + 9);
+        }
+        return false;
+    }
+
+    /**
+     * Кадр, в котором дельта-плитки заменены ключевыми с пикселями из изображения декодера.
+     * Изображение уже содержит весь кадр, поэтому так можно только потому, что в кадрах
+     * режима без потерь области не перекрываются, а копирование идет первым.
+     */
+    private ByteBuffer transcode(ByteBuffer payload, FrameDecoder decoder) {
+        frame.clear();
+        int tileCount = payload.getInt(payload.position() + 8);
+        frame.put(frame.position(), payload, payload.position(), Protocol.FRAME_HEADER_SIZE);
+        frame.position(Protocol.FRAME_HEADER_SIZE);
+
+        byte[] pixels = decoder.getPixels();
+        int scanline = decoder.getScanline();
+        int tile = payload.position() + Protocol.FRAME_HEADER_SIZE;
+        for (int i = 0; i < tileCount; i++) {
+            int size = payload.getInt(tile + 9);
+            if (payload.get(tile + 8) != Protocol.CODEC_XOR_DEFLATE) {
+                int length = Protocol.TILE_HEADER_SIZE + size;
+                frame = ensureSpace(frame, length);
+                frame.put(frame.position(), payload, tile, length);
+                frame.position(frame.position() + length);
+            } else {
+                int x = Short.toUnsignedInt(payload.getShort(tile));
+                int y = Short.toUnsignedInt(payload.getShort(tile + 2));
+                int w = Short.toUnsignedInt(payload.getShort(tile + 4));
+                int h = Short.toUnsignedInt(payload.getShort(tile + 6));
+                frame = ensureSpace(frame, Protocol.TILE_HEADER_SIZE);
+                frame.putLong(payload.getLong(tile)).put(Protocol.CODEC_DEFLATE_KEY);
+                int sizePosition = frame.position();
+                frame.putInt(0);
+                int start = frame.position();
+
+                tileDeflater.reset();
+                for (int row = y; row < y + h; row++) {
+                    tileDeflater.setInput(pixels, row * scanline + x * 3, w * 3);
+                    while (!tileDeflater.needsInput()) {
+                        frame = deflate(tileDeflater, frame, Deflater.NO_FLUSH);
+                    }
+                }
+                frame = finish(tileDeflater, frame);
+                frame.putInt(sizePosition, frame.position() - start);
+            }
+            tile += Protocol.TILE_HEADER_SIZE + size;
+        }
+        return frame.flip();
+    }
+
+    private void writeLoop() {
+        try {
+            boolean last;
+            do {
+                synchronized (lock) {
+                    if (filling.position() == 0 && !closed) {
+                        lock.wait(FLUSH_INTERVAL_MILLIS);
+                    }
+                    ByteBuffer full = filling;
+                    filling = draining;
+                    draining = full;
+                    last = closed;
+                }
+                draining.flip();
+                writeRecords(draining);
+                draining.clear();
+            } while (!last);
+
+            writeIndex();
+            ByteBuffer trailer = ByteBuffer.allocate(Recording.TRAILER_SIZE);
+            trailer.putLong(lastIndex).putInt(Recording.TRAILER_MAGIC).flip();
+            write(trailer);
+        } catch (IOException e) {
+            System.err.println("Ошибка записи сеанса в " + path + ": " + e.getMessage());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            synchronized (lock) {
+                closed = true;
+            }
+            try {
+                file.close();
+            } catch (IOException e) {
+                System.err.println("Ошибка закрытия записи " + path + ": " + e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Запись накопленного буфера в файл; метки ключевых кадров заменяются сжатыми снимками
+     */
+    private void writeRecords(ByteBuffer records) throws IOException {
+        int end = records.limit();
+        int chunk = records.position();
+        int record = chunk;
+        while (record < end) {
+            byte kind = records.get(record);
+            int next = record + Recording.RECORD_HEADER_SIZE + records.getInt(record + 1);
+            if (kind == Recording.KIND_KEYFRAME) {
+                records.limit(record).position(chunk);
+                write(records);
+                records.limit(end);
+                writeKeyframe(records.getLong(record + 5));
+                chunk = next;
+            }
+            record = next;
+        }
+        records.position(chunk);
+        write(records);
+    }
+
+    /**
+     * Сжатие снимка в запись KIND_KEYFRAME: кадр из одной плитки CODEC_DEFLATE_KEY на весь экран
+     */
+    private void writeKeyframe(long time) throws IOException {
+        keyframe.clear();
+        keyframe.put(Recording.KIND_KEYFRAME).putInt(0).putLong(time);
+        keyframe.putLong(snapshotCaptureTime).putInt(1);
+        keyframe.putShort((short) 0).putShort((short) 0)
+                .putShort((short) width).putShort((short) height)
+                .put(Protocol.CODEC_DEFLATE_KEY)
+                .putInt(0);
+        int start = keyframe.position();
+
+        keyframeDeflater.reset();
+        keyframeDeflater.setInput(snapshot);
+        while (!keyframeDeflater.needsInput()) {
+            keyframe = deflate(keyframeDeflater, keyframe, Deflater.NO_FLUSH);
+        }
+        keyframe = finish(keyframeDeflater, keyframe);
+        snapshotBusy = false;
+
+        keyframe.putInt(1, keyframe.position() - Recording.RECORD_HEADER_SIZE);
+        keyframe.putInt(start - 4, keyframe.position() - start);
+        keyframe.flip();
+
+        index[2 * indexCount] = time;
+        index[2 * indexCount + 1] = position;
+        indexCount++;
+        write(keyframe);
+        keyframes.incrementAndGet();
+        if (indexCount == Recording.KEYFRAMES_PER_INDEX) {
+            writeIndex();
+        }
+    }
+
+    /**
+     * Оглавление ключевых кадров с прошлого оглавления
+     */
+    private void writeIndex() throws IOException {
+        if (indexCount == 0 && lastIndex != Recording.NO_INDEX) return;
+        int length = 12 + indexCount * Recording.INDEX_ENTRY_SIZE;
+        ByteBuffer record = ByteBuffer.allocate(Recording.RECORD_HEADER_SIZE + length);
+        record.put(Recording.KIND_INDEX).putInt(length).putLong((System.nanoTime() - startNanos) / 1000);
+        record.putLong(lastIndex).putInt(indexCount);
+        for (int i = 0; i < 2 * indexCount; i++) {
+            record.putLong(index[i]);
+        }
+        record.flip();
+        lastIndex = position;
+        indexCount = 0;
+        write(record);
+    }
+
+    private void write(ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            position += file.write(buffer);
+        }
+    }
+
+    /**
+     * Один вызов Deflate в конец буфера (буфер растет при нехватке места)
+     */
+    private static ByteBuffer deflate(Deflater deflater, ByteBuffer output, int flush) {
+        output = ensureSpace(output, DEFLATE_CHUNK);
+        deflater.deflate(output, flush);
+        return output;
+    }
+
+    /**
+     * Конец плитки на границе байта (SYNC_FLUSH), как у агента: DeltaDecoder распакует ее целиком
+     */
+    private static ByteBuffer finish(Deflater deflater, ByteBuffer output) {
+        while (true) {
+            output = ensureSpace(output, DEFLATE_CHUNK);
+            int space = output.remaining();
+            if (deflater.deflate(output, Deflater.SYNC_FLUSH) < space) return output;
+        }
+    }
+
+    private static ByteBuffer ensureSpace(ByteBuffer buffer, int bytes) {
+        if (buffer.remaining() >= bytes) return buffer;
+        ByteBuffer grown = ByteBuffer.allocate(Math.max(buffer.capacity() * 2, buffer.position() + bytes));
+        buffer.flip();
+        grown.put(buffer);
+        return grown;
+    }
+}
@@ -12,17 +12,30 @@ import javafx.scene.input.KeyEvent;
 import javafx.scene.input.MouseButton;
 import javafx.scene.input.MouseEvent;
 import javafx.scene.image.WritableImage;
+import javafx.scene.layout.HBox;
 import javafx.scene.layout.Pane;
+import javafx.stage.FileChooser;
 import javafx.concurrent.Task;
 import javafx.embed.swing.SwingFXUtils;
 
+import java.awt.Rectangle;
 import java.awt.event.InputEvent;
 import java.awt.image.BufferedImage;
 import java.io.*;
 import java.net.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.SocketChannel;
+import java.util.List;
 import java.util.ResourceBundle;
+import java.util.concurrent.atomic.AtomicLong;
 import javafx.application.Platform;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
 import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.RelayAddress;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.WallClock;
 
 import javax.imageio.ImageIO;
 
@@ -31,27 +44,62 @@ public class ViewerController implements Initializable {
     @FXML private TextField ipField;
     @FXML private Button connectButton;
     @FXML private ImageView desktopView;
+    @FXML private ImageView cursorView;
     @FXML private Label statusLabel;
     @FXML private Label fpsLabel;
     @FXML private Slider qualitySlider;
+    @FXML private Spinner<Integer> fpsSpinner;
+    @FXML private CheckBox losslessCheckBox;
+    @FXML private CheckBox adaptiveCheckBox;
+    @FXML private ToggleButton recordButton;
     @FXML private Pane overlayPane;
-
-    private Socket socket;
-    private DataOutputStream out;
-    private DataInputStream in;
-    private boolean connected = false;
-    private long frameCount = 0;
-    private long lastFpsUpdate = 0;
+    @FXML private HBox playbackBar;
+    @FXML private Button playButton;
+    @FXML private Slider positionSlider;
+    @FXML private Spinner<Integer> speedSpinner;
+    @FXML private Label positionLabel;
+
+    private SocketChannel channel;
+    private FrameReceiver receiver;
+    private final ProtocolEncoder encoder = new ProtocolEncoder(256);
+
+    // Движения мыши уходят агенту не чаще одного раза за такт (-Dviewer.inputTickMs)
+    private final InputCoalescer input = new InputCoalescer(
+            Long.getLong("viewer.inputTickMs", InputCoalescer.DEFAULT_TICK_MILLIS), this::sendMouse);
+    private volatile boolean connected = false;
+    // Отображенные кадры: увеличивает FX поток, читает и обнуляет поток счетчика FPS
+    private final AtomicLong frameCount = new AtomicLong();
     private Thread receiveThread;
 
+    // Задержка до агента (PING раз в секунду из потока счетчика FPS) и задержка последнего кадра
+    private final LatencyEstimator latency = new LatencyEstimator();
+    private volatile double frameLatency = -1;
+
+    // Подстройка под канал: наименьший масштаб плиток (-Dviewer.minScale, %) и что выбрал агент
+    private final int minScale = Integer.getInteger("viewer.minScale", 50);
+    private volatile String streamState;
+
+    // Запись сеанса (null - не записывается)
+    private volatile SessionRecorder recorder;
+    // Воспроизведение записи (null - не воспроизводится); меняется только в FX потоке
+    private volatile SessionPlayer player;
+
     private double scaleX = 1.0;
     private double scaleY = 1.0;
 
     private final int FIXED_WIDTH = 1920;
     private final int FIXED_HEIGHT = 1080;
 
+    // Текущее изображение удаленного экрана и почтовый ящик кадров для него
+    private WritableImage frameBuffer;
+    private volatile FrameMailbox mailbox;
+    // Указатель агента поверх изображения
+    private CursorOverlay cursor;
+
     @Override
     public void initialize(URL location, ResourceBundle resources) {
+        cursor = new CursorOverlay(cursorView, desktopView);
+
         // Устанавливаем обработчики событий мыши на ImageView
         setupMouseHandlers();
 
@@ -63,23 +111,70 @@ public class ViewerController implements Initializable {
             ipField.setText("127.0.0.1");
         }
 
-        // Обновление FPS каждую секунду
-        new Thread(() -> {
+        // Частота кадров агента меняется на лету
+        fpsSpinner.valueProperty().addListener((obs, oldValue, newValue) -> {
+            if (newValue != null) {
+                sendValue(Command.Type.SET_FPS, newValue);
+            }
+        });
+
+        // Скорость воспроизведения записи меняется на лету
+        speedSpinner.valueProperty().addListener((obs, oldValue, newValue) -> {
+            SessionPlayer current = player;
+            if (current != null && newValue != null) {
+                current.setSpeed(newValue);
+            }
+        });
+
+        // Обновление FPS каждую секунду. Состояние счетчика принадлежит только этому потоку,
+        // с FX потоком он обменивается через атомарный frameCount
+        Thread fpsThread = new Thread(() -> {
+            long lastUpdate = System.nanoTime();
+            long lastDropped = 0;
+            FrameMailbox lastMailbox = null;
             while (true) {
                 try {
                     Thread.sleep(1000);
-                    long currentTime = System.currentTimeMillis();
-                    if (lastFpsUpdate > 0) {
-                        long fps = frameCount * 1000 / (currentTime - lastFpsUpdate);
-                        Platform.runLater(() -> fpsLabel.setText("FPS: " + fps));
+                    long now = System.nanoTime();
+                    long frames = frameCount.getAndSet(0);
+                    double fps = frames * 1e9 / (now - lastUpdate);
+                    lastUpdate = now;
+
+                    // Пропущенные кадры за последнюю секунду (счетчик почтового ящика накопительный)
+                    FrameMailbox current = mailbox;
+                    long totalDropped = current != null ? current.getDroppedFrames() : 0;
+                    long dropped = current == lastMailbox ? totalDropped - lastDropped : totalDropped;
+                    lastMailbox = current;
+                    lastDropped = totalDropped;
+
+                    String text = String.format("FPS: %.0f (пропущено: %d)", fps, dropped);
+                    if (connected) {
+                        sendPing();
+                        double rtt = latency.getRttMillis();
+                        if (latency.isStale()) {
+                            text += ", агент не отвечает на PING";
+                        } else if (rtt >= 0) {
+                            text += String.format(", RTT: %.1f мс, задержка кадра: %.0f мс", rtt, frameLatency);
+                        }
+                        String state = streamState;
+                        if (state != null) {
+                            text += ", " + state;
+                        }
+                    }
+                    String label = text;
+                    Platform.runLater(() -> fpsLabel.setText(label));
+
+                    SessionPlayer playing = player;
+                    if (playing != null) {
+                        Platform.runLater(() -> showPlaybackPosition(playing));
                     }
-                    lastFpsUpdate = currentTime;
-                    frameCount = 0;
                 } catch (InterruptedException e) {
                     break;
                 }
             }
-        }).start();
+        }, "FPS-Counter");
+        fpsThread.setDaemon(true);
+        fpsThread.start();
     }
 
     @FXML
@@ -88,6 +183,7 @@ public class ViewerController implements Initializable {
             disconnect();
             connectButton.setText("Подключиться");
         } else {
+            stopPlayback();
             connect();
             connectButton.setText("Отключиться");
         }
@@ -99,17 +195,39 @@ public class ViewerController implements Initializable {
             showError("Введите IP адрес");
             return;
         }
+        // Настройки элементов управления читаются здесь, в FX потоке
+        int quality = (int) qualitySlider.getValue();
+        int fps = fpsSpinner.getValue();
+        int transport = selectedTransport();
+        int adaptive = selectedAdaptive();
 
         Task<Void> connectTask = new Task<Void>() {
             @Override
             protected Void call() throws Exception {
                 Platform.runLater(() -> statusLabel.setText("Подключение..."));
 
-                socket = new Socket(ip, Protocol.PORT);
-                out = new DataOutputStream(socket.getOutputStream());
-                in = new DataInputStream(socket.getInputStream());
+                // "номер@посредник" - агент за NAT, подключение через сервер-посредник
+                RelayAddress relay = RelayAddress.parse(ip);
+                channel = SocketChannel.open(relay != null
+                        ? relay.toSocketAddress() : new InetSocketAddress(ip, Protocol.PORT));
+                channel.socket().setTcpNoDelay(true);
 
+                latency.reset();
+                frameLatency = -1;
+                streamState = null;
                 connected = true;
+                synchronized (encoder) {
+                    if (relay != null) {
+                        encoder.relayHello(Protocol.RELAY_ROLE_VIEWER, relay.getSessionId());
+                    }
+                    // Приветствие и текущие настройки качества, частоты кадров и режима передачи
+                    encoder.handshake()
+                            .value(Command.Type.SET_QUALITY, quality)
+                            .value(Command.Type.SET_FPS, fps)
+                            .value(Command.Type.SET_TRANSPORT, transport)
+                            .value(Command.Type.SET_ADAPTIVE, adaptive)
+                            .writeTo(channel);
+                }
 
                 Platform.runLater(() -> {
                     statusLabel.setText("Подключено к " + ip);
@@ -135,25 +253,83 @@ public class ViewerController implements Initializable {
     private void startReceiving() {
         receiveThread = new Thread(() -> {
             try {
-                while (connected && !socket.isClosed()) {
-                    int size = in.readInt();
-                    if (size <= 0) continue;
+                FrameMailbox frames = new FrameMailbox(FIXED_WIDTH, FIXED_HEIGHT, this::presentFrame);
+                mailbox = frames;
+
+                // Кадры читаются в буферы из пула и декодируются на отдельном потоке
+                // прямо в постоянное изображение; в почтовый ящик уходят только изменившиеся области
+                FrameDecoder decoder = new FrameDecoder(FIXED_WIDTH, FIXED_HEIGHT);
+                FrameReceiver frameReceiver = new FrameReceiver(channel, new MessageHandler() {
+                    @Override
+                    public void onValue(Command.Type type, int value) {
+                        // Агент мог отказать в режиме без потерь
+                        if (type == Command.Type.SET_TRANSPORT) {
+                            boolean lossless = value == Protocol.TRANSPORT_DELTA;
+                            Platform.runLater(() -> {
+                                if (losslessCheckBox.isSelected() && !lossless) {
+                                    statusLabel.setText("Агент не поддерживает режим без потерь");
+                                }
+                                losslessCheckBox.setSelected(lossless);
+                            });
+                        } else if (type == Command.Type.SET_ADAPTIVE) {
+                            // Агент мог запретить подстройку под канал
+                            boolean adaptive = value != Protocol.ADAPTIVE_OFF;
+                            if (!adaptive) {
+                                streamState = null;
+                            }
+                            Platform.runLater(() -> {
+                                if (adaptiveCheckBox.isSelected() && !adaptive) {
+                                    statusLabel.setText("Агент не подстраивает поток под канал");
+                                }
+                                adaptiveCheckBox.setSelected(adaptive);
+                            });
+                        }
+                    }
 
-                    byte[] imageData = new byte[size];
-                    in.readFully(imageData);
+                    @Override
+                    public void onStreamState(int quality, int fps, int scale) {
+                        streamState = String.format("авто: качество %d%%, %d к/с, масштаб %d%%", quality, fps, scale);
+                    }
 
-                    Image image = new Image(new ByteArrayInputStream(imageData));
+                    @Override
+                    public void onPong(int seq, long originTime, long receiveTime, long transmitTime) {
+                        latency.onPong(seq, originTime, receiveTime, transmitTime, WallClock.micros());
+                    }
 
-                    Platform.runLater(() -> {
-                        desktopView.setImage(image);
-                        frameCount++;
+                    @Override
+                    public void onCursor(int x, int y, int shapeId) {
+                        cursor.onPosition(x, y, shapeId);
+                    }
 
-                        // УСТАНАВЛИВАЕМ ФИКСИРОВАННЫЙ РАЗМЕР
-                        desktopView.setFitWidth(FIXED_WIDTH);
-                        desktopView.setFitHeight(FIXED_HEIGHT);
-                        desktopView.setPreserveRatio(false);
-                    });
-                }
+                    @Override
+                    public void onCursorShape(CursorShape shape) {
+                        cursor.onShape(shape);
+                    }
+
+                    @Override
+                    public void onFrame(ByteBuffer payload) {
+                        try {
+                            int start = payload.position();
+                            List<Rectangle> regions = decoder.decode(payload);
+                            SessionRecorder current = recorder;
+                            if (current != null) {
+                                current.onFrame(payload.position(start), decoder);
+                            }
+                            // Время захвата в часах агента: без смещения часов задержка между машинами бессмысленна
+                            if (latency.hasSample()) {
+                                frameLatency = latency.frameLatencyMillis(decoder.getCaptureTime());
+                            }
+                            if (!regions.isEmpty()) {
+                                frames.publish(regions, decoder.getPixels(), decoder.getScanline());
+                            }
+                        } catch (IOException e) {
+                            System.err.println("Ошибка декодирования кадра: " + e.getMessage());
+                        }
+                    }
+                });
+                frameReceiver.setRecorder(recorder);
+                receiver = frameReceiver;
+                frameReceiver.run();
             } catch (Exception e) {
                 if (connected) {
                     Platform.runLater(() -> {
@@ -164,9 +340,35 @@ public class ViewerController implements Initializable {
                 }
             }
         });
+        receiveThread.setName("Frame-Receiver");
         receiveThread.start();
     }
 
+    /**
+     * Отображение самого нового кадра из почтового ящика (FX поток).
+     * Вызывается не чаще, чем FX поток успевает, пропущенные кадры уже слиты в буфер.
+     */
+    private void presentFrame() {
+        FrameMailbox frames = mailbox;
+        if (frames == null) return;
+
+        if (frameBuffer == null) {
+            frameBuffer = new WritableImage(FIXED_WIDTH, FIXED_HEIGHT);
+        }
+
+        if (!frames.drainTo(frameBuffer.getPixelWriter())) return;
+        frameCount.incrementAndGet();
+
+        if (desktopView.getImage() != frameBuffer) {
+            desktopView.setImage(frameBuffer);
+
+            // УСТАНАВЛИВАЕМ ФИКСИРОВАННЫЙ РАЗМЕР
+            desktopView.setFitWidth(FIXED_WIDTH);
+            desktopView.setFitHeight(FIXED_HEIGHT);
+            desktopView.setPreserveRatio(false);
+        }
+    }
+
     private void setupMouseHandlers() {
         desktopView.setOnMouseMoved(event -> {
             if (!connected) return;
@@ -175,7 +377,8 @@ public class ViewerController implements Initializable {
             int x = (int) Math.max(0, Math.min(event.getX(), FIXED_WIDTH - 1));
             int y = (int) Math.max(0, Math.min(event.getY(), FIXED_HEIGHT - 1));
 
-            sendCommand(Protocol.CMD_MOUSE_MOVE + ":" + x + "," + y);
+            input.move(Command.Type.MOUSE_MOVE, x, y, 0, 0);
+            cursor.predict(x, y, cursorHoldMillis());
         });
 
         // Клики мыши - БЕЗ масштабирования
@@ -186,8 +389,7 @@ public class ViewerController implements Initializable {
             int y = (int) Math.max(0, Math.min(event.getY(), FIXED_HEIGHT - 1));
             int button = getMouseButtonCode(event.getButton());
 
-            sendCommand(Protocol.CMD_MOUSE_MOVE + ":" + x + "," + y);
-            sendCommand(Protocol.CMD_MOUSE_CLICK + ":" + button);
+            input.event(Command.Type.MOUSE_CLICK, x, y, button, 1);
         });
 
         // Перетаскивание
@@ -197,11 +399,22 @@ public class ViewerController implements Initializable {
             int x = (int) Math.max(0, Math.min(event.getX(), FIXED_WIDTH - 1));
             int y = (int) Math.max(0, Math.min(event.getY(), FIXED_HEIGHT - 1));
 
-            sendCommand(Protocol.CMD_MOUSE_MOVE + ":" + x + "," + y);
+            input.move(Command.Type.MOUSE_MOVE, x, y, 0, 0);
+            cursor.predict(x, y, cursorHoldMillis());
         });
     }
 
 
+    /**
+     * Сколько показывать указатель под мышью помощника после движения: за это время
+     * положение агента успевает вернуться (два RTT с запасом на такт отправки ввода)
+     */
+    private long cursorHoldMillis() {
+        double rtt = latency.getRttMillis();
+        if (rtt < 0) rtt = 100;
+        return 100 + (long) (2 * rtt);
+    }
+
     private int getMouseButtonCode(MouseButton button) {
         switch (button) {
             case PRIMARY: return InputEvent.BUTTON1_DOWN_MASK;
@@ -211,12 +424,49 @@ public class ViewerController implements Initializable {
         }
     }
 
-    private void sendCommand(String command) {
-        if (!connected || out == null) return;
+    private void sendMouse(Command.Type type, int x, int y, int arg1, int arg2) {
+        if (!connected || channel == null) return;
 
+        synchronized (encoder) {
+            encoder.mouse(type, x, y, arg1, arg2);
+            flushCommands();
+        }
+    }
+
+    private void sendValue(Command.Type type, int value) {
+        if (!connected || channel == null) return;
+
+        synchronized (encoder) {
+            encoder.value(type, value);
+            flushCommands();
+        }
+    }
+
+    private void sendSignal(Command.Type type) {
+        if (channel == null || !channel.isOpen()) return;
+
+        synchronized (encoder) {
+            encoder.signal(type);
+            flushCommands();
+        }
+    }
+
+    private void sendPing() {
+        if (!connected || channel == null) return;
+
+        synchronized (encoder) {
+            encoder.ping(latency.nextSeq(), WallClock.micros());
+            flushCommands();
+        }
+    }
+
+    private void flushCommands() {
+        SessionRecorder current = recorder;
+        if (current != null) {
+            current.onViewerMessages(encoder.buffer());
+        }
         try {
-            out.writeUTF(command);
-            out.flush();
+            encoder.writeTo(channel);
         } catch (IOException e) {
             System.err.println("Ошибка отправки команды: " + e.getMessage());
         }
@@ -227,7 +477,35 @@ public class ViewerController implements Initializable {
         if (!connected) return;
 
         int quality = (int) qualitySlider.getValue();
-        sendCommand("SET_QUALITY:" + quality);
+        sendValue(Command.Type.SET_QUALITY, quality);
+    }
+
+    @FXML
+    private void handleTransportChange() {
+        sendValue(Command.Type.SET_TRANSPORT, selectedTransport());
+    }
+
+    @FXML
+    private void handleAdaptiveChange() {
+        if (!adaptiveCheckBox.isSelected()) {
+            streamState = null;
+        }
+        sendValue(Command.Type.SET_ADAPTIVE, selectedAdaptive());
+    }
+
+    /**
+     * Подстройка под канал: качество и частота кадров становятся верхним пределом,
+     * агент снижает их (и масштаб изображений) до minScale, если канал не успевает
+     */
+    private int selectedAdaptive() {
+        return adaptiveCheckBox.isSelected() ? minScale : Protocol.ADAPTIVE_OFF;
+    }
+
+    /**
+     * Режим без потерь: межкадровый XOR и Deflate вместо независимых плиток JPEG
+     */
+    private int selectedTransport() {
+        return losslessCheckBox.isSelected() ? Protocol.TRANSPORT_DELTA : Protocol.TRANSPORT_TILES;
     }
 
     @FXML
@@ -248,29 +526,220 @@ public class ViewerController implements Initializable {
         }
     }
 
-    public void disconnect() {
-        connected = false;
+    /**
+     * Запись сеанса в файл session_<время>.rarec в рабочем каталоге, пока есть подключение
+     */
+    @FXML
+    private void handleRecord() {
+        if (!recordButton.isSelected()) {
+            stopRecording();
+            return;
+        }
+        if (!connected) {
+            recordButton.setSelected(false);
+            showError("Запись возможна только при подключении");
+            return;
+        }
+        try {
+            File file = new File("session_" + System.currentTimeMillis() + Recording.EXTENSION);
+            SessionRecorder started = new SessionRecorder(file.toPath(), FIXED_WIDTH, FIXED_HEIGHT);
+            recorder = started;
+            FrameReceiver current = receiver;
+            if (current != null) {
+                current.setRecorder(started);
+            }
+            statusLabel.setText("Запись: " + file.getName());
+        } catch (IOException e) {
+            recordButton.setSelected(false);
+            showError("Не удалось начать запись: " + e.getMessage());
+        }
+    }
 
-        if (receiveThread != null) {
-            receiveThread.interrupt();
+    /**
+     * Окончание записи; файл дописывает поток записи
+     */
+    private void stopRecording() {
+        SessionRecorder stopped = recorder;
+        if (stopped == null) return;
+        recorder = null;
+        FrameReceiver current = receiver;
+        if (current != null) {
+            current.setRecorder(null);
+        }
+        stopped.close();
+
+        String text = "Запись сохранена: " + stopped.getPath().getFileName();
+        if (stopped.getDroppedRecords() > 0) {
+            text += " (пропущено записей: " + stopped.getDroppedRecords() + ")";
         }
+        Platform.runLater(() -> recordButton.setSelected(false));
+        showInfo(text);
+    }
 
+    /**
+     * Открытие записи сеанса для воспроизведения (при отключенном агенте).
+     * Кадры записи идут тем же путем, что и кадры агента: FrameDecoder, FrameMailbox, presentFrame.
+     */
+    @FXML
+    private void handleOpenRecording() {
+        if (connected) {
+            showError("Воспроизведение записи возможно только без подключения");
+            return;
+        }
+        FileChooser chooser = new FileChooser();
+        chooser.setTitle("Открыть запись сеанса");
+        chooser.setInitialDirectory(new File(System.getProperty("user.dir")));
+        chooser.getExtensionFilters().add(
+                new FileChooser.ExtensionFilter("Записи сеансов", "*" + Recording.EXTENSION));
+        File file = chooser.showOpenDialog(desktopView.getScene().getWindow());
+        if (file == null) return;
+
+        stopPlayback();
+        RecordingReader reader;
         try {
-            if (out != null) {
-                sendCommand(Protocol.CMD_DISCONNECT);
-                out.close();
+            reader = new RecordingReader(file.toPath());
+        } catch (IOException e) {
+            showError("Не удалось открыть запись: " + e.getMessage());
+            return;
+        }
+        if (reader.getWidth() != FIXED_WIDTH || reader.getHeight() != FIXED_HEIGHT) {
+            showError("Неподдерживаемый размер экрана записи: " + reader.getWidth() + "x" + reader.getHeight());
+            try {
+                reader.close();
+            } catch (IOException ignored) {
+            }
+            return;
+        }
+
+        FrameMailbox frames = new FrameMailbox(FIXED_WIDTH, FIXED_HEIGHT, this::presentFrame);
+        mailbox = frames;
+        player = new SessionPlayer(reader, new FrameDecoder(FIXED_WIDTH, FIXED_HEIGHT),
+                (regions, decoder) -> frames.publish(regions, decoder.getPixels(), decoder.getScanline()),
+                new MessageHandler() {
+                    @Override
+                    public void onCursor(int x, int y, int shapeId) {
+                        cursor.onPosition(x, y, shapeId);
+                    }
+
+                    @Override
+                    public void onCursorShape(CursorShape shape) {
+                        cursor.onShape(shape);
+                    }
+                });
+        player.setSpeed(speedSpinner.getValue());
+
+        positionSlider.setMax(Math.max(1, reader.getDuration() / 1_000_000.0));
+        positionSlider.setValue(0);
+        playButton.setText("Пуск");
+        playbackBar.setVisible(true);
+        playbackBar.setManaged(true);
+        overlayPane.setVisible(false);
+        statusLabel.setText("Запись: " + file.getName());
+        showPlaybackPosition(player);
+    }
+
+    @FXML
+    private void handlePlay() {
+        SessionPlayer current = player;
+        if (current == null) return;
+
+        if (current.isPaused()) {
+            current.play();
+        } else {
+            current.pause();
+        }
+        showPlaybackPosition(current);
+    }
+
+    /**
+     * Перемотка к положению ползунка, когда его отпустили
+     */
+    @FXML
+    private void handleSeek() {
+        SessionPlayer current = player;
+        if (current == null) return;
+
+        current.seek((long) (positionSlider.getValue() * 1_000_000));
+        showPlaybackPosition(current);
+    }
+
+    @FXML
+    private void handleCloseRecording() {
+        stopPlayback();
+    }
+
+    /**
+     * Положение воспроизведения на ползунке и в подписи (FX поток)
+     */
+    private void showPlaybackPosition(SessionPlayer current) {
+        if (current != player) return;
+
+        long position = current.getPosition();
+        if (!positionSlider.isValueChanging() && !positionSlider.isPressed()) {
+            positionSlider.setValue(position / 1_000_000.0);
+        }
+        positionLabel.setText(formatTime(position) + " / " + formatTime(current.getDuration()));
+        playButton.setText(current.isPaused() ? "Пуск" : "Пауза");
+    }
+
+    private static String formatTime(long micros) {
+        long seconds = micros / 1_000_000;
+        return String.format("%02d:%02d", seconds / 60, seconds % 60);
+    }
+
+    /**
+     * Окончание воспроизведения записи (FX поток)
+     */
+    private void stopPlayback() {
+        SessionPlayer stopped = player;
+        if (stopped == null) return;
+        player = null;
+        try {
+            stopped.close();
+        } catch (IOException e) {
+            System.err.println("Ошибка закрытия записи: " + e.getMessage());
+        }
+
+        playbackBar.setVisible(false);
+        playbackBar.setManaged(false);
+        statusLabel.setText("Не подключено");
+        overlayPane.setVisible(true);
+        desktopView.setImage(null);
+        cursor.reset();
+        frameBuffer = null;
+        mailbox = null;
+    }
+
+    public void disconnect() {
+        connected = false;
+        stopRecording();
+
+        try {
+            if (channel != null) {
+                // Команду отключения отправляем до прерывания потока приема:
+                // прерывание закрывает канал
+                sendSignal(Command.Type.DISCONNECT);
+                channel.close();
             }
-            if (in != null) in.close();
-            if (socket != null) socket.close();
         } catch (IOException e) {
             e.printStackTrace();
         }
 
+        if (receiveThread != null) {
+            receiveThread.interrupt();
+        }
+        if (receiver != null) {
+            receiver.close();
+        }
+
         Platform.runLater(() -> {
             statusLabel.setText("Не подключено");
             connectButton.setText("Подключиться");
             overlayPane.setVisible(true);
             desktopView.setImage(null);
+            cursor.reset();
+            frameBuffer = null;
+            mailbox = null;
         });
     }
 
@@ -0,0 +1,197 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Регулятор потока по синтетическим интервалам отправки: порядок шагов вниз,
+ * два шага при сильной перегрузке, удвоение ожидания после лишнего шага вверх и потолки помощника
+ */
+class AdaptiveRateTest {
+    private static final long INTERVAL_NANOS = TimeUnit.MILLISECONDS.toNanos(500);
+    private static final int TARGET_MS = 100;
+    private static final int MIN_QUALITY = 25;
+    private static final int MIN_FPS = 2;
+    private static final int QUALITY = 80;
+    private static final int FPS = 30;
+    private static final int MIN_SCALE = 50;
+    private static final int FRAME_BYTES = 10_000;
+    // Канал, на который помещается 8 кадров в секунду с запасом HEADROOM
+    private static final int BANDWIDTH = 100_000;
+
+    private final AgentMetrics metrics = new AgentMetrics();
+    private final BandwidthEstimator estimator = new BandwidthEstimator();
+    private AdaptiveRate rate;
+    private long now;
+
+    @Test
+    void stepsDownQualityThenFpsThenScale() {
+        start(true);
+        int quality = QUALITY;
+        while (quality > MIN_QUALITY) {
+            assertTrue(congested(150, BANDWIDTH));
+            assertTrue(rate.getQuality() < quality, "качество " + rate.getQuality());
+            quality = rate.getQuality();
+            assertState(quality, FPS, 100);
+        }
+        assertEquals(MIN_QUALITY, quality);
+
+        // Частота сразу до той, что помещается в оценку канала
+        assertTrue(congested(150, BANDWIDTH));
+        assertState(MIN_QUALITY, 8, 100);
+        int fps = 8;
+        while (fps > MIN_FPS) {
+            assertTrue(congested(150, BANDWIDTH));
+            assertTrue(rate.getFps() < fps, "частота " + rate.getFps());
+            fps = rate.getFps();
+            assertState(MIN_QUALITY, fps, 100);
+        }
+
+        assertTrue(congested(150, BANDWIDTH));
+        assertState(MIN_QUALITY, MIN_FPS, 75);
+        assertTrue(congested(150, BANDWIDTH));
+        assertState(MIN_QUALITY, MIN_FPS, MIN_SCALE);
+        // Облегчать больше нечего
+        assertFalse(congested(150, BANDWIDTH));
+        assertState(MIN_QUALITY, MIN_FPS, MIN_SCALE);
+    }
+
+    @Test
+    void severeCongestionTakesTwoSteps() {
+        start(true);
+        assertTrue(congested(150, 0));
+        assertEquals(60, rate.getQuality());
+        assertEquals(1, metrics.adaptiveDowns.get());
+
+        // Больше цели в SEVERE раз
+        assertTrue(congested(4 * TARGET_MS + 1, 0));
+        assertEquals(34, rate.getQuality());
+        assertEquals(3, metrics.adaptiveDowns.get());
+    }
+
+    @Test
+    void failedStepUpDoublesRecoveryWait() {
+        start(true);
+        assertTrue(congested(150, 0));
+        for (int wait = 4; wait <= 16; wait *= 2) {
+            int quality = rate.getQuality();
+            assertEquals(wait, calmUntilStepUp(), "интервалов до шага вверх");
+            assertEquals(quality + 5, rate.getQuality());
+            // Сразу после шага вверх канал снова перегружен
+            assertTrue(congested(150, 0));
+        }
+        assertEquals(3, metrics.adaptiveUps.get());
+    }
+
+    @Test
+    void ceilingsLimitRecovery() {
+        start(true);
+        rate.setMaxQuality(50);
+        rate.setMaxFps(10);
+        assertState(50, 10, 100);
+        for (int i = 0; i < 40; i++) {
+            calm();
+        }
+        assertState(50, 10, 100);
+
+        // Выше потолка качество не поднимается, до нового потолка - по шагам;
+        // канал все это время был спокоен, поэтому первый шаг - в первом же интервале
+        rate.setMaxQuality(70);
+        assertEquals(50, rate.getQuality());
+        assertEquals(1, calmUntilStepUp());
+        assertEquals(55, rate.getQuality());
+        for (int i = 0; i < 40; i++) {
+            calm();
+        }
+        assertState(70, 10, 100);
+        assertTrue(rate.isFull());
+    }
+
+    @Test
+    void adaptiveOffRestoresCeilings() {
+        start(true);
+        for (int i = 0; i < 20; i++) {
+            congested(150, BANDWIDTH);
+        }
+        assertState(MIN_QUALITY, MIN_FPS, MIN_SCALE);
+
+        assertEquals(Protocol.ADAPTIVE_OFF, rate.setMinScale(Protocol.ADAPTIVE_OFF));
+        assertFalse(rate.isEnabled());
+        assertState(QUALITY, FPS, 100);
+        assertFalse(congested(150, BANDWIDTH));
+        assertState(QUALITY, FPS, 100);
+
+        // Без подстройки потолок помощника применяется как есть
+        rate.setMaxQuality(90);
+        rate.setMaxFps(40);
+        assertState(90, 40, 100);
+
+        // Подстройка запрещена настройками агента
+        start(false);
+        assertFalse(rate.isEnabled());
+        assertFalse(congested(150, BANDWIDTH));
+        assertState(QUALITY, FPS, 100);
+    }
+
+    private void start(boolean adaptive) {
+        AgentConfig config = new AgentConfig();
+        config.setAdaptive(adaptive);
+        config.setLatencyTargetMs(TARGET_MS);
+        config.setMinQuality(MIN_QUALITY);
+        config.setMinFps(MIN_FPS);
+        rate = new AdaptiveRate(config, QUALITY, FPS, metrics);
+        // Регулятор отсчитывает первый интервал от создания
+        now = System.nanoTime();
+        assertEquals(adaptive ? MIN_SCALE : Protocol.ADAPTIVE_OFF, rate.setMinScale(MIN_SCALE));
+    }
+
+    /**
+     * Интервал, в котором кадры уходили sendMillis мс; bandwidth > 0 - сокет был полон
+     * и канал измерен с этой скоростью
+     */
+    private boolean congested(long sendMillis, int bandwidth) {
+        return interval(TimeUnit.MILLISECONDS.toNanos(sendMillis), bandwidth);
+    }
+
+    /**
+     * Спокойный интервал: кадры уходят сразу, канал не измеряется
+     */
+    private boolean calm() {
+        return interval(TimeUnit.MILLISECONDS.toNanos(5), 0);
+    }
+
+    /**
+     * Спокойные интервалы до шага вверх
+     *
+     * @return сколько их понадобилось
+     */
+    private int calmUntilStepUp() {
+        for (int intervals = 1; intervals <= 100; intervals++) {
+            if (calm()) return intervals;
+        }
+        throw new AssertionError("за 100 спокойных интервалов шага вверх не было");
+    }
+
+    private boolean interval(long sendNanos, int bandwidth) {
+        for (int i = 0; i < 10; i++) {
+            if (bandwidth > 0) {
+                estimator.onFrameSent(FRAME_BYTES, sendNanos, FRAME_BYTES, FRAME_BYTES * 1_000_000_000L / bandwidth);
+            } else {
+                estimator.onFrameSent(FRAME_BYTES, sendNanos, 0, 0);
+            }
+        }
+        now += INTERVAL_NANOS;
+        return rate.update(now, estimator, 0);
+    }
+
+    private void assertState(int quality, int fps, int scale) {
+        assertEquals(quality + "/" + fps + "/" + scale,
+                rate.getQuality() + "/" + rate.getFps() + "/" + rate.getScale(), "качество/частота/масштаб");
+    }
+}
@@ -0,0 +1,79 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.FrameDecoder;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.fail;
+
+/**
+ * Режим без потерь: ключевой кадр и XOR-кадры DeltaEncoder, разобранные FrameDecoder,
+ * дают ровно исходный экран
+ */
+class DeltaEncoderTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int FRAMES_PER_PHASE = 4;
+
+    @Test
+    void keyAndXorFramesDecodePixelExact() throws Exception {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 7, FRAMES_PER_PHASE,
+                SyntheticFrameSource.Activity.values());
+        TileChangeDetector detector = new TileChangeDetector(64);
+        DeltaEncoder delta = new DeltaEncoder(WIDTH, HEIGHT, 1);
+        ProtocolEncoder encoder = new ProtocolEncoder(64 * 1024);
+        FrameDecoder decoder = new FrameDecoder(WIDTH, HEIGHT);
+
+        int frames = FRAMES_PER_PHASE * SyntheticFrameSource.Activity.values().length;
+        for (int i = 0; i < frames; i++) {
+            if (i == frames / 2) {
+                // Кадр не дошел: следующий снова ключевой, поток Inflate начинается заново
+                delta.reset();
+            }
+            SyntheticFrameSource.Activity activity = source.getActivity();
+            BufferedImage image = source.capture();
+            List<Rectangle> regions = detector.detectChanges(image);
+            delta.encode(encoder, image, regions, null, i);
+
+            decoder.decode(framePayload(encoder));
+            encoder.clear();
+            assertCanvas(image, decoder, "кадр " + i + " (" + activity + ")");
+        }
+    }
+
+    /**
+     * Данные единственного сообщения SCREENSHOT_RESPONSE в буфере кодировщика
+     */
+    static ByteBuffer framePayload(ProtocolEncoder encoder) {
+        ByteBuffer message = encoder.buffer().duplicate().flip();
+        assertEquals(message.limit() - Protocol.HEADER_SIZE, message.getInt(1));
+        return message.position(Protocol.HEADER_SIZE).slice();
+    }
+
+    /**
+     * Изображение декодера (BGR) совпадает с кадром TYPE_INT_RGB
+     */
+    static void assertCanvas(BufferedImage image, FrameDecoder decoder, String what) {
+        int[] rgb = ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+        byte[] bgr = decoder.getPixels();
+        int scanline = decoder.getScanline();
+        for (int y = 0; y < image.getHeight(); y++) {
+            for (int x = 0; x < image.getWidth(); x++) {
+                int offset = y * scanline + x * 3;
+                int decoded = (bgr[offset + 2] & 0xFF) << 16 | (bgr[offset + 1] & 0xFF) << 8 | (bgr[offset] & 0xFF);
+                if (decoded != (rgb[y * image.getWidth() + x] & 0xFFFFFF)) {
+                    fail(what + ": пиксель (" + x + "," + y + ") "
+                            + Integer.toHexString(decoded) + " вместо " + Integer.toHexString(rgb[y * image.getWidth() + x]));
+                }
+            }
+        }
+    }
+}
@@ -0,0 +1,158 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.Arrays;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Порядок слотов кольца и поведение заполненного кольца при каждой DropPolicy
+ */
+class FrameRingTest {
+
+    @Test
+    void slotsGoInPublishOrder() throws InterruptedException {
+        FrameRing<StringBuilder> ring = ring(3, FrameRing.DropPolicy.BLOCK);
+        int a = fill(ring, "a");
+        int b = fill(ring, "b");
+        int c = fill(ring, "c");
+        assertEquals(3, distinct(a, b, c));
+
+        assertEquals(a, ring.take());
+        assertEquals(b, ring.take());
+        ring.release(b);
+        ring.release(a);
+        assertEquals(c, ring.take());
+        ring.release(c);
+
+        // Освобожденные слоты снова выдаются в порядке возврата
+        assertEquals(b, ring.claim());
+        assertEquals(a, ring.claim());
+        assertEquals(c, ring.claim());
+        assertEquals(0, ring.getDroppedFrames());
+    }
+
+    @Test
+    void blockWaitsForRelease() throws Exception {
+        FrameRing<StringBuilder> ring = ring(2, FrameRing.DropPolicy.BLOCK);
+        int a = fill(ring, "a");
+        fill(ring, "b");
+
+        AtomicReference<Thread> producer = new AtomicReference<>();
+        CompletableFuture<Integer> claimed = CompletableFuture.supplyAsync(() -> {
+            producer.set(Thread.currentThread());
+            return claimUnchecked(ring);
+        });
+        awaitWaiting(producer);
+        assertFalse(claimed.isDone());
+
+        assertEquals(a, ring.take());
+        ring.release(a);
+        assertEquals(a, claimed.get(5, TimeUnit.SECONDS));
+        assertEquals(0, ring.getDroppedFrames());
+    }
+
+    @Test
+    void dropNewestRejectsClaim() throws InterruptedException {
+        FrameRing<StringBuilder> ring = ring(2, FrameRing.DropPolicy.DROP_NEWEST);
+        int a = fill(ring, "a");
+        int b = fill(ring, "b");
+
+        assertEquals(-1, ring.claim());
+        assertEquals(-1, ring.claim());
+        assertEquals(2, ring.getDroppedFrames());
+
+        // Опубликованные кадры не тронуты
+        assertEquals(a, ring.take());
+        assertEquals("a", ring.get(a).toString());
+        assertEquals(b, ring.take());
+        assertEquals("b", ring.get(b).toString());
+    }
+
+    @Test
+    void dropOldestRecyclesOldestReadySlot() throws Exception {
+        FrameRing<StringBuilder> ring = ring(3, FrameRing.DropPolicy.DROP_OLDEST);
+        int a = fill(ring, "a");
+        int b = fill(ring, "b");
+        int c = fill(ring, "c");
+
+        int recycled = ring.claim();
+        assertEquals(a, recycled);
+        assertEquals(1, ring.getDroppedFrames());
+        ring.get(recycled).setLength(0);
+        ring.get(recycled).append("d");
+        ring.publish(recycled);
+
+        assertEquals(b, ring.take());
+        assertEquals(c, ring.take());
+        int d = ring.take();
+        assertEquals(recycled, d);
+        assertEquals("d", ring.get(d).toString());
+
+        // Все слоты у потребителя: выбрасывать нечего, производитель ждет возврата
+        AtomicReference<Thread> producer = new AtomicReference<>();
+        CompletableFuture<Integer> claimed = CompletableFuture.supplyAsync(() -> {
+            producer.set(Thread.currentThread());
+            return claimUnchecked(ring);
+        });
+        awaitWaiting(producer);
+        ring.release(c);
+        assertEquals(c, claimed.get(5, TimeUnit.SECONDS));
+        assertEquals(1, ring.getDroppedFrames());
+    }
+
+    private static FrameRing<StringBuilder> ring(int capacity, FrameRing.DropPolicy policy) {
+        AtomicInteger created = new AtomicInteger();
+        FrameRing<StringBuilder> ring = new FrameRing<>(capacity, policy, () -> {
+            created.incrementAndGet();
+            return new StringBuilder();
+        });
+        assertEquals(capacity, created.get());
+        assertEquals(policy, ring.getPolicy());
+        return ring;
+    }
+
+    /**
+     * claim(), запись value в слот и publish()
+     */
+    private static int fill(FrameRing<StringBuilder> ring, String value) throws InterruptedException {
+        int slot = ring.claim();
+        assertNotEquals(-1, slot);
+        ring.get(slot).setLength(0);
+        ring.get(slot).append(value);
+        ring.publish(slot);
+        return slot;
+    }
+
+    private static int claimUnchecked(FrameRing<StringBuilder> ring) {
+        try {
+            return ring.claim();
+        } catch (InterruptedException e) {
+            throw new CompletionException(e);
+        }
+    }
+
+    /**
+     * Ожидание, пока поток производителя не остановится в claim()
+     */
+    private static void awaitWaiting(AtomicReference<Thread> producer) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (producer.get() == null || producer.get().getState() != Thread.State.WAITING) {
+            assertTrue(System.nanoTime() < deadline, "claim() не ждет освобождения слота");
+            Thread.sleep(1);
+        }
+    }
+
+    private static int distinct(int... slots) {
+        return (int) Arrays.stream(slots).distinct().count();
+    }
+}
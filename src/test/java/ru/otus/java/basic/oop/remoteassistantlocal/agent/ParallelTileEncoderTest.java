@@ -0,0 +1,98 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.PaletteCodec;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+/**
+ * Соседние палитровые квадраты полосы: одна плитка, пока хватает палитры, иначе по квадрату
+ */
+class ParallelTileEncoderTest {
+    private static final int SQUARE = 64;
+
+    private final ParallelTileEncoder encoder = new ParallelTileEncoder(2, SQUARE);
+
+    @AfterEach
+    void close() {
+        encoder.close();
+    }
+
+    @Test
+    void sharedPaletteMergesSquares() throws Exception {
+        BufferedImage frame = frame(0);
+        List<ParallelTileEncoder.EncodedTile> tiles = encode(frame);
+
+        assertEquals(1, tiles.size());
+        assertTile(tiles.get(0), new Rectangle(0, 0, 2 * SQUARE, SQUARE));
+        assertPixels(frame, tiles);
+    }
+
+    @Test
+    void mergedRunOverPaletteFallsBackToSquares() throws Exception {
+        // В каждом квадрате по 200 цветов, вместе 400 - больше MAX_COLORS
+        BufferedImage frame = frame(200);
+        List<ParallelTileEncoder.EncodedTile> tiles = encode(frame);
+
+        assertEquals(2, tiles.size());
+        assertTile(tiles.get(0), new Rectangle(0, 0, SQUARE, SQUARE));
+        assertTile(tiles.get(1), new Rectangle(SQUARE, 0, SQUARE, SQUARE));
+        assertPixels(frame, tiles);
+    }
+
+    private List<ParallelTileEncoder.EncodedTile> encode(BufferedImage frame) {
+        return encoder.encode(frame, List.of(new Rectangle(0, 0, frame.getWidth(), frame.getHeight())), 0.7f);
+    }
+
+    /**
+     * Два квадрата по 200 цветов; цвета правого сдвинуты на rightShift
+     */
+    private static BufferedImage frame(int rightShift) {
+        BufferedImage frame = new BufferedImage(2 * SQUARE, SQUARE, BufferedImage.TYPE_INT_RGB);
+        int[] pixels = ((DataBufferInt) frame.getRaster().getDataBuffer()).getData();
+        for (int y = 0; y < SQUARE; y++) {
+            for (int x = 0; x < 2 * SQUARE; x++) {
+                int shift = x < SQUARE ? 0 : rightShift;
+                pixels[y * frame.getWidth() + x] = ((x + y * SQUARE) % 200 + shift) * 0x010203;
+            }
+        }
+        return frame;
+    }
+
+    private static void assertTile(ParallelTileEncoder.EncodedTile tile, Rectangle region) {
+        assertEquals(Protocol.CODEC_PALETTE, tile.getCodec());
+        assertEquals(region, tile.region);
+    }
+
+    /**
+     * Плитки, декодированные в изображение BGR, дают исходный кадр без потерь
+     */
+    private static void assertPixels(BufferedImage frame, List<ParallelTileEncoder.EncodedTile> tiles) throws Exception {
+        int width = frame.getWidth();
+        int height = frame.getHeight();
+        byte[] bgr = new byte[width * height * 3];
+        for (ParallelTileEncoder.EncodedTile tile : tiles) {
+            Rectangle r = tile.region;
+            new PaletteCodec().decode(ByteBuffer.wrap(tile.getData(), 0, tile.getSize()), 0, tile.getSize(),
+                    bgr, width * 3, r.x, r.y, r.width, r.height);
+        }
+
+        byte[] expected = new byte[width * height * 3];
+        for (int i = 0; i < width * height; i++) {
+            int rgb = frame.getRGB(i % width, i / width);
+            expected[i * 3] = (byte) rgb;
+            expected[i * 3 + 1] = (byte) (rgb >> 8);
+            expected[i * 3 + 2] = (byte) (rgb >> 16);
+        }
+        assertArrayEquals(expected, bgr);
+    }
+}
@@ -0,0 +1,136 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import org.junit.jupiter.api.Test;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CopyRect;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.FrameDecoder;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Прокрутка и перемещение окна: TileChangeDetector находит копирование, а копирование
+ * вместе с оставшимися плитками дает ровно новый кадр
+ */
+class ScrollDetectorTest {
+    private static final int WIDTH = 640;
+    private static final int HEIGHT = 480;
+    private static final int TILE = 64;
+
+    @Test
+    void verticalScroll() throws Exception {
+        BufferedImage before = noise(1);
+        BufferedImage after = copyOf(before);
+        // Область 320x256 прокручивается на 20 строк вверх, снизу открывается новая полоса
+        Rectangle area = new Rectangle(64, 64, 320, 256);
+        int shift = 20;
+        blit(before, area.x, area.y + shift, after, area.x, area.y, area.width, area.height - shift);
+        blit(noise(2), area.x, area.y + area.height - shift, after,
+                area.x, area.y + area.height - shift, area.width, shift);
+
+        CopyRect copy = detect(before, after);
+        assertEquals(new Rectangle(area.x, area.y, area.width, area.height - shift), copy.target);
+        assertEquals(area.x, copy.sourceX);
+        assertEquals(area.y + shift, copy.sourceY);
+    }
+
+    @Test
+    void diagonalWindowMove() throws Exception {
+        // Однотонный рабочий стол: по открывшемуся фону сдвиг не ищется
+        BufferedImage desktop = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Arrays.fill(pixels(desktop), 0x2B5797);
+        BufferedImage window = noise(4);
+        Rectangle from = new Rectangle(100, 100, 200, 150);
+        Rectangle to = new Rectangle(130, 120, 200, 150);
+        BufferedImage before = copyOf(desktop);
+        blit(window, 0, 0, before, from.x, from.y, from.width, from.height);
+        BufferedImage after = copyOf(desktop);
+        blit(window, 0, 0, after, to.x, to.y, to.width, to.height);
+
+        CopyRect copy = detect(before, after);
+        assertEquals(to.x - from.x, copy.getDx());
+        assertEquals(to.y - from.y, copy.getDy());
+        // Копирование может захватить и однотонный фон вокруг окна - он совпадает со сдвинутым
+        assertTrue(copy.target.contains(to), "окно не покрыто копированием: " + copy.target);
+    }
+
+    /**
+     * Кадры before и after через TileChangeDetector; проверяет, что копирование и оставшиеся
+     * плитки восстанавливают after как на копии агента (CopyRect.apply по RGB),
+     * так и у помощника (DeltaEncoder с копированием, FrameDecoder)
+     */
+    private static CopyRect detect(BufferedImage before, BufferedImage after) throws Exception {
+        TileChangeDetector detector = new TileChangeDetector(TILE, true);
+        DeltaEncoder delta = new DeltaEncoder(WIDTH, HEIGHT, 1);
+        ProtocolEncoder encoder = new ProtocolEncoder(64 * 1024);
+        FrameDecoder decoder = new FrameDecoder(WIDTH, HEIGHT);
+
+        delta.encode(encoder, before, detector.detectChanges(before), null, 0);
+        decoder.decode(DeltaEncoderTest.framePayload(encoder));
+        encoder.clear();
+
+        detector.detectChanges(after);
+        CopyRect copy = detector.getCopy();
+        assertNotNull(copy, "копирование не найдено");
+        List<Rectangle> residual = detector.getResidualChanges();
+        assertFalse(residual.contains(new Rectangle(0, 0, WIDTH, HEIGHT)), "кадр отправлен целиком");
+
+        // Копия агента: сдвиг и новые пиксели оставшихся плиток
+        int[] reference = pixels(before).clone();
+        CopyRect.apply(reference, WIDTH, 1, copy.sourceX, copy.sourceY, copy.target);
+        int[] expected = pixels(after);
+        for (Rectangle r : residual) {
+            for (int y = r.y; y < r.y + r.height; y++) {
+                System.arraycopy(expected, y * WIDTH + r.x, reference, y * WIDTH + r.x, r.width);
+            }
+        }
+        assertArrayEquals(expected, reference);
+
+        // Изображение помощника: плитка копирования и XOR-плитки к сдвинутой копии
+        delta.encode(encoder, after, residual, copy, 1);
+        decoder.decode(DeltaEncoderTest.framePayload(encoder));
+        DeltaEncoderTest.assertCanvas(after, decoder, "после копирования");
+        return copy;
+    }
+
+    /**
+     * Кадр из случайных пикселей: все строки и столбцы различны
+     */
+    private static BufferedImage noise(long seed) {
+        BufferedImage image = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        Random random = new Random(seed);
+        int[] pixels = pixels(image);
+        for (int i = 0; i < pixels.length; i++) {
+            pixels[i] = random.nextInt() & 0xFFFFFF;
+        }
+        return image;
+    }
+
+    private static BufferedImage copyOf(BufferedImage image) {
+        BufferedImage copy = new BufferedImage(WIDTH, HEIGHT, BufferedImage.TYPE_INT_RGB);
+        System.arraycopy(pixels(image), 0, pixels(copy), 0, WIDTH * HEIGHT);
+        return copy;
+    }
+
+    private static void blit(BufferedImage source, int sourceX, int sourceY,
+                             BufferedImage target, int x, int y, int w, int h) {
+        for (int row = 0; row < h; row++) {
+            System.arraycopy(pixels(source), (sourceY + row) * source.getWidth() + sourceX,
+                    pixels(target), (y + row) * WIDTH + x, w);
+        }
+    }
+
+    private static int[] pixels(BufferedImage image) {
+        return ((DataBufferInt) image.getRaster().getDataBuffer()).getData();
+    }
+}
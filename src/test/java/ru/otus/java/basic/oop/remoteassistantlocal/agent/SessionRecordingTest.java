@@ -0,0 +1,211 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.agent;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.CursorShape;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.MessageHandler;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.FrameDecoder;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.Recording;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.RecordingReader;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.SessionPlayer;
+import ru.otus.java.basic.oop.remoteassistantlocal.viewer.SessionRecorder;
+
+import java.awt.Rectangle;
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Запись сеанса в режиме без потерь: с любого ключевого кадра декодируется тот же экран,
+ * цепочка оглавлений читается по порядку, оборванный файл открывается проходом по записям.
+ * Лежит в пакете agent, потому что кадры режима без потерь кодирует DeltaEncoder.
+ */
+class SessionRecordingTest {
+    private static final int WIDTH = 320;
+    private static final int HEIGHT = 240;
+    private static final int FRAMES_PER_PHASE = 6;
+    // Каждый KEYFRAME_EVERY-й кадр ждет сжатия снимка, так что следующий снова станет ключевым
+    private static final int KEYFRAME_EVERY = 3;
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void everyKeyframeDecodesToSameScreen() throws Exception {
+        Path path = dir.resolve("delta.rarec");
+        byte[] expected = record(path);
+
+        try (RecordingReader reader = new RecordingReader(path)) {
+            int keyframes = reader.getKeyframeCount();
+            assertTrue(keyframes > Recording.KEYFRAMES_PER_INDEX, "ключевых кадров " + keyframes);
+            for (int i = 0; i < keyframes; i++) {
+                reader.seekKeyframe(i);
+                assertTrue(reader.next());
+                assertEquals(Recording.KIND_KEYFRAME, reader.getKind());
+
+                // Сразу за ключевым кадром - форма и положение указателя, присланные до записи кадров
+                assertTrue(reader.next());
+                assertAgentMessage(reader, Command.Type.CURSOR_SHAPE);
+                assertTrue(reader.next());
+                assertAgentMessage(reader, Command.Type.CURSOR_POSITION);
+
+                reader.seekKeyframe(i);
+                assertArrayEquals(expected, decodeToEnd(reader), "декодирование с ключевого кадра " + i);
+            }
+        }
+    }
+
+    @Test
+    void chainedIndexesLoadInOrder() throws Exception {
+        Path path = dir.resolve("index.rarec");
+        record(path);
+        // Без концовки то же оглавление собирается проходом по заголовкам записей
+        Path scanned = truncated(path, Files.size(path) - Recording.TRAILER_SIZE);
+
+        long[] chained = keyframeTimes(path);
+        assertTrue(chained.length > Recording.KEYFRAMES_PER_INDEX, "ключевых кадров " + chained.length);
+        for (int i = 1; i < chained.length; i++) {
+            assertTrue(chained[i - 1] <= chained[i], "оглавление не по порядку у ключевого кадра " + i);
+        }
+        assertArrayEquals(keyframeTimes(scanned), chained);
+    }
+
+    @Test
+    void truncatedRecordingPlaysToEnd() throws Exception {
+        Path path = dir.resolve("full.rarec");
+        record(path);
+        long[] all = keyframeTimes(path);
+        // Обрыв посреди записи
+        Path cut = truncated(path, Files.size(path) * 2 / 3 + 5);
+
+        long[] scanned = keyframeTimes(cut);
+        assertTrue(scanned.length > 0 && scanned.length < all.length, "ключевых кадров " + scanned.length);
+        assertArrayEquals(Arrays.copyOf(all, scanned.length), scanned);
+
+        try (RecordingReader reader = new RecordingReader(cut)) {
+            reader.seekKeyframe(scanned.length - 1);
+            decodeToEnd(reader);
+        }
+
+        RecordingReader reader = new RecordingReader(cut);
+        SessionPlayer player = new SessionPlayer(reader, new FrameDecoder(reader.getWidth(), reader.getHeight()),
+                (regions, decoder) -> { }, new MessageHandler() { });
+        try {
+            player.setSpeed(SessionPlayer.MAX_SPEED);
+            player.play();
+            await(player::isEnded);
+            assertEquals(reader.getDuration(), player.getPosition());
+        } finally {
+            player.close();
+        }
+    }
+
+    /**
+     * Запись сеанса так же, как у помощника: кадр декодируется, затем уходит в SessionRecorder
+     *
+     * @return изображение декодера после последнего кадра
+     */
+    private static byte[] record(Path path) throws Exception {
+        SyntheticFrameSource source = new SyntheticFrameSource(WIDTH, HEIGHT, 11, FRAMES_PER_PHASE,
+                SyntheticFrameSource.Activity.values());
+        TileChangeDetector detector = new TileChangeDetector(64, true);
+        DeltaEncoder delta = new DeltaEncoder(WIDTH, HEIGHT, 1);
+        ProtocolEncoder encoder = new ProtocolEncoder(64 * 1024);
+        FrameDecoder decoder = new FrameDecoder(WIDTH, HEIGHT);
+        SessionRecorder recorder = new SessionRecorder(path, WIDTH, HEIGHT, 0);
+
+        // Указатель приходит раньше кадров, форма - один раз
+        CursorShape.ARROW.write(encoder);
+        encoder.cursor(10, 20, CursorShape.ARROW.getId());
+        ByteBuffer pointer = encoder.buffer().duplicate().flip();
+        while (pointer.hasRemaining()) {
+            int length = Protocol.HEADER_SIZE + pointer.getInt(pointer.position() + 1);
+            recorder.onAgentMessage(pointer.slice(pointer.position(), length));
+            pointer.position(pointer.position() + length);
+        }
+        encoder.clear();
+
+        int frames = FRAMES_PER_PHASE * SyntheticFrameSource.Activity.values().length;
+        for (int i = 0; i < frames; i++) {
+            BufferedImage image = source.capture();
+            List<Rectangle> regions = detector.detectChanges(image);
+            if (detector.getCopy() != null) {
+                delta.encode(encoder, image, detector.getResidualChanges(), detector.getCopy(), i);
+            } else {
+                delta.encode(encoder, image, regions, null, i);
+            }
+            ByteBuffer payload = DeltaEncoderTest.framePayload(encoder);
+            encoder.clear();
+
+            long keyframes = recorder.getKeyframes();
+            decoder.decode(payload.duplicate());
+            recorder.onFrame(payload, decoder);
+            if (i % KEYFRAME_EVERY == 0) {
+                // Снимок сжат и записан: следующий кадр снова может стать ключевым
+                await(() -> recorder.getKeyframes() > keyframes);
+            }
+        }
+        recorder.close();
+        assertTrue(recorder.awaitWritten(10, TimeUnit.SECONDS));
+        assertEquals(0, recorder.getDroppedRecords());
+        return decoder.getPixels().clone();
+    }
+
+    /**
+     * Наложение записей с текущей до конца на чистый экран
+     */
+    private static byte[] decodeToEnd(RecordingReader reader) throws IOException {
+        FrameDecoder decoder = new FrameDecoder(reader.getWidth(), reader.getHeight());
+        while (reader.next()) {
+            byte kind = reader.getKind();
+            if ((kind == Recording.KIND_FRAME || kind == Recording.KIND_KEYFRAME) && reader.getData().hasRemaining()) {
+                decoder.decode(reader.getData());
+            }
+        }
+        return decoder.getPixels();
+    }
+
+    private static void assertAgentMessage(RecordingReader reader, Command.Type type) {
+        assertEquals(Recording.KIND_AGENT, reader.getKind());
+        ByteBuffer data = reader.getData();
+        assertEquals(type, Command.Type.fromCode(data.get(data.position())));
+    }
+
+    private static long[] keyframeTimes(Path path) throws IOException {
+        try (RecordingReader reader = new RecordingReader(path)) {
+            long[] times = new long[reader.getKeyframeCount()];
+            for (int i = 0; i < times.length; i++) {
+                times[i] = reader.getKeyframeTime(i);
+            }
+            return times;
+        }
+    }
+
+    private Path truncated(Path path, long size) throws IOException {
+        Path copy = dir.resolve("cut-" + size + "-" + path.getFileName());
+        byte[] bytes = Files.readAllBytes(path);
+        Files.write(copy, Arrays.copyOf(bytes, (int) size));
+        return copy;
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 5 с");
+            Thread.sleep(5);
+        }
+    }
+}
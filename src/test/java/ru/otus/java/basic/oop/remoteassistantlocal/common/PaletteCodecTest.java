@@ -0,0 +1,81 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Палитровые плитки: кодирование и декодирование без потерь, граница в 256 цветов
+ */
+class PaletteCodecTest {
+    private static final int SCANLINE = 80;
+    private static final int HEIGHT = 40;
+
+    @Test
+    void oneColorRoundTrip() throws Exception {
+        int[] pixels = new int[SCANLINE * HEIGHT];
+        Arrays.fill(pixels, 0x336699);
+        assertRoundTrip(pixels, 5, 3, 64, 32, 1);
+    }
+
+    @Test
+    void exactly256ColorsRoundTrip() throws Exception {
+        // Число цветов - 1 в первом байте: 255, а не переполнение в 0
+        int[] pixels = colors(256);
+        assertRoundTrip(pixels, 0, 0, 64, 32, 256);
+    }
+
+    @Test
+    void tooManyColorsAreRejected() {
+        int[] pixels = colors(257);
+        PaletteCodec codec = new PaletteCodec();
+        assertEquals(-1, codec.encode(pixels, SCANLINE, 0, 0, 64, 32));
+        assertEquals(PaletteCodec.MAX_COLORS + 1,
+                codec.countColors(pixels, SCANLINE, 0, 0, 64, 32, PaletteCodec.MAX_COLORS));
+    }
+
+    /**
+     * Изображение SCANLINE x HEIGHT, в области 64x32 от (0, 0) ровно count цветов
+     */
+    private static int[] colors(int count) {
+        int[] pixels = new int[SCANLINE * HEIGHT];
+        for (int i = 0; i < 64 * 32; i++) {
+            pixels[(i / 64) * SCANLINE + i % 64] = (i % count) * 0x010305 + 0x0A0000;
+        }
+        return pixels;
+    }
+
+    private static void assertRoundTrip(int[] pixels, int x, int y, int w, int h, int colors) throws Exception {
+        PaletteCodec codec = new PaletteCodec();
+        int size = codec.encode(pixels, SCANLINE, x, y, w, h);
+        assertTrue(size > 0);
+        assertEquals(colors - 1, Byte.toUnsignedInt(codec.getBuffer()[0]));
+
+        byte[] bgr = new byte[SCANLINE * HEIGHT * 3];
+        ByteBuffer data = ByteBuffer.wrap(Arrays.copyOf(codec.getBuffer(), size));
+        new PaletteCodec().decode(data, 0, size, bgr, SCANLINE * 3, x, y, w, h);
+        assertArrayEquals(toBgr(pixels, x, y, w, h), bgr);
+    }
+
+    /**
+     * Область x, y, w, h изображения RGB в BGR, остальное черное
+     */
+    private static byte[] toBgr(int[] pixels, int x, int y, int w, int h) {
+        byte[] bgr = new byte[SCANLINE * HEIGHT * 3];
+        for (int row = y; row < y + h; row++) {
+            for (int col = x; col < x + w; col++) {
+                int rgb = pixels[row * SCANLINE + col];
+                int offset = (row * SCANLINE + col) * 3;
+                bgr[offset] = (byte) rgb;
+                bgr[offset + 1] = (byte) (rgb >> 8);
+                bgr[offset + 2] = (byte) (rgb >> 16);
+            }
+        }
+        return bgr;
+    }
+}
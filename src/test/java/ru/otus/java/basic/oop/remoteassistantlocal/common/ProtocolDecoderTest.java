@@ -0,0 +1,272 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.common;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.ProtocolException;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Двоичный протокол: каждый Command.Type, закодированный ProtocolEncoder, разбирается
+ * ProtocolDecoder в те же значения при любом делении потока на чтения
+ */
+class ProtocolDecoderTest {
+    private static final int FRAME_SIZE = 100_000;
+
+    @Test
+    void everyTypeInOneBuffer() throws IOException {
+        ProtocolEncoder encoder = new ProtocolEncoder(64).handshake();
+        List<String> expected = encodeAll(encoder);
+
+        Recorder handler = new Recorder();
+        ProtocolDecoder decoder = new ProtocolDecoder(0);
+        ByteBuffer src = encoder.buffer().flip();
+        decoder.decode(src, handler);
+
+        assertTrue(decoder.isHandshakeReceived());
+        assertFalse(src.hasRemaining());
+        assertEquals(expected, handler.messages);
+    }
+
+    @Test
+    void everyTypeSplitAcrossReads() throws IOException {
+        ProtocolEncoder encoder = new ProtocolEncoder(64).handshake();
+        List<String> expected = encodeAll(encoder);
+        byte[] bytes = Arrays.copyOf(encoder.buffer().array(), encoder.buffer().position());
+
+        // По байту, кусками некратными заголовку и всем потоком сразу; буфер растет под кадр
+        for (int chunk : new int[] {1, 7, 4096, bytes.length}) {
+            Recorder handler = new Recorder();
+            ProtocolDecoder decoder = new ProtocolDecoder(16);
+            InputStream in = new ChunkedStream(bytes, chunk);
+            while (decoder.read(in, handler) >= 0) {
+                // разбор идет внутри read()
+            }
+            assertEquals(expected, handler.messages, "чтение по " + chunk + " байт");
+        }
+    }
+
+    @Test
+    void unknownTypesAreSkipped() throws IOException {
+        ProtocolEncoder encoder = new ProtocolEncoder(64).handshake();
+        ByteBuffer buffer = encoder.reserve(2 * Protocol.HEADER_SIZE + 10);
+        // Код, которого нет в Command.Type, и отрицательный код
+        buffer.put((byte) 99).putInt(7).put(new byte[7]);
+        buffer.put((byte) -56).putInt(3).put(new byte[3]);
+        encoder.key(Command.Type.KEY_PRESS, 65);
+
+        Recorder handler = new Recorder();
+        new ProtocolDecoder(0).decode(encoder.buffer().flip(), handler);
+        assertEquals(List.of("key KEY_PRESS 65"), handler.messages);
+    }
+
+    @Test
+    void badLengthIsRejected() {
+        for (int length : new int[] {-1, Integer.MIN_VALUE, Protocol.MAX_PAYLOAD_SIZE + 1}) {
+            ProtocolEncoder encoder = new ProtocolEncoder(64).handshake();
+            encoder.reserve(Protocol.HEADER_SIZE).put(Command.Type.CHAT_MESSAGE.getCode()).putInt(length);
+            ByteBuffer src = encoder.buffer().flip();
+            assertThrows(ProtocolException.class, () -> new ProtocolDecoder(0).decode(src, new Recorder()),
+                    "длина " + length);
+        }
+
+        // Размер не совпадает с фиксированным размером типа
+        ProtocolEncoder encoder = new ProtocolEncoder(64).handshake();
+        encoder.reserve(Protocol.HEADER_SIZE + 4).put(Command.Type.MOUSE_MOVE.getCode()).putInt(4).putInt(1);
+        ByteBuffer src = encoder.buffer().flip();
+        assertThrows(ProtocolException.class, () -> new ProtocolDecoder(0).decode(src, new Recorder()));
+    }
+
+    @Test
+    void badHandshakeIsRejected() throws ProtocolException {
+        ByteBuffer magic = ByteBuffer.allocate(Protocol.HANDSHAKE_SIZE).putInt(Protocol.MAGIC + 1).put(Protocol.VERSION).flip();
+        assertThrows(ProtocolException.class, () -> new ProtocolDecoder(0).decode(magic, new Recorder()));
+
+        ByteBuffer version = ByteBuffer.allocate(Protocol.HANDSHAKE_SIZE)
+                .putInt(Protocol.MAGIC).put((byte) (Protocol.VERSION + 1)).flip();
+        assertThrows(ProtocolException.class, () -> new ProtocolDecoder(0).decode(version, new Recorder()));
+
+        // Неполное приветствие ждет следующего чтения
+        ProtocolDecoder decoder = new ProtocolDecoder(0);
+        ByteBuffer partial = ByteBuffer.allocate(3).putShort((short) 0).put((byte) 0).flip();
+        decoder.decode(partial, new Recorder());
+        assertFalse(decoder.isHandshakeReceived());
+        assertEquals(0, partial.position());
+    }
+
+    /**
+     * Одно сообщение каждого типа
+     *
+     * @return ожидаемые вызовы Recorder
+     */
+    private static List<String> encodeAll(ProtocolEncoder encoder) {
+        List<String> expected = new ArrayList<>();
+        for (Command.Type type : Command.Type.values()) {
+            int v = type.getCode();
+            switch (type) {
+                case MOUSE_MOVE:
+                    encoder.mouseMove(v, v + 1);
+                    expected.add("mouse " + type + " " + v + " " + (v + 1) + " 0 0");
+                    break;
+                case MOUSE_PRESS:
+                case MOUSE_RELEASE:
+                case MOUSE_WHEEL:
+                    encoder.mouse(type, v, -v, 3, 0);
+                    expected.add("mouse " + type + " " + v + " " + (-v) + " 3 0");
+                    break;
+                case MOUSE_CLICK:
+                case MOUSE_DRAG:
+                    encoder.mouse(type, v, v + 1, v + 2, v + 3);
+                    expected.add("mouse " + type + " " + v + " " + (v + 1) + " " + (v + 2) + " " + (v + 3));
+                    break;
+                case KEY_PRESS:
+                case KEY_RELEASE:
+                case KEY_TYPED:
+                    encoder.key(type, 1000 + v);
+                    expected.add("key " + type + " " + (1000 + v));
+                    break;
+                case SET_QUALITY:
+                case SET_FPS:
+                case SET_TRANSPORT:
+                case SET_ADAPTIVE:
+                    encoder.value(type, v * 3);
+                    expected.add("value " + type + " " + v * 3);
+                    break;
+                case STREAM_STATE:
+                    encoder.streamState(80, 25, 50);
+                    expected.add("state 80 25 50");
+                    break;
+                case PING:
+                    encoder.ping(7, Long.MAX_VALUE - 1);
+                    expected.add("ping 7 " + (Long.MAX_VALUE - 1));
+                    break;
+                case PONG:
+                    encoder.pong(8, 1L << 40, -5, 123_456_789_012L);
+                    expected.add("pong 8 " + (1L << 40) + " -5 123456789012");
+                    break;
+                case CURSOR_POSITION:
+                    encoder.cursor(-10, 20, Protocol.CURSOR_HIDDEN);
+                    expected.add("cursor -10 20 " + Protocol.CURSOR_HIDDEN);
+                    break;
+                case CURSOR_SHAPE:
+                    CursorShape.TEXT.write(encoder);
+                    expected.add(Recorder.describe(CursorShape.TEXT));
+                    break;
+                case SCREENSHOT_RESPONSE:
+                    // Больше начальной емкости буфера декодера
+                    byte[] frame = new byte[FRAME_SIZE];
+                    for (int i = 0; i < frame.length; i++) {
+                        frame[i] = (byte) (i * 31);
+                    }
+                    encoder.command(new Command(type, frame));
+                    expected.add("frame " + Arrays.hashCode(frame));
+                    break;
+                default:
+                    if (type.getPayloadSize() == 0) {
+                        encoder.signal(type);
+                        expected.add("signal " + type);
+                    } else {
+                        encoder.text(type, "Привет, " + type);
+                        expected.add("text " + type + " Привет, " + type);
+                    }
+            }
+        }
+        return expected;
+    }
+
+    /**
+     * Запоминает разобранные сообщения строками
+     */
+    private static class Recorder implements MessageHandler {
+        final List<String> messages = new ArrayList<>();
+
+        static String describe(CursorShape shape) {
+            return "shape " + shape.getId() + " " + shape.getWidth() + "x" + shape.getHeight()
+                    + " " + shape.getHotX() + "," + shape.getHotY() + " " + Arrays.hashCode(shape.getArgb());
+        }
+
+        @Override
+        public void onMouse(Command.Type type, int x, int y, int arg1, int arg2) {
+            messages.add("mouse " + type + " " + x + " " + y + " " + arg1 + " " + arg2);
+        }
+
+        @Override
+        public void onKey(Command.Type type, int keyCode) {
+            messages.add("key " + type + " " + keyCode);
+        }
+
+        @Override
+        public void onValue(Command.Type type, int value) {
+            messages.add("value " + type + " " + value);
+        }
+
+        @Override
+        public void onSignal(Command.Type type) {
+            messages.add("signal " + type);
+        }
+
+        @Override
+        public void onPing(int seq, long originTime) {
+            messages.add("ping " + seq + " " + originTime);
+        }
+
+        @Override
+        public void onPong(int seq, long originTime, long receiveTime, long transmitTime) {
+            messages.add("pong " + seq + " " + originTime + " " + receiveTime + " " + transmitTime);
+        }
+
+        @Override
+        public void onCursor(int x, int y, int shapeId) {
+            messages.add("cursor " + x + " " + y + " " + shapeId);
+        }
+
+        @Override
+        public void onCursorShape(CursorShape shape) {
+            messages.add(describe(shape));
+        }
+
+        @Override
+        public void onStreamState(int quality, int fps, int scale) {
+            messages.add("state " + quality + " " + fps + " " + scale);
+        }
+
+        @Override
+        public void onFrame(ByteBuffer payload) {
+            byte[] frame = new byte[payload.remaining()];
+            payload.get(frame);
+            messages.add("frame " + Arrays.hashCode(frame));
+        }
+
+        @Override
+        public void onText(Command.Type type, String text) {
+            messages.add("text " + type + " " + text);
+        }
+    }
+
+    /**
+     * Поток, который отдает не больше chunk байт за чтение
+     */
+    private static class ChunkedStream extends ByteArrayInputStream {
+        private final int chunk;
+
+        ChunkedStream(byte[] bytes, int chunk) {
+            super(bytes);
+            this.chunk = chunk;
+        }
+
+        @Override
+        public synchronized int read(byte[] b, int off, int len) {
+            return super.read(b, off, Math.min(len, chunk));
+        }
+    }
+}
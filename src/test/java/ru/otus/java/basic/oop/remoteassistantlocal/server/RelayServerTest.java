@@ -0,0 +1,198 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.server;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Protocol;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.ProtocolEncoder;
+
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.Socket;
+import java.util.Arrays;
+import java.util.Random;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BooleanSupplier;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Посредник на loopback: соединение агента и помощника по номеру сессии, пересылка
+ * байт в обе стороны, закрытие пары и отказ неверным подключениям
+ */
+class RelayServerTest {
+    private static final long SESSION = 123456789L;
+    private static final int BULK = 4 * 1024 * 1024;
+
+    private RelayServer server;
+    private RelayStats stats;
+    private Thread thread;
+
+    @BeforeEach
+    void start() throws IOException {
+        RelayConfig config = new RelayConfig();
+        config.setPort(0);
+        config.setBufferKb(16);
+        config.setHelloTimeoutSeconds(1);
+        config.setReportSeconds(0);
+        stats = new RelayStats();
+        server = new RelayServer(config, stats);
+        thread = new Thread(() -> {
+            try {
+                server.run();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }, "Relay-Test");
+        thread.start();
+    }
+
+    @AfterEach
+    void stop() throws InterruptedException {
+        server.close();
+        thread.join(TimeUnit.SECONDS.toMillis(5));
+    }
+
+    @Test
+    void pairsAndForwardsBothWays() throws Exception {
+        // Помощник приходит первым и сразу шлет данные агенту - они ждут в посреднике
+        Socket viewer = connect();
+        byte[] earlyBytes = bytes(new ProtocolEncoder(Protocol.HANDSHAKE_SIZE).handshake());
+        send(viewer, hello(Protocol.RELAY_ROLE_VIEWER, SESSION));
+        viewer.getOutputStream().write(earlyBytes);
+        await(() -> stats.getWaitingViewers() == 1);
+
+        Socket agent = connect();
+        send(agent, hello(Protocol.RELAY_ROLE_AGENT, SESSION));
+        DataInputStream fromRelay = new DataInputStream(agent.getInputStream());
+        assertEquals(Protocol.RELAY_PAIRED, fromRelay.readByte());
+        byte[] received = new byte[earlyBytes.length];
+        fromRelay.readFully(received);
+        assertArrayEquals(earlyBytes, received);
+        assertEquals(1, stats.getActivePairs());
+        assertEquals(0, stats.getWaitingViewers());
+
+        // Объем больше буферов сокетов и посредника в обе стороны одновременно
+        byte[] toAgent = random(1, BULK);
+        byte[] toViewer = random(2, BULK);
+        CompletableFuture<Void> viewerWrites = CompletableFuture.runAsync(() -> write(viewer, toAgent));
+        CompletableFuture<Void> agentWrites = CompletableFuture.runAsync(() -> write(agent, toViewer));
+        CompletableFuture<byte[]> agentReads = CompletableFuture.supplyAsync(() -> read(agent, BULK));
+        byte[] atViewer = read(viewer, BULK);
+        viewerWrites.get(30, TimeUnit.SECONDS);
+        agentWrites.get(30, TimeUnit.SECONDS);
+        assertArrayEquals(toViewer, atViewer);
+        assertArrayEquals(toAgent, agentReads.get(30, TimeUnit.SECONDS));
+
+        // Закрытие одной стороны закрывает другую и освобождает все ресурсы
+        viewer.close();
+        assertEquals(-1, agent.getInputStream().read());
+        agent.close();
+        await(() -> stats.getActivePairs() == 0 && stats.getBuffersInUse() == 0);
+        assertEquals(0, stats.getWaitingAgents());
+        assertEquals(0, stats.getWaitingViewers());
+        assertEquals(1, stats.getPairsTotal());
+        assertEquals(BULK + earlyBytes.length, stats.getBytesToAgents());
+        assertEquals(BULK, stats.getBytesToViewers());
+    }
+
+    @Test
+    void waitingAgentDisconnectLeavesQueue() throws Exception {
+        Socket agent = connect();
+        send(agent, hello(Protocol.RELAY_ROLE_AGENT, SESSION));
+        await(() -> stats.getWaitingAgents() == 1);
+        agent.close();
+        await(() -> stats.getWaitingAgents() == 0);
+        assertEquals(0, stats.getActivePairs());
+    }
+
+    @Test
+    void rejectsBadMagic() throws Exception {
+        Socket socket = connect();
+        byte[] hello = hello(Protocol.RELAY_ROLE_VIEWER, SESSION);
+        hello[0] ^= 0x55;
+        send(socket, hello);
+        assertEquals(-1, socket.getInputStream().read());
+        await(() -> stats.getConnectionsRejected() == 1);
+        assertEquals(0, stats.getWaitingViewers());
+        socket.close();
+    }
+
+    @Test
+    void rejectsMissingHelloAfterTimeout() throws Exception {
+        Socket socket = connect();
+        long start = System.nanoTime();
+        assertEquals(-1, socket.getInputStream().read());
+        long waited = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(waited >= 900, "закрыто раньше тайм-аута: " + waited + " мс");
+        assertEquals(1, stats.getConnectionsRejected());
+        socket.close();
+    }
+
+    private Socket connect() throws IOException {
+        Socket socket = new Socket(InetAddress.getLoopbackAddress(), server.getPort());
+        socket.setSoTimeout((int) TimeUnit.SECONDS.toMillis(10));
+        return socket;
+    }
+
+    private static byte[] hello(byte role, long sessionId) {
+        return bytes(new ProtocolEncoder(Protocol.RELAY_HELLO_SIZE).relayHello(role, sessionId));
+    }
+
+    private static byte[] bytes(ProtocolEncoder encoder) {
+        return Arrays.copyOf(encoder.buffer().array(), encoder.buffer().position());
+    }
+
+    private static void send(Socket socket, byte[] data) throws IOException {
+        socket.getOutputStream().write(data);
+    }
+
+    private static byte[] random(long seed, int size) {
+        byte[] data = new byte[size];
+        new Random(seed).nextBytes(data);
+        return data;
+    }
+
+    /**
+     * Запись порциями разного размера, чтобы посредник видел неполные чтения
+     */
+    private static void write(Socket socket, byte[] data) {
+        try {
+            OutputStream out = socket.getOutputStream();
+            Random random = new Random(data.length);
+            for (int offset = 0; offset < data.length; ) {
+                int length = Math.min(data.length - offset, 1 + random.nextInt(64 * 1024));
+                out.write(data, offset, length);
+                offset += length;
+            }
+            out.flush();
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static byte[] read(Socket socket, int size) {
+        try {
+            byte[] data = new byte[size];
+            InputStream in = socket.getInputStream();
+            new DataInputStream(in).readFully(data);
+            return data;
+        } catch (IOException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    private static void await(BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.nanoTime() < deadline, "условие не выполнилось за 5 с");
+            Thread.sleep(10);
+        }
+    }
+}
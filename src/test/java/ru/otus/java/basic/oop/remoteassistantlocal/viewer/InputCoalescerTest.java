@@ -0,0 +1,112 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import ru.otus.java.basic.oop.remoteassistantlocal.common.Command;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Движения внутри такта объединяются, нажатия, отпускания и клавиатура не объединяются
+ * и не переставляются относительно движений
+ */
+class InputCoalescerTest {
+    // Такт, за который таймер в тесте не успевает сработать
+    private static final long LONG_TICK_MILLIS = 60_000;
+
+    private final List<String> sent = new CopyOnWriteArrayList<>();
+    private InputCoalescer coalescer;
+
+    @AfterEach
+    void close() {
+        coalescer.close();
+    }
+
+    @Test
+    void burstInsideTickSendsLastPosition() {
+        coalescer = new InputCoalescer(LONG_TICK_MILLIS, this::send);
+        for (int i = 1; i <= 50; i++) {
+            coalescer.move(Command.Type.MOUSE_MOVE, i, 2 * i, 0, 0);
+        }
+        coalescer.event(Command.Type.MOUSE_PRESS, 50, 100, 1, 0);
+
+        // Первое движение уходит сразу, из остальных - только последнее
+        assertEquals(List.of("MOUSE_MOVE 1 2 0 0", "MOUSE_MOVE 50 100 0 0", "MOUSE_PRESS 50 100 1 0"), sent);
+        assertEquals(50, coalescer.getReceivedMoves());
+        assertEquals(2, coalescer.getSentMoves());
+    }
+
+    @Test
+    void eventsFlushMoveFirstAndAreNeverMerged() {
+        coalescer = new InputCoalescer(LONG_TICK_MILLIS, this::send);
+        coalescer.move(Command.Type.MOUSE_MOVE, 1, 1, 0, 0);
+        coalescer.move(Command.Type.MOUSE_MOVE, 2, 2, 0, 0);
+        coalescer.event(Command.Type.MOUSE_PRESS, 2, 2, 1, 0);
+        coalescer.event(Command.Type.MOUSE_PRESS, 2, 2, 1, 0);
+        coalescer.event(Command.Type.MOUSE_RELEASE, 2, 2, 1, 0);
+        coalescer.move(Command.Type.MOUSE_MOVE, 3, 3, 0, 0);
+        coalescer.ordered(() -> sent.add("KEY_PRESS 65"));
+        coalescer.ordered(() -> sent.add("KEY_PRESS 65"));
+        coalescer.event(Command.Type.MOUSE_WHEEL, 3, 3, -1, 0);
+
+        assertEquals(List.of(
+                "MOUSE_MOVE 1 1 0 0",
+                "MOUSE_MOVE 2 2 0 0",
+                "MOUSE_PRESS 2 2 1 0",
+                "MOUSE_PRESS 2 2 1 0",
+                "MOUSE_RELEASE 2 2 1 0",
+                "MOUSE_MOVE 3 3 0 0",
+                "KEY_PRESS 65",
+                "KEY_PRESS 65",
+                "MOUSE_WHEEL 3 3 -1 0"), sent);
+    }
+
+    @Test
+    void typeChangeFlushes() {
+        coalescer = new InputCoalescer(LONG_TICK_MILLIS, this::send);
+        coalescer.move(Command.Type.MOUSE_MOVE, 1, 1, 0, 0);
+        coalescer.move(Command.Type.MOUSE_MOVE, 2, 2, 0, 0);
+        // Перетаскивание: сохраняется начальная точка первого отложенного движения
+        coalescer.move(Command.Type.MOUSE_DRAG, 3, 3, 2, 2);
+        coalescer.move(Command.Type.MOUSE_DRAG, 4, 4, 3, 3);
+        coalescer.move(Command.Type.MOUSE_MOVE, 5, 5, 0, 0);
+        coalescer.event(Command.Type.MOUSE_RELEASE, 5, 5, 1, 0);
+
+        assertEquals(List.of(
+                "MOUSE_MOVE 1 1 0 0",
+                "MOUSE_MOVE 2 2 0 0",
+                "MOUSE_DRAG 4 4 2 2",
+                "MOUSE_MOVE 5 5 0 0",
+                "MOUSE_RELEASE 5 5 1 0"), sent);
+    }
+
+    @Test
+    void timerFlushesTrailingMove() throws InterruptedException {
+        long tick = 20;
+        coalescer = new InputCoalescer(tick, this::send);
+        long start = System.nanoTime();
+        coalescer.move(Command.Type.MOUSE_MOVE, 1, 1, 0, 0);
+        coalescer.move(Command.Type.MOUSE_MOVE, 2, 2, 0, 0);
+        coalescer.move(Command.Type.MOUSE_MOVE, 3, 3, 0, 0);
+        assertEquals(List.of("MOUSE_MOVE 1 1 0 0"), sent);
+
+        long deadline = start + TimeUnit.SECONDS.toNanos(5);
+        while (sent.size() < 2) {
+            assertTrue(System.nanoTime() < deadline, "отложенное движение не отправлено за 5 с");
+            Thread.sleep(1);
+        }
+        long elapsed = TimeUnit.NANOSECONDS.toMillis(System.nanoTime() - start);
+        assertTrue(elapsed >= tick, "отправлено через " + elapsed + " мс, раньше такта");
+        assertEquals(List.of("MOUSE_MOVE 1 1 0 0", "MOUSE_MOVE 3 3 0 0"), sent);
+        assertEquals(2, coalescer.getSentMoves());
+    }
+
+    private void send(Command.Type type, int x, int y, int arg1, int arg2) {
+        sent.add(type + " " + x + " " + y + " " + arg1 + " " + arg2);
+    }
+}
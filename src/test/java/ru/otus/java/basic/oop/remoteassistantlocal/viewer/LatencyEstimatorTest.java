@@ -0,0 +1,90 @@
+package ru.otus.java.basic.oop.remoteassistantlocal.viewer;
+
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+/**
+ * Круговая задержка и смещение часов по синтетическим обменам PING/PONG, отметки в мкс
+ */
+class LatencyEstimatorTest {
+    // Часы агента спешат на 50 мс, в одну сторону 10 мс, агент отвечает за 2 мс
+    private static final long OFFSET = 50_000;
+    private static final long ONE_WAY = 10_000;
+    private static final long PROCESSING = 2_000;
+
+    private final LatencyEstimator latency = new LatencyEstimator();
+
+    @Test
+    void knownExchange() {
+        assertFalse(latency.hasSample());
+        assertEquals(-1, latency.getRttMillis());
+
+        exchange(latency.nextSeq(), 1_000_000, ONE_WAY);
+        assertTrue(latency.hasSample());
+        assertEquals(20.0, latency.getRttMillis(), 1e-9);
+        assertEquals(50.0, latency.getClockOffsetMillis(), 1e-9);
+        assertEquals(0, latency.getLostPings());
+    }
+
+    @Test
+    void lateAndReorderedPongsAreIgnored() {
+        int first = latency.nextSeq();
+        int second = latency.nextSeq();
+        exchange(second, 2_000_000, ONE_WAY);
+
+        // Ответ на первый PING пришел позже второго, повтор второго и ответ на неотправленный PING
+        exchange(first, 1_000_000, 250_000);
+        exchange(second, 2_000_000, 250_000);
+        exchange(second + 1, 3_000_000, 250_000);
+
+        assertEquals(20.0, latency.getRttMillis(), 1e-9);
+        assertEquals(50.0, latency.getClockOffsetMillis(), 1e-9);
+        assertEquals(0, latency.getJitterMillis(), 1e-9);
+        // Опоздавший ответ не засчитан: первый PING потерян
+        assertEquals(1, latency.getLostPings());
+        // Ответ на новый PING еще может прийти
+        latency.nextSeq();
+        assertEquals(1, latency.getLostPings());
+    }
+
+    @Test
+    void trailingLossesAreCounted() {
+        long time = 1_000_000;
+        for (int i = 0; i < 3; i++) {
+            exchange(latency.nextSeq(), time, ONE_WAY);
+            time += 1_000_000;
+        }
+        for (int i = 1; i < LatencyEstimator.STALE_PINGS; i++) {
+            latency.nextSeq();
+            assertFalse(latency.isStale(), "без ответа " + i + " PING");
+            assertEquals(20.0, latency.getRttMillis(), 1e-9);
+        }
+
+        // Агент замолчал: 10 PING, ответы только на первые 3
+        while (latency.nextSeq() < 10) {
+            assertTrue(latency.getLostPings() > 0);
+        }
+        assertEquals(6, latency.getLostPings());
+        assertTrue(latency.isStale());
+        assertEquals(-1, latency.getRttMillis());
+
+        // Агент снова отвечает
+        exchange(10, time, ONE_WAY);
+        assertFalse(latency.isStale());
+        assertEquals(20.0, latency.getRttMillis(), 1e-9);
+        assertEquals(6, latency.getLostPings());
+    }
+
+    /**
+     * Ответ на PING номер seq, отправленный в момент origin по часам помощника
+     */
+    private void exchange(int seq, long origin, long oneWay) {
+        long receive = origin + oneWay + OFFSET;
+        long transmit = receive + PROCESSING;
+        long arrival = transmit - OFFSET + oneWay;
+        latency.onPong(seq, origin, receive, transmit, arrival);
+    }
+}